@@ -1,13 +1,65 @@
 package org.metadatacenter.cedar.template;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.jaxrs.cbor.JacksonCBORProvider;
+import com.fasterxml.jackson.jaxrs.smile.JacksonSmileProvider;
+import com.mongodb.MongoClient;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
+import org.metadatacenter.cedar.template.change.DirtyMarkers;
+import org.metadatacenter.cedar.template.change.DocumentChangeListeners;
+import org.metadatacenter.cedar.template.command.BackfillCreatedOnCommand;
+import org.metadatacenter.cedar.template.command.BenchmarkFormatsCommand;
+import org.metadatacenter.cedar.template.command.BenchmarkIdsCommand;
+import org.metadatacenter.cedar.template.command.ExportSnapshotCommand;
+import org.metadatacenter.cedar.template.command.ImportInstancesCommand;
+import org.metadatacenter.cedar.template.command.PartitionInstancesCommand;
+import org.metadatacenter.cedar.template.command.RebuildElementUsagesCommand;
+import org.metadatacenter.cedar.template.command.RebuildSummariesCommand;
+import org.metadatacenter.cedar.template.command.ReindexSearchCommand;
+import org.metadatacenter.cedar.template.command.RebuildStatisticsCommand;
+import org.metadatacenter.cedar.template.command.RestoreSnapshotCommand;
+import org.metadatacenter.cedar.template.config.StartupConfig;
+import org.metadatacenter.cedar.template.config.TracingConfig;
+import org.metadatacenter.cedar.template.format.BinaryFormats;
+import org.metadatacenter.cedar.template.format.RequestBodyReader;
+import org.metadatacenter.cedar.template.health.ReadinessHealthCheck;
 import org.metadatacenter.cedar.template.health.TemplateServerHealthCheck;
+import org.metadatacenter.cedar.template.history.TemplateHistory;
+import org.metadatacenter.cedar.template.jobs.TemplateDeleteJobManager;
+import org.metadatacenter.cedar.template.mongo.ManagedMongoClient;
+import org.metadatacenter.cedar.template.mongo.MongoClientFactory;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.mongo.ProjectingDocumentReader;
+import org.metadatacenter.cedar.template.mongo.TemplateInstanceFinder;
+import org.metadatacenter.cedar.template.mongo.VersionedDocumentWriter;
 import org.metadatacenter.cedar.template.resources.IndexResource;
+import org.metadatacenter.cedar.template.resources.StatisticsResource;
+import org.metadatacenter.cedar.template.resources.TemplateDeleteJobsResource;
 import org.metadatacenter.cedar.template.resources.TemplateElementsResource;
 import org.metadatacenter.cedar.template.resources.TemplateInstancesResource;
 import org.metadatacenter.cedar.template.resources.TemplatesResource;
+import org.metadatacenter.cedar.template.read.ResponseCache;
+import org.metadatacenter.cedar.template.read.SingleFlightReader;
+import org.metadatacenter.cedar.template.search.SearchIndex;
+import org.metadatacenter.cedar.template.service.DirectTemplateInstanceWriter;
+import org.metadatacenter.cedar.template.service.GroupCommitTemplateInstanceWriter;
+import org.metadatacenter.cedar.template.service.PartitionedTemplateInstanceStore;
+import org.metadatacenter.cedar.template.service.ServiceTemplateInstanceStore;
+import org.metadatacenter.cedar.template.service.TemplateInstanceStore;
+import org.metadatacenter.cedar.template.service.TemplateInstanceWriter;
+import org.metadatacenter.cedar.template.startup.FirstRequestFilter;
+import org.metadatacenter.cedar.template.startup.LazyService;
+import org.metadatacenter.cedar.template.startup.StartupMonitor;
+import org.metadatacenter.cedar.template.startup.WarmUp;
+import org.metadatacenter.cedar.template.stats.StatisticsStore;
+import org.metadatacenter.cedar.template.summary.SummaryStore;
+import org.metadatacenter.cedar.template.trace.LogSpanExporter;
+import org.metadatacenter.cedar.template.trace.RotatingFileSpanExporter;
+import org.metadatacenter.cedar.template.trace.SpanExporter;
+import org.metadatacenter.cedar.template.trace.Tracing;
+import org.metadatacenter.cedar.template.trace.TracingFilter;
+import org.metadatacenter.cedar.template.usage.ElementUsageIndex;
 import org.metadatacenter.cedar.util.dw.CedarMicroserviceApplication;
 import org.metadatacenter.model.CedarNodeType;
 import org.metadatacenter.server.service.TemplateElementService;
@@ -19,12 +71,17 @@ import org.metadatacenter.server.service.mongodb.TemplateFieldServiceMongoDB;
 import org.metadatacenter.server.service.mongodb.TemplateInstanceServiceMongoDB;
 import org.metadatacenter.server.service.mongodb.TemplateServiceMongoDB;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class TemplateServerApplication extends CedarMicroserviceApplication<TemplateServerConfiguration> {
 
   protected static TemplateFieldService<String, JsonNode> templateFieldService;
   protected static TemplateElementService<String, JsonNode> templateElementService;
   protected static TemplateService<String, JsonNode> templateService;
   protected static TemplateInstanceService<String, JsonNode> templateInstanceService;
+  protected static CompletableFuture<Long> servicesReady;
 
   public static void main(String[] args) throws Exception {
     new TemplateServerApplication().run(args);
@@ -37,26 +94,153 @@ public class TemplateServerApplication extends CedarMicroserviceApplication<Temp
 
   @Override
   public void initializeApp(Bootstrap<TemplateServerConfiguration> bootstrap) {
-    templateFieldService = new TemplateFieldServiceMongoDB(
-        cedarConfig.getMongoConfig().getDatabaseName(),
-        cedarConfig.getMongoCollectionName(CedarNodeType.FIELD));
-
-    templateElementService = new TemplateElementServiceMongoDB(
-        cedarConfig.getMongoConfig().getDatabaseName(),
-        cedarConfig.getMongoCollectionName(CedarNodeType.ELEMENT));
-
-    templateService = new TemplateServiceMongoDB(
-        cedarConfig.getMongoConfig().getDatabaseName(),
-        cedarConfig.getMongoCollectionName(CedarNodeType.TEMPLATE),
-        templateElementService);
-
-    templateInstanceService = new TemplateInstanceServiceMongoDB(
-        cedarConfig.getMongoConfig().getDatabaseName(),
-        cedarConfig.getMongoCollectionName(CedarNodeType.INSTANCE));
+    // The services open their own Mongo connections; construct them in the background while Dropwizard boots
+    final long servicesStart = System.currentTimeMillis();
+    final String databaseName = cedarConfig.getMongoConfig().getDatabaseName();
+    final ExecutorService serviceBuilders = Executors.newFixedThreadPool(4, r -> {
+      Thread thread = new Thread(r, "service-initialization");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    CompletableFuture<TemplateFieldService<String, JsonNode>> fieldService = CompletableFuture.supplyAsync(
+        () -> new TemplateFieldServiceMongoDB(databaseName, cedarConfig.getMongoCollectionName(CedarNodeType.FIELD)),
+        serviceBuilders);
+    templateFieldService = LazyService.of(TemplateFieldService.class, fieldService, "template field service");
+
+    CompletableFuture<TemplateElementService<String, JsonNode>> elementService = CompletableFuture.supplyAsync(
+        () -> new TemplateElementServiceMongoDB(databaseName,
+            cedarConfig.getMongoCollectionName(CedarNodeType.ELEMENT)), serviceBuilders);
+    templateElementService = LazyService.of(TemplateElementService.class, elementService, "template element service");
+
+    CompletableFuture<TemplateService<String, JsonNode>> service = elementService.thenApply(
+        element -> new TemplateServiceMongoDB(databaseName, cedarConfig.getMongoCollectionName(CedarNodeType.TEMPLATE),
+            element));
+    templateService = LazyService.of(TemplateService.class, service, "template service");
+
+    CompletableFuture<TemplateInstanceService<String, JsonNode>> instanceService = CompletableFuture.supplyAsync(
+        () -> new TemplateInstanceServiceMongoDB(databaseName,
+            cedarConfig.getMongoCollectionName(CedarNodeType.INSTANCE)), serviceBuilders);
+    templateInstanceService = LazyService.of(TemplateInstanceService.class, instanceService,
+        "template instance service");
+
+    servicesReady = CompletableFuture.allOf(fieldService, service, instanceService)
+        .thenApply(done -> System.currentTimeMillis() - servicesStart);
+    serviceBuilders.shutdown();
+
+    bootstrap.addCommand(new RebuildSummariesCommand(cedarConfig));
+    bootstrap.addCommand(new ExportSnapshotCommand(cedarConfig));
+    bootstrap.addCommand(new RestoreSnapshotCommand(cedarConfig));
+    bootstrap.addCommand(new ReindexSearchCommand(cedarConfig));
+    bootstrap.addCommand(new RebuildElementUsagesCommand(cedarConfig));
+    bootstrap.addCommand(new PartitionInstancesCommand(cedarConfig));
+    bootstrap.addCommand(new ImportInstancesCommand(cedarConfig));
+    bootstrap.addCommand(new RebuildStatisticsCommand(cedarConfig));
+    bootstrap.addCommand(new BackfillCreatedOnCommand(cedarConfig));
+    bootstrap.addCommand(new BenchmarkIdsCommand(cedarConfig));
+    bootstrap.addCommand(new BenchmarkFormatsCommand(cedarConfig));
   }
 
   @Override
   public void runApp(TemplateServerConfiguration configuration, Environment environment) {
+    final StartupConfig startup = configuration.getStartup();
+    if (!startup.isLazyServices()) {
+      servicesReady.join();
+    }
+    final StartupMonitor startupMonitor = new StartupMonitor(environment.metrics(), servicesReady, startup.isWarmUp());
+    environment.jersey().register(new FirstRequestFilter(startupMonitor));
+    environment.lifecycle().addServerLifecycleListener(new WarmUp(startup, environment.getObjectMapper(),
+        startupMonitor));
+
+    final MongoClient mongoClient = MongoClientFactory.build(cedarConfig);
+    environment.lifecycle().manage(new ManagedMongoClient(mongoClient));
+    final MongoCollections mongoCollections = new MongoCollections(cedarConfig, mongoClient,
+        configuration.getInstancePartitions());
+    if (configuration.getTracing().isEnabled()) {
+      enableTracing(configuration.getTracing(), environment);
+    }
+    final TemplateInstanceStore templateInstanceStore;
+    if (mongoCollections.isPartitioned(CedarNodeType.INSTANCE)) {
+      TemplateInstanceStore partitioned = new PartitionedTemplateInstanceStore(mongoCollections,
+          configuration.getInstancePartitions().getMaxOffset());
+      templateInstanceStore = configuration.getTracing().isEnabled()
+          ? Tracing.traced(TemplateInstanceStore.class, partitioned, "templateInstanceStore") : partitioned;
+    } else {
+      // over the template instance service, which is already traced if tracing is enabled
+      templateInstanceStore = new ServiceTemplateInstanceStore(templateInstanceService);
+    }
+
+    final ProjectingDocumentReader documentReader = new ProjectingDocumentReader(mongoCollections);
+    final VersionedDocumentWriter versionedDocumentWriter = new VersionedDocumentWriter(mongoCollections);
+    final TemplateInstanceFinder templateInstanceFinder = new TemplateInstanceFinder(mongoCollections);
+    environment.lifecycle().manage(templateInstanceFinder);
+
+    final SingleFlightReader singleFlightReader = new SingleFlightReader(environment.metrics());
+    final DocumentChangeListeners changeListeners = new DocumentChangeListeners(new DirtyMarkers(mongoCollections),
+        documentReader, configuration.getChangeReconciliation());
+    environment.lifecycle().manage(changeListeners);
+    // first, so that the reads the response cache stores after its invalidation can not join a stale read
+    changeListeners.add(singleFlightReader);
+
+    final SummaryStore summaryStore = new SummaryStore(mongoCollections, cedarConfig,
+        configuration.getSummaries().isEnabled());
+    environment.lifecycle().manage(summaryStore);
+    if (summaryStore.isEnabled()) {
+      changeListeners.add(summaryStore);
+    }
+
+    final SearchIndex searchIndex = new SearchIndex(configuration.getSearch());
+    environment.lifecycle().manage(searchIndex);
+    if (searchIndex.isEnabled()) {
+      changeListeners.add(searchIndex);
+    }
+
+    final TemplateHistory templateHistory = new TemplateHistory(mongoCollections, configuration.getHistory());
+    environment.lifecycle().manage(templateHistory);
+    if (templateHistory.isEnabled()) {
+      changeListeners.add(templateHistory);
+    }
+
+    final ElementUsageIndex elementUsageIndex = new ElementUsageIndex(mongoCollections,
+        configuration.getElementUsages().isEnabled());
+    environment.lifecycle().manage(elementUsageIndex);
+    if (elementUsageIndex.isEnabled()) {
+      changeListeners.add(elementUsageIndex);
+    }
+
+    final StatisticsStore statisticsStore = new StatisticsStore(mongoCollections,
+        configuration.getStatistics().isEnabled());
+    environment.lifecycle().manage(statisticsStore);
+    if (statisticsStore.isEnabled()) {
+      changeListeners.add(statisticsStore);
+    }
+
+    final ResponseCache responseCache = new ResponseCache(configuration.getResponseCache(), documentReader,
+        environment.getObjectMapper(), environment.metrics());
+    if (responseCache.isEnabled()) {
+      changeListeners.add(responseCache);
+    }
+
+    final TemplateInstanceWriter templateInstanceWriter;
+    if (configuration.getInstanceGroupCommit().isEnabled()) {
+      GroupCommitTemplateInstanceWriter groupCommitWriter = new GroupCommitTemplateInstanceWriter(
+          mongoCollections, configuration.getInstanceGroupCommit());
+      environment.lifecycle().manage(groupCommitWriter);
+      templateInstanceWriter = groupCommitWriter;
+    } else {
+      templateInstanceWriter = new DirectTemplateInstanceWriter(mongoCollections);
+    }
+
+    final TemplateDeleteJobManager templateDeleteJobManager = new TemplateDeleteJobManager(mongoCollections,
+        templateService, configuration.getCascadeDelete(), changeListeners);
+    environment.lifecycle().manage(templateDeleteJobManager);
+
+    environment.jersey().register(new JacksonSmileProvider(BinaryFormats.smileMapper()));
+    environment.jersey().register(new JacksonCBORProvider(BinaryFormats.cborMapper()));
+
+    final RequestBodyReader requestBodyReader = new RequestBodyReader(configuration.getRequestBody(),
+        environment.metrics());
+
     final IndexResource index = new IndexResource();
     environment.jersey().register(index);
 
@@ -65,17 +249,50 @@ public class TemplateServerApplication extends CedarMicroserviceApplication<Temp
     environment.jersey().register(fields);*/
 
     final TemplateElementsResource elements = new TemplateElementsResource(cedarConfig, templateElementService,
-        templateFieldService);
+        templateFieldService, documentReader, versionedDocumentWriter, summaryStore, changeListeners,
+        singleFlightReader, responseCache, elementUsageIndex, configuration.getIdGenerationMode(), requestBodyReader);
     environment.jersey().register(elements);
 
     final TemplatesResource templates = new TemplatesResource(cedarConfig, templateService, templateFieldService,
-        templateInstanceService);
+        templateInstanceStore, documentReader, versionedDocumentWriter, summaryStore, changeListeners,
+        singleFlightReader, responseCache, searchIndex, templateHistory, templateDeleteJobManager,
+        configuration.getIdGenerationMode(), requestBodyReader);
     environment.jersey().register(templates);
 
-    final TemplateInstancesResource instances = new TemplateInstancesResource(cedarConfig, templateInstanceService);
+    final TemplateDeleteJobsResource templateDeleteJobs = new TemplateDeleteJobsResource(cedarConfig,
+        templateDeleteJobManager);
+    environment.jersey().register(templateDeleteJobs);
+
+    final TemplateInstancesResource instances = new TemplateInstancesResource(cedarConfig, templateInstanceStore,
+        templateInstanceWriter, documentReader, versionedDocumentWriter, summaryStore, changeListeners,
+        singleFlightReader, templateInstanceFinder, configuration.getIdGenerationMode(), requestBodyReader);
     environment.jersey().register(instances);
 
+    final StatisticsResource statistics = new StatisticsResource(cedarConfig, statisticsStore,
+        configuration.getStatistics().getAdminUsers());
+    environment.jersey().register(statistics);
+
     final TemplateServerHealthCheck healthCheck = new TemplateServerHealthCheck();
     environment.healthChecks().register("message", healthCheck);
+    environment.healthChecks().register("ready", new ReadinessHealthCheck(startupMonitor));
+  }
+
+  private static void enableTracing(TracingConfig config, Environment environment) {
+    SpanExporter exporter;
+    if (config.getExporter() == TracingConfig.Exporter.LOG) {
+      exporter = new LogSpanExporter();
+    } else {
+      RotatingFileSpanExporter fileExporter = new RotatingFileSpanExporter(config);
+      environment.lifecycle().manage(fileExporter);
+      exporter = fileExporter;
+    }
+    Tracing.install(exporter);
+    environment.jersey().register(new TracingFilter());
+    templateFieldService = Tracing.traced(TemplateFieldService.class, templateFieldService, "templateFieldService");
+    templateElementService = Tracing.traced(TemplateElementService.class, templateElementService,
+        "templateElementService");
+    templateService = Tracing.traced(TemplateService.class, templateService, "templateService");
+    templateInstanceService = Tracing.traced(TemplateInstanceService.class, templateInstanceService,
+        "templateInstanceService");
   }
 }
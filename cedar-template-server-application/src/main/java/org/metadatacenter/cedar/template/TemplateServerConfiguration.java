@@ -1,6 +1,219 @@
 package org.metadatacenter.cedar.template;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.metadatacenter.cedar.template.config.CascadeDeleteConfig;
+import org.metadatacenter.cedar.template.config.ElementUsageConfig;
+import org.metadatacenter.cedar.template.config.GroupCommitConfig;
+import org.metadatacenter.cedar.template.config.HistoryConfig;
+import org.metadatacenter.cedar.template.config.InstancePartitionConfig;
+import org.metadatacenter.cedar.template.config.ReconciliationConfig;
+import org.metadatacenter.cedar.template.config.RequestBodyConfig;
+import org.metadatacenter.cedar.template.config.ResponseCacheConfig;
+import org.metadatacenter.cedar.template.config.SearchConfig;
+import org.metadatacenter.cedar.template.config.StartupConfig;
+import org.metadatacenter.cedar.template.config.StatisticsConfig;
+import org.metadatacenter.cedar.template.config.SummaryConfig;
+import org.metadatacenter.cedar.template.config.TracingConfig;
+import org.metadatacenter.cedar.template.id.IdGenerationMode;
 import org.metadatacenter.cedar.util.dw.CedarMicroserviceConfiguration;
 
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+
 public class TemplateServerConfiguration extends CedarMicroserviceConfiguration {
+
+  @Valid
+  @NotNull
+  private GroupCommitConfig instanceGroupCommit = new GroupCommitConfig();
+
+  @Valid
+  @NotNull
+  private CascadeDeleteConfig cascadeDelete = new CascadeDeleteConfig();
+
+  @NotNull
+  private IdGenerationMode idGenerationMode = IdGenerationMode.RANDOM;
+
+  @Valid
+  @NotNull
+  private RequestBodyConfig requestBody = new RequestBodyConfig();
+
+  @Valid
+  @NotNull
+  private SummaryConfig summaries = new SummaryConfig();
+
+  @Valid
+  @NotNull
+  private SearchConfig search = new SearchConfig();
+
+  @Valid
+  @NotNull
+  private HistoryConfig history = new HistoryConfig();
+
+  @Valid
+  @NotNull
+  private ElementUsageConfig elementUsages = new ElementUsageConfig();
+
+  @Valid
+  @NotNull
+  private TracingConfig tracing = new TracingConfig();
+
+  @Valid
+  @NotNull
+  private InstancePartitionConfig instancePartitions = new InstancePartitionConfig();
+
+  @Valid
+  @NotNull
+  private StartupConfig startup = new StartupConfig();
+
+  @Valid
+  @NotNull
+  private ResponseCacheConfig responseCache = new ResponseCacheConfig();
+
+  @Valid
+  @NotNull
+  private StatisticsConfig statistics = new StatisticsConfig();
+
+  @Valid
+  @NotNull
+  private ReconciliationConfig changeReconciliation = new ReconciliationConfig();
+
+  @JsonProperty
+  public GroupCommitConfig getInstanceGroupCommit() {
+    return instanceGroupCommit;
+  }
+
+  @JsonProperty
+  public void setInstanceGroupCommit(GroupCommitConfig instanceGroupCommit) {
+    this.instanceGroupCommit = instanceGroupCommit;
+  }
+
+  @JsonProperty
+  public CascadeDeleteConfig getCascadeDelete() {
+    return cascadeDelete;
+  }
+
+  @JsonProperty
+  public void setCascadeDelete(CascadeDeleteConfig cascadeDelete) {
+    this.cascadeDelete = cascadeDelete;
+  }
+
+  @JsonProperty
+  public IdGenerationMode getIdGenerationMode() {
+    return idGenerationMode;
+  }
+
+  @JsonProperty
+  public void setIdGenerationMode(IdGenerationMode idGenerationMode) {
+    this.idGenerationMode = idGenerationMode;
+  }
+
+  @JsonProperty
+  public RequestBodyConfig getRequestBody() {
+    return requestBody;
+  }
+
+  @JsonProperty
+  public void setRequestBody(RequestBodyConfig requestBody) {
+    this.requestBody = requestBody;
+  }
+
+  @JsonProperty
+  public SummaryConfig getSummaries() {
+    return summaries;
+  }
+
+  @JsonProperty
+  public void setSummaries(SummaryConfig summaries) {
+    this.summaries = summaries;
+  }
+
+  @JsonProperty
+  public SearchConfig getSearch() {
+    return search;
+  }
+
+  @JsonProperty
+  public void setSearch(SearchConfig search) {
+    this.search = search;
+  }
+
+  @JsonProperty
+  public HistoryConfig getHistory() {
+    return history;
+  }
+
+  @JsonProperty
+  public void setHistory(HistoryConfig history) {
+    this.history = history;
+  }
+
+  @JsonProperty
+  public ElementUsageConfig getElementUsages() {
+    return elementUsages;
+  }
+
+  @JsonProperty
+  public void setElementUsages(ElementUsageConfig elementUsages) {
+    this.elementUsages = elementUsages;
+  }
+
+  @JsonProperty
+  public TracingConfig getTracing() {
+    return tracing;
+  }
+
+  @JsonProperty
+  public void setTracing(TracingConfig tracing) {
+    this.tracing = tracing;
+  }
+
+  @JsonProperty
+  public InstancePartitionConfig getInstancePartitions() {
+    return instancePartitions;
+  }
+
+  @JsonProperty
+  public void setInstancePartitions(InstancePartitionConfig instancePartitions) {
+    this.instancePartitions = instancePartitions;
+  }
+
+  @JsonProperty
+  public StartupConfig getStartup() {
+    return startup;
+  }
+
+  @JsonProperty
+  public void setStartup(StartupConfig startup) {
+    this.startup = startup;
+  }
+
+  @JsonProperty
+  public ResponseCacheConfig getResponseCache() {
+    return responseCache;
+  }
+
+  @JsonProperty
+  public void setResponseCache(ResponseCacheConfig responseCache) {
+    this.responseCache = responseCache;
+  }
+
+  @JsonProperty
+  public StatisticsConfig getStatistics() {
+    return statistics;
+  }
+
+  @JsonProperty
+  public void setStatistics(StatisticsConfig statistics) {
+    this.statistics = statistics;
+  }
+
+  @JsonProperty
+  public ReconciliationConfig getChangeReconciliation() {
+    return changeReconciliation;
+  }
+
+  @JsonProperty
+  public void setChangeReconciliation(ReconciliationConfig changeReconciliation) {
+    this.changeReconciliation = changeReconciliation;
+  }
 }
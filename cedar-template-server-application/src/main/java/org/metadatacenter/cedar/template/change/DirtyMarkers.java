@@ -0,0 +1,157 @@
+package org.metadatacenter.cedar.template.change;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.Updates;
+import org.bson.Document;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.mongo.MongoDocuments;
+import org.metadatacenter.model.CedarNodeType;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.lte;
+
+/**
+ * The documents whose derived data a change listener failed to update, in '&lt;collection&gt;-dirty'. There is one
+ * marker per listener and document; marking a document again while it is pending bumps the generation of the marker,
+ * so a reconciliation that read the document before the new mark does not clear it.
+ */
+public class DirtyMarkers {
+
+  public static final String DIRTY_COLLECTION_SUFFIX = "-dirty";
+
+  private static final String F_ID = MongoDocuments.MONGO_ID_FIELD;
+  private static final String F_LISTENER = "listener";
+  private static final String F_TYPE = "type";
+  private static final String F_DOCUMENT_ID = "documentId";
+  private static final String F_GENERATION = "generation";
+  private static final String F_ATTEMPTS = "attempts";
+  private static final String F_NEXT_ATTEMPT = "nextAttempt";
+  private static final int MAX_BACKOFF_FACTOR = 10;
+  private static final UpdateOptions UPSERT = new UpdateOptions().upsert(true);
+
+  private final MongoCollections mongoCollections;
+
+  public DirtyMarkers(MongoCollections mongoCollections) {
+    this.mongoCollections = mongoCollections;
+  }
+
+  public void createIndexes() {
+    getDirtyCollection().createIndex(Indexes.ascending(F_NEXT_ATTEMPT), new IndexOptions().background(true));
+  }
+
+  /**
+   * Marks the document dirty for the listener, to be reconciled by the next sweep.
+   */
+  public void mark(String listener, CedarNodeType nodeType, String id) {
+    getDirtyCollection().updateOne(eq(F_ID, markerId(listener, nodeType, id)), Updates.combine(
+        Updates.setOnInsert(F_LISTENER, listener),
+        Updates.setOnInsert(F_TYPE, nodeType.name()),
+        Updates.setOnInsert(F_DOCUMENT_ID, id),
+        Updates.set(F_ATTEMPTS, 0),
+        Updates.set(F_NEXT_ATTEMPT, new Date()),
+        Updates.inc(F_GENERATION, 1L)), UPSERT);
+  }
+
+  /**
+   * The markers that are due, the longest waiting first.
+   */
+  public List<DirtyMarker> findDue(int limit) {
+    List<DirtyMarker> markers = new ArrayList<>();
+    for (Document marker : getDirtyCollection().find(lte(F_NEXT_ATTEMPT, new Date()))
+        .sort(Sorts.ascending(F_NEXT_ATTEMPT))
+        .limit(limit)) {
+      markers.add(new DirtyMarker(marker.getString(F_ID), marker.getString(F_LISTENER),
+          CedarNodeType.valueOf(marker.getString(F_TYPE)), marker.getString(F_DOCUMENT_ID),
+          getLong(marker, F_GENERATION), getLong(marker, F_ATTEMPTS)));
+    }
+    return markers;
+  }
+
+  /**
+   * Removes the marker unless the document was marked again since it was read.
+   */
+  public void clear(DirtyMarker marker) {
+    getDirtyCollection().deleteOne(and(eq(F_ID, marker.getMarkerId()), eq(F_GENERATION, marker.getGeneration())));
+  }
+
+  /**
+   * Puts the marker back for a later sweep, waiting longer after every failed attempt.
+   */
+  public void failed(DirtyMarker marker, long sweepIntervalMillis) {
+    long attempts = marker.getAttempts() + 1;
+    Date nextAttempt = new Date(System.currentTimeMillis()
+        + sweepIntervalMillis * Math.min(attempts, MAX_BACKOFF_FACTOR));
+    getDirtyCollection().updateOne(and(eq(F_ID, marker.getMarkerId()), eq(F_GENERATION, marker.getGeneration())),
+        Updates.combine(Updates.set(F_ATTEMPTS, attempts), Updates.set(F_NEXT_ATTEMPT, nextAttempt)));
+  }
+
+  private static String markerId(String listener, CedarNodeType nodeType, String id) {
+    return listener + "|" + nodeType.name() + "|" + id;
+  }
+
+  private static long getLong(Document document, String field) {
+    Object value = document.get(field);
+    return value instanceof Number ? ((Number) value).longValue() : 0;
+  }
+
+  private MongoCollection<Document> getDirtyCollection() {
+    return mongoCollections.getCollection(mongoCollections.getCollectionName(CedarNodeType.TEMPLATE)
+        + DIRTY_COLLECTION_SUFFIX);
+  }
+
+  /**
+   * A pending marker as it was read.
+   */
+  public static final class DirtyMarker {
+
+    private final String markerId;
+    private final String listener;
+    private final CedarNodeType nodeType;
+    private final String documentId;
+    private final long generation;
+    private final long attempts;
+
+    private DirtyMarker(String markerId, String listener, CedarNodeType nodeType, String documentId, long generation,
+                        long attempts) {
+      this.markerId = markerId;
+      this.listener = listener;
+      this.nodeType = nodeType;
+      this.documentId = documentId;
+      this.generation = generation;
+      this.attempts = attempts;
+    }
+
+    public String getMarkerId() {
+      return markerId;
+    }
+
+    public String getListener() {
+      return listener;
+    }
+
+    public CedarNodeType getNodeType() {
+      return nodeType;
+    }
+
+    public String getDocumentId() {
+      return documentId;
+    }
+
+    public long getGeneration() {
+      return generation;
+    }
+
+    public long getAttempts() {
+      return attempts;
+    }
+  }
+}
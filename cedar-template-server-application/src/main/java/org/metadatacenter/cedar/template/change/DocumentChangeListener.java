@@ -0,0 +1,40 @@
+package org.metadatacenter.cedar.template.change;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.metadatacenter.model.CedarNodeType;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Notified after a template, element or instance change has been written to the database. Listeners keep derived
+ * data (summaries, indexes, caches) in sync. They are called on the request thread and must not hold on to the
+ * documents after returning, since the resources modify them while building the response.
+ */
+public interface DocumentChangeListener {
+
+  default void created(CedarNodeType nodeType, JsonNode document) {
+  }
+
+  default void updated(CedarNodeType nodeType, JsonNode before, JsonNode after) {
+  }
+
+  default void deleted(CedarNodeType nodeType, List<String> ids) {
+  }
+
+  /**
+   * Brings the derived data of one document in line with the document as it is stored now, after a notification
+   * about it failed or arrived out of order. Called again until it returns, so it must be safe to repeat. The default
+   * suits listeners that derive everything from the document after the change.
+   *
+   * @param current the stored document with its version, or null if it no longer exists
+   */
+  default void reconcile(CedarNodeType nodeType, String id, JsonNode current) {
+    if (current == null) {
+      deleted(nodeType, Collections.singletonList(id));
+    } else {
+      updated(nodeType, null, current);
+    }
+  }
+
+}
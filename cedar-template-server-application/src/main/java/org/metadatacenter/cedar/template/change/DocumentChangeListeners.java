@@ -0,0 +1,243 @@
+package org.metadatacenter.cedar.template.change;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.dropwizard.lifecycle.Managed;
+import org.metadatacenter.cedar.template.config.ReconciliationConfig;
+import org.metadatacenter.cedar.template.mongo.FieldProjection;
+import org.metadatacenter.cedar.template.mongo.LinkedDataFields;
+import org.metadatacenter.cedar.template.mongo.ProjectingDocumentReader;
+import org.metadatacenter.cedar.template.mongo.VersionedDocumentWriter;
+import org.metadatacenter.model.CedarNodeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatches changes to all registered listeners. The change itself is already stored when the listeners run, so a
+ * failing listener does not keep the other listeners from running. Instead the document is marked dirty for that
+ * listener in {@link DirtyMarkers}, and a background sweep reads the document as it is stored then and lets the
+ * listener {@link DocumentChangeListener#reconcile reconcile} it, until that succeeds. Only if the marker can not be
+ * written either does the request fail, since nothing would repair the listener's data otherwise.
+ * <p>
+ * Updates of one document that run concurrently can reach the listeners in the other order than they were written.
+ * The version of the last update dispatched for each recently changed document is kept; an update that is older, or
+ * that was overtaken while its listeners ran, marks the document dirty for all listeners, so the sweep derives their
+ * data from the stored version.
+ */
+public class DocumentChangeListeners implements DocumentChangeListener, Managed {
+
+  private static final Logger log = LoggerFactory.getLogger(DocumentChangeListeners.class);
+
+  private static final int TRACKED_VERSIONS = 10000;
+
+  private final List<DocumentChangeListener> listeners = new CopyOnWriteArrayList<>();
+  private final DirtyMarkers dirtyMarkers;
+  private final ProjectingDocumentReader documentReader;
+  private final ReconciliationConfig config;
+  private final Map<String, Long> dispatchedVersions = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+      return size() > TRACKED_VERSIONS;
+    }
+  };
+  private ScheduledExecutorService sweeper;
+
+  public DocumentChangeListeners(DirtyMarkers dirtyMarkers, ProjectingDocumentReader documentReader,
+                                 ReconciliationConfig config) {
+    this.dirtyMarkers = dirtyMarkers;
+    this.documentReader = documentReader;
+    this.config = config;
+  }
+
+  public void add(DocumentChangeListener listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public void start() {
+    dirtyMarkers.createIndexes();
+    sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "change-reconciliation");
+      thread.setDaemon(true);
+      return thread;
+    });
+    sweeper.scheduleWithFixedDelay(this::sweep, config.getSweepIntervalMillis(), config.getSweepIntervalMillis(),
+        TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void stop() throws InterruptedException {
+    if (sweeper != null) {
+      sweeper.shutdown();
+      sweeper.awaitTermination(config.getSweepIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Override
+  public void created(CedarNodeType nodeType, JsonNode document) {
+    String id = document.get(LinkedDataFields.ID).asText();
+    track(nodeType, id, VersionedDocumentWriter.getVersion(document));
+    List<RuntimeException> unrecorded = new ArrayList<>();
+    for (DocumentChangeListener listener : listeners) {
+      try {
+        listener.created(nodeType, document);
+      } catch (RuntimeException e) {
+        log.error("Error in " + name(listener) + " while handling a created " + nodeType, e);
+        markDirty(listener, nodeType, Collections.singletonList(id), e, unrecorded);
+      }
+    }
+    failIfUnrecorded(unrecorded);
+  }
+
+  @Override
+  public void updated(CedarNodeType nodeType, JsonNode before, JsonNode after) {
+    String id = after.get(LinkedDataFields.ID).asText();
+    long version = VersionedDocumentWriter.getVersion(after);
+    List<RuntimeException> unrecorded = new ArrayList<>();
+    if (!track(nodeType, id, version)) {
+      log.warn("Version " + version + " of " + nodeType + " " + id + " arrived after a newer one");
+      markDirtyForAll(nodeType, id, unrecorded);
+      failIfUnrecorded(unrecorded);
+      return;
+    }
+    for (DocumentChangeListener listener : listeners) {
+      try {
+        listener.updated(nodeType, before, after);
+      } catch (RuntimeException e) {
+        log.error("Error in " + name(listener) + " while handling an updated " + nodeType, e);
+        markDirty(listener, nodeType, Collections.singletonList(id), e, unrecorded);
+      }
+    }
+    if (isOvertaken(nodeType, id, version)) {
+      // a newer version was dispatched while this one ran; either may have been applied last
+      markDirtyForAll(nodeType, id, unrecorded);
+    }
+    failIfUnrecorded(unrecorded);
+  }
+
+  @Override
+  public void deleted(CedarNodeType nodeType, List<String> ids) {
+    forget(nodeType, ids);
+    List<RuntimeException> unrecorded = new ArrayList<>();
+    for (DocumentChangeListener listener : listeners) {
+      try {
+        listener.deleted(nodeType, ids);
+      } catch (RuntimeException e) {
+        log.error("Error in " + name(listener) + " while handling deleted " + nodeType, e);
+        markDirty(listener, nodeType, ids, e, unrecorded);
+      }
+    }
+    failIfUnrecorded(unrecorded);
+  }
+
+  /**
+   * Reconciles the due dirty documents. A listener that is no longer registered drops its markers; its data is
+   * rebuilt by its command when it is enabled again.
+   */
+  void sweep() {
+    try {
+      for (DirtyMarkers.DirtyMarker marker : dirtyMarkers.findDue(config.getBatchSize())) {
+        DocumentChangeListener listener = findListener(marker.getListener());
+        if (listener == null) {
+          dirtyMarkers.clear(marker);
+          continue;
+        }
+        try {
+          JsonNode current = documentReader.findById(marker.getNodeType(), marker.getDocumentId(),
+              FieldProjection.all());
+          listener.reconcile(marker.getNodeType(), marker.getDocumentId(), current);
+          dirtyMarkers.clear(marker);
+        } catch (IOException | RuntimeException e) {
+          log.warn("Error in " + marker.getListener() + " while reconciling " + marker.getNodeType() + " "
+              + marker.getDocumentId() + ", attempt " + (marker.getAttempts() + 1), e);
+          dirtyMarkers.failed(marker, config.getSweepIntervalMillis());
+        }
+      }
+    } catch (RuntimeException e) {
+      log.error("Error while sweeping the dirty documents", e);
+    }
+  }
+
+  private DocumentChangeListener findListener(String name) {
+    for (DocumentChangeListener listener : listeners) {
+      if (name(listener).equals(name)) {
+        return listener;
+      }
+    }
+    return null;
+  }
+
+  private void markDirty(DocumentChangeListener listener, CedarNodeType nodeType, List<String> ids,
+                         RuntimeException failure, List<RuntimeException> unrecorded) {
+    try {
+      for (String id : ids) {
+        dirtyMarkers.mark(name(listener), nodeType, id);
+      }
+    } catch (RuntimeException e) {
+      log.error("Could not mark " + nodeType + " " + ids + " dirty for " + name(listener), e);
+      failure.addSuppressed(e);
+      unrecorded.add(failure);
+    }
+  }
+
+  private void markDirtyForAll(CedarNodeType nodeType, String id, List<RuntimeException> unrecorded) {
+    for (DocumentChangeListener listener : listeners) {
+      markDirty(listener, nodeType, Collections.singletonList(id),
+          new IllegalStateException("Out of order change of " + nodeType + " " + id), unrecorded);
+    }
+  }
+
+  private static void failIfUnrecorded(List<RuntimeException> unrecorded) {
+    if (!unrecorded.isEmpty()) {
+      RuntimeException failure = unrecorded.get(0);
+      for (int i = 1; i < unrecorded.size(); i++) {
+        failure.addSuppressed(unrecorded.get(i));
+      }
+      throw failure;
+    }
+  }
+
+  /**
+   * Records the version as the last one dispatched for the document.
+   *
+   * @return false if the same or a newer version was dispatched before
+   */
+  private synchronized boolean track(CedarNodeType nodeType, String id, long version) {
+    String key = key(nodeType, id);
+    Long dispatched = dispatchedVersions.get(key);
+    if (dispatched != null && dispatched >= version) {
+      return false;
+    }
+    dispatchedVersions.put(key, version);
+    return true;
+  }
+
+  private synchronized boolean isOvertaken(CedarNodeType nodeType, String id, long version) {
+    Long dispatched = dispatchedVersions.get(key(nodeType, id));
+    return dispatched != null && dispatched > version;
+  }
+
+  private synchronized void forget(CedarNodeType nodeType, List<String> ids) {
+    for (String id : ids) {
+      dispatchedVersions.remove(key(nodeType, id));
+    }
+  }
+
+  private static String key(CedarNodeType nodeType, String id) {
+    return nodeType.name() + "|" + id;
+  }
+
+  private static String name(DocumentChangeListener listener) {
+    return listener.getClass().getSimpleName();
+  }
+}
@@ -0,0 +1,44 @@
+package org.metadatacenter.cedar.template.command;
+
+import com.mongodb.MongoClient;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.metadatacenter.cedar.template.TemplateServerConfiguration;
+import org.metadatacenter.cedar.template.mongo.MongoClientFactory;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.mongo.TemplateInstanceFinder;
+import org.metadatacenter.config.CedarConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Gives the normalized creation date to the instances written before it existed, so the instance listings can filter
+ * and order them by date.
+ */
+public class BackfillCreatedOnCommand extends ConfiguredCommand<TemplateServerConfiguration> {
+
+  private static final Logger log = LoggerFactory.getLogger(BackfillCreatedOnCommand.class);
+
+  private final CedarConfig cedarConfig;
+
+  public BackfillCreatedOnCommand(CedarConfig cedarConfig) {
+    super("backfill-created-on", "Normalizes the creation date of the instances written before it was stored");
+    this.cedarConfig = cedarConfig;
+  }
+
+  @Override
+  protected void run(Bootstrap<TemplateServerConfiguration> bootstrap, Namespace namespace,
+                     TemplateServerConfiguration configuration) throws Exception {
+    MongoClient mongoClient = MongoClientFactory.build(cedarConfig);
+    try {
+      MongoCollections mongoCollections = new MongoCollections(cedarConfig, mongoClient,
+          configuration.getInstancePartitions());
+      long start = System.currentTimeMillis();
+      long count = new TemplateInstanceFinder(mongoCollections).backfillCreatedOn();
+      log.info("Stamped " + count + " instances in " + (System.currentTimeMillis() - start) + " ms");
+    } finally {
+      mongoClient.close();
+    }
+  }
+}
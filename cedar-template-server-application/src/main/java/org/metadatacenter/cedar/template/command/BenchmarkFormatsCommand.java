@@ -0,0 +1,191 @@
+package org.metadatacenter.cedar.template.command;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.bson.Document;
+import org.metadatacenter.cedar.template.TemplateServerConfiguration;
+import org.metadatacenter.cedar.template.format.BinaryFormats;
+import org.metadatacenter.cedar.template.mongo.MongoClientFactory;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.mongo.MongoDocuments;
+import org.metadatacenter.config.CedarConfig;
+import org.metadatacenter.model.CedarNodeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.mongodb.client.model.Filters.in;
+
+/**
+ * Compares the payload size and the serialize and parse cost of JSON, Smile and CBOR on documents sampled from the
+ * template, element and instance collections. The samples are the largest documents by BSON size, found with a
+ * '$bsonSize' aggregation (MongoDB 4.4 or later), since those are the ones whose encoding cost matters. The mappers
+ * are the ones the server uses for each media type.
+ */
+public class BenchmarkFormatsCommand extends ConfiguredCommand<TemplateServerConfiguration> {
+
+  private static final Logger log = LoggerFactory.getLogger(BenchmarkFormatsCommand.class);
+
+  private static final CedarNodeType[] NODE_TYPES = {CedarNodeType.TEMPLATE, CedarNodeType.ELEMENT,
+      CedarNodeType.INSTANCE};
+
+  private static final String F_SIZE = "_size";
+
+  private final CedarConfig cedarConfig;
+
+  public BenchmarkFormatsCommand(CedarConfig cedarConfig) {
+    super("benchmark-formats", "Compares payload size and encoding cost of JSON, Smile and CBOR");
+    this.cedarConfig = cedarConfig;
+  }
+
+  @Override
+  public void configure(Subparser subparser) {
+    super.configure(subparser);
+    subparser.addArgument("--samples").type(Integer.class).setDefault(100)
+        .help("Number of documents sampled per node type, the largest ones");
+    subparser.addArgument("--iterations").type(Integer.class).setDefault(200)
+        .help("Number of times the samples are serialized and parsed per format; the first half warms up the JIT");
+  }
+
+  @Override
+  protected void run(Bootstrap<TemplateServerConfiguration> bootstrap, Namespace namespace,
+                     TemplateServerConfiguration configuration) throws Exception {
+    MongoClient mongoClient = MongoClientFactory.build(cedarConfig);
+    try {
+      MongoCollections mongoCollections = new MongoCollections(cedarConfig, mongoClient,
+          configuration.getInstancePartitions());
+      Map<String, ObjectMapper> mappers = new LinkedHashMap<>();
+      mappers.put("JSON", bootstrap.getObjectMapper());
+      mappers.put("Smile", BinaryFormats.smileMapper());
+      mappers.put("CBOR", BinaryFormats.cborMapper());
+      int iterations = namespace.getInt("iterations");
+      for (CedarNodeType nodeType : NODE_TYPES) {
+        List<JsonNode> samples = sample(mongoCollections, nodeType, namespace.getInt("samples"));
+        if (samples.isEmpty()) {
+          log.info(nodeType.name() + ": no documents to sample");
+          continue;
+        }
+        long jsonBytes = -1;
+        for (Map.Entry<String, ObjectMapper> entry : mappers.entrySet()) {
+          Result result = measure(entry.getValue(), samples, iterations);
+          if (jsonBytes < 0) {
+            jsonBytes = result.bytes;
+          }
+          log.info(nodeType.name() + ", " + entry.getKey() + ": " + samples.size() + " documents, "
+              + result.bytes + " bytes (" + (result.bytes * 100 / jsonBytes) + "% of JSON), serialize "
+              + result.serializeMicros + " us, parse " + result.parseMicros + " us per pass");
+        }
+      }
+    } finally {
+      mongoClient.close();
+    }
+  }
+
+  /**
+   * Ranks the documents of every collection of the type by BSON size on the server, then loads the largest ones.
+   */
+  private static List<JsonNode> sample(MongoCollections mongoCollections, CedarNodeType nodeType, int limit) {
+    List<Candidate> candidates = new ArrayList<>();
+    for (MongoCollection<Document> collection : mongoCollections.getCollections(nodeType)) {
+      for (Document ranked : collection.aggregate(Arrays.asList(
+          Aggregates.project(Projections.computed(F_SIZE, new Document("$bsonSize", "$$ROOT"))),
+          Aggregates.sort(Sorts.descending(F_SIZE)),
+          Aggregates.limit(limit))).allowDiskUse(true)) {
+        candidates.add(new Candidate(collection, ranked.get(MongoDocuments.MONGO_ID_FIELD),
+            ((Number) ranked.get(F_SIZE)).longValue()));
+      }
+    }
+    candidates.sort(Comparator.comparingLong((Candidate candidate) -> candidate.size).reversed());
+    List<Candidate> largest = candidates.subList(0, Math.min(limit, candidates.size()));
+    Map<MongoCollection<Document>, List<Object>> idsByCollection = new LinkedHashMap<>();
+    for (Candidate candidate : largest) {
+      idsByCollection.computeIfAbsent(candidate.collection, c -> new ArrayList<>()).add(candidate.id);
+    }
+    Map<Object, JsonNode> loaded = new HashMap<>();
+    for (Map.Entry<MongoCollection<Document>, List<Object>> entry : idsByCollection.entrySet()) {
+      for (Document document : entry.getKey().find(in(MongoDocuments.MONGO_ID_FIELD, entry.getValue()))) {
+        loaded.put(document.get(MongoDocuments.MONGO_ID_FIELD), MongoDocuments.toJsonNode(document));
+      }
+    }
+    List<JsonNode> samples = new ArrayList<>(largest.size());
+    for (Candidate candidate : largest) {
+      JsonNode document = loaded.get(candidate.id);
+      // a document deleted since it was ranked is skipped
+      if (document != null) {
+        samples.add(document);
+      }
+    }
+    return samples;
+  }
+
+  /**
+   * Serializes and parses all samples per pass; the reported times are the averages over the second half of the
+   * passes.
+   */
+  private static Result measure(ObjectMapper mapper, List<JsonNode> samples, int iterations) throws IOException {
+    Result result = new Result();
+    List<byte[]> encoded = new ArrayList<>(samples.size());
+    for (JsonNode sample : samples) {
+      byte[] bytes = mapper.writeValueAsBytes(sample);
+      encoded.add(bytes);
+      result.bytes += bytes.length;
+    }
+    int warmUp = iterations / 2;
+    long serializeNanos = 0;
+    long parseNanos = 0;
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      for (JsonNode sample : samples) {
+        mapper.writeValueAsBytes(sample);
+      }
+      long serialized = System.nanoTime();
+      for (byte[] bytes : encoded) {
+        mapper.readTree(bytes);
+      }
+      long parsed = System.nanoTime();
+      if (i >= warmUp) {
+        serializeNanos += serialized - start;
+        parseNanos += parsed - serialized;
+      }
+    }
+    int measured = Math.max(1, iterations - warmUp);
+    result.serializeMicros = serializeNanos / measured / 1000;
+    result.parseMicros = parseNanos / measured / 1000;
+    return result;
+  }
+
+  private static final class Candidate {
+    private final MongoCollection<Document> collection;
+    private final Object id;
+    private final long size;
+
+    private Candidate(MongoCollection<Document> collection, Object id, long size) {
+      this.collection = collection;
+      this.id = id;
+      this.size = size;
+    }
+  }
+
+  private static final class Result {
+    private long bytes;
+    private long serializeMicros;
+    private long parseMicros;
+  }
+}
@@ -0,0 +1,142 @@
+package org.metadatacenter.cedar.template.command;
+
+import com.mongodb.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.bson.Document;
+import org.metadatacenter.cedar.template.TemplateServerConfiguration;
+import org.metadatacenter.cedar.template.id.IdGenerationMode;
+import org.metadatacenter.cedar.template.id.LinkedDataIdGenerator;
+import org.metadatacenter.cedar.template.id.TimeOrderedUuidGenerator;
+import org.metadatacenter.cedar.template.mongo.LinkedDataFields;
+import org.metadatacenter.cedar.template.mongo.MongoClientFactory;
+import org.metadatacenter.config.CedarConfig;
+import org.metadatacenter.model.CedarNodeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures the insert throughput of instance-shaped documents with random and with time-ordered ids, using the id
+ * prefix of the configured server. Each mode writes into a fresh collection named like the instance collection, with
+ * a unique '@id' index like the real one, in a scratch database that must be named explicitly and can not be the
+ * CEDAR database; the collection is dropped afterwards. With several threads, each inserts its share of the documents
+ * concurrently, as parallel requests do.
+ */
+public class BenchmarkIdsCommand extends ConfiguredCommand<TemplateServerConfiguration> {
+
+  private static final Logger log = LoggerFactory.getLogger(BenchmarkIdsCommand.class);
+
+  private static final int FIELDS_PER_DOCUMENT = 20;
+
+  private final CedarConfig cedarConfig;
+
+  public BenchmarkIdsCommand(CedarConfig cedarConfig) {
+    super("benchmark-ids", "Compares the insert throughput of random and time-ordered instance ids");
+    this.cedarConfig = cedarConfig;
+  }
+
+  @Override
+  public void configure(Subparser subparser) {
+    super.configure(subparser);
+    subparser.addArgument("--database").required(true)
+        .help("Scratch database the benchmark collection is created in; must not be the CEDAR database");
+    subparser.addArgument("--count").type(Integer.class).setDefault(200000)
+        .help("Number of documents inserted per id mode");
+    subparser.addArgument("--batch-size").dest("batchSize").type(Integer.class).setDefault(1000)
+        .help("Number of documents per insertMany call");
+    subparser.addArgument("--rounds").type(Integer.class).setDefault(3)
+        .help("Number of times each mode is run; the first round also warms up the JIT and the server");
+    subparser.addArgument("--threads").type(Integer.class).setDefault(1)
+        .help("Number of threads inserting concurrently; the documents of a round are split between them");
+  }
+
+  @Override
+  protected void run(Bootstrap<TemplateServerConfiguration> bootstrap, Namespace namespace,
+                     TemplateServerConfiguration configuration) throws Exception {
+    String database = namespace.getString("database");
+    if (database.equals(cedarConfig.getMongoConfig().getDatabaseName())) {
+      throw new IllegalArgumentException("The benchmark needs a scratch database, not the CEDAR database " + database);
+    }
+    LinkedDataIdGenerator linkedDataIdGenerator = new LinkedDataIdGenerator(cedarConfig.buildLinkedDataUtil(),
+        IdGenerationMode.RANDOM);
+    String idPrefix = linkedDataIdGenerator.getPrefix(CedarNodeType.INSTANCE);
+    String templateId = linkedDataIdGenerator.getPrefix(CedarNodeType.TEMPLATE) + "id-benchmark";
+    int count = namespace.getInt("count");
+    int batchSize = namespace.getInt("batchSize");
+    int threads = namespace.getInt("threads");
+    MongoClient mongoClient = MongoClientFactory.build(cedarConfig);
+    ExecutorService inserters = Executors.newFixedThreadPool(threads);
+    try {
+      MongoCollection<Document> scratch = mongoClient.getDatabase(database)
+          .getCollection(cedarConfig.getMongoCollectionName(CedarNodeType.INSTANCE));
+      try {
+        for (int round = 1; round <= namespace.getInt("rounds"); round++) {
+          // alternate the order, so neither mode always runs on a colder server
+          IdGenerationMode[] modes = round % 2 == 1
+              ? new IdGenerationMode[]{IdGenerationMode.RANDOM, IdGenerationMode.TIME_ORDERED}
+              : new IdGenerationMode[]{IdGenerationMode.TIME_ORDERED, IdGenerationMode.RANDOM};
+          for (IdGenerationMode mode : modes) {
+            scratch.drop();
+            scratch.createIndex(Indexes.ascending(LinkedDataFields.ID), new IndexOptions().unique(true));
+            long start = System.currentTimeMillis();
+            List<Future<?>> shares = new ArrayList<>(threads);
+            for (int thread = 0; thread < threads; thread++) {
+              int first = (int) ((long) count * thread / threads);
+              int end = (int) ((long) count * (thread + 1) / threads);
+              shares.add(inserters.submit(() -> insert(scratch, mode, idPrefix, templateId, first, end, batchSize)));
+            }
+            for (Future<?> share : shares) {
+              share.get();
+            }
+            long millis = System.currentTimeMillis() - start;
+            log.info("Round " + round + ", " + mode + ", " + threads + " threads: " + count + " inserts in " + millis
+                + " ms, " + (count * 1000L / Math.max(1, millis)) + " inserts/s");
+          }
+        }
+      } finally {
+        scratch.drop();
+      }
+    } finally {
+      inserters.shutdownNow();
+      mongoClient.close();
+    }
+  }
+
+  private static void insert(MongoCollection<Document> scratch, IdGenerationMode mode, String idPrefix,
+                             String templateId, int first, int end, int batchSize) {
+    List<Document> batch = new ArrayList<>(batchSize);
+    for (int i = first; i < end; i++) {
+      UUID uuid = mode == IdGenerationMode.TIME_ORDERED ? TimeOrderedUuidGenerator.next() : UUID.randomUUID();
+      batch.add(buildDocument(idPrefix + uuid, templateId, i));
+      if (batch.size() == batchSize) {
+        scratch.insertMany(batch);
+        batch = new ArrayList<>(batchSize);
+      }
+    }
+    if (!batch.isEmpty()) {
+      scratch.insertMany(batch);
+    }
+  }
+
+  private static Document buildDocument(String id, String templateId, int i) {
+    Document document = new Document(LinkedDataFields.ID, id)
+        .append(LinkedDataFields.IS_BASED_ON, templateId)
+        .append("schema:name", "Benchmark instance " + i);
+    for (int field = 0; field < FIELDS_PER_DOCUMENT; field++) {
+      document.append("field" + field, new Document("@value", "value " + field));
+    }
+    return document;
+  }
+}
@@ -0,0 +1,66 @@
+package org.metadatacenter.cedar.template.command;
+
+import com.mongodb.MongoClient;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.metadatacenter.cedar.template.TemplateServerConfiguration;
+import org.metadatacenter.cedar.template.id.IdGenerationMode;
+import org.metadatacenter.cedar.template.id.LinkedDataIdGenerator;
+import org.metadatacenter.cedar.template.mongo.MongoClientFactory;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.snapshot.SnapshotExporter;
+import org.metadatacenter.cedar.template.snapshot.SnapshotManifest;
+import org.metadatacenter.cedar.template.snapshot.SnapshotTransfer;
+import org.metadatacenter.config.CedarConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Paths;
+
+/**
+ * Exports the field, element, template and instance collections into a snapshot directory that can be loaded with
+ * the 'restore-snapshot' command.
+ */
+public class ExportSnapshotCommand extends ConfiguredCommand<TemplateServerConfiguration> {
+
+  private static final Logger log = LoggerFactory.getLogger(ExportSnapshotCommand.class);
+
+  private final CedarConfig cedarConfig;
+
+  public ExportSnapshotCommand(CedarConfig cedarConfig) {
+    super("export-snapshot", "Exports all template collections into compressed, chunked NDJSON files");
+    this.cedarConfig = cedarConfig;
+  }
+
+  @Override
+  public void configure(Subparser subparser) {
+    super.configure(subparser);
+    subparser.addArgument("directory").help("Directory the snapshot is written to");
+    subparser.addArgument("--threads").type(Integer.class).setDefault(Runtime.getRuntime().availableProcessors())
+        .help("Number of threads compressing and writing chunks");
+    subparser.addArgument("--chunk-size").dest("chunkSize").type(Integer.class).setDefault(10000)
+        .help("Number of documents per chunk file");
+  }
+
+  @Override
+  protected void run(Bootstrap<TemplateServerConfiguration> bootstrap, Namespace namespace,
+                     TemplateServerConfiguration configuration) throws Exception {
+    MongoClient mongoClient = MongoClientFactory.build(cedarConfig);
+    try {
+      LinkedDataIdGenerator linkedDataIdGenerator = new LinkedDataIdGenerator(cedarConfig.buildLinkedDataUtil(),
+          IdGenerationMode.RANDOM);
+      MongoCollections mongoCollections = new MongoCollections(cedarConfig, mongoClient,
+          configuration.getInstancePartitions());
+      SnapshotExporter exporter = new SnapshotExporter(mongoCollections,
+          SnapshotManifest.idPrefixesOf(linkedDataIdGenerator), namespace.getInt("threads"),
+          namespace.getInt("chunkSize"));
+      for (SnapshotTransfer transfer : exporter.export(Paths.get(namespace.getString("directory")))) {
+        log.info("Exported " + transfer);
+      }
+    } finally {
+      mongoClient.close();
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package org.metadatacenter.cedar.template.command;
+
+import com.mongodb.MongoClient;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.metadatacenter.cedar.template.TemplateServerConfiguration;
+import org.metadatacenter.cedar.template.ingest.ImportProgress;
+import org.metadatacenter.cedar.template.ingest.InstanceImporter;
+import org.metadatacenter.cedar.template.mongo.MongoClientFactory;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.summary.SummaryStore;
+import org.metadatacenter.config.CedarConfig;
+import org.metadatacenter.model.CedarNodeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Paths;
+import java.util.EnumSet;
+
+/**
+ * Imports template instances from an NDJSON file, with the same checks as the import mode of the REST API. The change
+ * listeners are not notified, so after the import run, for the stores that are enabled, 'rebuild-summaries' for the
+ * instance summaries, which servers started afterwards do not serve until it completes, and 'rebuild-statistics' for
+ * the instance counts. The search index ('reindex-search'), the element usages ('rebuild-element-usages') and the
+ * template history only cover templates and elements and need no rebuild.
+ */
+public class ImportInstancesCommand extends ConfiguredCommand<TemplateServerConfiguration> {
+
+  private static final Logger log = LoggerFactory.getLogger(ImportInstancesCommand.class);
+
+  private final CedarConfig cedarConfig;
+
+  public ImportInstancesCommand(CedarConfig cedarConfig) {
+    super("import-instances", "Imports template instances from an NDJSON file, one instance per line");
+    this.cedarConfig = cedarConfig;
+  }
+
+  @Override
+  public void configure(Subparser subparser) {
+    super.configure(subparser);
+    subparser.addArgument("file").help("NDJSON file to import, gzip compressed if the name ends with .gz");
+    subparser.addArgument("--imported-by").dest("importedBy")
+        .help("User id stamped as creator and modifier of instances without provenance");
+    subparser.addArgument("--threads").type(Integer.class).setDefault(Runtime.getRuntime().availableProcessors())
+        .help("Number of threads parsing and validating instances");
+    subparser.addArgument("--writers").type(Integer.class).setDefault(4)
+        .help("Number of threads writing bulk batches");
+    subparser.addArgument("--chunk-size").dest("chunkSize").type(Integer.class).setDefault(1000)
+        .help("Number of lines prepared and written together");
+    subparser.addArgument("--rejects")
+        .help("File the rejected lines are reported to; by default the first rejects are logged");
+  }
+
+  @Override
+  protected void run(Bootstrap<TemplateServerConfiguration> bootstrap, Namespace namespace,
+                     TemplateServerConfiguration configuration) throws Exception {
+    MongoClient mongoClient = MongoClientFactory.build(cedarConfig);
+    try {
+      MongoCollections mongoCollections = new MongoCollections(cedarConfig, mongoClient,
+          configuration.getInstancePartitions());
+      InstanceImporter importer = new InstanceImporter(mongoCollections, namespace.getString("importedBy"),
+          namespace.getInt("threads"), namespace.getInt("writers"), namespace.getInt("chunkSize"));
+      String rejects = namespace.getString("rejects");
+      ImportProgress progress = importer.importFile(Paths.get(namespace.getString("file")),
+          rejects == null ? null : Paths.get(rejects));
+      log.info("Imported instances: " + progress);
+      new SummaryStore(mongoCollections, cedarConfig, configuration.getSummaries().isEnabled())
+          .forgetRebuilds(EnumSet.of(CedarNodeType.INSTANCE));
+    } finally {
+      mongoClient.close();
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package org.metadatacenter.cedar.template.command;
+
+import com.mongodb.MongoClient;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.metadatacenter.cedar.template.TemplateServerConfiguration;
+import org.metadatacenter.cedar.template.mongo.InstancePartitions;
+import org.metadatacenter.cedar.template.mongo.MongoClientFactory;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.config.CedarConfig;
+import org.metadatacenter.model.CedarNodeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Moves the instances stored in the instance collection into the partitions configured in 'instancePartitions'.
+ * Run it with the server stopped after enabling partitioning.
+ */
+public class PartitionInstancesCommand extends ConfiguredCommand<TemplateServerConfiguration> {
+
+  private static final Logger log = LoggerFactory.getLogger(PartitionInstancesCommand.class);
+
+  private final CedarConfig cedarConfig;
+
+  public PartitionInstancesCommand(CedarConfig cedarConfig) {
+    super("partition-instances", "Moves the template instances into the configured instance partitions");
+    this.cedarConfig = cedarConfig;
+  }
+
+  @Override
+  public void configure(Subparser subparser) {
+    super.configure(subparser);
+    subparser.addArgument("--batch-size").dest("batchSize").type(Integer.class).setDefault(1000)
+        .help("Number of instances moved per batch");
+  }
+
+  @Override
+  protected void run(Bootstrap<TemplateServerConfiguration> bootstrap, Namespace namespace,
+                     TemplateServerConfiguration configuration) throws Exception {
+    if (!configuration.getInstancePartitions().isEnabled()) {
+      log.error("Instance partitioning is not enabled in the configuration");
+      return;
+    }
+    MongoClient mongoClient = MongoClientFactory.build(cedarConfig);
+    try {
+      MongoCollections mongoCollections = new MongoCollections(cedarConfig, mongoClient,
+          configuration.getInstancePartitions());
+      InstancePartitions partitions = mongoCollections.getInstancePartitions();
+      partitions.createIndexes();
+      long start = System.currentTimeMillis();
+      long count = partitions.moveFrom(mongoCollections.getCollection(CedarNodeType.INSTANCE),
+          namespace.getInt("batchSize"));
+      log.info("Moved " + count + " instances into " + partitions.getCollections().size() + " partitions in "
+          + (System.currentTimeMillis() - start) + " ms");
+    } finally {
+      mongoClient.close();
+    }
+  }
+}
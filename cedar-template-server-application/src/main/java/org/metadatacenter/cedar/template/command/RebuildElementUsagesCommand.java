@@ -0,0 +1,46 @@
+package org.metadatacenter.cedar.template.command;
+
+import com.mongodb.MongoClient;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.metadatacenter.cedar.template.TemplateServerConfiguration;
+import org.metadatacenter.cedar.template.mongo.MongoClientFactory;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.usage.ElementUsageIndex;
+import org.metadatacenter.config.CedarConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rebuilds the reverse index from embedded elements and fields to templates.
+ */
+public class RebuildElementUsagesCommand extends ConfiguredCommand<TemplateServerConfiguration> {
+
+  private static final Logger log = LoggerFactory.getLogger(RebuildElementUsagesCommand.class);
+
+  private final CedarConfig cedarConfig;
+
+  public RebuildElementUsagesCommand(CedarConfig cedarConfig) {
+    super("rebuild-element-usages", "Rebuilds the index of templates using each element and field");
+    this.cedarConfig = cedarConfig;
+  }
+
+  @Override
+  protected void run(Bootstrap<TemplateServerConfiguration> bootstrap, Namespace namespace,
+                     TemplateServerConfiguration configuration) throws Exception {
+    MongoClient mongoClient = MongoClientFactory.build(cedarConfig);
+    try {
+      MongoCollections mongoCollections = new MongoCollections(cedarConfig, mongoClient,
+          configuration.getInstancePartitions());
+      ElementUsageIndex elementUsageIndex = new ElementUsageIndex(mongoCollections, true);
+      elementUsageIndex.start();
+      long start = System.currentTimeMillis();
+      long count = elementUsageIndex.rebuild();
+      log.info("Indexed the element usages of " + count + " templates in " + (System.currentTimeMillis() - start)
+          + " ms");
+    } finally {
+      mongoClient.close();
+    }
+  }
+}
@@ -0,0 +1,45 @@
+package org.metadatacenter.cedar.template.command;
+
+import com.mongodb.MongoClient;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.metadatacenter.cedar.template.TemplateServerConfiguration;
+import org.metadatacenter.cedar.template.mongo.MongoClientFactory;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.stats.StatisticsStore;
+import org.metadatacenter.config.CedarConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Recomputes the aggregate statistics from the template, element and instance collections.
+ */
+public class RebuildStatisticsCommand extends ConfiguredCommand<TemplateServerConfiguration> {
+
+  private static final Logger log = LoggerFactory.getLogger(RebuildStatisticsCommand.class);
+
+  private final CedarConfig cedarConfig;
+
+  public RebuildStatisticsCommand(CedarConfig cedarConfig) {
+    super("rebuild-statistics", "Recomputes the counts per template, creator and day");
+    this.cedarConfig = cedarConfig;
+  }
+
+  @Override
+  protected void run(Bootstrap<TemplateServerConfiguration> bootstrap, Namespace namespace,
+                     TemplateServerConfiguration configuration) throws Exception {
+    MongoClient mongoClient = MongoClientFactory.build(cedarConfig);
+    try {
+      MongoCollections mongoCollections = new MongoCollections(cedarConfig, mongoClient,
+          configuration.getInstancePartitions());
+      StatisticsStore statisticsStore = new StatisticsStore(mongoCollections, true);
+      statisticsStore.start();
+      long start = System.currentTimeMillis();
+      long count = statisticsStore.rebuild();
+      log.info("Counted " + count + " documents in " + (System.currentTimeMillis() - start) + " ms");
+    } finally {
+      mongoClient.close();
+    }
+  }
+}
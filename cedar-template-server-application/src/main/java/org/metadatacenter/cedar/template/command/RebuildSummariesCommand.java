@@ -0,0 +1,49 @@
+package org.metadatacenter.cedar.template.command;
+
+import com.mongodb.MongoClient;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.metadatacenter.cedar.template.TemplateServerConfiguration;
+import org.metadatacenter.cedar.template.mongo.MongoClientFactory;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.summary.SummaryStore;
+import org.metadatacenter.config.CedarConfig;
+import org.metadatacenter.model.CedarNodeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rebuilds the summary collections from the template, element and instance collections.
+ */
+public class RebuildSummariesCommand extends ConfiguredCommand<TemplateServerConfiguration> {
+
+  private static final Logger log = LoggerFactory.getLogger(RebuildSummariesCommand.class);
+
+  private final CedarConfig cedarConfig;
+
+  public RebuildSummariesCommand(CedarConfig cedarConfig) {
+    super("rebuild-summaries", "Rebuilds the summary collections used by summary listings");
+    this.cedarConfig = cedarConfig;
+  }
+
+  @Override
+  protected void run(Bootstrap<TemplateServerConfiguration> bootstrap, Namespace namespace,
+                     TemplateServerConfiguration configuration) throws Exception {
+    MongoClient mongoClient = MongoClientFactory.build(cedarConfig);
+    try {
+      MongoCollections mongoCollections = new MongoCollections(cedarConfig, mongoClient,
+          configuration.getInstancePartitions());
+      SummaryStore summaryStore = new SummaryStore(mongoCollections, cedarConfig, true);
+      summaryStore.start();
+      for (CedarNodeType nodeType : new CedarNodeType[]{CedarNodeType.TEMPLATE, CedarNodeType.ELEMENT,
+          CedarNodeType.INSTANCE}) {
+        long start = System.currentTimeMillis();
+        long count = summaryStore.rebuild(nodeType);
+        log.info("Rebuilt " + count + " " + nodeType + " summaries in " + (System.currentTimeMillis() - start) + " ms");
+      }
+    } finally {
+      mongoClient.close();
+    }
+  }
+}
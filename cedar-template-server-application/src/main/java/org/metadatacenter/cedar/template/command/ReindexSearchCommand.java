@@ -0,0 +1,49 @@
+package org.metadatacenter.cedar.template.command;
+
+import com.mongodb.MongoClient;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.metadatacenter.cedar.template.TemplateServerConfiguration;
+import org.metadatacenter.cedar.template.config.SearchConfig;
+import org.metadatacenter.cedar.template.mongo.MongoClientFactory;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.search.SearchIndex;
+import org.metadatacenter.config.CedarConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rebuilds the full-text search index from the template and element collections. The index directory is locked by
+ * a running server, so the server has to be stopped while this command runs.
+ */
+public class ReindexSearchCommand extends ConfiguredCommand<TemplateServerConfiguration> {
+
+  private static final Logger log = LoggerFactory.getLogger(ReindexSearchCommand.class);
+
+  private final CedarConfig cedarConfig;
+
+  public ReindexSearchCommand(CedarConfig cedarConfig) {
+    super("reindex-search", "Rebuilds the full-text search index over templates and elements");
+    this.cedarConfig = cedarConfig;
+  }
+
+  @Override
+  protected void run(Bootstrap<TemplateServerConfiguration> bootstrap, Namespace namespace,
+                     TemplateServerConfiguration configuration) throws Exception {
+    SearchConfig searchConfig = configuration.getSearch();
+    searchConfig.setEnabled(true);
+    MongoClient mongoClient = MongoClientFactory.build(cedarConfig);
+    SearchIndex searchIndex = new SearchIndex(searchConfig);
+    try {
+      searchIndex.start();
+      long start = System.currentTimeMillis();
+      long count = searchIndex.reindex(new MongoCollections(cedarConfig, mongoClient,
+          configuration.getInstancePartitions()));
+      log.info("Indexed " + count + " templates and elements in " + (System.currentTimeMillis() - start) + " ms");
+    } finally {
+      searchIndex.stop();
+      mongoClient.close();
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package org.metadatacenter.cedar.template.command;
+
+import com.mongodb.MongoClient;
+import io.dropwizard.cli.ConfiguredCommand;
+import io.dropwizard.setup.Bootstrap;
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+import org.metadatacenter.cedar.template.TemplateServerConfiguration;
+import org.metadatacenter.cedar.template.id.IdGenerationMode;
+import org.metadatacenter.cedar.template.id.LinkedDataIdGenerator;
+import org.metadatacenter.cedar.template.mongo.MongoClientFactory;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.snapshot.SnapshotManifest;
+import org.metadatacenter.cedar.template.snapshot.SnapshotRestorer;
+import org.metadatacenter.cedar.template.snapshot.SnapshotTransfer;
+import org.metadatacenter.cedar.template.summary.SummaryStore;
+import org.metadatacenter.config.CedarConfig;
+import org.metadatacenter.model.CedarNodeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Paths;
+import java.util.EnumSet;
+
+/**
+ * Loads a snapshot written by the 'export-snapshot' command, rewriting the '@id' prefixes to the ones of this
+ * environment. Only the documents are part of a snapshot, none of the data derived from them, so after a restore
+ * run, for the stores that are enabled:
+ * <ul>
+ * <li>'rebuild-summaries' for the summary listings; the restore drops their rebuild records, so servers started
+ * afterwards do not serve them until it completes</li>
+ * <li>'reindex-search' for the full-text search index</li>
+ * <li>'rebuild-element-usages' for the index of templates using each element and field</li>
+ * <li>'rebuild-statistics' for the counts per template, creator and day</li>
+ * </ul>
+ * The template history has no rebuild command: the restored templates have no recorded versions, and each one's
+ * history starts with a snapshot at its next update.
+ */
+public class RestoreSnapshotCommand extends ConfiguredCommand<TemplateServerConfiguration> {
+
+  private static final Logger log = LoggerFactory.getLogger(RestoreSnapshotCommand.class);
+
+  private final CedarConfig cedarConfig;
+
+  public RestoreSnapshotCommand(CedarConfig cedarConfig) {
+    super("restore-snapshot", "Loads a snapshot written by export-snapshot");
+    this.cedarConfig = cedarConfig;
+  }
+
+  @Override
+  public void configure(Subparser subparser) {
+    super.configure(subparser);
+    subparser.addArgument("directory").help("Directory the snapshot is read from");
+    subparser.addArgument("--threads").type(Integer.class).setDefault(Runtime.getRuntime().availableProcessors())
+        .help("Number of chunk files loaded in parallel");
+    subparser.addArgument("--batch-size").dest("batchSize").type(Integer.class).setDefault(1000)
+        .help("Number of documents per bulk write");
+  }
+
+  @Override
+  protected void run(Bootstrap<TemplateServerConfiguration> bootstrap, Namespace namespace,
+                     TemplateServerConfiguration configuration) throws Exception {
+    MongoClient mongoClient = MongoClientFactory.build(cedarConfig);
+    try {
+      LinkedDataIdGenerator linkedDataIdGenerator = new LinkedDataIdGenerator(cedarConfig.buildLinkedDataUtil(),
+          IdGenerationMode.RANDOM);
+      MongoCollections mongoCollections = new MongoCollections(cedarConfig, mongoClient,
+          configuration.getInstancePartitions());
+      SnapshotRestorer restorer = new SnapshotRestorer(mongoCollections,
+          SnapshotManifest.idPrefixesOf(linkedDataIdGenerator), namespace.getInt("threads"),
+          namespace.getInt("batchSize"));
+      for (SnapshotTransfer transfer : restorer.restore(Paths.get(namespace.getString("directory")))) {
+        log.info("Restored " + transfer);
+      }
+      new SummaryStore(mongoCollections, cedarConfig, configuration.getSummaries().isEnabled())
+          .forgetRebuilds(EnumSet.allOf(CedarNodeType.class));
+    } finally {
+      mongoClient.close();
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package org.metadatacenter.cedar.template.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+
+public class CascadeDeleteConfig {
+
+  @Min(1)
+  private int batchSize = 500;
+
+  @Min(0)
+  private long pauseMillis = 200;
+
+  @Min(1)
+  private int retainedJobs = 100;
+
+  @JsonProperty
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  @JsonProperty
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  @JsonProperty
+  public long getPauseMillis() {
+    return pauseMillis;
+  }
+
+  @JsonProperty
+  public void setPauseMillis(long pauseMillis) {
+    this.pauseMillis = pauseMillis;
+  }
+
+  @JsonProperty
+  public int getRetainedJobs() {
+    return retainedJobs;
+  }
+
+  @JsonProperty
+  public void setRetainedJobs(int retainedJobs) {
+    this.retainedJobs = retainedJobs;
+  }
+}
@@ -0,0 +1,18 @@
+package org.metadatacenter.cedar.template.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class ElementUsageConfig {
+
+  private boolean enabled = false;
+
+  @JsonProperty
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @JsonProperty
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+}
@@ -0,0 +1,75 @@
+package org.metadatacenter.cedar.template.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+
+public class GroupCommitConfig {
+
+  private boolean enabled = false;
+
+  @Min(1)
+  private int maxBatchSize = 100;
+
+  @Min(0)
+  private long maxDelayMillis = 5;
+
+  @Min(1)
+  private int maxQueueSize = 10000;
+
+  /**
+   * How long a request waits for its batch to be acknowledged before it fails.
+   */
+  @Min(1)
+  private long maxWaitMillis = 30000;
+
+  @JsonProperty
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @JsonProperty
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  @JsonProperty
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  @JsonProperty
+  public void setMaxBatchSize(int maxBatchSize) {
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  @JsonProperty
+  public long getMaxDelayMillis() {
+    return maxDelayMillis;
+  }
+
+  @JsonProperty
+  public void setMaxDelayMillis(long maxDelayMillis) {
+    this.maxDelayMillis = maxDelayMillis;
+  }
+
+  @JsonProperty
+  public int getMaxQueueSize() {
+    return maxQueueSize;
+  }
+
+  @JsonProperty
+  public void setMaxQueueSize(int maxQueueSize) {
+    this.maxQueueSize = maxQueueSize;
+  }
+
+  @JsonProperty
+  public long getMaxWaitMillis() {
+    return maxWaitMillis;
+  }
+
+  @JsonProperty
+  public void setMaxWaitMillis(long maxWaitMillis) {
+    this.maxWaitMillis = maxWaitMillis;
+  }
+}
@@ -0,0 +1,49 @@
+package org.metadatacenter.cedar.template.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+
+public class HistoryConfig {
+
+  private boolean enabled = false;
+
+  @Min(1)
+  private int snapshotInterval = 20;
+
+  @Min(0)
+  private int retainedVersions = 0;
+
+  @JsonProperty
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @JsonProperty
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  @JsonProperty
+  public int getSnapshotInterval() {
+    return snapshotInterval;
+  }
+
+  @JsonProperty
+  public void setSnapshotInterval(int snapshotInterval) {
+    this.snapshotInterval = snapshotInterval;
+  }
+
+  /**
+   * Number of most recent versions that are guaranteed to be kept; 0 keeps all versions.
+   */
+  @JsonProperty
+  public int getRetainedVersions() {
+    return retainedVersions;
+  }
+
+  @JsonProperty
+  public void setRetainedVersions(int retainedVersions) {
+    this.retainedVersions = retainedVersions;
+  }
+}
@@ -0,0 +1,48 @@
+package org.metadatacenter.cedar.template.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+
+public class InstancePartitionConfig {
+
+  private boolean enabled = false;
+
+  @Min(1)
+  @Max(256)
+  private int partitions = 8;
+
+  @Min(0)
+  private int maxOffset = 10000;
+
+  @JsonProperty
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @JsonProperty
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  @JsonProperty
+  public int getPartitions() {
+    return partitions;
+  }
+
+  @JsonProperty
+  public void setPartitions(int partitions) {
+    this.partitions = partitions;
+  }
+
+  @JsonProperty
+  public int getMaxOffset() {
+    return maxOffset;
+  }
+
+  @JsonProperty
+  public void setMaxOffset(int maxOffset) {
+    this.maxOffset = maxOffset;
+  }
+}
@@ -0,0 +1,37 @@
+package org.metadatacenter.cedar.template.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+
+public class ReconciliationConfig {
+
+  @Min(1)
+  private long sweepIntervalMillis = 30000;
+
+  @Min(1)
+  private int batchSize = 100;
+
+  @JsonProperty
+  public long getSweepIntervalMillis() {
+    return sweepIntervalMillis;
+  }
+
+  @JsonProperty
+  public void setSweepIntervalMillis(long sweepIntervalMillis) {
+    this.sweepIntervalMillis = sweepIntervalMillis;
+  }
+
+  /**
+   * Number of dirty documents reconciled per sweep.
+   */
+  @JsonProperty
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  @JsonProperty
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+}
@@ -0,0 +1,45 @@
+package org.metadatacenter.cedar.template.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.HashMap;
+import java.util.Map;
+
+public class RequestBodyConfig {
+
+  @Min(1)
+  private long defaultMaxBytes = 10L * 1024 * 1024;
+
+  /**
+   * Per resource type limits, keyed by the lower case node type: template, element, instance.
+   */
+  @NotNull
+  private Map<String, Long> maxBytesByType = new HashMap<>();
+
+  @JsonProperty
+  public long getDefaultMaxBytes() {
+    return defaultMaxBytes;
+  }
+
+  @JsonProperty
+  public void setDefaultMaxBytes(long defaultMaxBytes) {
+    this.defaultMaxBytes = defaultMaxBytes;
+  }
+
+  @JsonProperty
+  public Map<String, Long> getMaxBytesByType() {
+    return maxBytesByType;
+  }
+
+  @JsonProperty
+  public void setMaxBytesByType(Map<String, Long> maxBytesByType) {
+    this.maxBytesByType = maxBytesByType;
+  }
+
+  public long getMaxBytes(String type) {
+    Long maxBytes = maxBytesByType.get(type);
+    return maxBytes == null ? defaultMaxBytes : maxBytes;
+  }
+}
@@ -0,0 +1,69 @@
+package org.metadatacenter.cedar.template.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+
+public class ResponseCacheConfig {
+
+  private boolean enabled = false;
+
+  /**
+   * Upper bound of the cached response bodies. They are held in direct buffers, so -XX:MaxDirectMemorySize has to
+   * leave room for them.
+   */
+  @Min(0)
+  private long maxBytes = 128L * 1024 * 1024;
+
+  /**
+   * Store the bodies gzip compressed. Clients accepting gzip get the stored bytes as they are, the others get them
+   * decompressed on the fly.
+   */
+  private boolean compress = false;
+
+  /**
+   * Check the '_version' of the stored document before serving a cached body, so that updates made through other
+   * server nodes are seen. Costs a projected read per hit; only a single node deployment can safely turn it off.
+   */
+  private boolean revalidate = true;
+
+  @JsonProperty
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @JsonProperty
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  @JsonProperty
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  @JsonProperty
+  public void setMaxBytes(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  @JsonProperty
+  public boolean isCompress() {
+    return compress;
+  }
+
+  @JsonProperty
+  public void setCompress(boolean compress) {
+    this.compress = compress;
+  }
+
+  @JsonProperty
+  public boolean isRevalidate() {
+    return revalidate;
+  }
+
+  @JsonProperty
+  public void setRevalidate(boolean revalidate) {
+    this.revalidate = revalidate;
+  }
+}
@@ -0,0 +1,60 @@
+package org.metadatacenter.cedar.template.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.constraints.Min;
+
+public class SearchConfig {
+
+  private boolean enabled = false;
+
+  @NotEmpty
+  private String indexDirectory = "search-index";
+
+  @Min(1)
+  private long refreshMillis = 1000;
+
+  @Min(1)
+  private long commitIntervalMillis = 60000;
+
+  @JsonProperty
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @JsonProperty
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  @JsonProperty
+  public String getIndexDirectory() {
+    return indexDirectory;
+  }
+
+  @JsonProperty
+  public void setIndexDirectory(String indexDirectory) {
+    this.indexDirectory = indexDirectory;
+  }
+
+  @JsonProperty
+  public long getRefreshMillis() {
+    return refreshMillis;
+  }
+
+  @JsonProperty
+  public void setRefreshMillis(long refreshMillis) {
+    this.refreshMillis = refreshMillis;
+  }
+
+  @JsonProperty
+  public long getCommitIntervalMillis() {
+    return commitIntervalMillis;
+  }
+
+  @JsonProperty
+  public void setCommitIntervalMillis(long commitIntervalMillis) {
+    this.commitIntervalMillis = commitIntervalMillis;
+  }
+}
@@ -0,0 +1,77 @@
+package org.metadatacenter.cedar.template.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class StartupConfig {
+
+  private boolean lazyServices = false;
+
+  private boolean warmUp = false;
+
+  @Min(0)
+  private int warmUpIterations = 200;
+
+  @NotNull
+  private List<String> warmUpPaths = new ArrayList<>(Arrays.asList("/",
+      "/templates?summary=true&limit=10",
+      "/template-elements?summary=true&limit=10",
+      "/template-instances?summary=true&limit=10"));
+
+  private String warmUpAuthorization;
+
+  @JsonProperty
+  public boolean isLazyServices() {
+    return lazyServices;
+  }
+
+  @JsonProperty
+  public void setLazyServices(boolean lazyServices) {
+    this.lazyServices = lazyServices;
+  }
+
+  @JsonProperty
+  public boolean isWarmUp() {
+    return warmUp;
+  }
+
+  @JsonProperty
+  public void setWarmUp(boolean warmUp) {
+    this.warmUp = warmUp;
+  }
+
+  @JsonProperty
+  public int getWarmUpIterations() {
+    return warmUpIterations;
+  }
+
+  @JsonProperty
+  public void setWarmUpIterations(int warmUpIterations) {
+    this.warmUpIterations = warmUpIterations;
+  }
+
+  @JsonProperty
+  public List<String> getWarmUpPaths() {
+    return warmUpPaths;
+  }
+
+  @JsonProperty
+  public void setWarmUpPaths(List<String> warmUpPaths) {
+    this.warmUpPaths = warmUpPaths;
+  }
+
+  @JsonProperty
+  public String getWarmUpAuthorization() {
+    return warmUpAuthorization;
+  }
+
+  @JsonProperty
+  public void setWarmUpAuthorization(String warmUpAuthorization) {
+    this.warmUpAuthorization = warmUpAuthorization;
+  }
+}
@@ -0,0 +1,36 @@
+package org.metadatacenter.cedar.template.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class StatisticsConfig {
+
+  private boolean enabled = false;
+
+  /**
+   * The ids of the users allowed to read the statistics. Empty by default, which closes the statistics to everyone.
+   */
+  private List<String> adminUsers = new ArrayList<>();
+
+  @JsonProperty
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @JsonProperty
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  @JsonProperty
+  public List<String> getAdminUsers() {
+    return adminUsers;
+  }
+
+  @JsonProperty
+  public void setAdminUsers(List<String> adminUsers) {
+    this.adminUsers = adminUsers;
+  }
+}
@@ -0,0 +1,92 @@
+package org.metadatacenter.cedar.template.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+public class TracingConfig {
+
+  public enum Exporter {
+    FILE,
+    LOG
+  }
+
+  private boolean enabled = false;
+
+  @NotNull
+  private Exporter exporter = Exporter.FILE;
+
+  @NotEmpty
+  private String file = "cedar-template-server-spans.log";
+
+  @Min(1024)
+  private long maxFileBytes = 50L * 1024 * 1024;
+
+  @Min(1)
+  private int maxFiles = 5;
+
+  @Min(1)
+  private int queueSize = 10000;
+
+  @JsonProperty
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @JsonProperty
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  @JsonProperty
+  public Exporter getExporter() {
+    return exporter;
+  }
+
+  @JsonProperty
+  public void setExporter(Exporter exporter) {
+    this.exporter = exporter;
+  }
+
+  @JsonProperty
+  public String getFile() {
+    return file;
+  }
+
+  @JsonProperty
+  public void setFile(String file) {
+    this.file = file;
+  }
+
+  @JsonProperty
+  public long getMaxFileBytes() {
+    return maxFileBytes;
+  }
+
+  @JsonProperty
+  public void setMaxFileBytes(long maxFileBytes) {
+    this.maxFileBytes = maxFileBytes;
+  }
+
+  @JsonProperty
+  public int getMaxFiles() {
+    return maxFiles;
+  }
+
+  @JsonProperty
+  public void setMaxFiles(int maxFiles) {
+    this.maxFiles = maxFiles;
+  }
+
+  @JsonProperty
+  public int getQueueSize() {
+    return queueSize;
+  }
+
+  @JsonProperty
+  public void setQueueSize(int queueSize) {
+    this.queueSize = queueSize;
+  }
+}
@@ -0,0 +1,21 @@
+package org.metadatacenter.cedar.template.constant;
+
+/**
+ * Query parameters used only by the template server, in addition to the shared CedarQueryParameters.
+ */
+public final class TemplateServerQueryParameters {
+
+  public static final String QP_CASCADE = "cascade";
+  public static final String QP_TEMPLATE_ID = "template_id";
+  public static final String QP_CREATED_BY = "created_by";
+  public static final String QP_CREATED_AFTER = "created_after";
+  public static final String QP_CREATED_BEFORE = "created_before";
+  public static final String QP_AFTER = "after";
+  public static final String QP_SEARCH_QUERY = "q";
+  public static final String QP_SEARCH_RESOURCE_TYPE = "resource_type";
+  public static final String QP_FROM = "from";
+  public static final String QP_TO = "to";
+
+  private TemplateServerQueryParameters() {
+  }
+}
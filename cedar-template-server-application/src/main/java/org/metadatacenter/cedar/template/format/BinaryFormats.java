@@ -0,0 +1,55 @@
+package org.metadatacenter.cedar.template.format;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Binary JSON encodings offered next to text JSON for service-to-service calls. Both carry the same data model as
+ * JSON-LD text, so any document can be sent and received in either form.
+ */
+public final class BinaryFormats {
+
+  public static final String APPLICATION_SMILE = "application/x-jackson-smile";
+  public static final String APPLICATION_CBOR = "application/cbor";
+
+  public static final MediaType APPLICATION_SMILE_TYPE = MediaType.valueOf(APPLICATION_SMILE);
+  public static final MediaType APPLICATION_CBOR_TYPE = MediaType.valueOf(APPLICATION_CBOR);
+
+  private static final ObjectMapper SMILE_MAPPER = new ObjectMapper(new SmileFactory());
+  private static final ObjectMapper CBOR_MAPPER = new ObjectMapper(new CBORFactory());
+
+  private BinaryFormats() {
+  }
+
+  public static ObjectMapper smileMapper() {
+    return SMILE_MAPPER;
+  }
+
+  public static ObjectMapper cborMapper() {
+    return CBOR_MAPPER;
+  }
+
+  /**
+   * Returns the mapper for a binary content type, or null if the content type is not one of the binary formats.
+   */
+  public static ObjectMapper mapperFor(String contentType) {
+    if (contentType == null) {
+      return null;
+    }
+    MediaType mediaType;
+    try {
+      mediaType = MediaType.valueOf(contentType);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    if (APPLICATION_SMILE_TYPE.isCompatible(mediaType)) {
+      return SMILE_MAPPER;
+    } else if (APPLICATION_CBOR_TYPE.isCompatible(mediaType)) {
+      return CBOR_MAPPER;
+    }
+    return null;
+  }
+}
@@ -0,0 +1,126 @@
+package org.metadatacenter.cedar.template.format;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.metadatacenter.cedar.template.config.RequestBodyConfig;
+import org.metadatacenter.model.CedarNodeType;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.ClientErrorException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * Parses request bodies straight from the servlet input stream into a JSON tree, without buffering the body into an
+ * intermediate String or byte array. Bodies over the configured limit are rejected with 413: up front when the
+ * Content-Length header announces them, otherwise as soon as the limit is crossed while reading. Body size and parse
+ * time are recorded per resource type.
+ */
+public class RequestBodyReader {
+
+  private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+
+  private final RequestBodyConfig config;
+  private final MetricRegistry metricRegistry;
+
+  public RequestBodyReader(RequestBodyConfig config, MetricRegistry metricRegistry) {
+    this.config = config;
+    this.metricRegistry = metricRegistry;
+  }
+
+  /**
+   * Returns the parsed body, or null if the request has no body.
+   */
+  public JsonNode read(HttpServletRequest request, CedarNodeType nodeType) throws IOException {
+    String type = nodeType.name().toLowerCase(Locale.ENGLISH);
+    long maxBytes = config.getMaxBytes(type);
+    long contentLength = request.getContentLengthLong();
+    if (contentLength > maxBytes) {
+      throw tooLarge(maxBytes);
+    }
+    ObjectMapper mapper = BinaryFormats.mapperFor(request.getHeader(HttpHeaders.CONTENT_TYPE));
+    if (mapper == null) {
+      mapper = JSON_MAPPER;
+    }
+    Timer.Context parseTime = metricRegistry.timer(MetricRegistry.name(RequestBodyReader.class, "parse", type)).time();
+    CountingInputStream in = new CountingInputStream(request.getInputStream(), maxBytes);
+    try (JsonParser parser = mapper.getFactory().createParser(in)) {
+      JsonNode body = mapper.readTree(parser);
+      return body == null || body.isMissingNode() ? null : body;
+    } catch (BodyTooLargeException e) {
+      throw tooLarge(maxBytes);
+    } finally {
+      parseTime.stop();
+      Histogram sizes = metricRegistry.histogram(MetricRegistry.name(RequestBodyReader.class, "size", type));
+      sizes.update(in.getCount());
+    }
+  }
+
+  private static ClientErrorException tooLarge(long maxBytes) {
+    return new ClientErrorException("The request body is larger than the allowed " + maxBytes + " bytes",
+        Response.Status.REQUEST_ENTITY_TOO_LARGE);
+  }
+
+  private static class BodyTooLargeException extends IOException {
+  }
+
+  private static class CountingInputStream extends FilterInputStream {
+
+    private final long maxBytes;
+    private long count;
+
+    private CountingInputStream(InputStream in, long maxBytes) {
+      super(in);
+      this.maxBytes = maxBytes;
+    }
+
+    private long getCount() {
+      return count;
+    }
+
+    private void add(long n) throws BodyTooLargeException {
+      if (n > 0) {
+        count += n;
+        if (count > maxBytes) {
+          throw new BodyTooLargeException();
+        }
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        add(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = super.read(b, off, len);
+      add(n);
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      add(skipped);
+      return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,26 @@
+package org.metadatacenter.cedar.template.health;
+
+import com.codahale.metrics.health.HealthCheck;
+import org.metadatacenter.cedar.template.startup.StartupMonitor;
+
+/**
+ * Unhealthy until the services are initialized and the warm-up is finished, so that load balancers only send traffic
+ * to a warm server.
+ */
+public class ReadinessHealthCheck extends HealthCheck {
+
+  private final StartupMonitor startupMonitor;
+
+  public ReadinessHealthCheck(StartupMonitor startupMonitor) {
+    this.startupMonitor = startupMonitor;
+  }
+
+  @Override
+  protected Result check() throws Exception {
+    String pendingPhase = startupMonitor.getPendingPhase();
+    if (pendingPhase != null) {
+      return Result.unhealthy(pendingPhase);
+    }
+    return Result.healthy();
+  }
+}
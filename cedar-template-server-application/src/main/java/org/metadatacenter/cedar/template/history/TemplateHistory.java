@@ -0,0 +1,300 @@
+package org.metadatacenter.cedar.template.history;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.github.fge.jsonpatch.JsonPatchException;
+import com.github.fge.jsonpatch.diff.JsonDiff;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import io.dropwizard.lifecycle.Managed;
+import org.bson.Document;
+import org.metadatacenter.cedar.template.change.DocumentChangeListener;
+import org.metadatacenter.cedar.template.config.HistoryConfig;
+import org.metadatacenter.cedar.template.mongo.LinkedDataFields;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.mongo.MongoDocuments;
+import org.metadatacenter.cedar.template.mongo.VersionedDocumentWriter;
+import org.metadatacenter.model.CedarNodeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Filters.lt;
+import static com.mongodb.client.model.Filters.lte;
+
+/**
+ * Records every version of every template in the '&lt;collection&gt;-history' collection. A version is stored as a
+ * JSON Patch against the previous version; every snapshotInterval-th version, and every version whose patch would be
+ * larger than half of the document, is stored as a full snapshot instead. Reconstructing a version therefore reads
+ * one snapshot and applies at most snapshotInterval - 1 patches, however many times the template was edited. With
+ * retainedVersions set, versions older than the snapshot needed for the oldest retained version are removed.
+ * <p>
+ * A patch is only written when the previous version is recorded. When it is missing, because the template predates
+ * the history, a notification failed or they arrived out of order, the version is stored as a snapshot instead, so
+ * every recorded version can be rebuilt. Entries are unique per template and version; writing one that another
+ * request recorded first is not an error.
+ */
+public class TemplateHistory implements DocumentChangeListener, Managed {
+
+  private static final Logger log = LoggerFactory.getLogger(TemplateHistory.class);
+
+  public static final String HISTORY_COLLECTION_SUFFIX = "-history";
+
+  private static final String F_TEMPLATE_ID = "templateId";
+  private static final String F_VERSION = "version";
+  private static final String F_RECORDED_ON = "recordedOn";
+  private static final String F_MODIFIED_BY = "modifiedBy";
+  private static final String F_SNAPSHOT = "snapshot";
+  private static final String F_DOCUMENT = "document";
+  private static final String F_PATCH = "patch";
+  private static final String F_STORED_BYTES = "storedBytes";
+  private static final String PATCH_OPERATIONS = "operations";
+
+  private final MongoCollections mongoCollections;
+  private final HistoryConfig config;
+
+  public TemplateHistory(MongoCollections mongoCollections, HistoryConfig config) {
+    this.mongoCollections = mongoCollections;
+    this.config = config;
+  }
+
+  @Override
+  public void start() {
+    if (!config.isEnabled()) {
+      return;
+    }
+    getHistoryCollection().createIndex(
+        Indexes.compoundIndex(Indexes.ascending(F_TEMPLATE_ID), Indexes.descending(F_VERSION)),
+        new IndexOptions().unique(true).background(true));
+  }
+
+  @Override
+  public void stop() {
+  }
+
+  public boolean isEnabled() {
+    return config.isEnabled();
+  }
+
+  @Override
+  public void created(CedarNodeType nodeType, JsonNode document) {
+    if (nodeType != CedarNodeType.TEMPLATE) {
+      return;
+    }
+    String id = document.get(LinkedDataFields.ID).asText();
+    try {
+      insertSnapshot(id, VersionedDocumentWriter.getVersion(document), document);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void updated(CedarNodeType nodeType, JsonNode before, JsonNode after) {
+    if (nodeType != CedarNodeType.TEMPLATE) {
+      return;
+    }
+    String id = after.get(LinkedDataFields.ID).asText();
+    long previousVersion = VersionedDocumentWriter.getVersion(before);
+    long version = VersionedDocumentWriter.getVersion(after);
+    try {
+      if (version % config.getSnapshotInterval() == 0 || !isRecorded(id, previousVersion)) {
+        insertSnapshot(id, version, after);
+      } else {
+        JsonNode document = strip(after);
+        JsonNode patch = JsonDiff.asJson(strip(before), document);
+        int patchBytes = patch.toString().getBytes(StandardCharsets.UTF_8).length;
+        if (patchBytes * 2 > document.toString().getBytes(StandardCharsets.UTF_8).length) {
+          insertSnapshot(id, version, after);
+        } else {
+          ObjectNode patchHolder = JsonNodeFactory.instance.objectNode();
+          patchHolder.set(PATCH_OPERATIONS, patch);
+          insertEntry(newEntry(id, version, after, false, patchBytes)
+              .append(F_PATCH, MongoDocuments.toDocument(patchHolder)));
+        }
+      }
+      prune(id, version);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void deleted(CedarNodeType nodeType, List<String> ids) {
+    if (nodeType == CedarNodeType.TEMPLATE) {
+      getHistoryCollection().deleteMany(in(F_TEMPLATE_ID, ids));
+    }
+  }
+
+  /**
+   * Records the stored version as a snapshot unless it is recorded already, so the versions after it can be patched
+   * onto it again.
+   */
+  @Override
+  public void reconcile(CedarNodeType nodeType, String id, JsonNode current) {
+    if (nodeType != CedarNodeType.TEMPLATE) {
+      return;
+    }
+    if (current == null) {
+      deleted(nodeType, Collections.singletonList(id));
+      return;
+    }
+    long version = VersionedDocumentWriter.getVersion(current);
+    try {
+      if (!isRecorded(id, version)) {
+        insertSnapshot(id, version, current);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public long countVersions(String id) {
+    return getHistoryCollection().count(eq(F_TEMPLATE_ID, id));
+  }
+
+  /**
+   * Lists the recorded versions of a template, newest first.
+   */
+  public List<TemplateVersion> findVersions(String id, int limit, int offset) throws IOException {
+    List<TemplateVersion> versions = new ArrayList<>();
+    try {
+      for (Document entry : getHistoryCollection().find(eq(F_TEMPLATE_ID, id))
+          .projection(Projections.exclude(F_DOCUMENT, F_PATCH))
+          .sort(Sorts.descending(F_VERSION))
+          .skip(offset)
+          .limit(limit)) {
+        versions.add(new TemplateVersion(getLong(entry, F_VERSION), entry.getString(F_RECORDED_ON),
+            entry.getString(F_MODIFIED_BY), entry.getBoolean(F_SNAPSHOT, false), getLong(entry, F_STORED_BYTES)));
+      }
+    } catch (MongoException e) {
+      throw new IOException("Error while listing the versions of " + id, e);
+    }
+    return versions;
+  }
+
+  /**
+   * Rebuilds a version from the nearest snapshot at or before it and the patches recorded after that snapshot.
+   *
+   * @return the template as it was at that version, or null if the version is not (or no longer) recorded
+   */
+  public JsonNode findVersion(String id, long version) throws IOException {
+    MongoCollection<Document> history = getHistoryCollection();
+    try {
+      Document base = history.find(and(eq(F_TEMPLATE_ID, id), eq(F_SNAPSHOT, true), lte(F_VERSION, version)))
+          .sort(Sorts.descending(F_VERSION))
+          .first();
+      if (base == null) {
+        return null;
+      }
+      JsonNode document = MongoDocuments.toJsonNode(base.get(F_DOCUMENT, Document.class));
+      long current = getLong(base, F_VERSION);
+      for (Document entry : history.find(and(eq(F_TEMPLATE_ID, id), gt(F_VERSION, current), lte(F_VERSION, version)))
+          .sort(Sorts.ascending(F_VERSION))) {
+        if (getLong(entry, F_VERSION) != current + 1) {
+          return null;
+        }
+        JsonNode patch = MongoDocuments.toJsonNode(entry.get(F_PATCH, Document.class)).get(PATCH_OPERATIONS);
+        document = JsonPatch.fromJson(patch).apply(document);
+        current++;
+      }
+      return current == version ? document : null;
+    } catch (MongoException | JsonPatchException e) {
+      throw new IOException("Error while rebuilding version " + version + " of " + id, e);
+    }
+  }
+
+  private boolean isRecorded(String id, long version) {
+    return getHistoryCollection().count(and(eq(F_TEMPLATE_ID, id), eq(F_VERSION, version))) > 0;
+  }
+
+  private void insertSnapshot(String id, long version, JsonNode document) throws IOException {
+    JsonNode stripped = strip(document);
+    Document snapshot = MongoDocuments.toDocument(stripped);
+    long storedBytes = stripped.toString().getBytes(StandardCharsets.UTF_8).length;
+    insertEntry(newEntry(id, version, document, true, storedBytes).append(F_DOCUMENT, snapshot));
+  }
+
+  /**
+   * Inserts the entry unless the version is recorded already. Entries of one version hold the same document, so the
+   * one written first is kept.
+   */
+  private void insertEntry(Document entry) {
+    try {
+      getHistoryCollection().insertOne(entry);
+    } catch (MongoWriteException e) {
+      if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+        throw e;
+      }
+      log.debug("Version " + entry.get(F_VERSION) + " of " + entry.getString(F_TEMPLATE_ID) + " is recorded already");
+    }
+  }
+
+  private static Document newEntry(String id, long version, JsonNode document, boolean snapshot, long storedBytes) {
+    JsonNode modifiedBy = document.get(LinkedDataFields.MODIFIED_BY);
+    return new Document(F_TEMPLATE_ID, id)
+        .append(F_VERSION, version)
+        .append(F_RECORDED_ON, Instant.now().toString())
+        .append(F_MODIFIED_BY, modifiedBy == null ? null : modifiedBy.asText())
+        .append(F_SNAPSHOT, snapshot)
+        .append(F_STORED_BYTES, storedBytes);
+  }
+
+  /**
+   * Removes the versions that are no longer needed to rebuild the retained ones.
+   */
+  private void prune(String id, long version) {
+    long oldestRetained = version - config.getRetainedVersions() + 1;
+    if (config.getRetainedVersions() == 0 || oldestRetained <= 0) {
+      return;
+    }
+    MongoCollection<Document> history = getHistoryCollection();
+    Document base = history.find(and(eq(F_TEMPLATE_ID, id), eq(F_SNAPSHOT, true), lte(F_VERSION, oldestRetained)))
+        .projection(Projections.include(F_VERSION))
+        .sort(Sorts.descending(F_VERSION))
+        .first();
+    if (base != null) {
+      long removed = history.deleteMany(and(eq(F_TEMPLATE_ID, id), lt(F_VERSION, getLong(base, F_VERSION))))
+          .getDeletedCount();
+      if (removed > 0) {
+        log.debug("Removed " + removed + " old versions of " + id);
+      }
+    }
+  }
+
+  private static JsonNode strip(JsonNode document) {
+    ObjectNode copy = (ObjectNode) document.deepCopy();
+    copy.remove(MongoDocuments.MONGO_ID_FIELD);
+    copy.remove(VersionedDocumentWriter.VERSION_FIELD);
+    return copy;
+  }
+
+  private static long getLong(Document document, String field) {
+    Object value = document.get(field);
+    return value instanceof Number ? ((Number) value).longValue() : 0;
+  }
+
+  private MongoCollection<Document> getHistoryCollection() {
+    return mongoCollections.getCollection(mongoCollections.getCollectionName(CedarNodeType.TEMPLATE)
+        + HISTORY_COLLECTION_SUFFIX);
+  }
+}
@@ -0,0 +1,48 @@
+package org.metadatacenter.cedar.template.history;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Metadata of one recorded version of a template.
+ */
+public class TemplateVersion {
+
+  private final long version;
+  private final String recordedOn;
+  private final String modifiedBy;
+  private final boolean snapshot;
+  private final long storedBytes;
+
+  public TemplateVersion(long version, String recordedOn, String modifiedBy, boolean snapshot, long storedBytes) {
+    this.version = version;
+    this.recordedOn = recordedOn;
+    this.modifiedBy = modifiedBy;
+    this.snapshot = snapshot;
+    this.storedBytes = storedBytes;
+  }
+
+  @JsonProperty
+  public long getVersion() {
+    return version;
+  }
+
+  @JsonProperty
+  public String getRecordedOn() {
+    return recordedOn;
+  }
+
+  @JsonProperty
+  public String getModifiedBy() {
+    return modifiedBy;
+  }
+
+  @JsonProperty
+  public boolean isSnapshot() {
+    return snapshot;
+  }
+
+  @JsonProperty
+  public long getStoredBytes() {
+    return storedBytes;
+  }
+}
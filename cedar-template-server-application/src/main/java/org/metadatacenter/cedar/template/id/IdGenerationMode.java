@@ -0,0 +1,12 @@
+package org.metadatacenter.cedar.template.id;
+
+public enum IdGenerationMode {
+  /**
+   * Random (version 4) UUIDs, as built by LinkedDataUtil.
+   */
+  RANDOM,
+  /**
+   * Time-ordered (version 7 layout) UUIDs: consecutive inserts land next to each other in the '@id' index.
+   */
+  TIME_ORDERED
+}
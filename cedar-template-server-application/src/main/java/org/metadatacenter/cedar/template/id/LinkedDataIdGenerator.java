@@ -0,0 +1,42 @@
+package org.metadatacenter.cedar.template.id;
+
+import org.metadatacenter.model.CedarNodeType;
+import org.metadatacenter.server.jsonld.LinkedDataUtil;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds the '@id' of new templates, elements, fields and instances. In TIME_ORDERED mode the UUID part of the id is
+ * replaced by a time-ordered one; the URL prefix is the one LinkedDataUtil uses, so the id format does not change.
+ */
+public class LinkedDataIdGenerator {
+
+  private final LinkedDataUtil linkedDataUtil;
+  private final IdGenerationMode mode;
+  private final Map<CedarNodeType, String> prefixes = new ConcurrentHashMap<>();
+
+  public LinkedDataIdGenerator(LinkedDataUtil linkedDataUtil, IdGenerationMode mode) {
+    this.linkedDataUtil = linkedDataUtil;
+    this.mode = mode;
+  }
+
+  public String buildNewLinkedDataId(CedarNodeType nodeType) {
+    if (mode == IdGenerationMode.TIME_ORDERED) {
+      return getPrefix(nodeType) + TimeOrderedUuidGenerator.next();
+    }
+    return linkedDataUtil.buildNewLinkedDataId(nodeType);
+  }
+
+  /**
+   * Everything up to the last '/' of an id built by LinkedDataUtil.
+   */
+  public String getPrefix(CedarNodeType nodeType) {
+    return prefixes.computeIfAbsent(nodeType, this::buildPrefix);
+  }
+
+  private String buildPrefix(CedarNodeType nodeType) {
+    String sampleId = linkedDataUtil.buildNewLinkedDataId(nodeType);
+    return sampleId.substring(0, sampleId.lastIndexOf('/') + 1);
+  }
+}
@@ -0,0 +1,49 @@
+package org.metadatacenter.cedar.template.id;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates UUIDs with the version 7 layout: 48 bits of Unix epoch milliseconds, the version nibble, a 12 bit
+ * sequence and 62 random bits. The sequence state is kept per thread and the random bits come from
+ * ThreadLocalRandom, so generation does not contend on any shared lock. Ids from one thread are strictly increasing;
+ * ids from different threads are ordered by millisecond.
+ */
+public final class TimeOrderedUuidGenerator {
+
+  private static final int SEQUENCE_BITS = 12;
+  private static final int MAX_SEQUENCE = (1 << SEQUENCE_BITS) - 1;
+  private static final long VERSION_7 = 0x7000L;
+  private static final long VARIANT_RFC_4122 = 0x8000000000000000L;
+  private static final long RANDOM_62_BITS_MASK = 0x3FFFFFFFFFFFFFFFL;
+
+  private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+  private TimeOrderedUuidGenerator() {
+  }
+
+  public static UUID next() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    State state = STATE.get();
+    long now = System.currentTimeMillis();
+    if (now > state.lastMillis) {
+      state.lastMillis = now;
+      // start every millisecond at a random point in the lower half, leaving room to count up
+      state.sequence = random.nextInt((MAX_SEQUENCE + 1) / 2);
+    } else if (state.sequence < MAX_SEQUENCE) {
+      // same millisecond, or the clock went backwards: keep the previous timestamp and count up
+      state.sequence++;
+    } else {
+      state.lastMillis++;
+      state.sequence = 0;
+    }
+    long mostSigBits = (state.lastMillis << 16) | VERSION_7 | state.sequence;
+    long leastSigBits = VARIANT_RFC_4122 | (random.nextLong() & RANDOM_62_BITS_MASK);
+    return new UUID(mostSigBits, leastSigBits);
+  }
+
+  private static final class State {
+    private long lastMillis = -1;
+    private int sequence;
+  }
+}
@@ -0,0 +1,59 @@
+package org.metadatacenter.cedar.template.ingest;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a running instance import. Every instance read is eventually counted as rejected (invalid), written or
+ * failed (refused by Mongo).
+ */
+public class ImportProgress {
+
+  private final long startNanos = System.nanoTime();
+  private final AtomicLong read = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong written = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+
+  void addRead(long count) {
+    read.addAndGet(count);
+  }
+
+  void addRejected(long count) {
+    rejected.addAndGet(count);
+  }
+
+  void addWritten(long count) {
+    written.addAndGet(count);
+  }
+
+  void addFailed(long count) {
+    failed.addAndGet(count);
+  }
+
+  public long getRead() {
+    return read.get();
+  }
+
+  public long getRejected() {
+    return rejected.get();
+  }
+
+  public long getWritten() {
+    return written.get();
+  }
+
+  public long getFailed() {
+    return failed.get();
+  }
+
+  public long getElapsedMillis() {
+    return (System.nanoTime() - startNanos) / 1000000;
+  }
+
+  @Override
+  public String toString() {
+    long elapsedMillis = Math.max(getElapsedMillis(), 1);
+    return getRead() + " read, " + getRejected() + " rejected, " + getWritten() + " written, " + getFailed()
+        + " failed in " + elapsedMillis / 1000 + " s (" + getWritten() * 1000 / elapsedMillis + " instances/s)";
+  }
+}
@@ -0,0 +1,492 @@
+package org.metadatacenter.cedar.template.ingest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.metadatacenter.cedar.template.mongo.CreatedOn;
+import org.metadatacenter.cedar.template.mongo.LinkedDataFields;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.mongo.MongoDocuments;
+import org.metadatacenter.cedar.template.mongo.VersionedDocumentWriter;
+import org.metadatacenter.model.CedarNodeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
+
+/**
+ * Imports template instances from an NDJSON file, optionally gzip compressed, in three stages connected by bounded
+ * queues. A slow stage therefore holds back the stages before it instead of buffering the file in memory:
+ * <ol>
+ * <li>a reader thread cuts the file into chunks of lines,</li>
+ * <li>a fork-join pool parses, validates and stamps the lines of a chunk in parallel,</li>
+ * <li>writer threads insert the prepared instances, or replace them by '@id', with unordered bulk writes.</li>
+ * </ol>
+ * Instances are validated like in the import mode of the REST API: they must have an '@id', and they must be based
+ * on an existing template. Missing provenance is stamped with the importing user and the import time; provenance that
+ * is present is kept. Invalid lines are reported and skipped. Because existing instances are replaced, an interrupted
+ * import can simply be run again.
+ * <p>
+ * A replaced instance gets the next '_version', like an update through the REST API, so that clients still holding
+ * the previous version get a conflict instead of overwriting the import. An instance that changes between reading its
+ * version and replacing it is counted as failed. When instances are partitioned, an instance that already exists
+ * under another template is refused as well, since replacing it would leave its old copy in the other partition.
+ */
+public class InstanceImporter {
+
+  private static final Logger log = LoggerFactory.getLogger(InstanceImporter.class);
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+  private static final int SEQUENTIAL_THRESHOLD = 64;
+  private static final int QUEUED_CHUNKS = 4;
+  private static final int LOGGED_REJECTS = 100;
+  private static final long PROGRESS_INTERVAL_SECONDS = 10;
+  private static final List<Document> NO_MORE_BATCHES = new ArrayList<>(0);
+
+  private final MongoCollections mongoCollections;
+  private final String importedBy;
+  private final int parallelism;
+  private final int writers;
+  private final int chunkSize;
+
+  /**
+   * @param importedBy the user stamped as creator and last modifier of instances without provenance, or null to
+   *                   leave these fields missing
+   */
+  public InstanceImporter(MongoCollections mongoCollections, String importedBy, int parallelism, int writers,
+                          int chunkSize) {
+    this.mongoCollections = mongoCollections;
+    this.importedBy = importedBy;
+    this.parallelism = parallelism;
+    this.writers = writers;
+    this.chunkSize = chunkSize;
+  }
+
+  /**
+   * @param rejectsFile file the rejected lines are reported to, or null to log the first rejects only
+   */
+  public ImportProgress importFile(Path file, Path rejectsFile) throws IOException, InterruptedException {
+    ImportProgress progress = new ImportProgress();
+    String importedOn = OffsetDateTime.now().truncatedTo(ChronoUnit.SECONDS)
+        .format(DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+    BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+    BlockingQueue<List<Document>> batches = new ArrayBlockingQueue<>(2 * writers);
+    ExecutorService stages = Executors.newFixedThreadPool(writers + 1);
+    ForkJoinPool preparers = new ForkJoinPool(parallelism);
+    ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+    try (RejectLog rejects = new RejectLog(rejectsFile, progress)) {
+      Preparation preparation = new Preparation(loadTemplateIds(), importedBy, importedOn, rejects, progress);
+      reporter.scheduleAtFixedRate(() -> log.info("Importing instances: " + progress), PROGRESS_INTERVAL_SECONDS,
+          PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+      Future<Void> reader = stages.submit(() -> read(file, chunks));
+      List<Future<Void>> writerTasks = new ArrayList<>(writers);
+      for (int i = 0; i < writers; i++) {
+        writerTasks.add(stages.submit(() -> write(batches, progress)));
+      }
+      while (true) {
+        Chunk chunk = chunks.take();
+        if (chunk == Chunk.END) {
+          break;
+        }
+        List<Document> batch = preparers.invoke(new PrepareTask(preparation, chunk, 0, chunk.lines.size()));
+        if (!batch.isEmpty()) {
+          put(batches, batch, writerTasks);
+        }
+      }
+      await(reader);
+      for (int i = 0; i < writers; i++) {
+        put(batches, NO_MORE_BATCHES, writerTasks);
+      }
+      for (Future<Void> writerTask : writerTasks) {
+        await(writerTask);
+      }
+      return progress;
+    } finally {
+      reporter.shutdownNow();
+      preparers.shutdownNow();
+      stages.shutdownNow();
+    }
+  }
+
+  private Set<String> loadTemplateIds() {
+    Set<String> templateIds = new HashSet<>();
+    for (Document template : mongoCollections.getCollection(CedarNodeType.TEMPLATE).find()
+        .projection(Projections.include(LinkedDataFields.ID))) {
+      templateIds.add(template.getString(LinkedDataFields.ID));
+    }
+    return templateIds;
+  }
+
+  /**
+   * Blank lines stay in the chunks so that the position of a line in its chunk gives its line number.
+   */
+  private Void read(Path file, BlockingQueue<Chunk> chunks) throws IOException, InterruptedException {
+    try (BufferedReader reader = open(file)) {
+      long firstLine = 1;
+      List<String> lines = new ArrayList<>(chunkSize);
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lines.add(line);
+        if (lines.size() == chunkSize) {
+          chunks.put(new Chunk(firstLine, lines));
+          firstLine += lines.size();
+          lines = new ArrayList<>(chunkSize);
+        }
+      }
+      if (!lines.isEmpty()) {
+        chunks.put(new Chunk(firstLine, lines));
+      }
+    } finally {
+      chunks.put(Chunk.END);
+    }
+    return null;
+  }
+
+  private static BufferedReader open(Path file) throws IOException {
+    InputStream in = Files.newInputStream(file);
+    if (file.getFileName().toString().endsWith(".gz")) {
+      in = new GZIPInputStream(in);
+    }
+    return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+  }
+
+  private Void write(BlockingQueue<List<Document>> batches, ImportProgress progress) throws InterruptedException {
+    while (true) {
+      List<Document> batch = batches.take();
+      if (batch == NO_MORE_BATCHES) {
+        return null;
+      }
+      batch = refuseMoves(batch, progress);
+      mongoCollections.addRoutes(CedarNodeType.INSTANCE, batch);
+      Map<MongoCollection<Document>, List<Document>> targets = new LinkedHashMap<>();
+      for (Document instance : batch) {
+        targets.computeIfAbsent(mongoCollections.getCollectionFor(CedarNodeType.INSTANCE, instance),
+            target -> new ArrayList<>()).add(instance);
+      }
+      for (Map.Entry<MongoCollection<Document>, List<Document>> target : targets.entrySet()) {
+        write(target.getKey(), target.getValue(), progress);
+      }
+    }
+  }
+
+  /**
+   * Leaves out the partitioned instances that already exist in another partition than the one of their template.
+   */
+  private List<Document> refuseMoves(List<Document> batch, ImportProgress progress) {
+    if (!mongoCollections.isPartitioned(CedarNodeType.INSTANCE)) {
+      return batch;
+    }
+    List<String> ids = new ArrayList<>(batch.size());
+    for (Document instance : batch) {
+      ids.add(instance.getString(LinkedDataFields.ID));
+    }
+    Map<String, MongoCollection<Document>> currentPartitions = new HashMap<>();
+    for (Map.Entry<MongoCollection<Document>, List<String>> group : mongoCollections
+        .groupByCollection(CedarNodeType.INSTANCE, ids).entrySet()) {
+      for (String id : group.getValue()) {
+        currentPartitions.put(id, group.getKey());
+      }
+    }
+    List<Document> accepted = new ArrayList<>(batch.size());
+    for (Document instance : batch) {
+      MongoCollection<Document> current = currentPartitions.get(instance.getString(LinkedDataFields.ID));
+      if (current == null || current.equals(mongoCollections.getCollectionFor(CedarNodeType.INSTANCE, instance))) {
+        accepted.add(instance);
+      } else {
+        log.warn("The instance " + instance.getString(LinkedDataFields.ID) + " was refused, it exists under "
+            + "another template");
+        progress.addFailed(1);
+      }
+    }
+    return accepted;
+  }
+
+  /**
+   * Inserts the new instances and replaces the existing ones, if they still have the version read before.
+   */
+  private static void write(MongoCollection<Document> collection, List<Document> instances,
+                            ImportProgress progress) {
+    List<String> ids = new ArrayList<>(instances.size());
+    for (Document instance : instances) {
+      ids.add(instance.getString(LinkedDataFields.ID));
+    }
+    Map<String, Long> versions = new HashMap<>();
+    for (Document current : collection.find(in(LinkedDataFields.ID, ids))
+        .projection(Projections.include(LinkedDataFields.ID, VersionedDocumentWriter.VERSION_FIELD))
+        .batchSize(ids.size())) {
+      versions.put(current.getString(LinkedDataFields.ID), VersionedDocumentWriter.getVersion(current));
+    }
+    List<WriteModel<Document>> writes = new ArrayList<>(instances.size());
+    for (Document instance : instances) {
+      String id = instance.getString(LinkedDataFields.ID);
+      Long version = versions.get(id);
+      if (version == null) {
+        writes.add(new InsertOneModel<>(instance));
+      } else {
+        instance.put(VersionedDocumentWriter.VERSION_FIELD, version + 1);
+        writes.add(new ReplaceOneModel<>(and(eq(LinkedDataFields.ID, id),
+            VersionedDocumentWriter.versionFilter(version)), instance));
+      }
+    }
+    BulkWriteResult result;
+    try {
+      result = collection.bulkWrite(writes, UNORDERED);
+    } catch (MongoBulkWriteException e) {
+      log.warn(e.getWriteErrors().size() + " instances were refused, the first because of: "
+          + e.getWriteErrors().get(0).getMessage());
+      result = e.getWriteResult();
+    }
+    // an insert that hit an '@id' inserted meanwhile fails, a replace that misses the version matches nothing
+    long written = result.getInsertedCount() + result.getMatchedCount();
+    progress.addWritten(written);
+    progress.addFailed(writes.size() - written);
+  }
+
+  /**
+   * Hands a batch to the writers. Fails instead of blocking forever if the writers stopped because of an error.
+   */
+  private static void put(BlockingQueue<List<Document>> batches, List<Document> batch,
+                          List<Future<Void>> writerTasks) throws IOException, InterruptedException {
+    while (!batches.offer(batch, 1, TimeUnit.SECONDS)) {
+      for (Future<Void> writerTask : writerTasks) {
+        if (writerTask.isDone()) {
+          await(writerTask);
+          throw new IOException("A writer stopped before the end of the import");
+        }
+      }
+    }
+  }
+
+  private static void await(Future<Void> task) throws IOException, InterruptedException {
+    try {
+      task.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  private static class Chunk {
+
+    private static final Chunk END = new Chunk(0, new ArrayList<>(0));
+
+    private final long firstLine;
+    private final List<String> lines;
+
+    private Chunk(long firstLine, List<String> lines) {
+      this.firstLine = firstLine;
+      this.lines = lines;
+    }
+  }
+
+  /**
+   * Prepares a range of a chunk, splitting it in halves until the ranges are small enough to be done sequentially.
+   */
+  private static class PrepareTask extends RecursiveTask<List<Document>> {
+
+    private final Preparation preparation;
+    private final Chunk chunk;
+    private final int from;
+    private final int to;
+
+    private PrepareTask(Preparation preparation, Chunk chunk, int from, int to) {
+      this.preparation = preparation;
+      this.chunk = chunk;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected List<Document> compute() {
+      if (to - from <= SEQUENTIAL_THRESHOLD) {
+        List<Document> instances = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+          Document instance = preparation.prepare(chunk.lines.get(i), chunk.firstLine + i);
+          if (instance != null) {
+            instances.add(instance);
+          }
+        }
+        return instances;
+      }
+      int middle = (from + to) >>> 1;
+      PrepareTask left = new PrepareTask(preparation, chunk, from, middle);
+      left.fork();
+      List<Document> right = new PrepareTask(preparation, chunk, middle, to).compute();
+      List<Document> instances = left.join();
+      instances.addAll(right);
+      return instances;
+    }
+  }
+
+  private static class Preparation {
+
+    private final Set<String> templateIds;
+    private final String importedBy;
+    private final String importedOn;
+    private final RejectLog rejects;
+    private final ImportProgress progress;
+
+    private Preparation(Set<String> templateIds, String importedBy, String importedOn, RejectLog rejects,
+                        ImportProgress progress) {
+      this.templateIds = templateIds;
+      this.importedBy = importedBy;
+      this.importedOn = importedOn;
+      this.rejects = rejects;
+      this.progress = progress;
+    }
+
+    /**
+     * @return the instance as it is stored, or null if the line is blank or rejected
+     */
+    private Document prepare(String line, long lineNumber) {
+      if (line.trim().isEmpty()) {
+        return null;
+      }
+      progress.addRead(1);
+      JsonNode instance;
+      try {
+        instance = MAPPER.readTree(line);
+      } catch (JsonProcessingException e) {
+        rejects.reject(lineNumber, "Invalid JSON: " + e.getOriginalMessage());
+        return null;
+      } catch (IOException e) {
+        rejects.reject(lineNumber, "Invalid JSON: " + e.getMessage());
+        return null;
+      }
+      String problem = validate(instance);
+      if (problem != null) {
+        rejects.reject(lineNumber, problem);
+        return null;
+      }
+      ObjectNode stamped = (ObjectNode) instance;
+      stamped.remove(MongoDocuments.MONGO_ID_FIELD);
+      stampIfMissing(stamped, LinkedDataFields.CREATED_ON, importedOn);
+      stampIfMissing(stamped, LinkedDataFields.LAST_UPDATED_ON, importedOn);
+      stampIfMissing(stamped, LinkedDataFields.CREATED_BY, importedBy);
+      stampIfMissing(stamped, LinkedDataFields.MODIFIED_BY, importedBy);
+      try {
+        return CreatedOn.stamp(MongoDocuments.toDocument(stamped));
+      } catch (IOException e) {
+        rejects.reject(lineNumber, "The instance can not be converted: " + e.getMessage());
+        return null;
+      }
+    }
+
+    private String validate(JsonNode instance) {
+      if (!instance.isObject()) {
+        return "The instance is not a JSON object";
+      }
+      JsonNode id = instance.get(LinkedDataFields.ID);
+      if (id == null || !id.isTextual() || id.asText().isEmpty()) {
+        return "You must specify @id when importing data";
+      }
+      JsonNode templateId = instance.get(LinkedDataFields.IS_BASED_ON);
+      if (templateId == null || !templateId.isTextual()) {
+        return "The instance " + id.asText() + " does not specify " + LinkedDataFields.IS_BASED_ON;
+      }
+      if (!templateIds.contains(templateId.asText())) {
+        return "The instance " + id.asText() + " is based on the missing template " + templateId.asText();
+      }
+      return null;
+    }
+
+    private static void stampIfMissing(ObjectNode instance, String fieldName, String value) {
+      JsonNode current = instance.get(fieldName);
+      if (value != null && (current == null || current.isNull())) {
+        instance.put(fieldName, value);
+      }
+    }
+  }
+
+  /**
+   * Counts the rejected lines and reports them, as JSON lines to the rejects file if there is one.
+   */
+  private static class RejectLog implements Closeable {
+
+    private final BufferedWriter writer;
+    private final ImportProgress progress;
+
+    private RejectLog(Path file, ImportProgress progress) throws IOException {
+      this.writer = file == null ? null : Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+      this.progress = progress;
+    }
+
+    private synchronized void reject(long lineNumber, String reason) {
+      progress.addRejected(1);
+      if (writer == null) {
+        if (progress.getRejected() <= LOGGED_REJECTS) {
+          log.warn("Line " + lineNumber + " rejected: " + reason);
+        }
+        return;
+      }
+      ObjectNode reject = MAPPER.createObjectNode();
+      reject.put("line", lineNumber);
+      reject.put("reason", reason);
+      try {
+        writer.write(MAPPER.writeValueAsString(reject));
+        writer.newLine();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (writer != null) {
+        writer.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package org.metadatacenter.cedar.template.jobs;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of the background deletion of a template and the instances based on it.
+ */
+public class TemplateDeleteJob {
+
+  public enum Status {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED
+  }
+
+  private final String id;
+  private final String templateId;
+  private final Instant submittedOn;
+  private final AtomicLong deletedInstances = new AtomicLong();
+  private volatile long totalInstances;
+  private volatile Status status = Status.QUEUED;
+  private volatile Instant finishedOn;
+  private volatile String errorMessage;
+
+  TemplateDeleteJob(String templateId) {
+    this.id = UUID.randomUUID().toString();
+    this.templateId = templateId;
+    this.submittedOn = Instant.now();
+  }
+
+  @JsonProperty
+  public String getId() {
+    return id;
+  }
+
+  @JsonProperty
+  public String getTemplateId() {
+    return templateId;
+  }
+
+  @JsonProperty
+  public Status getStatus() {
+    return status;
+  }
+
+  @JsonProperty
+  public long getDeletedInstances() {
+    return deletedInstances.get();
+  }
+
+  @JsonProperty
+  public long getTotalInstances() {
+    return totalInstances;
+  }
+
+  @JsonProperty
+  public String getSubmittedOn() {
+    return submittedOn.toString();
+  }
+
+  @JsonProperty
+  public String getFinishedOn() {
+    return finishedOn == null ? null : finishedOn.toString();
+  }
+
+  @JsonProperty
+  public String getErrorMessage() {
+    return errorMessage;
+  }
+
+  public boolean isFinished() {
+    return status == Status.COMPLETED || status == Status.FAILED;
+  }
+
+  void start(long totalInstances) {
+    this.totalInstances = totalInstances;
+    this.status = Status.RUNNING;
+  }
+
+  void addDeletedInstances(long count) {
+    long deleted = deletedInstances.addAndGet(count);
+    if (deleted > totalInstances) {
+      // Instances created after the job started
+      totalInstances = deleted;
+    }
+  }
+
+  void complete() {
+    this.finishedOn = Instant.now();
+    this.status = Status.COMPLETED;
+  }
+
+  void fail(String errorMessage) {
+    this.errorMessage = errorMessage;
+    this.finishedOn = Instant.now();
+    this.status = Status.FAILED;
+  }
+}
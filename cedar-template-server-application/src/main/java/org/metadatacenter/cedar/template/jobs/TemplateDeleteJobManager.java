@@ -0,0 +1,175 @@
+package org.metadatacenter.cedar.template.jobs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.result.DeleteResult;
+import io.dropwizard.lifecycle.Managed;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.metadatacenter.cedar.template.change.DocumentChangeListener;
+import org.metadatacenter.cedar.template.config.CascadeDeleteConfig;
+import org.metadatacenter.cedar.template.mongo.LinkedDataFields;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.model.CedarNodeType;
+import org.metadatacenter.server.service.TemplateService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
+
+/**
+ * Runs cascading template deletions in the background. Jobs are executed one at a time; each job deletes the
+ * instances of its template in bounded batches with a pause between batches, so that production traffic keeps its
+ * share of the database. The template itself is deleted last, once no instance references it anymore; instances
+ * created during the deletion are swept up by a final pass after the template is gone.
+ */
+public class TemplateDeleteJobManager implements Managed {
+
+  private static final Logger log = LoggerFactory.getLogger(TemplateDeleteJobManager.class);
+
+  private static final String F_COUNT = "count";
+
+  private final MongoCollections mongoCollections;
+  private final TemplateService<String, JsonNode> templateService;
+  private final CascadeDeleteConfig config;
+  private final DocumentChangeListener changeListener;
+  private final Map<String, TemplateDeleteJob> jobs = new ConcurrentHashMap<>();
+  private final ConcurrentLinkedQueue<String> finishedJobIds = new ConcurrentLinkedQueue<>();
+  private final ExecutorService executor;
+
+  public TemplateDeleteJobManager(MongoCollections mongoCollections, TemplateService<String, JsonNode>
+      templateService, CascadeDeleteConfig config, DocumentChangeListener changeListener) {
+    this.mongoCollections = mongoCollections;
+    this.templateService = templateService;
+    this.config = config;
+    this.changeListener = changeListener;
+    this.executor = Executors.newSingleThreadExecutor(r -> {
+      Thread thread = new Thread(r, "template-cascade-delete");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @Override
+  public void start() {
+  }
+
+  @Override
+  public void stop() throws InterruptedException {
+    executor.shutdownNow();
+    executor.awaitTermination(30, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Queues the deletion of the template. If a deletion of the same template is already queued or running, that job
+   * is returned instead of starting a new one.
+   */
+  public synchronized TemplateDeleteJob submit(String templateId) {
+    for (TemplateDeleteJob job : jobs.values()) {
+      if (job.getTemplateId().equals(templateId) && !job.isFinished()) {
+        return job;
+      }
+    }
+    TemplateDeleteJob job = new TemplateDeleteJob(templateId);
+    jobs.put(job.getId(), job);
+    executor.submit(() -> run(job));
+    return job;
+  }
+
+  public TemplateDeleteJob getJob(String jobId) {
+    return jobs.get(jobId);
+  }
+
+  private void run(TemplateDeleteJob job) {
+    String templateId = job.getTemplateId();
+    MongoCollection<Document> instances = mongoCollections.getInstanceCollection(templateId);
+    Bson basedOnTemplate = eq(LinkedDataFields.IS_BASED_ON, templateId);
+    try {
+      job.start(countInstances(instances, basedOnTemplate));
+      deleteInstances(job, instances, basedOnTemplate);
+      templateService.deleteTemplate(templateId);
+      changeListener.deleted(CedarNodeType.TEMPLATE, Collections.singletonList(templateId));
+      // Instances created while the last batches ran would otherwise reference a template that no longer exists
+      deleteInstances(job, instances, basedOnTemplate);
+      job.complete();
+      log.info("Deleted template " + templateId + " and " + job.getDeletedInstances() + " instances");
+    } catch (InstanceNotFoundException e) {
+      job.fail("The template can not be found by id:" + templateId);
+    } catch (IOException | MongoException e) {
+      log.error("Error while deleting template " + templateId, e);
+      job.fail(e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      job.fail("The deletion was interrupted by a server shutdown");
+    } catch (RuntimeException e) {
+      log.error("Unexpected error while deleting template " + templateId, e);
+      job.fail(e.getMessage());
+    } finally {
+      retire(job);
+    }
+  }
+
+  /**
+   * Deletes the matching instances batch by batch until a lookup finds none.
+   */
+  private void deleteInstances(TemplateDeleteJob job, MongoCollection<Document> instances, Bson basedOnTemplate)
+      throws InterruptedException {
+    while (true) {
+      List<String> ids = new ArrayList<>(config.getBatchSize());
+      for (Document document : instances.find(basedOnTemplate)
+          .projection(Projections.include(LinkedDataFields.ID))
+          .limit(config.getBatchSize())) {
+        ids.add(document.getString(LinkedDataFields.ID));
+      }
+      if (ids.isEmpty()) {
+        return;
+      }
+      DeleteResult result = instances.deleteMany(and(basedOnTemplate, in(LinkedDataFields.ID, ids)));
+      job.addDeletedInstances(result.getDeletedCount());
+      mongoCollections.removeRoutes(CedarNodeType.INSTANCE, ids);
+      changeListener.deleted(CedarNodeType.INSTANCE, ids);
+      if (config.getPauseMillis() > 0) {
+        Thread.sleep(config.getPauseMillis());
+      }
+    }
+  }
+
+  /**
+   * Counts the matching instances with an aggregation rather than the deprecated count(Bson). countDocuments would
+   * do the same, but it needs a 3.8 driver, and $match/$group works on every driver and server this runs against.
+   */
+  private static long countInstances(MongoCollection<Document> instances, Bson basedOnTemplate) {
+    Document result = instances.aggregate(Arrays.asList(Aggregates.match(basedOnTemplate),
+        Aggregates.group(null, Accumulators.sum(F_COUNT, 1)))).first();
+    return result == null ? 0 : ((Number) result.get(F_COUNT)).longValue();
+  }
+
+  private void retire(TemplateDeleteJob job) {
+    finishedJobIds.add(job.getId());
+    while (finishedJobIds.size() > config.getRetainedJobs()) {
+      String oldest = finishedJobIds.poll();
+      if (oldest != null) {
+        jobs.remove(oldest);
+      }
+    }
+  }
+}
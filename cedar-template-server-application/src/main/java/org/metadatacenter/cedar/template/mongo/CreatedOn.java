@@ -0,0 +1,91 @@
+package org.metadatacenter.cedar.template.mongo;
+
+import org.bson.Document;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+
+/**
+ * The creation date of template instances as a UTC instant. 'pav:createdOn' is an ISO-8601 string in the offset it
+ * was recorded in, so its string order is not its time order once instances come from more than one time zone. Every
+ * instance therefore carries a copy of it as a BSON date in '_createdOn', written together with the instance, and the
+ * instance listing filters and sorts on the copy. The copy is internal and never returned.
+ */
+public final class CreatedOn {
+
+  public static final String FIELD = "_createdOn";
+
+  private CreatedOn() {
+  }
+
+  /**
+   * Sets '_createdOn' from 'pav:createdOn', or removes it if the instance has no valid creation date.
+   */
+  public static Document stamp(Document instance) {
+    Date createdOn = parse(instance.get(LinkedDataFields.CREATED_ON));
+    if (createdOn == null) {
+      instance.remove(FIELD);
+    } else {
+      instance.put(FIELD, createdOn);
+    }
+    return instance;
+  }
+
+  /**
+   * The instant of a stored 'pav:createdOn' value, or null if it is not a date-time with an offset.
+   */
+  public static Date parse(Object createdOn) {
+    if (!(createdOn instanceof String)) {
+      return null;
+    }
+    try {
+      return Date.from(OffsetDateTime.parse((String) createdOn).toInstant());
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+
+  /**
+   * A bound of a creation date filter. Besides date-times with an offset, date-times and dates without one are
+   * accepted and taken as UTC, down to a month ("2017-03") or a year ("2017"), which stand for their first instant.
+   *
+   * @throws IllegalArgumentException if the value is none of these
+   */
+  public static Date parseBound(String value) {
+    try {
+      return Date.from(OffsetDateTime.parse(value).toInstant());
+    } catch (DateTimeParseException e) {
+      // not a full date-time with an offset, try the shorter forms
+    }
+    try {
+      return Date.from(LocalDateTime.parse(value).toInstant(ZoneOffset.UTC));
+    } catch (DateTimeParseException e) {
+      // not a local date-time
+    }
+    try {
+      return startOf(LocalDate.parse(value));
+    } catch (DateTimeParseException e) {
+      // not a date
+    }
+    try {
+      return startOf(YearMonth.parse(value).atDay(1));
+    } catch (DateTimeParseException e) {
+      // not a month
+    }
+    try {
+      return startOf(Year.parse(value).atDay(1));
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("Not an ISO-8601 date or date-time: " + value, e);
+    }
+  }
+
+  private static Date startOf(LocalDate day) {
+    return Date.from(day.atStartOfDay(ZoneOffset.UTC).toInstant());
+  }
+}
@@ -0,0 +1,70 @@
+package org.metadatacenter.cedar.template.mongo;
+
+import com.mongodb.client.model.Projections;
+import org.bson.conversions.Bson;
+import org.metadatacenter.server.service.FieldNameInEx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The field list and inclusion mode a caller asked for, translated into a Mongo projection.
+ */
+public class FieldProjection {
+
+  private static final List<String> REQUIRED_FIELDS = Arrays.asList(MongoDocuments.LD_ID_FIELD,
+      VersionedDocumentWriter.VERSION_FIELD);
+
+  private final List<String> fieldNames;
+  private final FieldNameInEx fieldNameInEx;
+
+  public FieldProjection(List<String> fieldNames, FieldNameInEx fieldNameInEx) {
+    this.fieldNames = fieldNames;
+    this.fieldNameInEx = fieldNameInEx;
+  }
+
+  /**
+   * The whole document.
+   */
+  public static FieldProjection all() {
+    return new FieldProjection(Collections.<String>emptyList(), FieldNameInEx.EXCLUDE);
+  }
+
+  public static FieldProjection idOnly() {
+    return new FieldProjection(Collections.singletonList(MongoDocuments.LD_ID_FIELD), FieldNameInEx.INCLUDE);
+  }
+
+  public List<String> getFieldNames() {
+    return fieldNames;
+  }
+
+  public FieldNameInEx getFieldNameInEx() {
+    return fieldNameInEx;
+  }
+
+  /**
+   * The projection always keeps '@id' so that the results can be matched back to the requested ids, and '_version'
+   * so that the caller can report the version of what it returns.
+   */
+  public Bson toBson() {
+    if (fieldNameInEx == FieldNameInEx.INCLUDE) {
+      List<String> included = new ArrayList<>(fieldNames);
+      for (String requiredField : REQUIRED_FIELDS) {
+        if (!included.contains(requiredField)) {
+          included.add(requiredField);
+        }
+      }
+      return Projections.include(included);
+    } else {
+      List<String> excluded = new ArrayList<>(fieldNames);
+      excluded.removeAll(REQUIRED_FIELDS);
+      return Projections.exclude(excluded);
+    }
+  }
+
+  public String cacheKey() {
+    return fieldNameInEx + ":" + String.join(",", fieldNames);
+  }
+}
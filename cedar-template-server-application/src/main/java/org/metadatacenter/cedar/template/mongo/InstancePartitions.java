@@ -0,0 +1,159 @@
+package org.metadatacenter.cedar.template.mongo;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
+
+/**
+ * Spreads template instances over several collections by the template they are based on, so that listing, counting
+ * and deleting the instances of one template only touches one collection and its indexes. The partition of a
+ * template is a stable hash of its id. The partition of an instance is looked up by '@id' in a route collection; routes
+ * are written before the instances, so a route without a document only ever leads to a "not found".
+ * <p>
+ * The number of partitions must not change once instances are stored, because template-scoped operations look only
+ * in the partition computed for the template.
+ */
+public class InstancePartitions {
+
+  private static final String PARTITION_SUFFIX = "-partition-";
+  private static final String ROUTE_SUFFIX = "-partition-routes";
+  private static final String PARTITION_FIELD = "partition";
+  private static final UpdateOptions UPSERT = new UpdateOptions().upsert(true);
+  private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+
+  private final List<MongoCollection<Document>> partitions;
+  private final MongoCollection<Document> routes;
+
+  InstancePartitions(MongoDatabase database, String instanceCollectionName, int count) {
+    List<MongoCollection<Document>> collections = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      collections.add(database.getCollection(instanceCollectionName + PARTITION_SUFFIX + i));
+    }
+    this.partitions = Collections.unmodifiableList(collections);
+    this.routes = database.getCollection(instanceCollectionName + ROUTE_SUFFIX);
+  }
+
+  public List<MongoCollection<Document>> getCollections() {
+    return partitions;
+  }
+
+  public MongoCollection<Document> getCollectionForTemplate(String templateId) {
+    return partitions.get(partitionOf(templateId));
+  }
+
+  public MongoCollection<Document> getCollectionFor(Document instance) {
+    return getCollectionForTemplate(templateIdOf(instance));
+  }
+
+  /**
+   * The partition holding the instance, or null if the instance has no route.
+   */
+  public MongoCollection<Document> findCollectionOf(String id) {
+    Document route = routes.find(eq(MongoDocuments.MONGO_ID_FIELD, id)).first();
+    return route == null ? null : partitions.get(route.getInteger(PARTITION_FIELD));
+  }
+
+  /**
+   * Groups the ids by the partition holding them with a single route query. Ids without a route are left out.
+   */
+  public Map<MongoCollection<Document>, List<String>> groupByCollection(Collection<String> ids) {
+    Map<MongoCollection<Document>, List<String>> groups = new LinkedHashMap<>();
+    for (Document route : routes.find(in(MongoDocuments.MONGO_ID_FIELD, ids)).batchSize(ids.size())) {
+      groups.computeIfAbsent(partitions.get(route.getInteger(PARTITION_FIELD)), partition -> new ArrayList<>())
+          .add(route.getString(MongoDocuments.MONGO_ID_FIELD));
+    }
+    return groups;
+  }
+
+  public void addRoutes(Collection<Document> instances) {
+    List<WriteModel<Document>> upserts = new ArrayList<>(instances.size());
+    for (Document instance : instances) {
+      String id = instance.getString(MongoDocuments.LD_ID_FIELD);
+      Document route = new Document(MongoDocuments.MONGO_ID_FIELD, id)
+          .append(PARTITION_FIELD, partitionOf(templateIdOf(instance)));
+      upserts.add(new ReplaceOneModel<>(eq(MongoDocuments.MONGO_ID_FIELD, id), route, UPSERT));
+    }
+    if (!upserts.isEmpty()) {
+      routes.bulkWrite(upserts, UNORDERED);
+    }
+  }
+
+  public void removeRoutes(Collection<String> ids) {
+    if (!ids.isEmpty()) {
+      routes.deleteMany(in(MongoDocuments.MONGO_ID_FIELD, ids));
+    }
+  }
+
+  /**
+   * The services look instances up by '@id', which the partitions have to index like the instance collection.
+   */
+  public void createIndexes() {
+    for (MongoCollection<Document> partition : partitions) {
+      partition.createIndex(Indexes.ascending(MongoDocuments.LD_ID_FIELD), new IndexOptions().background(true));
+    }
+  }
+
+  /**
+   * Moves the instances of an unpartitioned instance collection into the partitions, batch by batch. Every batch is
+   * routed and upserted by '_id' before it is removed from the source, so an interrupted move can simply be run again.
+   *
+   * @return the number of moved instances
+   */
+  public long moveFrom(MongoCollection<Document> source, int batchSize) {
+    long moved = 0;
+    while (true) {
+      List<Document> batch = new ArrayList<>(batchSize);
+      source.find().sort(Sorts.ascending(MongoDocuments.MONGO_ID_FIELD)).limit(batchSize).into(batch);
+      if (batch.isEmpty()) {
+        return moved;
+      }
+      addRoutes(batch);
+      Map<MongoCollection<Document>, List<WriteModel<Document>>> writes = new LinkedHashMap<>();
+      List<Object> ids = new ArrayList<>(batch.size());
+      for (Document instance : batch) {
+        Object id = instance.get(MongoDocuments.MONGO_ID_FIELD);
+        writes.computeIfAbsent(getCollectionFor(instance), partition -> new ArrayList<>())
+            .add(new ReplaceOneModel<>(eq(MongoDocuments.MONGO_ID_FIELD, id), instance, UPSERT));
+        ids.add(id);
+      }
+      for (Map.Entry<MongoCollection<Document>, List<WriteModel<Document>>> write : writes.entrySet()) {
+        write.getKey().bulkWrite(write.getValue(), UNORDERED);
+      }
+      source.deleteMany(in(MongoDocuments.MONGO_ID_FIELD, ids));
+      moved += batch.size();
+    }
+  }
+
+  int partitionOf(String templateId) {
+    if (templateId == null) {
+      return 0;
+    }
+    CRC32 crc = new CRC32();
+    crc.update(templateId.getBytes(StandardCharsets.UTF_8));
+    return (int) (crc.getValue() % partitions.size());
+  }
+
+  private static String templateIdOf(Document instance) {
+    Object templateId = instance.get(LinkedDataFields.IS_BASED_ON);
+    return templateId instanceof String ? (String) templateId : null;
+  }
+}
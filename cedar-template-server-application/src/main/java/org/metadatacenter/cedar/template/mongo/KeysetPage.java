@@ -0,0 +1,27 @@
+package org.metadatacenter.cedar.template.mongo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.List;
+
+public class KeysetPage {
+
+  private final List<JsonNode> items;
+  private final String nextCursor;
+
+  public KeysetPage(List<JsonNode> items, String nextCursor) {
+    this.items = items;
+    this.nextCursor = nextCursor;
+  }
+
+  public List<JsonNode> getItems() {
+    return items;
+  }
+
+  /**
+   * The cursor of the following page, or null if this is the last page.
+   */
+  public String getNextCursor() {
+    return nextCursor;
+  }
+}
@@ -0,0 +1,17 @@
+package org.metadatacenter.cedar.template.mongo;
+
+/**
+ * Names of the JSON-LD properties the server queries on directly.
+ */
+public final class LinkedDataFields {
+
+  public static final String ID = "@id";
+  public static final String IS_BASED_ON = "schema:isBasedOn";
+  public static final String CREATED_ON = "pav:createdOn";
+  public static final String CREATED_BY = "pav:createdBy";
+  public static final String LAST_UPDATED_ON = "pav:lastUpdatedOn";
+  public static final String MODIFIED_BY = "oslc:modifiedBy";
+
+  private LinkedDataFields() {
+  }
+}
@@ -0,0 +1,22 @@
+package org.metadatacenter.cedar.template.mongo;
+
+import com.mongodb.MongoClient;
+import io.dropwizard.lifecycle.Managed;
+
+public class ManagedMongoClient implements Managed {
+
+  private final MongoClient mongoClient;
+
+  public ManagedMongoClient(MongoClient mongoClient) {
+    this.mongoClient = mongoClient;
+  }
+
+  @Override
+  public void start() {
+  }
+
+  @Override
+  public void stop() {
+    mongoClient.close();
+  }
+}
@@ -0,0 +1,31 @@
+package org.metadatacenter.cedar.template.mongo;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoCredential;
+import com.mongodb.ServerAddress;
+import org.metadatacenter.config.CedarConfig;
+import org.metadatacenter.config.MongoConfig;
+
+import java.util.Collections;
+
+/**
+ * Connects to the Mongo server of the CEDAR configuration, the one the template services use, so the collections
+ * read and written directly are always the ones the services see.
+ */
+public final class MongoClientFactory {
+
+  private MongoClientFactory() {
+  }
+
+  public static MongoClient build(CedarConfig cedarConfig) {
+    MongoConfig mongoConfig = cedarConfig.getMongoConfig();
+    ServerAddress address = new ServerAddress(mongoConfig.getHost(), mongoConfig.getPort());
+    String user = mongoConfig.getUser();
+    if (user == null || user.isEmpty()) {
+      return new MongoClient(address);
+    }
+    MongoCredential credential = MongoCredential.createCredential(user, mongoConfig.getDatabaseName(),
+        mongoConfig.getPassword().toCharArray());
+    return new MongoClient(address, Collections.singletonList(credential));
+  }
+}
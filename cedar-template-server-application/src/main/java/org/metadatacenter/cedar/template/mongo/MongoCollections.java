@@ -0,0 +1,146 @@
+package org.metadatacenter.cedar.template.mongo;
+
+import com.mongodb.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+import org.metadatacenter.cedar.template.config.InstancePartitionConfig;
+import org.metadatacenter.config.CedarConfig;
+import org.metadatacenter.model.CedarNodeType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Direct access to the collections that back the template services. Used by the code paths that need Mongo
+ * features the generic services do not expose (bulk writes, projections, conditional updates).
+ * <p>
+ * When instance partitioning is enabled, instances are not stored in the instance collection but spread over the
+ * partitions of {@link InstancePartitions}. The methods taking a node type together with an id, a document or a
+ * template id resolve the collection that actually holds the instances, and are the same as
+ * {@link #getCollection(CedarNodeType)} for every other case.
+ */
+public class MongoCollections {
+
+  private final Function<CedarNodeType, String> collectionNames;
+  private final MongoDatabase database;
+  private final InstancePartitions instancePartitions;
+  private final Map<String, MongoCollection<Document>> collections = new ConcurrentHashMap<>();
+
+  public MongoCollections(CedarConfig cedarConfig, MongoClient mongoClient, InstancePartitionConfig partitionConfig) {
+    this(mongoClient.getDatabase(cedarConfig.getMongoConfig().getDatabaseName()), cedarConfig::getMongoCollectionName,
+        partitionConfig);
+  }
+
+  /**
+   * @param collectionNames the name of the collection of each node type
+   */
+  public MongoCollections(MongoDatabase database, Function<CedarNodeType, String> collectionNames,
+                          InstancePartitionConfig partitionConfig) {
+    this.collectionNames = collectionNames;
+    this.database = database;
+    this.instancePartitions = partitionConfig.isEnabled() ? new InstancePartitions(database,
+        getCollectionName(CedarNodeType.INSTANCE), partitionConfig.getPartitions()) : null;
+  }
+
+  public MongoCollection<Document> getCollection(CedarNodeType nodeType) {
+    return getCollection(collectionNames.apply(nodeType));
+  }
+
+  /**
+   * Returns the same instance for every call with the same name, so collections can be used as map keys.
+   */
+  public MongoCollection<Document> getCollection(String collectionName) {
+    return collections.computeIfAbsent(collectionName, database::getCollection);
+  }
+
+  public String getCollectionName(CedarNodeType nodeType) {
+    return collectionNames.apply(nodeType);
+  }
+
+  public boolean isPartitioned(CedarNodeType nodeType) {
+    return nodeType == CedarNodeType.INSTANCE && instancePartitions != null;
+  }
+
+  /**
+   * The partitions, or null if instances are not partitioned.
+   */
+  public InstancePartitions getInstancePartitions() {
+    return instancePartitions;
+  }
+
+  /**
+   * All collections holding documents of the type.
+   */
+  public List<MongoCollection<Document>> getCollections(CedarNodeType nodeType) {
+    if (isPartitioned(nodeType)) {
+      return instancePartitions.getCollections();
+    }
+    return Collections.singletonList(getCollection(nodeType));
+  }
+
+  /**
+   * The collection holding the document with the given '@id', or null if it is a partitioned instance that does not
+   * exist.
+   */
+  public MongoCollection<Document> findCollectionOf(CedarNodeType nodeType, String id) {
+    if (isPartitioned(nodeType)) {
+      return instancePartitions.findCollectionOf(id);
+    }
+    return getCollection(nodeType);
+  }
+
+  /**
+   * Groups the ids by the collection holding them. Partitioned instances that do not exist are left out.
+   */
+  public Map<MongoCollection<Document>, List<String>> groupByCollection(CedarNodeType nodeType,
+                                                                        Collection<String> ids) {
+    if (isPartitioned(nodeType)) {
+      return instancePartitions.groupByCollection(ids);
+    }
+    Map<MongoCollection<Document>, List<String>> groups = new HashMap<>();
+    groups.put(getCollection(nodeType), new ArrayList<>(ids));
+    return groups;
+  }
+
+  /**
+   * The collection a new document is written to.
+   */
+  public MongoCollection<Document> getCollectionFor(CedarNodeType nodeType, Document document) {
+    if (isPartitioned(nodeType)) {
+      return instancePartitions.getCollectionFor(document);
+    }
+    return getCollection(nodeType);
+  }
+
+  /**
+   * The collection holding the instances based on the template.
+   */
+  public MongoCollection<Document> getInstanceCollection(String templateId) {
+    if (instancePartitions != null) {
+      return instancePartitions.getCollectionForTemplate(templateId);
+    }
+    return getCollection(CedarNodeType.INSTANCE);
+  }
+
+  /**
+   * Records where new documents are written. Has to be called before the documents themselves are written.
+   */
+  public void addRoutes(CedarNodeType nodeType, Collection<Document> documents) {
+    if (isPartitioned(nodeType)) {
+      instancePartitions.addRoutes(documents);
+    }
+  }
+
+  public void removeRoutes(CedarNodeType nodeType, Collection<String> ids) {
+    if (isPartitioned(nodeType)) {
+      instancePartitions.removeRoutes(ids);
+    }
+  }
+}
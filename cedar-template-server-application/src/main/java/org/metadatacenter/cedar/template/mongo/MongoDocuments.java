@@ -0,0 +1,128 @@
+package org.metadatacenter.cedar.template.mongo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Conversion between JSON-LD trees and BSON documents. Mongo does not accept keys starting with '$' (JSON Schema uses
+ * "$schema"), so those are stored with a '_' prefix, the same convention the Mongo services use.
+ * <p>
+ * BSON values are converted to plain JSON values, not to extended JSON: 64-bit integers stay numbers, dates become
+ * ISO-8601 strings and object ids their hex string, so responses never carry {"$numberLong": ...} style wrappers.
+ * The '_id' and the internal '_createdOn' copy of the creation date are left out.
+ */
+public final class MongoDocuments {
+
+  public static final String MONGO_ID_FIELD = "_id";
+  public static final String LD_ID_FIELD = "@id";
+
+  private static final String ESCAPED_PREFIX = "_$";
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+  private MongoDocuments() {
+  }
+
+  public static Document toDocument(JsonNode node) throws IOException {
+    JsonNode escaped = renameKeys(node.deepCopy(), true);
+    return Document.parse(MAPPER.writeValueAsString(escaped));
+  }
+
+  public static List<Document> toDocuments(List<JsonNode> nodes) throws IOException {
+    List<Document> documents = new ArrayList<>(nodes.size());
+    for (JsonNode node : nodes) {
+      documents.add(toDocument(node));
+    }
+    return documents;
+  }
+
+  public static JsonNode toJsonNode(Document document) throws IOException {
+    ObjectNode node = FACTORY.objectNode();
+    for (Map.Entry<String, Object> entry : document.entrySet()) {
+      if (!MONGO_ID_FIELD.equals(entry.getKey()) && !CreatedOn.FIELD.equals(entry.getKey())) {
+        node.set(entry.getKey(), toJsonValue(entry.getValue()));
+      }
+    }
+    return renameKeys(node, false);
+  }
+
+  private static JsonNode toJsonValue(Object value) {
+    if (value == null) {
+      return FACTORY.nullNode();
+    } else if (value instanceof Map) {
+      ObjectNode object = FACTORY.objectNode();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        object.set(String.valueOf(entry.getKey()), toJsonValue(entry.getValue()));
+      }
+      return object;
+    } else if (value instanceof List) {
+      ArrayNode array = FACTORY.arrayNode();
+      for (Object item : (List<?>) value) {
+        array.add(toJsonValue(item));
+      }
+      return array;
+    } else if (value instanceof String) {
+      return FACTORY.textNode((String) value);
+    } else if (value instanceof Boolean) {
+      return FACTORY.booleanNode((Boolean) value);
+    } else if (value instanceof Integer) {
+      return FACTORY.numberNode((Integer) value);
+    } else if (value instanceof Long) {
+      return FACTORY.numberNode((Long) value);
+    } else if (value instanceof Double) {
+      return FACTORY.numberNode((Double) value);
+    } else if (value instanceof Number) {
+      // Decimal128; NaN and infinities have no JSON number form
+      try {
+        return FACTORY.numberNode(new BigDecimal(value.toString()));
+      } catch (NumberFormatException e) {
+        return FACTORY.textNode(value.toString());
+      }
+    } else if (value instanceof Date) {
+      return FACTORY.textNode(((Date) value).toInstant().toString());
+    } else if (value instanceof ObjectId) {
+      return FACTORY.textNode(((ObjectId) value).toHexString());
+    }
+    return FACTORY.textNode(value.toString());
+  }
+
+  private static JsonNode renameKeys(JsonNode node, boolean toMongo) {
+    if (node.isObject()) {
+      ObjectNode object = (ObjectNode) node;
+      List<String> names = new ArrayList<>();
+      object.fieldNames().forEachRemaining(names::add);
+      for (String name : names) {
+        JsonNode child = renameKeys(object.get(name), toMongo);
+        String newName = name;
+        if (toMongo && name.startsWith("$")) {
+          newName = "_" + name;
+        } else if (!toMongo && name.startsWith(ESCAPED_PREFIX)) {
+          newName = name.substring(1);
+        }
+        if (!newName.equals(name)) {
+          object.remove(name);
+        }
+        object.set(newName, child);
+      }
+    } else if (node.isArray()) {
+      ArrayNode array = (ArrayNode) node;
+      for (int i = 0; i < array.size(); i++) {
+        array.set(i, renameKeys(array.get(i), toMongo));
+      }
+    }
+    return node;
+  }
+
+}
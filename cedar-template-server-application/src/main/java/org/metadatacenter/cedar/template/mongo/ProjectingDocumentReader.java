@@ -0,0 +1,78 @@
+package org.metadatacenter.cedar.template.mongo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import org.bson.Document;
+import org.metadatacenter.cedar.template.trace.Span;
+import org.metadatacenter.cedar.template.trace.Tracing;
+import org.metadatacenter.model.CedarNodeType;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
+
+/**
+ * Reads documents by '@id' and lets Mongo apply the projection, so that fields the caller did not ask for are never
+ * transferred or deserialized.
+ */
+public class ProjectingDocumentReader {
+
+  private final MongoCollections mongoCollections;
+
+  public ProjectingDocumentReader(MongoCollections mongoCollections) {
+    this.mongoCollections = mongoCollections;
+  }
+
+  public JsonNode findById(CedarNodeType nodeType, String id, FieldProjection projection) throws IOException {
+    try (Span span = Tracing.startSpan("mongo.findById")) {
+      span.attribute("type", nodeType);
+      MongoCollection<Document> collection = mongoCollections.findCollectionOf(nodeType, id);
+      if (collection == null) {
+        return null;
+      }
+      Document document = collection
+          .find(eq(MongoDocuments.LD_ID_FIELD, id))
+          .projection(projection.toBson())
+          .first();
+      return document == null ? null : MongoDocuments.toJsonNode(document);
+    } catch (MongoException e) {
+      throw new IOException("Error while reading " + nodeType + " " + id, e);
+    }
+  }
+
+  /**
+   * Loads all the given ids with a single '$in' query per collection holding them. Ids that do not exist are missing
+   * from the returned map.
+   */
+  public Map<String, JsonNode> findByIds(CedarNodeType nodeType, Iterable<String> ids, FieldProjection projection)
+      throws IOException {
+    LinkedHashSet<String> distinctIds = new LinkedHashSet<>();
+    ids.forEach(distinctIds::add);
+    Map<String, JsonNode> found = new HashMap<>();
+    if (distinctIds.isEmpty()) {
+      return found;
+    }
+    try (Span span = Tracing.startSpan("mongo.findByIds")) {
+      span.attribute("type", nodeType).attribute("ids", distinctIds.size());
+      for (Map.Entry<MongoCollection<Document>, List<String>> group : mongoCollections.groupByCollection(nodeType,
+          distinctIds).entrySet()) {
+        for (Document document : group.getKey()
+            .find(in(MongoDocuments.LD_ID_FIELD, group.getValue()))
+            .projection(projection.toBson())
+            .batchSize(group.getValue().size())) {
+          found.put(document.getString(MongoDocuments.LD_ID_FIELD), MongoDocuments.toJsonNode(document));
+        }
+      }
+    } catch (MongoException e) {
+      throw new IOException("Error while reading " + distinctIds.size() + " documents of type " + nodeType,
+          e);
+    }
+    return found;
+  }
+}
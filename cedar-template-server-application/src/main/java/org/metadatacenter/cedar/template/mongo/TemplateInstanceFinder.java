@@ -0,0 +1,283 @@
+package org.metadatacenter.cedar.template.mongo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import io.dropwizard.lifecycle.Managed;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.metadatacenter.cedar.template.trace.Span;
+import org.metadatacenter.cedar.template.trace.Tracing;
+import org.metadatacenter.model.CedarNodeType;
+import org.metadatacenter.server.service.FieldNameInEx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gt;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Filters.lt;
+import static com.mongodb.client.model.Filters.ne;
+import static com.mongodb.client.model.Filters.or;
+
+/**
+ * Lists template instances filtered by template, creator and creation date. Results are ordered by creation date and
+ * '_id' and paged with a keyset cursor instead of an offset, so every page is a range scan on one of the compound
+ * indexes built in the background at startup:
+ * <ul>
+ * <li>schema:isBasedOn, _createdOn, _id</li>
+ * <li>pav:createdBy, _createdOn, _id</li>
+ * <li>_createdOn, _id</li>
+ * </ul>
+ * Creation dates are compared as UTC instants (see {@link CreatedOn}), so instances recorded in different offsets
+ * sort by time. Bounds may be shortened to a date, month or year, like "2017-03", and are then taken as UTC.
+ * Instances written before '_createdOn' existed are given one by the backfill-created-on command; until then they
+ * sort first and match no date bound.
+ * <p>
+ * With partitioned instances a query for one template only reads the partition of the template. Other queries read
+ * the next page from every partition and merge them; the cursor stays valid across partitions because it is a
+ * position in the global order.
+ */
+public class TemplateInstanceFinder implements Managed {
+
+  private static final Logger log = LoggerFactory.getLogger(TemplateInstanceFinder.class);
+
+  private static final Bson SORT = Sorts.ascending(CreatedOn.FIELD, MongoDocuments.MONGO_ID_FIELD);
+  private static final Comparator<Document> CURSOR_ORDER = Comparator
+      .comparing((Document document) -> document.getDate(CreatedOn.FIELD),
+          Comparator.nullsFirst(Comparator.naturalOrder()))
+      .thenComparing(document -> document.getObjectId(MongoDocuments.MONGO_ID_FIELD));
+  private static final int OBJECT_ID_HEX_LENGTH = 24;
+  private static final char CURSOR_SEPARATOR = ':';
+  private static final int BACKFILL_BATCH_SIZE = 1000;
+  private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+
+  private final MongoCollections mongoCollections;
+
+  public TemplateInstanceFinder(MongoCollections mongoCollections) {
+    this.mongoCollections = mongoCollections;
+  }
+
+  /**
+   * Builds the listing indexes on a background thread; on a large instance collection the first build takes long
+   * enough to hold up the startup, and the listings only run slower until it is done.
+   */
+  @Override
+  public void start() {
+    Thread thread = new Thread(this::createIndexes, "instance-index-build");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @Override
+  public void stop() {
+  }
+
+  private void createIndexes() {
+    long start = System.currentTimeMillis();
+    try {
+      IndexOptions options = new IndexOptions().background(true);
+      for (MongoCollection<Document> instances : mongoCollections.getCollections(CedarNodeType.INSTANCE)) {
+        instances.createIndex(Indexes.ascending(LinkedDataFields.IS_BASED_ON, CreatedOn.FIELD,
+            MongoDocuments.MONGO_ID_FIELD), options);
+        instances.createIndex(Indexes.ascending(LinkedDataFields.CREATED_BY, CreatedOn.FIELD,
+            MongoDocuments.MONGO_ID_FIELD), options);
+        instances.createIndex(Indexes.ascending(CreatedOn.FIELD, MongoDocuments.MONGO_ID_FIELD), options);
+      }
+      if (mongoCollections.isPartitioned(CedarNodeType.INSTANCE)) {
+        mongoCollections.getInstancePartitions().createIndexes();
+      }
+      log.info("Instance indexes ready in " + (System.currentTimeMillis() - start) + " ms");
+    } catch (MongoException e) {
+      log.error("Could not create the instance indexes", e);
+    }
+  }
+
+  /**
+   * Gives '_createdOn' to the instances that have a creation date but no normalized copy of it yet, the ones written
+   * before it existed. Run by the backfill-created-on command.
+   *
+   * @return the number of stamped instances
+   */
+  public long backfillCreatedOn() {
+    long count = 0;
+    for (MongoCollection<Document> instances : mongoCollections.getCollections(CedarNodeType.INSTANCE)) {
+      long stamped = backfillCreatedOn(instances);
+      if (stamped > 0) {
+        log.info("Normalized the creation date of " + stamped + " instances in "
+            + instances.getNamespace().getCollectionName());
+      }
+      count += stamped;
+    }
+    return count;
+  }
+
+  private static long backfillCreatedOn(MongoCollection<Document> instances) {
+    long count = 0;
+    List<WriteModel<Document>> batch = new ArrayList<>(BACKFILL_BATCH_SIZE);
+    for (Document document : instances.find(eq(CreatedOn.FIELD, null))
+        .projection(Projections.include(LinkedDataFields.CREATED_ON))) {
+      Date createdOn = CreatedOn.parse(document.get(LinkedDataFields.CREATED_ON));
+      if (createdOn == null) {
+        continue;
+      }
+      batch.add(new UpdateOneModel<>(eq(MongoDocuments.MONGO_ID_FIELD, document.get(MongoDocuments.MONGO_ID_FIELD)),
+          Updates.set(CreatedOn.FIELD, createdOn)));
+      if (batch.size() == BACKFILL_BATCH_SIZE) {
+        count += instances.bulkWrite(batch, UNORDERED).getModifiedCount();
+        batch = new ArrayList<>(BACKFILL_BATCH_SIZE);
+      }
+    }
+    if (!batch.isEmpty()) {
+      count += instances.bulkWrite(batch, UNORDERED).getModifiedCount();
+    }
+    return count;
+  }
+
+  /**
+   * @throws IllegalArgumentException if a creation date bound or the cursor of the query is invalid; the message
+   *                                  names the parameter
+   */
+  public KeysetPage find(TemplateInstanceQuery query, int limit, FieldProjection projection) throws IOException {
+    Bson filter = buildFilter(query);
+    FieldProjection readProjection = projection;
+    // the normalized creation date is part of the cursor, so it is read even though it is never returned
+    if (projection.getFieldNameInEx() == FieldNameInEx.INCLUDE) {
+      List<String> fieldNames = new ArrayList<>(projection.getFieldNames());
+      fieldNames.add(CreatedOn.FIELD);
+      readProjection = new FieldProjection(fieldNames, FieldNameInEx.INCLUDE);
+    } else if (projection.getFieldNames().contains(CreatedOn.FIELD)) {
+      List<String> fieldNames = new ArrayList<>(projection.getFieldNames());
+      fieldNames.remove(CreatedOn.FIELD);
+      readProjection = new FieldProjection(fieldNames, FieldNameInEx.EXCLUDE);
+    }
+    try (Span span = Tracing.startSpan("mongo.findInstances")) {
+      span.attribute("limit", limit);
+      List<MongoCollection<Document>> collections = query.getTemplateId() != null
+          ? Collections.singletonList(mongoCollections.getInstanceCollection(query.getTemplateId()))
+          : mongoCollections.getCollections(CedarNodeType.INSTANCE);
+      List<Document> documents = new ArrayList<>(limit + 1);
+      for (MongoCollection<Document> collection : collections) {
+        collection
+            .find(filter)
+            .projection(readProjection.toBson())
+            .sort(SORT)
+            .limit(limit + 1)
+            .into(documents);
+      }
+      if (collections.size() > 1) {
+        // every partition returned its first limit + 1 matches; the first limit + 1 of the merge are the page
+        documents.sort(CURSOR_ORDER);
+        if (documents.size() > limit + 1) {
+          documents = documents.subList(0, limit + 1);
+        }
+      }
+      String nextCursor = null;
+      if (documents.size() > limit) {
+        documents = documents.subList(0, limit);
+        nextCursor = encodeCursor(documents.get(limit - 1));
+      }
+      List<JsonNode> items = new ArrayList<>(documents.size());
+      for (Document document : documents) {
+        items.add(MongoDocuments.toJsonNode(document));
+      }
+      return new KeysetPage(items, nextCursor);
+    } catch (MongoException e) {
+      throw new IOException("Error while listing template instances", e);
+    }
+  }
+
+  private static Bson buildFilter(TemplateInstanceQuery query) {
+    List<Bson> filters = new ArrayList<>();
+    if (query.getTemplateId() != null) {
+      filters.add(eq(LinkedDataFields.IS_BASED_ON, query.getTemplateId()));
+    }
+    if (query.getCreatedBy() != null) {
+      filters.add(eq(LinkedDataFields.CREATED_BY, query.getCreatedBy()));
+    }
+    if (query.getCreatedAfter() != null) {
+      filters.add(gte(CreatedOn.FIELD, parseBound(query.getCreatedAfter(), "created_after")));
+    }
+    if (query.getCreatedBefore() != null) {
+      filters.add(lt(CreatedOn.FIELD, parseBound(query.getCreatedBefore(), "created_before")));
+    }
+    if (query.getAfter() != null) {
+      filters.add(afterCursor(query.getAfter()));
+    }
+    return filters.isEmpty() ? new Document() : and(filters);
+  }
+
+  private static Date parseBound(String value, String parameter) {
+    try {
+      return CreatedOn.parseBound(value);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Parameter '" + parameter + "' must be an ISO-8601 date or date-time!", e);
+    }
+  }
+
+  /**
+   * Everything sorted after the cursor position. Instances without a creation date sort first.
+   */
+  private static Bson afterCursor(String cursor) {
+    String decoded;
+    try {
+      decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException e) {
+      throw invalidCursor(e);
+    }
+    if (decoded.length() < OBJECT_ID_HEX_LENGTH || !ObjectId.isValid(decoded.substring(0, OBJECT_ID_HEX_LENGTH))) {
+      throw invalidCursor(null);
+    }
+    ObjectId lastId = new ObjectId(decoded.substring(0, OBJECT_ID_HEX_LENGTH));
+    if (decoded.length() == OBJECT_ID_HEX_LENGTH) {
+      return or(ne(CreatedOn.FIELD, null),
+          and(eq(CreatedOn.FIELD, null), gt(MongoDocuments.MONGO_ID_FIELD, lastId)));
+    }
+    if (decoded.charAt(OBJECT_ID_HEX_LENGTH) != CURSOR_SEPARATOR) {
+      throw invalidCursor(null);
+    }
+    Date lastCreatedOn;
+    try {
+      lastCreatedOn = new Date(Long.parseLong(decoded.substring(OBJECT_ID_HEX_LENGTH + 1)));
+    } catch (NumberFormatException e) {
+      throw invalidCursor(e);
+    }
+    return or(gt(CreatedOn.FIELD, lastCreatedOn),
+        and(eq(CreatedOn.FIELD, lastCreatedOn), gt(MongoDocuments.MONGO_ID_FIELD, lastId)));
+  }
+
+  private static IllegalArgumentException invalidCursor(Exception cause) {
+    return new IllegalArgumentException("Parameter 'after' must be a cursor returned in a 'next' link!", cause);
+  }
+
+  /**
+   * The '_id' of the last instance, followed by its normalized creation date in epoch milliseconds if it has one.
+   */
+  private static String encodeCursor(Document last) {
+    StringBuilder cursor = new StringBuilder(last.getObjectId(MongoDocuments.MONGO_ID_FIELD).toHexString());
+    Date createdOn = last.getDate(CreatedOn.FIELD);
+    if (createdOn != null) {
+      cursor.append(CURSOR_SEPARATOR).append(createdOn.getTime());
+    }
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.toString().getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,63 @@
+package org.metadatacenter.cedar.template.mongo;
+
+/**
+ * Filters for listing template instances. All filters are optional; 'after' is the keyset cursor returned with the
+ * previous page.
+ */
+public class TemplateInstanceQuery {
+
+  private String templateId;
+  private String createdBy;
+  private String createdAfter;
+  private String createdBefore;
+  private String after;
+
+  public TemplateInstanceQuery templateId(String templateId) {
+    this.templateId = templateId;
+    return this;
+  }
+
+  public TemplateInstanceQuery createdBy(String createdBy) {
+    this.createdBy = createdBy;
+    return this;
+  }
+
+  public TemplateInstanceQuery createdAfter(String createdAfter) {
+    this.createdAfter = createdAfter;
+    return this;
+  }
+
+  public TemplateInstanceQuery createdBefore(String createdBefore) {
+    this.createdBefore = createdBefore;
+    return this;
+  }
+
+  public TemplateInstanceQuery after(String after) {
+    this.after = after;
+    return this;
+  }
+
+  public String getTemplateId() {
+    return templateId;
+  }
+
+  public String getCreatedBy() {
+    return createdBy;
+  }
+
+  public String getCreatedAfter() {
+    return createdAfter;
+  }
+
+  public String getCreatedBefore() {
+    return createdBefore;
+  }
+
+  public String getAfter() {
+    return after;
+  }
+
+  public boolean isEmpty() {
+    return templateId == null && createdBy == null && createdAfter == null && createdBefore == null && after == null;
+  }
+}
@@ -0,0 +1,194 @@
+package org.metadatacenter.cedar.template.mongo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.metadatacenter.cedar.template.trace.Span;
+import org.metadatacenter.cedar.template.trace.Tracing;
+import org.metadatacenter.model.CedarNodeType;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.exists;
+import static com.mongodb.client.model.Filters.or;
+
+/**
+ * Applies updates together with a monotonically increasing '_version' field in one atomic findOneAndUpdate. When an
+ * expected version is given, the update only matches if the stored version is still the same. Documents written
+ * before versioning was introduced have no '_version' field and are treated as version 0.
+ * <p>
+ * The modifications are applied with '$set', the same way the Mongo services update documents. With partitioned
+ * instances an update that changes the template an instance is based on is refused, since the instance would stay
+ * in the partition of its old template.
+ */
+public class VersionedDocumentWriter {
+
+  public static final String VERSION_FIELD = "_version";
+
+  private static final String NUMBER_LONG = "$numberLong";
+
+  private final MongoCollections mongoCollections;
+
+  public VersionedDocumentWriter(MongoCollections mongoCollections) {
+    this.mongoCollections = mongoCollections;
+  }
+
+  public VersionedUpdate update(CedarNodeType nodeType, String id, JsonNode modifications, Long expectedVersion)
+      throws IOException {
+    MongoCollection<Document> collection;
+    try {
+      collection = mongoCollections.findCollectionOf(nodeType, id);
+    } catch (MongoException e) {
+      throw new IOException("Error while updating " + nodeType + " " + id, e);
+    }
+    if (collection == null) {
+      return VersionedUpdate.notFound();
+    }
+    return update(nodeType, collection, id, modifications, expectedVersion);
+  }
+
+  /**
+   * Checks with a projected read whether an update with the expected version can apply, before the caller does work
+   * that has side effects of its own (like saving the nested fields of a template). Returns null if it can, and the
+   * not found or version mismatch result the update would return otherwise. A concurrent update can still make the
+   * update itself fail afterwards; this only keeps the common 404 and 412 cases free of side effects.
+   */
+  public VersionedUpdate precheck(CedarNodeType nodeType, String id, Long expectedVersion) throws IOException {
+    try {
+      MongoCollection<Document> collection = mongoCollections.findCollectionOf(nodeType, id);
+      Document current = collection == null ? null : collection.find(eq(MongoDocuments.LD_ID_FIELD, id))
+          .projection(Projections.include(VERSION_FIELD))
+          .first();
+      if (current == null) {
+        return VersionedUpdate.notFound();
+      }
+      long currentVersion = getVersion(current);
+      if (expectedVersion != null && expectedVersion != currentVersion) {
+        return VersionedUpdate.versionMismatch(currentVersion);
+      }
+      return null;
+    } catch (MongoException e) {
+      throw new IOException("Error while reading the version of " + nodeType + " " + id, e);
+    }
+  }
+
+  public VersionedUpdate update(CedarNodeType nodeType, MongoCollection<Document> collection, String id,
+                                JsonNode modifications, Long expectedVersion) throws IOException {
+    ObjectNode changes = (ObjectNode) modifications.deepCopy();
+    changes.remove(MongoDocuments.MONGO_ID_FIELD);
+    changes.remove(VERSION_FIELD);
+    changes.remove(CreatedOn.FIELD);
+
+    Bson filter = eq(MongoDocuments.LD_ID_FIELD, id);
+    if (expectedVersion != null) {
+      filter = and(filter, versionFilter(expectedVersion));
+    }
+    boolean keepTemplate = nodeType == CedarNodeType.INSTANCE && mongoCollections.isPartitioned(nodeType)
+        && changes.has(LinkedDataFields.IS_BASED_ON);
+    String basedOn = keepTemplate && !changes.get(LinkedDataFields.IS_BASED_ON).isNull()
+        ? changes.get(LinkedDataFields.IS_BASED_ON).asText() : null;
+    if (keepTemplate) {
+      // a partitioned instance is stored in the partition of its template, so it can not move to another template
+      filter = and(filter, eq(LinkedDataFields.IS_BASED_ON, basedOn));
+    }
+    Document set = MongoDocuments.toDocument(changes);
+    Document update = new Document("$set", set)
+        .append("$inc", new Document(VERSION_FIELD, 1L));
+    if (nodeType == CedarNodeType.INSTANCE && set.containsKey(LinkedDataFields.CREATED_ON)) {
+      // keep the normalized creation date the instance listing sorts on in step with the new one
+      Date createdOn = CreatedOn.parse(set.get(LinkedDataFields.CREATED_ON));
+      if (createdOn != null) {
+        set.put(CreatedOn.FIELD, createdOn);
+      } else {
+        update.append("$unset", new Document(CreatedOn.FIELD, ""));
+      }
+    }
+    try (Span span = Tracing.startSpan("mongo.versionedUpdate")) {
+      span.attribute("collection", collection.getNamespace().getCollectionName());
+      Document before = collection.findOneAndUpdate(filter, update,
+          new FindOneAndUpdateOptions().returnDocument(ReturnDocument.BEFORE));
+      if (before != null) {
+        JsonNode beforeNode = MongoDocuments.toJsonNode(before);
+        ObjectNode afterNode = (ObjectNode) beforeNode.deepCopy();
+        Iterator<Map.Entry<String, JsonNode>> fields = changes.fields();
+        while (fields.hasNext()) {
+          Map.Entry<String, JsonNode> field = fields.next();
+          afterNode.set(field.getKey(), field.getValue());
+        }
+        long newVersion = getVersion(beforeNode) + 1;
+        afterNode.put(VERSION_FIELD, newVersion);
+        return VersionedUpdate.updated(beforeNode, afterNode, newVersion);
+      }
+      Document current = collection.find(eq(MongoDocuments.LD_ID_FIELD, id))
+          .projection(Projections.include(VERSION_FIELD, LinkedDataFields.IS_BASED_ON))
+          .first();
+      if (current == null) {
+        return VersionedUpdate.notFound();
+      } else if (keepTemplate && !Objects.equals(basedOn, current.getString(LinkedDataFields.IS_BASED_ON))) {
+        return VersionedUpdate.templateChanged();
+      }
+      return VersionedUpdate.versionMismatch(getVersion(current));
+    } catch (MongoException e) {
+      throw new IOException("Error while updating " + id, e);
+    }
+  }
+
+  public static Bson versionFilter(long expectedVersion) {
+    if (expectedVersion == 0) {
+      return or(eq(VERSION_FIELD, 0L), exists(VERSION_FIELD, false));
+    }
+    return eq(VERSION_FIELD, expectedVersion);
+  }
+
+  /**
+   * The version of a document, 0 if it has none. Documents read through the Mongo services render the int64 version
+   * as extended JSON, {"$numberLong": "3"}, which is understood as well.
+   */
+  public static long getVersion(JsonNode node) {
+    JsonNode version = node.get(VERSION_FIELD);
+    if (version != null && version.isObject()) {
+      version = version.get(NUMBER_LONG);
+    }
+    if (version == null) {
+      return 0;
+    } else if (version.isNumber()) {
+      return version.asLong();
+    } else if (version.isTextual()) {
+      try {
+        return Long.parseLong(version.asText());
+      } catch (NumberFormatException e) {
+        return 0;
+      }
+    }
+    return 0;
+  }
+
+  public static long getVersion(Document document) {
+    Object version = document.get(VERSION_FIELD);
+    return version instanceof Number ? ((Number) version).longValue() : 0;
+  }
+
+  /**
+   * Removes the version field from a document that is about to be returned and returns its value.
+   */
+  public static long extractVersion(JsonNode node) {
+    long version = getVersion(node);
+    if (node.isObject()) {
+      ((ObjectNode) node).remove(VERSION_FIELD);
+    }
+    return version;
+  }
+
+}
@@ -0,0 +1,69 @@
+package org.metadatacenter.cedar.template.mongo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+public class VersionedUpdate {
+
+  public enum Status {
+    UPDATED,
+    NOT_FOUND,
+    VERSION_MISMATCH,
+    /**
+     * The update would move a partitioned instance to another template.
+     */
+    TEMPLATE_CHANGED
+  }
+
+  private final Status status;
+  private final JsonNode before;
+  private final JsonNode after;
+  private final long version;
+
+  private VersionedUpdate(Status status, JsonNode before, JsonNode after, long version) {
+    this.status = status;
+    this.before = before;
+    this.after = after;
+    this.version = version;
+  }
+
+  static VersionedUpdate updated(JsonNode before, JsonNode after, long version) {
+    return new VersionedUpdate(Status.UPDATED, before, after, version);
+  }
+
+  static VersionedUpdate notFound() {
+    return new VersionedUpdate(Status.NOT_FOUND, null, null, 0);
+  }
+
+  static VersionedUpdate versionMismatch(long currentVersion) {
+    return new VersionedUpdate(Status.VERSION_MISMATCH, null, null, currentVersion);
+  }
+
+  static VersionedUpdate templateChanged() {
+    return new VersionedUpdate(Status.TEMPLATE_CHANGED, null, null, 0);
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  /**
+   * The document as it was stored before the update.
+   */
+  public JsonNode getBefore() {
+    return before;
+  }
+
+  /**
+   * The document as it is stored after the update.
+   */
+  public JsonNode getAfter() {
+    return after;
+  }
+
+  /**
+   * The new version after a successful update, or the current stored version on a mismatch.
+   */
+  public long getVersion() {
+    return version;
+  }
+}
@@ -0,0 +1,331 @@
+package org.metadatacenter.cedar.template.read;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.metadatacenter.cedar.template.change.DocumentChangeListener;
+import org.metadatacenter.cedar.template.config.ResponseCacheConfig;
+import org.metadatacenter.cedar.template.format.BinaryFormats;
+import org.metadatacenter.cedar.template.mongo.FieldProjection;
+import org.metadatacenter.cedar.template.mongo.LinkedDataFields;
+import org.metadatacenter.cedar.template.mongo.ProjectingDocumentReader;
+import org.metadatacenter.cedar.template.mongo.VersionedDocumentWriter;
+import org.metadatacenter.model.CedarNodeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the serialized bodies of full template and element reads, one per response format, in direct buffers, so a
+ * repeated read skips Mongo, the id removal and Jackson, and the cached bodies stay out of the garbage collected heap.
+ * Writing a body is not zero-copy: the response is an output stream, and the channel over it copies the buffer through
+ * a small heap array, chunk by chunk.
+ * Entries are evicted least recently used first once the configured size is exceeded, and dropped when the document
+ * is updated or deleted through this server. Other server nodes do not report their changes here, so unless
+ * revalidation is turned off, a hit is only served after a projected read of '@id' and '_version' confirms that the
+ * stored document still has the cached version; otherwise the entry is dropped and the read goes to Mongo. Changes
+ * made directly in the database without a new '_version' are not seen until the entry is evicted or the server
+ * restarts.
+ * <p>
+ * A read that was already loading when its document changed must not store the old document after the change was
+ * applied. A {@link #stamp()} is taken right before the document is loaded and passed to {@link #store}, which
+ * discards the entry if any invalidation happened in between. Reads are coalesced, so the stamp has to be the one of
+ * the shared storage call, as {@link SingleFlightReader} returns it, and not one the caller took before joining.
+ */
+public class ResponseCache implements DocumentChangeListener {
+
+  private static final Logger log = LoggerFactory.getLogger(ResponseCache.class);
+
+  private static final String GZIP = "gzip";
+
+  private enum Format {
+    JSON(MediaType.APPLICATION_JSON_TYPE),
+    SMILE(BinaryFormats.APPLICATION_SMILE_TYPE),
+    CBOR(BinaryFormats.APPLICATION_CBOR_TYPE);
+
+    private final MediaType mediaType;
+
+    Format(MediaType mediaType) {
+      this.mediaType = mediaType;
+    }
+  }
+
+  private final boolean enabled;
+  private final long maxBytes;
+  private final boolean compress;
+  private final boolean revalidate;
+  private final ProjectingDocumentReader documentReader;
+  private final ObjectMapper jsonMapper;
+  private final MetricRegistry metricRegistry;
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final AtomicLong invalidations = new AtomicLong();
+  private long totalBytes;
+
+  public ResponseCache(ResponseCacheConfig config, ProjectingDocumentReader documentReader, ObjectMapper jsonMapper,
+                       MetricRegistry metricRegistry) {
+    this.enabled = config.isEnabled();
+    this.maxBytes = config.getMaxBytes();
+    this.compress = config.isCompress();
+    this.revalidate = config.isRevalidate();
+    this.documentReader = documentReader;
+    this.jsonMapper = jsonMapper;
+    this.metricRegistry = metricRegistry;
+    metricRegistry.register(MetricRegistry.name(ResponseCache.class, "bytes"), (Gauge<Long>) this::getTotalBytes);
+    metricRegistry.register(MetricRegistry.name(ResponseCache.class, "entries"), (Gauge<Integer>) this::getSize);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Returns the response for the cached body of the document, or null if it is not cached.
+   */
+  public Response find(CedarNodeType nodeType, String id, HttpHeaders headers) {
+    Format format = negotiate(headers);
+    if (format == null) {
+      return null;
+    }
+    String key = key(nodeType, format, id);
+    Entry entry;
+    synchronized (this) {
+      entry = entries.get(key);
+    }
+    String type = nodeType.name().toLowerCase(Locale.ENGLISH);
+    if (entry == null) {
+      metricRegistry.meter(MetricRegistry.name(ResponseCache.class, "misses", type)).mark();
+      return null;
+    }
+    if (revalidate && !isCurrent(nodeType, id, entry)) {
+      remove(key, entry);
+      metricRegistry.meter(MetricRegistry.name(ResponseCache.class, "stale", type)).mark();
+      return null;
+    }
+    metricRegistry.meter(MetricRegistry.name(ResponseCache.class, "hits", type)).mark();
+    return toResponse(entry, format, headers);
+  }
+
+  /**
+   * Identifies the invalidations that happened so far. Take it right before loading the document to be stored.
+   */
+  public long stamp() {
+    return invalidations.get();
+  }
+
+  /**
+   * Serializes the document for the format the request accepts, caches the body and returns the response for it.
+   * Returns null if the document can not be served from a cached body, in which case the caller builds the response.
+   *
+   * @param stamp the {@link #stamp()} taken right before the document was loaded
+   */
+  public Response store(CedarNodeType nodeType, String id, JsonNode document, long version, long stamp,
+                        HttpHeaders headers) {
+    Format format = negotiate(headers);
+    if (format == null) {
+      return null;
+    }
+    Entry entry;
+    try {
+      entry = serialize(format, document, version);
+    } catch (IOException e) {
+      log.warn("The " + nodeType + " " + id + " can not be cached", e);
+      return null;
+    }
+    put(key(nodeType, format, id), entry, stamp);
+    return toResponse(entry, format, headers);
+  }
+
+  @Override
+  public void updated(CedarNodeType nodeType, JsonNode before, JsonNode after) {
+    JsonNode id = after == null ? null : after.get(LinkedDataFields.ID);
+    if (id == null && before != null) {
+      id = before.get(LinkedDataFields.ID);
+    }
+    if (id != null) {
+      invalidate(nodeType, Collections.singletonList(id.asText()));
+    }
+  }
+
+  @Override
+  public void deleted(CedarNodeType nodeType, List<String> ids) {
+    invalidate(nodeType, ids);
+  }
+
+  private synchronized void invalidate(CedarNodeType nodeType, List<String> ids) {
+    if (nodeType != CedarNodeType.TEMPLATE && nodeType != CedarNodeType.ELEMENT) {
+      return;
+    }
+    invalidations.incrementAndGet();
+    for (String id : ids) {
+      for (Format format : Format.values()) {
+        Entry removed = entries.remove(key(nodeType, format, id));
+        if (removed != null) {
+          totalBytes -= removed.size();
+        }
+      }
+    }
+  }
+
+  /**
+   * Whether the stored document still has the version of the entry. A failed check counts as stale, the full read
+   * that follows reports the error.
+   */
+  private boolean isCurrent(CedarNodeType nodeType, String id, Entry entry) {
+    try {
+      JsonNode current = documentReader.findById(nodeType, id, FieldProjection.idOnly());
+      return current != null && VersionedDocumentWriter.getVersion(current) == entry.version;
+    } catch (IOException e) {
+      log.warn("The version of the " + nodeType + " " + id + " can not be checked", e);
+      return false;
+    }
+  }
+
+  private synchronized void remove(String key, Entry entry) {
+    if (entries.remove(key, entry)) {
+      totalBytes -= entry.size();
+    }
+  }
+
+  private synchronized void put(String key, Entry entry, long stamp) {
+    if (invalidations.get() != stamp || entry.size() > maxBytes) {
+      return;
+    }
+    Entry previous = entries.put(key, entry);
+    if (previous != null) {
+      totalBytes -= previous.size();
+    }
+    totalBytes += entry.size();
+    Iterator<Entry> eldest = entries.values().iterator();
+    while (totalBytes > maxBytes && eldest.hasNext()) {
+      totalBytes -= eldest.next().size();
+      eldest.remove();
+      metricRegistry.meter(MetricRegistry.name(ResponseCache.class, "evictions")).mark();
+    }
+  }
+
+  private synchronized long getTotalBytes() {
+    return totalBytes;
+  }
+
+  private synchronized int getSize() {
+    return entries.size();
+  }
+
+  private Entry serialize(Format format, JsonNode document, long version) throws IOException {
+    byte[] bytes = mapperFor(format).writeValueAsBytes(document);
+    if (compress) {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+      try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+        out.write(bytes);
+      }
+      bytes = compressed.toByteArray();
+    }
+    ByteBuffer body = ByteBuffer.allocateDirect(bytes.length);
+    body.put(bytes).flip();
+    return new Entry(body, version, compress);
+  }
+
+  private ObjectMapper mapperFor(Format format) {
+    if (format == Format.SMILE) {
+      return BinaryFormats.smileMapper();
+    } else if (format == Format.CBOR) {
+      return BinaryFormats.cborMapper();
+    }
+    return jsonMapper;
+  }
+
+  private static Response toResponse(Entry entry, Format format, HttpHeaders headers) {
+    Response.ResponseBuilder builder = Response.ok()
+        .type(format.mediaType)
+        .tag(new EntityTag(String.valueOf(entry.version)))
+        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+    if (!entry.compressed || acceptsGzip(headers)) {
+      // each response gets its own view of the buffer, so concurrent writes do not share a position
+      ByteBuffer body = entry.body.duplicate();
+      if (entry.compressed) {
+        builder.header(HttpHeaders.CONTENT_ENCODING, GZIP);
+      }
+      builder.header(HttpHeaders.CONTENT_LENGTH, body.remaining());
+      return builder.entity((StreamingOutput) out -> {
+        // copies through an 8 KB heap array per write, the servlet stream has no way to take the buffer itself
+        WritableByteChannel channel = Channels.newChannel(out);
+        while (body.hasRemaining()) {
+          channel.write(body);
+        }
+      }).build();
+    }
+    ByteBuffer body = entry.body.duplicate();
+    byte[] compressed = new byte[body.remaining()];
+    body.get(compressed);
+    return builder.entity((StreamingOutput) out -> {
+      try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+          out.write(buffer, 0, read);
+        }
+      }
+    }).build();
+  }
+
+  /**
+   * Picks the format Jersey would pick for the request: the first acceptable media type, in order of preference,
+   * that one of the formats is compatible with, JSON first.
+   */
+  private static Format negotiate(HttpHeaders headers) {
+    for (MediaType acceptable : headers.getAcceptableMediaTypes()) {
+      for (Format format : Format.values()) {
+        if (acceptable.isCompatible(format.mediaType)) {
+          return format;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static boolean acceptsGzip(HttpHeaders headers) {
+    String acceptEncoding = headers.getHeaderString(HttpHeaders.ACCEPT_ENCODING);
+    return acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ENGLISH).contains(GZIP);
+  }
+
+  private static String key(CedarNodeType nodeType, Format format, String id) {
+    return nodeType.name() + "|" + format.name() + "|" + id;
+  }
+
+  private static class Entry {
+    private final ByteBuffer body;
+    private final long version;
+    private final boolean compressed;
+
+    private Entry(ByteBuffer body, long version, boolean compressed) {
+      this.body = body;
+      this.version = version;
+      this.compressed = compressed;
+    }
+
+    private int size() {
+      return body.capacity();
+    }
+  }
+}
@@ -0,0 +1,235 @@
+package org.metadatacenter.cedar.template.read;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import org.metadatacenter.cedar.template.change.DocumentChangeListener;
+import org.metadatacenter.cedar.template.mongo.LinkedDataFields;
+import org.metadatacenter.model.CedarNodeType;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongSupplier;
+
+/**
+ * Coalesces concurrent identical reads. The first request for a given type, id and projection performs the storage
+ * call; requests for the same key that arrive while it is in flight wait for it and share its result instead of
+ * issuing their own. Every caller gets its own document, as the resources modify what they return: the call that
+ * performed the read keeps the one it loaded and hands a deep copy to each caller that joined it, before returning, so
+ * a read that nobody joined copies nothing.
+ * <p>
+ * A storage call that is running when a change to its document is reported may have read the old version, so the
+ * reader is registered as the first change listener and detaches such calls: their current callers still get their
+ * result, but later reads start a new call. A read that starts after a write through this server has returned
+ * therefore sees it. Changes made directly in the database are not reported and only show once the calls that were
+ * running complete.
+ * <p>
+ * Callers that cache what they read pass a stamp source, like {@link ResponseCache#stamp()}. The call that performs
+ * the storage call takes the stamp right before it, and every caller sharing the result gets that stamp with it, so a
+ * caller that joined late can not pair an old document with a stamp taken after the document changed.
+ */
+public class SingleFlightReader implements DocumentChangeListener {
+
+  @FunctionalInterface
+  public interface Read {
+    JsonNode load() throws IOException, ProcessingException;
+  }
+
+  /**
+   * The stamp of results read by calls that were started without a stamp source. It matches no stamp source.
+   */
+  public static final long NO_STAMP = -1;
+
+  private final ConcurrentMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+  private final MetricRegistry metricRegistry;
+
+  public SingleFlightReader(MetricRegistry metricRegistry) {
+    this.metricRegistry = metricRegistry;
+  }
+
+  /**
+   * Returns the document produced by the read, or null if it produced none. If the shared read fails, every caller
+   * waiting on it gets the same exception.
+   *
+   * @param projectionKey identifies the projection of the read, null for the full document
+   */
+  public JsonNode read(CedarNodeType nodeType, String id, String projectionKey, Read read) throws IOException,
+      ProcessingException {
+    return read(nodeType, id, projectionKey, null, read).getDocument();
+  }
+
+  /**
+   * Like {@link #read(CedarNodeType, String, String, Read)}, and also returns the stamp taken right before the
+   * storage call whose result is shared, or {@link #NO_STAMP} if that call was started without a stamp source.
+   *
+   * @param stamp the stamp source, or null
+   */
+  public Result read(CedarNodeType nodeType, String id, String projectionKey, LongSupplier stamp, Read read)
+      throws IOException, ProcessingException {
+    String key = nodeType.name() + "|" + id + "|" + (projectionKey == null ? "" : projectionKey);
+    String type = nodeType.name().toLowerCase(Locale.ENGLISH);
+    while (true) {
+      Flight flight = new Flight();
+      Flight running = inFlight.putIfAbsent(key, flight);
+      if (running == null) {
+        metricRegistry.meter(MetricRegistry.name(SingleFlightReader.class, "executed", type)).mark();
+        return lead(key, flight, stamp, read);
+      }
+      CompletableFuture<Result> joined = running.join();
+      if (joined != null) {
+        metricRegistry.meter(MetricRegistry.name(SingleFlightReader.class, "coalesced", type)).mark();
+        return await(joined);
+      }
+      // the call completed between the lookup and the join; look again
+    }
+  }
+
+  private Result lead(String key, Flight flight, LongSupplier stamp, Read read) throws IOException,
+      ProcessingException {
+    Result result;
+    try {
+      long readStamp = stamp == null ? NO_STAMP : stamp.getAsLong();
+      result = new Result(read.load(), readStamp);
+    } catch (IOException | ProcessingException | RuntimeException | Error e) {
+      inFlight.remove(key, flight);
+      for (CompletableFuture<Result> joiner : flight.close()) {
+        joiner.completeExceptionally(e);
+      }
+      throw e;
+    }
+    inFlight.remove(key, flight);
+    for (CompletableFuture<Result> joiner : flight.close()) {
+      joiner.complete(result.copy());
+    }
+    return result;
+  }
+
+  @Override
+  public void created(CedarNodeType nodeType, JsonNode document) {
+    // a call that started before the create may have found nothing
+    JsonNode id = document == null ? null : document.get(LinkedDataFields.ID);
+    if (id != null) {
+      detach(nodeType, Collections.singletonList(id.asText()));
+    }
+  }
+
+  @Override
+  public void updated(CedarNodeType nodeType, JsonNode before, JsonNode after) {
+    JsonNode id = after == null ? null : after.get(LinkedDataFields.ID);
+    if (id == null && before != null) {
+      id = before.get(LinkedDataFields.ID);
+    }
+    if (id != null) {
+      detach(nodeType, Collections.singletonList(id.asText()));
+    }
+  }
+
+  @Override
+  public void deleted(CedarNodeType nodeType, List<String> ids) {
+    detach(nodeType, ids);
+  }
+
+  /**
+   * Removes the running calls for the documents from the map, for every projection, so that no later read joins
+   * them. Only calls that are in flight right now are in the map, so this scan is short.
+   */
+  private void detach(CedarNodeType nodeType, List<String> ids) {
+    if (inFlight.isEmpty()) {
+      return;
+    }
+    List<String> prefixes = new ArrayList<>(ids.size());
+    for (String id : ids) {
+      prefixes.add(nodeType.name() + "|" + id + "|");
+    }
+    inFlight.keySet().removeIf(key -> {
+      for (String prefix : prefixes) {
+        if (key.startsWith(prefix)) {
+          return true;
+        }
+      }
+      return false;
+    });
+  }
+
+  /**
+   * A running storage call and the callers waiting for its result. Once it is closed, which happens after it was
+   * removed from the map, it takes no more callers.
+   */
+  private static final class Flight {
+    private final List<CompletableFuture<Result>> joiners = new ArrayList<>();
+    private boolean closed;
+
+    /**
+     * @return the future the caller's copy of the result is delivered to, or null if the call has completed
+     */
+    synchronized CompletableFuture<Result> join() {
+      if (closed) {
+        return null;
+      }
+      CompletableFuture<Result> joiner = new CompletableFuture<>();
+      joiners.add(joiner);
+      return joiner;
+    }
+
+    synchronized List<CompletableFuture<Result>> close() {
+      closed = true;
+      return joiners;
+    }
+  }
+
+  private static Result await(CompletableFuture<Result> call) throws IOException, ProcessingException {
+    try {
+      return call.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      InterruptedIOException interrupted = new InterruptedIOException("Interrupted while waiting for a shared read");
+      interrupted.initCause(e);
+      throw interrupted;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof ProcessingException) {
+        throw (ProcessingException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException("Shared read failed", cause);
+    }
+  }
+
+  public static final class Result {
+    private final JsonNode document;
+    private final long stamp;
+
+    private Result(JsonNode document, long stamp) {
+      this.document = document;
+      this.stamp = stamp;
+    }
+
+    /**
+     * The caller's own document, or null if the read produced none.
+     */
+    public JsonNode getDocument() {
+      return document;
+    }
+
+    public long getStamp() {
+      return stamp;
+    }
+
+    private Result copy() {
+      return new Result(document == null ? null : document.deepCopy(), stamp);
+    }
+  }
+}
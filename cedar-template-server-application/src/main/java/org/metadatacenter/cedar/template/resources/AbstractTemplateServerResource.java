@@ -1,20 +1,38 @@
 package org.metadatacenter.cedar.template.resources;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.metadatacenter.cedar.template.format.RequestBodyReader;
+import org.metadatacenter.cedar.template.id.IdGenerationMode;
+import org.metadatacenter.cedar.template.id.LinkedDataIdGenerator;
+import org.metadatacenter.cedar.template.mongo.CreatedOn;
+import org.metadatacenter.cedar.template.mongo.FieldProjection;
+import org.metadatacenter.cedar.template.mongo.VersionedDocumentWriter;
+import org.metadatacenter.cedar.template.trace.Span;
+import org.metadatacenter.cedar.template.trace.Tracing;
 import org.metadatacenter.cedar.util.dw.CedarMicroserviceResource;
 import org.metadatacenter.config.CedarConfig;
 import org.metadatacenter.exception.CedarException;
 import org.metadatacenter.exception.CedarProcessingException;
 import org.metadatacenter.model.CedarNodeType;
+import org.metadatacenter.rest.context.CedarRequestContext;
+import org.metadatacenter.rest.context.CedarRequestContextFactory;
 import org.metadatacenter.rest.exception.CedarAssertionException;
 import org.metadatacenter.server.jsonld.LinkedDataUtil;
 import org.metadatacenter.server.model.provenance.ProvenanceInfo;
+import org.metadatacenter.server.service.FieldNameInEx;
 import org.metadatacenter.util.provenance.ProvenanceUtil;
 
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static com.fasterxml.jackson.databind.node.JsonNodeType.NULL;
@@ -23,14 +41,26 @@ public class AbstractTemplateServerResource extends CedarMicroserviceResource {
 
   protected final LinkedDataUtil linkedDataUtil;
   protected final ProvenanceUtil provenanceUtil;
+  protected final LinkedDataIdGenerator linkedDataIdGenerator;
+  protected final RequestBodyReader requestBodyReader;
   protected static List<String> FIELD_NAMES_EXCLUSION_LIST;
+  protected static final int MULTI_GET_MAX_IDS = 1000;
 
   protected AbstractTemplateServerResource(CedarConfig cedarConfig) {
+    this(cedarConfig, IdGenerationMode.RANDOM, null);
+  }
+
+  protected AbstractTemplateServerResource(CedarConfig cedarConfig, IdGenerationMode idGenerationMode,
+                                           RequestBodyReader requestBodyReader) {
     super(cedarConfig);
     this.linkedDataUtil = cedarConfig.buildLinkedDataUtil();
     this.provenanceUtil = new ProvenanceUtil(linkedDataUtil);
+    this.linkedDataIdGenerator = new LinkedDataIdGenerator(linkedDataUtil, idGenerationMode);
+    this.requestBodyReader = requestBodyReader;
     FIELD_NAMES_EXCLUSION_LIST = new ArrayList<>();
     FIELD_NAMES_EXCLUSION_LIST.addAll(cedarConfig.getTemplateRESTAPI().getExcludedFields());
+    FIELD_NAMES_EXCLUSION_LIST.add(VersionedDocumentWriter.VERSION_FIELD);
+    FIELD_NAMES_EXCLUSION_LIST.add(CreatedOn.FIELD);
   }
 
   protected void checkImportModeSetProvenanceAndId(CedarNodeType cedarNodeType, JsonNode element,
@@ -45,11 +75,43 @@ public class AbstractTemplateServerResource extends CedarMicroserviceResource {
         throw new IllegalArgumentException("Specifying @id for new objects is not allowed");
       }
       provenanceUtil.addProvenanceInfo(element, pi);
-      String id = linkedDataUtil.buildNewLinkedDataId(cedarNodeType);
+      String id = linkedDataIdGenerator.buildNewLinkedDataId(cedarNodeType);
       ((ObjectNode) element).put("@id", id);
     }
   }
 
+  /**
+   * Reads the request body through the streaming reader, which enforces the body size limit of the resource type.
+   */
+  protected JsonNode readRequestBody(CedarRequestContext c, CedarNodeType nodeType) throws CedarException {
+    if (requestBodyReader == null) {
+      return c.request().getRequestBody().asJson();
+    }
+    JsonNode body;
+    try (Span span = Tracing.startSpan("readRequestBody")) {
+      body = requestBodyReader.read(request, nodeType);
+    } catch (IOException e) {
+      throw new CedarProcessingException("The request body can not be parsed: " + e.getMessage());
+    }
+    if (body == null) {
+      throw new CedarAssertionException("The request body must not be empty!");
+    }
+    return body;
+  }
+
+  /**
+   * Builds the request context, which authenticates the caller, in its own span.
+   */
+  protected CedarRequestContext buildRequestContext() throws CedarException {
+    try (Span span = Tracing.startSpan("auth")) {
+      return CedarRequestContextFactory.fromRequest(request);
+    }
+  }
+
+  protected static <T> T valueOrNull(Optional<T> param) {
+    return param == null ? null : param.orElse(null);
+  }
+
   protected Boolean ensureSummary(Optional<Boolean> summary) {
     if (summary == null || !summary.isPresent()) {
       return false;
@@ -71,6 +133,94 @@ public class AbstractTemplateServerResource extends CedarMicroserviceResource {
     return null;
   }
 
+  protected static FieldProjection buildFieldProjection(boolean summary, List<String> fieldNameList,
+                                                        List<String> summaryFieldNameList) {
+    if (summary) {
+      return new FieldProjection(summaryFieldNameList, FieldNameInEx.INCLUDE);
+    } else if (fieldNameList != null) {
+      return new FieldProjection(fieldNameList, FieldNameInEx.INCLUDE);
+    } else {
+      return new FieldProjection(FIELD_NAMES_EXCLUSION_LIST, FieldNameInEx.EXCLUDE);
+    }
+  }
+
+  protected static List<String> getAndCheckMultiGetIds(JsonNode requestBody) throws CedarAssertionException {
+    JsonNode idsNode = requestBody == null ? null : requestBody.get("ids");
+    if (idsNode == null || !idsNode.isArray()) {
+      throw new CedarAssertionException("The request body must contain an 'ids' array!");
+    }
+    if (idsNode.size() > MULTI_GET_MAX_IDS) {
+      throw new CedarAssertionException("At most " + MULTI_GET_MAX_IDS + " ids can be requested at once!");
+    }
+    List<String> ids = new ArrayList<>(idsNode.size());
+    for (JsonNode idNode : idsNode) {
+      if (!idNode.isTextual()) {
+        throw new CedarAssertionException("The 'ids' array must contain only strings!");
+      }
+      ids.add(idNode.asText());
+    }
+    return ids;
+  }
+
+  /**
+   * Lists one entry per requested id, in request order. Ids that were not found are marked with "found": false. An id
+   * requested more than once shares its found document, so the versions are taken off the documents once, up front.
+   */
+  protected static ArrayNode buildMultiGetResult(List<String> ids, Map<String, JsonNode> found) {
+    Map<String, Long> versions = new HashMap<>();
+    for (Map.Entry<String, JsonNode> resource : found.entrySet()) {
+      versions.put(resource.getKey(), VersionedDocumentWriter.extractVersion(resource.getValue()));
+    }
+    ArrayNode result = JsonNodeFactory.instance.arrayNode();
+    for (String id : ids) {
+      ObjectNode entry = result.addObject();
+      entry.put("@id", id);
+      JsonNode resource = found.get(id);
+      entry.put("found", resource != null);
+      if (resource != null) {
+        entry.put("version", versions.get(id));
+        entry.set("resource", resource);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the version required by an If-Match header, or null if the header is missing or matches any version.
+   */
+  protected static Long getExpectedVersion(String ifMatch) throws CedarAssertionException {
+    if (ifMatch == null || ifMatch.trim().isEmpty() || "*".equals(ifMatch.trim())) {
+      return null;
+    }
+    String tag = ifMatch.trim();
+    if (tag.startsWith("W/")) {
+      tag = tag.substring(2);
+    }
+    if (tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+      tag = tag.substring(1, tag.length() - 1);
+    }
+    try {
+      return Long.parseLong(tag);
+    } catch (NumberFormatException e) {
+      throw new CedarAssertionException("The If-Match header does not contain a version returned by this server!");
+    }
+  }
+
+  protected static EntityTag versionTag(long version) {
+    return new EntityTag(String.valueOf(version));
+  }
+
+  protected static Response preconditionFailed(String id, long currentVersion) {
+    Map<String, Object> entity = new HashMap<>();
+    entity.put("id", id);
+    entity.put("errorMessage", "The resource has been modified since it was read. Current version:" + currentVersion);
+    entity.put("currentVersion", currentVersion);
+    return Response.status(Response.Status.PRECONDITION_FAILED)
+        .tag(versionTag(currentVersion))
+        .entity(entity)
+        .build();
+  }
+
   protected static void checkPagingParametersAgainstTotal(Integer offset, long total) throws CedarException {
     if (offset != 0 && offset > total - 1) {
       throw new CedarProcessingException(
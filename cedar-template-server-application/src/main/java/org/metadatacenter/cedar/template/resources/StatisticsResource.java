@@ -0,0 +1,194 @@
+package org.metadatacenter.cedar.template.resources;
+
+import com.codahale.metrics.annotation.Timed;
+import org.bson.Document;
+import org.metadatacenter.cedar.template.stats.StatisticsStore;
+import org.metadatacenter.config.CedarConfig;
+import org.metadatacenter.error.CedarErrorKey;
+import org.metadatacenter.exception.CedarException;
+import org.metadatacenter.rest.context.CedarRequestContext;
+import org.metadatacenter.rest.exception.CedarAssertionException;
+import org.metadatacenter.server.security.model.auth.CedarPermission;
+import org.metadatacenter.util.http.CedarResponse;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.metadatacenter.cedar.template.constant.TemplateServerQueryParameters.QP_FROM;
+import static org.metadatacenter.cedar.template.constant.TemplateServerQueryParameters.QP_TO;
+import static org.metadatacenter.constant.CedarPathParameters.PP_ID;
+import static org.metadatacenter.constant.CedarQueryParameters.QP_LIMIT;
+import static org.metadatacenter.rest.assertion.GenericAssertions.LoggedIn;
+
+/**
+ * Read-only access to the aggregate statistics. Every answer is read from a bounded number of counter documents, so
+ * it takes the same time however large the collections are. The statistics cover the documents of all users, so only
+ * administrators may read them.
+ */
+@Path("/statistics")
+@Produces(MediaType.APPLICATION_JSON)
+public class StatisticsResource extends AbstractTemplateServerResource {
+
+  private static final int DEFAULT_TOP_LIMIT = 10;
+  private static final int MAX_TOP_LIMIT = 100;
+  private static final int DEFAULT_DAYS = 30;
+  private static final int MAX_DAYS = 366;
+
+  private final StatisticsStore statisticsStore;
+  private final Set<String> adminUsers;
+
+  /**
+   * @param adminUsers the ids of the users allowed to read the statistics
+   */
+  public StatisticsResource(CedarConfig cedarConfig, StatisticsStore statisticsStore, List<String> adminUsers) {
+    super(cedarConfig);
+    this.statisticsStore = statisticsStore;
+    this.adminUsers = new HashSet<>(adminUsers);
+  }
+
+  /**
+   * The totals per type, with the templates having the most instances and the users who created the most.
+   */
+  @GET
+  @Timed
+  public Response findStatistics(@QueryParam(QP_LIMIT) Optional<Integer> limitParam) throws CedarException {
+    CedarRequestContext c = buildRequestContext();
+    if (!isAdministrator(c)) {
+      return Response.status(Response.Status.FORBIDDEN).build();
+    }
+    if (!statisticsStore.isEnabled()) {
+      return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+    }
+    Integer limit = valueOrNull(limitParam);
+    if (limit == null) {
+      limit = DEFAULT_TOP_LIMIT;
+    } else if (limit < 1 || limit > MAX_TOP_LIMIT) {
+      throw new CedarAssertionException("The parameter '" + QP_LIMIT + "' must be between 1 and " + MAX_TOP_LIMIT
+          + "!");
+    }
+    Map<String, Object> statistics = new LinkedHashMap<>();
+    try {
+      statistics.put("totals", statisticsStore.getTotals());
+      statistics.put("topTemplates", statisticsStore.findTopTemplates(limit));
+      statistics.put("topCreators", statisticsStore.findTopCreators(limit));
+    } catch (IOException e) {
+      return statisticsNotRead(e);
+    }
+    return Response.ok().entity(statistics).build();
+  }
+
+  @GET
+  @Timed
+  @Path("/templates/{id}")
+  public Response findTemplateStatistics(@PathParam(PP_ID) String id) throws CedarException {
+    return findCounters(StatisticsStore.KIND_TEMPLATE, id);
+  }
+
+  @GET
+  @Timed
+  @Path("/creators/{id}")
+  public Response findCreatorStatistics(@PathParam(PP_ID) String id) throws CedarException {
+    return findCounters(StatisticsStore.KIND_CREATOR, id);
+  }
+
+  /**
+   * The documents created, updated and deleted per day. Defaults to the last 30 days; days without changes are left
+   * out.
+   */
+  @GET
+  @Timed
+  @Path("/days")
+  public Response findDailyStatistics(@QueryParam(QP_FROM) Optional<String> fromParam,
+                                      @QueryParam(QP_TO) Optional<String> toParam) throws CedarException {
+    CedarRequestContext c = buildRequestContext();
+    if (!isAdministrator(c)) {
+      return Response.status(Response.Status.FORBIDDEN).build();
+    }
+    if (!statisticsStore.isEnabled()) {
+      return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+    }
+    LocalDate to = parseDate(QP_TO, valueOrNull(toParam), LocalDate.now(ZoneOffset.UTC));
+    LocalDate from = parseDate(QP_FROM, valueOrNull(fromParam), to.minusDays(DEFAULT_DAYS - 1));
+    if (from.isAfter(to)) {
+      throw new CedarAssertionException("The parameter '" + QP_FROM + "' must not be after '" + QP_TO + "'!");
+    }
+    if (ChronoUnit.DAYS.between(from, to) >= MAX_DAYS) {
+      throw new CedarAssertionException("At most " + MAX_DAYS + " days can be requested at once!");
+    }
+    List<Document> days;
+    try {
+      days = statisticsStore.findDays(from, to);
+    } catch (IOException e) {
+      return statisticsNotRead(e);
+    }
+    return Response.ok().entity(days).build();
+  }
+
+  /**
+   * The counters of a template or creator. Nothing counted yet reads as an entry without counters.
+   */
+  private Response findCounters(String kind, String id) throws CedarException {
+    CedarRequestContext c = buildRequestContext();
+    if (!isAdministrator(c)) {
+      return Response.status(Response.Status.FORBIDDEN).build();
+    }
+    if (!statisticsStore.isEnabled()) {
+      return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+    }
+    Document counters;
+    try {
+      counters = statisticsStore.find(kind, id);
+    } catch (IOException e) {
+      return statisticsNotRead(e);
+    }
+    return Response.ok().entity(counters != null ? counters : new Document("key", id)).build();
+  }
+
+  /**
+   * The permission model has no administrator permission, so administrators are the users configured in
+   * 'statistics.adminUsers'. They also need the read permissions of every counted type.
+   */
+  private boolean isAdministrator(CedarRequestContext c) throws CedarException {
+    c.must(c.user()).be(LoggedIn);
+    c.must(c.user()).have(CedarPermission.TEMPLATE_READ);
+    c.must(c.user()).have(CedarPermission.TEMPLATE_ELEMENT_READ);
+    c.must(c.user()).have(CedarPermission.TEMPLATE_INSTANCE_READ);
+    return c.getCedarUser() != null && adminUsers.contains(c.getCedarUser().getId());
+  }
+
+  private static LocalDate parseDate(String name, String value, LocalDate defaultValue) throws
+      CedarAssertionException {
+    if (value == null || value.isEmpty()) {
+      return defaultValue;
+    }
+    try {
+      return LocalDate.parse(value);
+    } catch (DateTimeParseException e) {
+      throw new CedarAssertionException("The parameter '" + name + "' must be a date like 2017-01-31!");
+    }
+  }
+
+  private static Response statisticsNotRead(IOException e) {
+    return CedarResponse.internalServerError()
+        .errorKey(CedarErrorKey.TEMPLATES_NOT_LISTED)
+        .errorMessage("The statistics can not be read")
+        .exception(e)
+        .build();
+  }
+}
@@ -0,0 +1,53 @@
+package org.metadatacenter.cedar.template.resources;
+
+import com.codahale.metrics.annotation.Timed;
+import org.metadatacenter.cedar.template.jobs.TemplateDeleteJob;
+import org.metadatacenter.cedar.template.jobs.TemplateDeleteJobManager;
+import org.metadatacenter.config.CedarConfig;
+import org.metadatacenter.error.CedarErrorKey;
+import org.metadatacenter.exception.CedarException;
+import org.metadatacenter.rest.context.CedarRequestContext;
+import org.metadatacenter.server.security.model.auth.CedarPermission;
+import org.metadatacenter.util.http.CedarResponse;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import static org.metadatacenter.constant.CedarPathParameters.PP_ID;
+import static org.metadatacenter.rest.assertion.GenericAssertions.LoggedIn;
+
+@Path("/template-delete-jobs")
+@Produces(MediaType.APPLICATION_JSON)
+public class TemplateDeleteJobsResource extends AbstractTemplateServerResource {
+
+  private final TemplateDeleteJobManager templateDeleteJobManager;
+
+  public TemplateDeleteJobsResource(CedarConfig cedarConfig, TemplateDeleteJobManager templateDeleteJobManager) {
+    super(cedarConfig);
+    this.templateDeleteJobManager = templateDeleteJobManager;
+  }
+
+  @GET
+  @Timed
+  @Path("/{id}")
+  public Response findTemplateDeleteJob(@PathParam(PP_ID) String id) throws CedarException {
+    CedarRequestContext c = buildRequestContext();
+    c.must(c.user()).be(LoggedIn);
+    c.must(c.user()).have(CedarPermission.TEMPLATE_DELETE);
+
+    TemplateDeleteJob job = templateDeleteJobManager.getJob(id);
+    if (job == null) {
+      return CedarResponse.notFound()
+          .id(id)
+          .errorKey(CedarErrorKey.TEMPLATE_NOT_DELETED)
+          .errorMessage("The template delete job can not be found by id:" + id)
+          .build();
+    }
+    return Response.ok().entity(job).build();
+  }
+
+}
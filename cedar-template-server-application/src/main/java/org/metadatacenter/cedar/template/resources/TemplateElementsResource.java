@@ -3,6 +3,18 @@ package org.metadatacenter.cedar.template.resources;
 import com.codahale.metrics.annotation.Timed;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import org.metadatacenter.cedar.template.change.DocumentChangeListener;
+import org.metadatacenter.cedar.template.format.BinaryFormats;
+import org.metadatacenter.cedar.template.format.RequestBodyReader;
+import org.metadatacenter.cedar.template.id.IdGenerationMode;
+import org.metadatacenter.cedar.template.mongo.FieldProjection;
+import org.metadatacenter.cedar.template.mongo.ProjectingDocumentReader;
+import org.metadatacenter.cedar.template.mongo.VersionedDocumentWriter;
+import org.metadatacenter.cedar.template.mongo.VersionedUpdate;
+import org.metadatacenter.cedar.template.read.ResponseCache;
+import org.metadatacenter.cedar.template.read.SingleFlightReader;
+import org.metadatacenter.cedar.template.summary.SummaryStore;
+import org.metadatacenter.cedar.template.usage.ElementUsageIndex;
 import org.metadatacenter.config.CedarConfig;
 import org.metadatacenter.constant.CustomHttpConstants;
 import org.metadatacenter.constant.HttpConstants;
@@ -10,7 +22,6 @@ import org.metadatacenter.error.CedarErrorKey;
 import org.metadatacenter.exception.CedarException;
 import org.metadatacenter.model.CedarNodeType;
 import org.metadatacenter.rest.context.CedarRequestContext;
-import org.metadatacenter.rest.context.CedarRequestContextFactory;
 import org.metadatacenter.server.model.provenance.ProvenanceInfo;
 import org.metadatacenter.server.security.model.auth.CedarPermission;
 import org.metadatacenter.server.service.FieldNameInEx;
@@ -21,6 +32,8 @@ import org.metadatacenter.util.mongo.MongoUtils;
 
 import javax.management.InstanceNotFoundException;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
@@ -32,19 +45,37 @@ import static org.metadatacenter.constant.CedarQueryParameters.*;
 import static org.metadatacenter.rest.assertion.GenericAssertions.LoggedIn;
 
 @Path("/template-elements")
-@Produces(MediaType.APPLICATION_JSON)
+@Produces({MediaType.APPLICATION_JSON, BinaryFormats.APPLICATION_SMILE, BinaryFormats.APPLICATION_CBOR})
 public class TemplateElementsResource extends AbstractTemplateServerResource {
 
   private final TemplateElementService<String, JsonNode> templateElementService;
   private static TemplateFieldService<String, JsonNode> templateFieldService;
+  private final ProjectingDocumentReader documentReader;
+  private final VersionedDocumentWriter versionedDocumentWriter;
+  private final SummaryStore summaryStore;
+  private final DocumentChangeListener changeListener;
+  private final SingleFlightReader singleFlightReader;
+  private final ResponseCache responseCache;
+  private final ElementUsageIndex elementUsageIndex;
 
   protected static List<String> FIELD_NAMES_SUMMARY_LIST;
 
   public TemplateElementsResource(CedarConfig cedarConfig, TemplateElementService<String, JsonNode>
-      templateElementService, TemplateFieldService<String, JsonNode> templateFieldService) {
-    super(cedarConfig);
+      templateElementService, TemplateFieldService<String, JsonNode> templateFieldService,
+      ProjectingDocumentReader documentReader, VersionedDocumentWriter versionedDocumentWriter,
+      SummaryStore summaryStore, DocumentChangeListener changeListener, SingleFlightReader singleFlightReader,
+      ResponseCache responseCache, ElementUsageIndex elementUsageIndex, IdGenerationMode idGenerationMode,
+      RequestBodyReader requestBodyReader) {
+    super(cedarConfig, idGenerationMode, requestBodyReader);
     this.templateElementService = templateElementService;
     this.templateFieldService = templateFieldService;
+    this.documentReader = documentReader;
+    this.versionedDocumentWriter = versionedDocumentWriter;
+    this.summaryStore = summaryStore;
+    this.changeListener = changeListener;
+    this.singleFlightReader = singleFlightReader;
+    this.responseCache = responseCache;
+    this.elementUsageIndex = elementUsageIndex;
     FIELD_NAMES_SUMMARY_LIST = new ArrayList<>();
     FIELD_NAMES_SUMMARY_LIST.addAll(cedarConfig.getTemplateRESTAPI().getSummaries().getElement().getFields());
   }
@@ -53,13 +84,11 @@ public class TemplateElementsResource extends AbstractTemplateServerResource {
   @Timed
   public Response createTemplateElement(@QueryParam(QP_IMPORT_MODE) Optional<Boolean> importMode) throws
       CedarException {
-    CedarRequestContext c = CedarRequestContextFactory.fromRequest(request);
+    CedarRequestContext c = buildRequestContext();
     c.must(c.user()).be(LoggedIn);
     c.must(c.user()).have(CedarPermission.TEMPLATE_ELEMENT_CREATE);
 
-    //TODO: test if it is not empty
-    //c.must(c.request().getRequestBody()).be(NonEmpty);
-    JsonNode templateElement = c.request().getRequestBody().asJson();
+    JsonNode templateElement = readRequestBody(c, CedarNodeType.ELEMENT);
 
     ProvenanceInfo pi = provenanceUtil.build(c.getCedarUser());
     checkImportModeSetProvenanceAndId(CedarNodeType.ELEMENT, templateElement, pi, importMode);
@@ -75,25 +104,50 @@ public class TemplateElementsResource extends AbstractTemplateServerResource {
           .exception(e)
           .build();
     }
+    changeListener.created(CedarNodeType.ELEMENT, createdTemplateElement);
     MongoUtils.removeIdField(createdTemplateElement);
 
     String id = createdTemplateElement.get("@id").asText();
 
     URI uri = CedarUrlUtil.getIdURI(uriInfo, id);
-    return Response.created(uri).entity(createdTemplateElement).build();
+    long version = VersionedDocumentWriter.extractVersion(createdTemplateElement);
+    return Response.created(uri).tag(versionTag(version)).entity(createdTemplateElement).build();
   }
 
   @GET
   @Timed
   @Path("/{id}")
-  public Response findTemplateElement(@PathParam(PP_ID) String id) throws CedarException {
-    CedarRequestContext c = CedarRequestContextFactory.fromRequest(request);
+  public Response findTemplateElement(@PathParam(PP_ID) String id,
+                                      @QueryParam(QP_SUMMARY) Optional<Boolean> summaryParam,
+                                      @QueryParam(QP_FIELD_NAMES) Optional<String> fieldNamesParam,
+                                      @Context HttpHeaders headers) throws CedarException {
+    CedarRequestContext c = buildRequestContext();
     c.must(c.user()).be(LoggedIn);
     c.must(c.user()).have(CedarPermission.TEMPLATE_ELEMENT_READ);
 
+    Boolean summary = ensureSummary(summaryParam);
+    List<String> fieldNameList = getAndCheckFieldNames(fieldNamesParam, summary);
+    boolean cacheable = !summary && fieldNameList == null && responseCache.isEnabled();
+    if (cacheable) {
+      Response cached = responseCache.find(CedarNodeType.ELEMENT, id, headers);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    long cacheStamp = SingleFlightReader.NO_STAMP;
+
     JsonNode templateElement = null;
     try {
-      templateElement = templateElementService.findTemplateElement(id);
+      if (summary || fieldNameList != null) {
+        FieldProjection projection = buildFieldProjection(summary, fieldNameList, FIELD_NAMES_SUMMARY_LIST);
+        templateElement = singleFlightReader.read(CedarNodeType.ELEMENT, id, projection.cacheKey(),
+            () -> documentReader.findById(CedarNodeType.ELEMENT, id, projection));
+      } else {
+        SingleFlightReader.Result result = singleFlightReader.read(CedarNodeType.ELEMENT, id, null,
+            responseCache::stamp, () -> documentReader.findById(CedarNodeType.ELEMENT, id, FieldProjection.all()));
+        templateElement = result.getDocument();
+        cacheStamp = result.getStamp();
+      }
     } catch (IOException | ProcessingException e) {
       return CedarResponse.internalServerError()
           .id(id)
@@ -110,7 +164,10 @@ public class TemplateElementsResource extends AbstractTemplateServerResource {
           .build();
     } else {
       MongoUtils.removeIdField(templateElement);
-      return Response.ok().entity(templateElement).build();
+      long version = VersionedDocumentWriter.extractVersion(templateElement);
+      Response stored = cacheable ? responseCache.store(CedarNodeType.ELEMENT, id, templateElement, version,
+          cacheStamp, headers) : null;
+      return stored != null ? stored : Response.ok().tag(versionTag(version)).entity(templateElement).build();
     }
   }
 
@@ -122,7 +179,7 @@ public class TemplateElementsResource extends AbstractTemplateServerResource {
                                           @QueryParam(QP_FIELD_NAMES) Optional<String> fieldNamesParam) throws
       CedarException {
 
-    CedarRequestContext c = CedarRequestContextFactory.fromRequest(request);
+    CedarRequestContext c = buildRequestContext();
     c.must(c.user()).be(LoggedIn);
     c.must(c.user()).have(CedarPermission.TEMPLATE_ELEMENT_READ);
 
@@ -138,8 +195,11 @@ public class TemplateElementsResource extends AbstractTemplateServerResource {
     List<String> fieldNameList = getAndCheckFieldNames(fieldNamesParam, summary);
     Map<String, Object> r = new HashMap<>();
     List<JsonNode> elements = null;
+    boolean fromSummaries = summary && summaryStore.isServing(CedarNodeType.ELEMENT);
     try {
-      if (summary) {
+      if (fromSummaries) {
+        elements = summaryStore.findAll(CedarNodeType.ELEMENT, limit, offset);
+      } else if (summary) {
         elements = templateElementService.findAllTemplateElements(limit, offset, FIELD_NAMES_SUMMARY_LIST, FieldNameInEx
             .INCLUDE);
       } else if (fieldNameList != null) {
@@ -155,7 +215,8 @@ public class TemplateElementsResource extends AbstractTemplateServerResource {
           .exception(e)
           .build();
     }
-    long total = templateElementService.count();
+    long total = fromSummaries ? summaryStore.count(CedarNodeType.ELEMENT)
+        : templateElementService.count();
     checkPagingParametersAgainstTotal(offset, total);
 
     String absoluteUrl = uriInfo.getAbsolutePathBuilder().build().toString();
@@ -168,28 +229,104 @@ public class TemplateElementsResource extends AbstractTemplateServerResource {
     return responseBuilder.build();
   }
 
+  @GET
+  @Timed
+  @Path("/{id}/usages")
+  public Response findTemplateElementUsages(@PathParam(PP_ID) String id,
+                                            @QueryParam(QP_LIMIT) Optional<Integer> limitParam,
+                                            @QueryParam(QP_OFFSET) Optional<Integer> offsetParam) throws
+      CedarException {
+    CedarRequestContext c = buildRequestContext();
+    c.must(c.user()).be(LoggedIn);
+    c.must(c.user()).have(CedarPermission.TEMPLATE_ELEMENT_READ);
+
+    if (!elementUsageIndex.isEnabled()) {
+      return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+    }
+    PagedQuery pagedQuery = new PagedQuery(cedarConfig.getTemplateRESTAPI().getPagination())
+        .limit(limitParam)
+        .offset(offsetParam);
+    pagedQuery.validate();
+
+    Integer limit = pagedQuery.getLimit();
+    Integer offset = pagedQuery.getOffset();
+    List<Map<String, String>> usages = new ArrayList<>();
+    long total;
+    try {
+      for (String templateId : elementUsageIndex.findTemplateIds(id, limit, offset)) {
+        usages.add(Collections.singletonMap("@id", templateId));
+      }
+      total = elementUsageIndex.countTemplates(id);
+    } catch (IOException e) {
+      return CedarResponse.internalServerError()
+          .id(id)
+          .errorKey(CedarErrorKey.TEMPLATE_ELEMENTS_NOT_LISTED)
+          .errorMessage("The usages of the template element can not be listed by id:" + id)
+          .exception(e)
+          .build();
+    }
+    checkPagingParametersAgainstTotal(offset, total);
+
+    String absoluteUrl = uriInfo.getAbsolutePathBuilder().build().toString();
+    String linkHeader = LinkHeaderUtil.getPagingLinkHeader(absoluteUrl, total, limit, offset);
+    Response.ResponseBuilder responseBuilder = Response.ok().entity(usages);
+    responseBuilder.header(CustomHttpConstants.HEADER_TOTAL_COUNT, String.valueOf(total));
+    if (!linkHeader.isEmpty()) {
+      responseBuilder.header(HttpConstants.HTTP_HEADER_LINK, linkHeader);
+    }
+    return responseBuilder.build();
+  }
+
+  @POST
+  @Timed
+  @Path("/_mget")
+  public Response findTemplateElementsByIds(@QueryParam(QP_SUMMARY) Optional<Boolean> summaryParam,
+                                            @QueryParam(QP_FIELD_NAMES) Optional<String> fieldNamesParam) throws
+      CedarException {
+    CedarRequestContext c = buildRequestContext();
+    c.must(c.user()).be(LoggedIn);
+    c.must(c.user()).have(CedarPermission.TEMPLATE_ELEMENT_READ);
+
+    Boolean summary = ensureSummary(summaryParam);
+    List<String> fieldNameList = getAndCheckFieldNames(fieldNamesParam, summary);
+    List<String> ids = getAndCheckMultiGetIds(readRequestBody(c, CedarNodeType.ELEMENT));
+    FieldProjection projection = buildFieldProjection(summary, fieldNameList, FIELD_NAMES_SUMMARY_LIST);
+
+    Map<String, JsonNode> found = null;
+    try {
+      found = documentReader.findByIds(CedarNodeType.ELEMENT, ids, projection);
+    } catch (IOException e) {
+      return CedarResponse.internalServerError()
+          .errorKey(CedarErrorKey.TEMPLATE_ELEMENTS_NOT_LISTED)
+          .errorMessage("The template elements can not be listed")
+          .exception(e)
+          .build();
+    }
+    return Response.ok().entity(buildMultiGetResult(ids, found)).build();
+  }
+
   @PUT
   @Timed
   @Path("/{id}")
-  public Response updateTemplateElement(@PathParam(PP_ID) String id) throws CedarException {
-    CedarRequestContext c = CedarRequestContextFactory.fromRequest(request);
+  public Response updateTemplateElement(@PathParam(PP_ID) String id,
+                                        @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch) throws CedarException {
+    CedarRequestContext c = buildRequestContext();
     c.must(c.user()).be(LoggedIn);
     c.must(c.user()).have(CedarPermission.TEMPLATE_ELEMENT_UPDATE);
 
-    JsonNode newElement = c.request().getRequestBody().asJson();
+    Long expectedVersion = getExpectedVersion(ifMatch);
+
+    JsonNode newElement = readRequestBody(c, CedarNodeType.ELEMENT);
     ProvenanceInfo pi = provenanceUtil.build(c.getCedarUser());
     provenanceUtil.patchProvenanceInfo(newElement, pi);
-    JsonNode updatedTemplateElement = null;
+    VersionedUpdate versionedUpdate = null;
     try {
-      templateFieldService.saveNewFieldsAndReplaceIds(newElement, pi, provenanceUtil, linkedDataUtil);
-      updatedTemplateElement = templateElementService.updateTemplateElement(id, newElement);
-    } catch (InstanceNotFoundException e) {
-      return CedarResponse.notFound()
-          .id(id)
-          .errorKey(CedarErrorKey.TEMPLATE_ELEMENT_NOT_FOUND)
-          .errorMessage("The template element can not be found by id:" + id)
-          .exception(e)
-          .build();
+      // the nested fields are saved as documents of their own, so only save them if the update can apply
+      versionedUpdate = versionedDocumentWriter.precheck(CedarNodeType.ELEMENT, id, expectedVersion);
+      if (versionedUpdate == null) {
+        templateFieldService.saveNewFieldsAndReplaceIds(newElement, pi, provenanceUtil, linkedDataUtil);
+        versionedUpdate = versionedDocumentWriter.update(CedarNodeType.ELEMENT, id, newElement, expectedVersion);
+      }
     } catch (IOException e) {
       return CedarResponse.internalServerError()
           .id(id)
@@ -198,15 +335,27 @@ public class TemplateElementsResource extends AbstractTemplateServerResource {
           .exception(e)
           .build();
     }
+    if (versionedUpdate.getStatus() == VersionedUpdate.Status.NOT_FOUND) {
+      return CedarResponse.notFound()
+          .id(id)
+          .errorKey(CedarErrorKey.TEMPLATE_ELEMENT_NOT_FOUND)
+          .errorMessage("The template element can not be found by id:" + id)
+          .build();
+    } else if (versionedUpdate.getStatus() == VersionedUpdate.Status.VERSION_MISMATCH) {
+      return preconditionFailed(id, versionedUpdate.getVersion());
+    }
+    changeListener.updated(CedarNodeType.ELEMENT, versionedUpdate.getBefore(), versionedUpdate.getAfter());
+    JsonNode updatedTemplateElement = versionedUpdate.getAfter();
     MongoUtils.removeIdField(updatedTemplateElement);
-    return Response.ok().entity(updatedTemplateElement).build();
+    long version = VersionedDocumentWriter.extractVersion(updatedTemplateElement);
+    return Response.ok().tag(versionTag(version)).entity(updatedTemplateElement).build();
   }
 
   @DELETE
   @Timed
   @Path("/{id}")
   public Response deleteTemplateElement(@PathParam(PP_ID) String id) throws CedarException {
-    CedarRequestContext c = CedarRequestContextFactory.fromRequest(request);
+    CedarRequestContext c = buildRequestContext();
     c.must(c.user()).be(LoggedIn);
     c.must(c.user()).have(CedarPermission.TEMPLATE_ELEMENT_DELETE);
 
@@ -227,6 +376,7 @@ public class TemplateElementsResource extends AbstractTemplateServerResource {
           .exception(e)
           .build();
     }
+    changeListener.deleted(CedarNodeType.ELEMENT, Collections.singletonList(id));
     return CedarResponse.noContent().build();
   }
 
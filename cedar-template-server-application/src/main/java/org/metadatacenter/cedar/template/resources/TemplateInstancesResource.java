@@ -2,6 +2,26 @@ package org.metadatacenter.cedar.template.resources;
 
 import com.codahale.metrics.annotation.Timed;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import org.metadatacenter.cedar.template.service.InstanceWriteUnknownException;
+import org.metadatacenter.cedar.template.service.TemplateInstanceStore;
+import org.metadatacenter.cedar.template.service.TemplateInstanceWriter;
+import org.metadatacenter.cedar.template.change.DocumentChangeListener;
+import org.metadatacenter.cedar.template.format.BinaryFormats;
+import org.metadatacenter.cedar.template.format.RequestBodyReader;
+import org.metadatacenter.cedar.template.id.IdGenerationMode;
+import org.metadatacenter.cedar.template.mongo.CreatedOn;
+import org.metadatacenter.cedar.template.mongo.FieldProjection;
+import org.metadatacenter.cedar.template.mongo.KeysetPage;
+import org.metadatacenter.cedar.template.mongo.ProjectingDocumentReader;
+import org.metadatacenter.cedar.template.mongo.TemplateInstanceFinder;
+import org.metadatacenter.cedar.template.mongo.TemplateInstanceQuery;
+import org.metadatacenter.cedar.template.mongo.VersionedDocumentWriter;
+import org.metadatacenter.cedar.template.mongo.VersionedUpdate;
+import org.metadatacenter.cedar.template.read.SingleFlightReader;
+import org.metadatacenter.cedar.template.summary.SummaryStore;
 import org.metadatacenter.config.CedarConfig;
 import org.metadatacenter.constant.CustomHttpConstants;
 import org.metadatacenter.constant.HttpConstants;
@@ -9,11 +29,10 @@ import org.metadatacenter.error.CedarErrorKey;
 import org.metadatacenter.exception.CedarException;
 import org.metadatacenter.model.CedarNodeType;
 import org.metadatacenter.rest.context.CedarRequestContext;
-import org.metadatacenter.rest.context.CedarRequestContextFactory;
+import org.metadatacenter.rest.exception.CedarAssertionException;
 import org.metadatacenter.server.model.provenance.ProvenanceInfo;
 import org.metadatacenter.server.security.model.auth.CedarPermission;
 import org.metadatacenter.server.service.FieldNameInEx;
-import org.metadatacenter.server.service.TemplateInstanceService;
 import org.metadatacenter.util.http.CedarResponse;
 import org.metadatacenter.util.http.CedarUrlUtil;
 import org.metadatacenter.util.http.LinkHeaderUtil;
@@ -22,28 +41,48 @@ import org.metadatacenter.util.mongo.MongoUtils;
 
 import javax.management.InstanceNotFoundException;
 import javax.ws.rs.*;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.io.IOException;
 import java.net.URI;
 import java.util.*;
 
+import static org.metadatacenter.cedar.template.constant.TemplateServerQueryParameters.*;
 import static org.metadatacenter.constant.CedarPathParameters.PP_ID;
 import static org.metadatacenter.constant.CedarQueryParameters.*;
 import static org.metadatacenter.rest.assertion.GenericAssertions.LoggedIn;
 
 @Path("/template-instances")
-@Produces(MediaType.APPLICATION_JSON)
+@Produces({MediaType.APPLICATION_JSON, BinaryFormats.APPLICATION_SMILE, BinaryFormats.APPLICATION_CBOR})
 public class TemplateInstancesResource extends AbstractTemplateServerResource {
 
-  private final TemplateInstanceService<String, JsonNode> templateInstanceService;
+  private final TemplateInstanceStore templateInstanceStore;
+  private final TemplateInstanceWriter templateInstanceWriter;
+  private final ProjectingDocumentReader documentReader;
+  private final VersionedDocumentWriter versionedDocumentWriter;
+  private final SummaryStore summaryStore;
+  private final DocumentChangeListener changeListener;
+  private final SingleFlightReader singleFlightReader;
+  private final TemplateInstanceFinder templateInstanceFinder;
 
   protected static List<String> FIELD_NAMES_SUMMARY_LIST;
 
-  public TemplateInstancesResource(CedarConfig cedarConfig, TemplateInstanceService<String, JsonNode>
-      templateInstanceService) {
-    super(cedarConfig);
-    this.templateInstanceService = templateInstanceService;
+  public TemplateInstancesResource(CedarConfig cedarConfig, TemplateInstanceStore templateInstanceStore,
+      TemplateInstanceWriter templateInstanceWriter,
+      ProjectingDocumentReader documentReader, VersionedDocumentWriter versionedDocumentWriter,
+      SummaryStore summaryStore, DocumentChangeListener changeListener, SingleFlightReader singleFlightReader,
+      TemplateInstanceFinder templateInstanceFinder, IdGenerationMode idGenerationMode,
+      RequestBodyReader requestBodyReader) {
+    super(cedarConfig, idGenerationMode, requestBodyReader);
+    this.templateInstanceStore = templateInstanceStore;
+    this.templateInstanceWriter = templateInstanceWriter;
+    this.documentReader = documentReader;
+    this.versionedDocumentWriter = versionedDocumentWriter;
+    this.summaryStore = summaryStore;
+    this.changeListener = changeListener;
+    this.singleFlightReader = singleFlightReader;
+    this.templateInstanceFinder = templateInstanceFinder;
     FIELD_NAMES_SUMMARY_LIST = new ArrayList<>();
     FIELD_NAMES_SUMMARY_LIST.addAll(cedarConfig.getTemplateRESTAPI().getSummaries().getInstance().getFields());
   }
@@ -52,20 +91,26 @@ public class TemplateInstancesResource extends AbstractTemplateServerResource {
   @Timed
   public Response createTemplateInstance(@QueryParam(QP_IMPORT_MODE) Optional<Boolean> importMode) throws
       CedarException {
-    CedarRequestContext c = CedarRequestContextFactory.fromRequest(request);
+    CedarRequestContext c = buildRequestContext();
     c.must(c.user()).be(LoggedIn);
     c.must(c.user()).have(CedarPermission.TEMPLATE_INSTANCE_CREATE);
 
-    //TODO: test if it is not empty
-    //c.must(c.request().getRequestBody()).be(NonEmpty);
-    JsonNode templateInstance = c.request().getRequestBody().asJson();
+    JsonNode templateInstance = readRequestBody(c, CedarNodeType.INSTANCE);
 
     ProvenanceInfo pi = provenanceUtil.build(c.getCedarUser());
     checkImportModeSetProvenanceAndId(CedarNodeType.INSTANCE, templateInstance, pi, importMode);
 
     JsonNode createdTemplateInstance = null;
     try {
-      createdTemplateInstance = templateInstanceService.createTemplateInstance(templateInstance);
+      createdTemplateInstance = templateInstanceWriter.createTemplateInstance(templateInstance);
+    } catch (InstanceWriteUnknownException e) {
+      // a retry of the create could store the instance twice, so the client is sent to look for it instead
+      return Response.accepted()
+          .location(CedarUrlUtil.getIdURI(uriInfo, e.getId()))
+          .entity(JsonNodeFactory.instance.objectNode()
+              .put("@id", e.getId())
+              .put("message", e.getMessage()))
+          .build();
     } catch (IOException e) {
       return CedarResponse.internalServerError()
           .errorKey(CedarErrorKey.TEMPLATE_INSTANCE_NOT_CREATED)
@@ -73,25 +118,41 @@ public class TemplateInstancesResource extends AbstractTemplateServerResource {
           .exception(e)
           .build();
     }
-    MongoUtils.removeIdField(createdTemplateInstance);
+    changeListener.created(CedarNodeType.INSTANCE, createdTemplateInstance);
+    removeInternalFields(createdTemplateInstance);
 
     String id = createdTemplateInstance.get("@id").asText();
 
     URI uri = CedarUrlUtil.getIdURI(uriInfo, id);
-    return Response.created(uri).entity(createdTemplateInstance).build();
+    long version = VersionedDocumentWriter.extractVersion(createdTemplateInstance);
+    return Response.created(uri).tag(versionTag(version)).entity(createdTemplateInstance).build();
   }
 
   @GET
   @Timed
   @Path("/{id}")
-  public Response findTemplateInstance(@PathParam(PP_ID) String id) throws CedarException {
-    CedarRequestContext c = CedarRequestContextFactory.fromRequest(request);
+  public Response findTemplateInstance(@PathParam(PP_ID) String id,
+                                       @QueryParam(QP_SUMMARY) Optional<Boolean> summaryParam,
+                                       @QueryParam(QP_FIELD_NAMES) Optional<String> fieldNamesParam) throws
+      CedarException {
+    CedarRequestContext c = buildRequestContext();
     c.must(c.user()).be(LoggedIn);
     c.must(c.user()).have(CedarPermission.TEMPLATE_INSTANCE_READ);
+
+    Boolean summary = ensureSummary(summaryParam);
+    List<String> fieldNameList = getAndCheckFieldNames(fieldNamesParam, summary);
+
     JsonNode templateInstance = null;
     try {
-      templateInstance = templateInstanceService.findTemplateInstance(id);
-    } catch (IOException e) {
+      if (summary || fieldNameList != null) {
+        FieldProjection projection = buildFieldProjection(summary, fieldNameList, FIELD_NAMES_SUMMARY_LIST);
+        templateInstance = singleFlightReader.read(CedarNodeType.INSTANCE, id, projection.cacheKey(),
+            () -> documentReader.findById(CedarNodeType.INSTANCE, id, projection));
+      } else {
+        templateInstance = singleFlightReader.read(CedarNodeType.INSTANCE, id, null,
+            () -> documentReader.findById(CedarNodeType.INSTANCE, id, FieldProjection.all()));
+      }
+    } catch (IOException | ProcessingException e) {
       return CedarResponse.internalServerError()
           .id(id)
           .errorKey(CedarErrorKey.TEMPLATE_INSTANCE_NOT_FOUND)
@@ -106,8 +167,9 @@ public class TemplateInstancesResource extends AbstractTemplateServerResource {
           .errorMessage("The template instance can not be found by id:" + id)
           .build();
     } else {
-      MongoUtils.removeIdField(templateInstance);
-      return Response.ok().entity(templateInstance).build();
+      removeInternalFields(templateInstance);
+      long version = VersionedDocumentWriter.extractVersion(templateInstance);
+      return Response.ok().tag(versionTag(version)).entity(templateInstance).build();
     }
   }
 
@@ -116,10 +178,15 @@ public class TemplateInstancesResource extends AbstractTemplateServerResource {
   public Response findAllTemplateInstances(@QueryParam(QP_LIMIT) Optional<Integer> limitParam,
                                            @QueryParam(QP_OFFSET) Optional<Integer> offsetParam,
                                            @QueryParam(QP_SUMMARY) Optional<Boolean> summaryParam,
-                                           @QueryParam(QP_FIELD_NAMES) Optional<String> fieldNamesParam) throws
+                                           @QueryParam(QP_FIELD_NAMES) Optional<String> fieldNamesParam,
+                                           @QueryParam(QP_TEMPLATE_ID) Optional<String> templateIdParam,
+                                           @QueryParam(QP_CREATED_BY) Optional<String> createdByParam,
+                                           @QueryParam(QP_CREATED_AFTER) Optional<String> createdAfterParam,
+                                           @QueryParam(QP_CREATED_BEFORE) Optional<String> createdBeforeParam,
+                                           @QueryParam(QP_AFTER) Optional<String> afterParam) throws
       CedarException {
 
-    CedarRequestContext c = CedarRequestContextFactory.fromRequest(request);
+    CedarRequestContext c = buildRequestContext();
     c.must(c.user()).be(LoggedIn);
     c.must(c.user()).have(CedarPermission.TEMPLATE_INSTANCE_READ);
 
@@ -133,19 +200,39 @@ public class TemplateInstancesResource extends AbstractTemplateServerResource {
     Boolean summary = ensureSummary(summaryParam);
 
     List<String> fieldNameList = getAndCheckFieldNames(fieldNamesParam, summary);
+
+    TemplateInstanceQuery query = new TemplateInstanceQuery()
+        .templateId(valueOrNull(templateIdParam))
+        .createdBy(valueOrNull(createdByParam))
+        .createdAfter(valueOrNull(createdAfterParam))
+        .createdBefore(valueOrNull(createdBeforeParam))
+        .after(valueOrNull(afterParam));
+    if (!query.isEmpty()) {
+      if (valueOrNull(offsetParam) != null) {
+        throw new CedarAssertionException(
+            "Parameter 'offset' can not be used with filters. Use the 'after' cursor of the 'next' link instead!");
+      }
+      return findFilteredTemplateInstances(query, limit,
+          buildFieldProjection(summary, fieldNameList, FIELD_NAMES_SUMMARY_LIST));
+    }
     Map<String, Object> r = new HashMap<>();
     List<JsonNode> instances = null;
+    boolean fromSummaries = summary && summaryStore.isServing(CedarNodeType.INSTANCE);
     try {
-      if (summary) {
-        instances = templateInstanceService.findAllTemplateInstances(limit, offset, FIELD_NAMES_SUMMARY_LIST,
+      if (fromSummaries) {
+        instances = summaryStore.findAll(CedarNodeType.INSTANCE, limit, offset);
+      } else if (summary) {
+        instances = templateInstanceStore.findAllTemplateInstances(limit, offset, FIELD_NAMES_SUMMARY_LIST,
             FieldNameInEx.INCLUDE);
       } else if (fieldNameList != null) {
-        instances = templateInstanceService.findAllTemplateInstances(limit, offset, fieldNameList, FieldNameInEx
+        instances = templateInstanceStore.findAllTemplateInstances(limit, offset, fieldNameList, FieldNameInEx
             .INCLUDE);
       } else {
-        instances = templateInstanceService.findAllTemplateInstances(limit, offset, FIELD_NAMES_EXCLUSION_LIST,
+        instances = templateInstanceStore.findAllTemplateInstances(limit, offset, FIELD_NAMES_EXCLUSION_LIST,
             FieldNameInEx.EXCLUDE);
       }
+    } catch (IllegalArgumentException e) {
+      throw new CedarAssertionException(e.getMessage());
     } catch (IOException e) {
       return CedarResponse.internalServerError()
           .errorKey(CedarErrorKey.TEMPLATE_INSTANCES_NOT_LISTED)
@@ -153,7 +240,8 @@ public class TemplateInstancesResource extends AbstractTemplateServerResource {
           .exception(e)
           .build();
     }
-    long total = templateInstanceService.count();
+    long total = fromSummaries ? summaryStore.count(CedarNodeType.INSTANCE)
+        : templateInstanceStore.count();
     checkPagingParametersAgainstTotal(offset, total);
 
     String absoluteUrl = uriInfo.getAbsolutePathBuilder().build().toString();
@@ -166,48 +254,90 @@ public class TemplateInstancesResource extends AbstractTemplateServerResource {
     return responseBuilder.build();
   }
 
+  @POST
+  @Timed
+  @Path("/_mget")
+  public Response findTemplateInstancesByIds(@QueryParam(QP_SUMMARY) Optional<Boolean> summaryParam,
+                                             @QueryParam(QP_FIELD_NAMES) Optional<String> fieldNamesParam) throws
+      CedarException {
+    CedarRequestContext c = buildRequestContext();
+    c.must(c.user()).be(LoggedIn);
+    c.must(c.user()).have(CedarPermission.TEMPLATE_INSTANCE_READ);
+
+    Boolean summary = ensureSummary(summaryParam);
+    List<String> fieldNameList = getAndCheckFieldNames(fieldNamesParam, summary);
+    List<String> ids = getAndCheckMultiGetIds(readRequestBody(c, CedarNodeType.INSTANCE));
+    FieldProjection projection = buildFieldProjection(summary, fieldNameList, FIELD_NAMES_SUMMARY_LIST);
+
+    Map<String, JsonNode> found = null;
+    try {
+      found = documentReader.findByIds(CedarNodeType.INSTANCE, ids, projection);
+    } catch (IOException e) {
+      return CedarResponse.internalServerError()
+          .errorKey(CedarErrorKey.TEMPLATE_INSTANCES_NOT_LISTED)
+          .errorMessage("The template instances can not be listed")
+          .exception(e)
+          .build();
+    }
+    return Response.ok().entity(buildMultiGetResult(ids, found)).build();
+  }
+
   @PUT
   @Timed
   @Path("/{id}")
-  public Response updateTemplateInstance(@PathParam(PP_ID) String id) throws CedarException {
-    CedarRequestContext c = CedarRequestContextFactory.fromRequest(request);
+  public Response updateTemplateInstance(@PathParam(PP_ID) String id,
+                                         @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch) throws CedarException {
+    CedarRequestContext c = buildRequestContext();
     c.must(c.user()).be(LoggedIn);
     c.must(c.user()).have(CedarPermission.TEMPLATE_INSTANCE_UPDATE);
 
-    JsonNode newInstance = c.request().getRequestBody().asJson();
+    Long expectedVersion = getExpectedVersion(ifMatch);
+
+    JsonNode newInstance = readRequestBody(c, CedarNodeType.INSTANCE);
     ProvenanceInfo pi = provenanceUtil.build(c.getCedarUser());
     provenanceUtil.patchProvenanceInfo(newInstance, pi);
-    JsonNode updatedTemplateInstance = null;
+    VersionedUpdate versionedUpdate = null;
     try {
-      updatedTemplateInstance = templateInstanceService.updateTemplateInstance(id, newInstance);
-    } catch (InstanceNotFoundException e) {
+      versionedUpdate = versionedDocumentWriter.update(CedarNodeType.INSTANCE, id, newInstance, expectedVersion);
+    } catch (IOException e) {
+      return CedarResponse.internalServerError()
+          .id(id)
+          .errorKey(CedarErrorKey.TEMPLATE_INSTANCE_NOT_UPDATED)
+          .errorMessage("The template instance can not be updated by id:" + id)
+          .exception(e)
+          .build();
+    }
+    if (versionedUpdate.getStatus() == VersionedUpdate.Status.NOT_FOUND) {
       return CedarResponse.notFound()
           .id(id)
           .errorKey(CedarErrorKey.TEMPLATE_INSTANCE_NOT_FOUND)
           .errorMessage("The template instance can not be found by id:" + id)
-          .exception(e)
           .build();
-    } catch (IOException e) {
-      return CedarResponse.internalServerError()
+    } else if (versionedUpdate.getStatus() == VersionedUpdate.Status.VERSION_MISMATCH) {
+      return preconditionFailed(id, versionedUpdate.getVersion());
+    } else if (versionedUpdate.getStatus() == VersionedUpdate.Status.TEMPLATE_CHANGED) {
+      return CedarResponse.badRequest()
           .id(id)
           .errorKey(CedarErrorKey.TEMPLATE_INSTANCE_NOT_UPDATED)
-          .errorMessage("The template instance can not be updated by id:" + id)
-          .exception(e)
+          .errorMessage("The template the instance is based on can not be changed while instances are partitioned")
           .build();
     }
-    MongoUtils.removeIdField(updatedTemplateInstance);
-    return Response.ok().entity(updatedTemplateInstance).build();
+    changeListener.updated(CedarNodeType.INSTANCE, versionedUpdate.getBefore(), versionedUpdate.getAfter());
+    JsonNode updatedTemplateInstance = versionedUpdate.getAfter();
+    removeInternalFields(updatedTemplateInstance);
+    long version = VersionedDocumentWriter.extractVersion(updatedTemplateInstance);
+    return Response.ok().tag(versionTag(version)).entity(updatedTemplateInstance).build();
   }
 
   @DELETE
   @Timed
   @Path("/{id}")
   public Response deleteTemplateInstance(@PathParam(PP_ID) String id) throws CedarException {
-    CedarRequestContext c = CedarRequestContextFactory.fromRequest(request);
+    CedarRequestContext c = buildRequestContext();
     c.must(c.user()).be(LoggedIn);
     c.must(c.user()).have(CedarPermission.TEMPLATE_INSTANCE_DELETE);
     try {
-      templateInstanceService.deleteTemplateInstance(id);
+      templateInstanceStore.deleteTemplateInstance(id);
     } catch (InstanceNotFoundException e) {
       return CedarResponse.notFound()
           .id(id)
@@ -223,7 +353,44 @@ public class TemplateInstancesResource extends AbstractTemplateServerResource {
           .exception(e)
           .build();
     }
+    changeListener.deleted(CedarNodeType.INSTANCE, Collections.singletonList(id));
     return CedarResponse.noContent().build();
   }
 
-}
\ No newline at end of file
+  /**
+   * Lists the instances matching the filters as an indexed range scan. Paging uses the keyset cursor of the
+   * 'next' link instead of an offset.
+   */
+  private Response findFilteredTemplateInstances(TemplateInstanceQuery query, int limit, FieldProjection projection)
+      throws CedarException {
+    KeysetPage page = null;
+    try {
+      page = templateInstanceFinder.find(query, limit, projection);
+    } catch (IllegalArgumentException e) {
+      throw new CedarAssertionException(e.getMessage());
+    } catch (IOException e) {
+      return CedarResponse.internalServerError()
+          .errorKey(CedarErrorKey.TEMPLATE_INSTANCES_NOT_LISTED)
+          .errorMessage("The template instances can not be listed")
+          .exception(e)
+          .build();
+    }
+    for (JsonNode instance : page.getItems()) {
+      VersionedDocumentWriter.extractVersion(instance);
+    }
+    Response.ResponseBuilder responseBuilder = Response.ok().entity(page.getItems());
+    if (page.getNextCursor() != null) {
+      URI next = uriInfo.getRequestUriBuilder().replaceQueryParam(QP_AFTER, page.getNextCursor()).build();
+      responseBuilder.header(HttpConstants.HTTP_HEADER_LINK, "<" + next + ">; rel=\"next\"");
+    }
+    return responseBuilder.build();
+  }
+
+  /**
+   * Removes the '_id' and the normalized creation date, which are stored with every instance but never returned.
+   */
+  private static void removeInternalFields(JsonNode templateInstance) {
+    MongoUtils.removeIdField(templateInstance);
+    ((ObjectNode) templateInstance).remove(CreatedOn.FIELD);
+  }
+}
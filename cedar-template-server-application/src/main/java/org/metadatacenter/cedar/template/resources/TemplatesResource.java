@@ -3,6 +3,24 @@ package org.metadatacenter.cedar.template.resources;
 import com.codahale.metrics.annotation.Timed;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.github.fge.jsonschema.core.exceptions.ProcessingException;
+import org.metadatacenter.cedar.template.change.DocumentChangeListener;
+import org.metadatacenter.cedar.template.format.BinaryFormats;
+import org.metadatacenter.cedar.template.format.RequestBodyReader;
+import org.metadatacenter.cedar.template.history.TemplateHistory;
+import org.metadatacenter.cedar.template.history.TemplateVersion;
+import org.metadatacenter.cedar.template.id.IdGenerationMode;
+import org.metadatacenter.cedar.template.jobs.TemplateDeleteJob;
+import org.metadatacenter.cedar.template.jobs.TemplateDeleteJobManager;
+import org.metadatacenter.cedar.template.mongo.FieldProjection;
+import org.metadatacenter.cedar.template.mongo.ProjectingDocumentReader;
+import org.metadatacenter.cedar.template.mongo.VersionedDocumentWriter;
+import org.metadatacenter.cedar.template.mongo.VersionedUpdate;
+import org.metadatacenter.cedar.template.read.ResponseCache;
+import org.metadatacenter.cedar.template.read.SingleFlightReader;
+import org.metadatacenter.cedar.template.search.SearchIndex;
+import org.metadatacenter.cedar.template.search.SearchPage;
+import org.metadatacenter.cedar.template.service.TemplateInstanceStore;
+import org.metadatacenter.cedar.template.summary.SummaryStore;
 import org.metadatacenter.config.CedarConfig;
 import org.metadatacenter.constant.CustomHttpConstants;
 import org.metadatacenter.constant.HttpConstants;
@@ -11,12 +29,11 @@ import org.metadatacenter.error.CedarErrorReasonKey;
 import org.metadatacenter.exception.CedarException;
 import org.metadatacenter.model.CedarNodeType;
 import org.metadatacenter.rest.context.CedarRequestContext;
-import org.metadatacenter.rest.context.CedarRequestContextFactory;
+import org.metadatacenter.rest.exception.CedarAssertionException;
 import org.metadatacenter.server.model.provenance.ProvenanceInfo;
 import org.metadatacenter.server.security.model.auth.CedarPermission;
 import org.metadatacenter.server.service.FieldNameInEx;
 import org.metadatacenter.server.service.TemplateFieldService;
-import org.metadatacenter.server.service.TemplateInstanceService;
 import org.metadatacenter.server.service.TemplateService;
 import org.metadatacenter.util.http.CedarResponse;
 import org.metadatacenter.util.http.CedarUrlUtil;
@@ -26,33 +43,67 @@ import org.metadatacenter.util.mongo.MongoUtils;
 
 import javax.management.InstanceNotFoundException;
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
 import java.io.IOException;
 import java.net.URI;
 import java.util.*;
 
+import static org.metadatacenter.cedar.template.constant.TemplateServerQueryParameters.QP_CASCADE;
+import static org.metadatacenter.cedar.template.constant.TemplateServerQueryParameters.QP_SEARCH_QUERY;
+import static org.metadatacenter.cedar.template.constant.TemplateServerQueryParameters.QP_SEARCH_RESOURCE_TYPE;
 import static org.metadatacenter.constant.CedarPathParameters.PP_ID;
 import static org.metadatacenter.constant.CedarQueryParameters.*;
 import static org.metadatacenter.rest.assertion.GenericAssertions.LoggedIn;
 
 @Path("/templates")
-@Produces(MediaType.APPLICATION_JSON)
+@Produces({MediaType.APPLICATION_JSON, BinaryFormats.APPLICATION_SMILE, BinaryFormats.APPLICATION_CBOR})
 public class TemplatesResource extends AbstractTemplateServerResource {
 
   private final TemplateService<String, JsonNode> templateService;
   private final TemplateFieldService<String, JsonNode> templateFieldService;
-  private final TemplateInstanceService<String, JsonNode> templateInstanceService;
+  private final TemplateInstanceStore templateInstanceStore;
+  private final ProjectingDocumentReader documentReader;
+  private final VersionedDocumentWriter versionedDocumentWriter;
+  private final SummaryStore summaryStore;
+  private final DocumentChangeListener changeListener;
+  private final SingleFlightReader singleFlightReader;
+  private final ResponseCache responseCache;
+  private final SearchIndex searchIndex;
+  private final TemplateHistory templateHistory;
+  private final TemplateDeleteJobManager templateDeleteJobManager;
 
   protected static List<String> FIELD_NAMES_SUMMARY_LIST;
 
   public TemplatesResource(CedarConfig cedarConfig, TemplateService<String, JsonNode> templateService,
                            TemplateFieldService<String, JsonNode> templateFieldService,
-                           TemplateInstanceService<String, JsonNode> templateInstanceService) {
-    super(cedarConfig);
+                           TemplateInstanceStore templateInstanceStore,
+                           ProjectingDocumentReader documentReader,
+                           VersionedDocumentWriter versionedDocumentWriter,
+                           SummaryStore summaryStore,
+                           DocumentChangeListener changeListener,
+                           SingleFlightReader singleFlightReader,
+                           ResponseCache responseCache,
+                           SearchIndex searchIndex,
+                           TemplateHistory templateHistory,
+                           TemplateDeleteJobManager templateDeleteJobManager,
+                           IdGenerationMode idGenerationMode, RequestBodyReader requestBodyReader) {
+    super(cedarConfig, idGenerationMode, requestBodyReader);
     this.templateService = templateService;
     this.templateFieldService = templateFieldService;
-    this.templateInstanceService = templateInstanceService;
+    this.templateInstanceStore = templateInstanceStore;
+    this.documentReader = documentReader;
+    this.versionedDocumentWriter = versionedDocumentWriter;
+    this.summaryStore = summaryStore;
+    this.changeListener = changeListener;
+    this.singleFlightReader = singleFlightReader;
+    this.responseCache = responseCache;
+    this.searchIndex = searchIndex;
+    this.templateHistory = templateHistory;
+    this.templateDeleteJobManager = templateDeleteJobManager;
     FIELD_NAMES_SUMMARY_LIST = new ArrayList<>();
     FIELD_NAMES_SUMMARY_LIST.addAll(cedarConfig.getTemplateRESTAPI().getSummaries().getTemplate().getFields());
   }
@@ -61,13 +112,11 @@ public class TemplatesResource extends AbstractTemplateServerResource {
   @Timed
   public Response createTemplate(@QueryParam(QP_IMPORT_MODE) Optional<Boolean> importMode) throws
       CedarException {
-    CedarRequestContext c = CedarRequestContextFactory.fromRequest(request);
+    CedarRequestContext c = buildRequestContext();
     c.must(c.user()).be(LoggedIn);
     c.must(c.user()).have(CedarPermission.TEMPLATE_CREATE);
 
-    //TODO: test if it is not empty
-    //c.must(c.request().getRequestBody()).be(NonEmpty);
-    JsonNode template = c.request().getRequestBody().asJson();
+    JsonNode template = readRequestBody(c, CedarNodeType.TEMPLATE);
 
     ProvenanceInfo pi = provenanceUtil.build(c.getCedarUser());
     checkImportModeSetProvenanceAndId(CedarNodeType.TEMPLATE, template, pi, importMode);
@@ -83,25 +132,50 @@ public class TemplatesResource extends AbstractTemplateServerResource {
           .exception(e)
           .build();
     }
+    changeListener.created(CedarNodeType.TEMPLATE, createdTemplate);
     MongoUtils.removeIdField(createdTemplate);
 
     String id = createdTemplate.get("@id").asText();
 
     URI uri = CedarUrlUtil.getIdURI(uriInfo, id);
-    return Response.created(uri).entity(createdTemplate).build();
+    long version = VersionedDocumentWriter.extractVersion(createdTemplate);
+    return Response.created(uri).tag(versionTag(version)).entity(createdTemplate).build();
   }
 
   @GET
   @Timed
   @Path("/{id}")
-  public Response findTemplate(@PathParam(PP_ID) String id) throws CedarException {
-    CedarRequestContext c = CedarRequestContextFactory.fromRequest(request);
+  public Response findTemplate(@PathParam(PP_ID) String id,
+                               @QueryParam(QP_SUMMARY) Optional<Boolean> summaryParam,
+                               @QueryParam(QP_FIELD_NAMES) Optional<String> fieldNamesParam,
+                               @Context HttpHeaders headers) throws CedarException {
+    CedarRequestContext c = buildRequestContext();
     c.must(c.user()).be(LoggedIn);
     c.must(c.user()).have(CedarPermission.TEMPLATE_READ);
 
+    Boolean summary = ensureSummary(summaryParam);
+    List<String> fieldNameList = getAndCheckFieldNames(fieldNamesParam, summary);
+    boolean cacheable = !summary && fieldNameList == null && responseCache.isEnabled();
+    if (cacheable) {
+      Response cached = responseCache.find(CedarNodeType.TEMPLATE, id, headers);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    long cacheStamp = SingleFlightReader.NO_STAMP;
+
     JsonNode template = null;
     try {
-      template = templateService.findTemplate(id);
+      if (summary || fieldNameList != null) {
+        FieldProjection projection = buildFieldProjection(summary, fieldNameList, FIELD_NAMES_SUMMARY_LIST);
+        template = singleFlightReader.read(CedarNodeType.TEMPLATE, id, projection.cacheKey(),
+            () -> documentReader.findById(CedarNodeType.TEMPLATE, id, projection));
+      } else {
+        SingleFlightReader.Result result = singleFlightReader.read(CedarNodeType.TEMPLATE, id, null,
+            responseCache::stamp, () -> documentReader.findById(CedarNodeType.TEMPLATE, id, FieldProjection.all()));
+        template = result.getDocument();
+        cacheStamp = result.getStamp();
+      }
     } catch (IOException | ProcessingException e) {
       return CedarResponse.internalServerError()
           .id(id)
@@ -118,7 +192,10 @@ public class TemplatesResource extends AbstractTemplateServerResource {
           .build();
     } else {
       MongoUtils.removeIdField(template);
-      return Response.ok().entity(template).build();
+      long version = VersionedDocumentWriter.extractVersion(template);
+      Response stored = cacheable ? responseCache.store(CedarNodeType.TEMPLATE, id, template, version, cacheStamp,
+          headers) : null;
+      return stored != null ? stored : Response.ok().tag(versionTag(version)).entity(template).build();
     }
   }
 
@@ -130,7 +207,7 @@ public class TemplatesResource extends AbstractTemplateServerResource {
                                    @QueryParam(QP_FIELD_NAMES) Optional<String> fieldNamesParam) throws
       CedarException {
 
-    CedarRequestContext c = CedarRequestContextFactory.fromRequest(request);
+    CedarRequestContext c = buildRequestContext();
     c.must(c.user()).be(LoggedIn);
     c.must(c.user()).have(CedarPermission.TEMPLATE_READ);
 
@@ -146,8 +223,11 @@ public class TemplatesResource extends AbstractTemplateServerResource {
     List<String> fieldNameList = getAndCheckFieldNames(fieldNamesParam, summary);
     Map<String, Object> r = new HashMap<>();
     List<JsonNode> templates = null;
+    boolean fromSummaries = summary && summaryStore.isServing(CedarNodeType.TEMPLATE);
     try {
-      if (summary) {
+      if (fromSummaries) {
+        templates = summaryStore.findAll(CedarNodeType.TEMPLATE, limit, offset);
+      } else if (summary) {
         templates = templateService.findAllTemplates(limit, offset, FIELD_NAMES_SUMMARY_LIST, FieldNameInEx.INCLUDE);
       } else if (fieldNameList != null) {
         templates = templateService.findAllTemplates(limit, offset, fieldNameList, FieldNameInEx.INCLUDE);
@@ -161,7 +241,8 @@ public class TemplatesResource extends AbstractTemplateServerResource {
           .exception(e)
           .build();
     }
-    long total = templateService.count();
+    long total = fromSummaries ? summaryStore.count(CedarNodeType.TEMPLATE)
+        : templateService.count();
     checkPagingParametersAgainstTotal(offset, total);
 
     String absoluteUrl = uriInfo.getAbsolutePathBuilder().build().toString();
@@ -174,28 +255,207 @@ public class TemplatesResource extends AbstractTemplateServerResource {
     return responseBuilder.build();
   }
 
-  @PUT
+  @GET
   @Timed
-  @Path("/{id}")
-  public Response updateTemplate(@PathParam(PP_ID) String id) throws CedarException {
-    CedarRequestContext c = CedarRequestContextFactory.fromRequest(request);
+  @Path("/search")
+  public Response searchTemplates(@QueryParam(QP_SEARCH_QUERY) Optional<String> queryParam,
+                                  @QueryParam(QP_SEARCH_RESOURCE_TYPE) Optional<String> resourceTypeParam,
+                                  @QueryParam(QP_LIMIT) Optional<Integer> limitParam,
+                                  @QueryParam(QP_OFFSET) Optional<Integer> offsetParam) throws CedarException {
+    CedarRequestContext c = buildRequestContext();
     c.must(c.user()).be(LoggedIn);
-    c.must(c.user()).have(CedarPermission.TEMPLATE_UPDATE);
+    c.must(c.user()).have(CedarPermission.TEMPLATE_READ);
 
-    JsonNode newTemplate = c.request().getRequestBody().asJson();
-    ProvenanceInfo pi = provenanceUtil.build(c.getCedarUser());
-    provenanceUtil.patchProvenanceInfo(newTemplate, pi);
-    JsonNode updatedTemplate = null;
+    if (!searchIndex.isEnabled()) {
+      return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+    }
+    String query = valueOrNull(queryParam);
+    if (query == null || query.trim().isEmpty()) {
+      throw new CedarAssertionException("The parameter '" + QP_SEARCH_QUERY + "' must not be empty!");
+    }
+    CedarNodeType nodeType = null;
+    String resourceType = valueOrNull(resourceTypeParam);
+    if (resourceType != null) {
+      if (CedarNodeType.TEMPLATE.name().equalsIgnoreCase(resourceType)) {
+        nodeType = CedarNodeType.TEMPLATE;
+      } else if (CedarNodeType.ELEMENT.name().equalsIgnoreCase(resourceType)) {
+        nodeType = CedarNodeType.ELEMENT;
+      } else {
+        throw new CedarAssertionException("The parameter '" + QP_SEARCH_RESOURCE_TYPE
+            + "' must be 'template' or 'element'!");
+      }
+    }
+
+    PagedQuery pagedQuery = new PagedQuery(cedarConfig.getTemplateRESTAPI().getPagination())
+        .limit(limitParam)
+        .offset(offsetParam);
+    pagedQuery.validate();
+
+    Integer limit = pagedQuery.getLimit();
+    Integer offset = pagedQuery.getOffset();
+    SearchPage page;
     try {
-      templateFieldService.saveNewFieldsAndReplaceIds(newTemplate, pi, provenanceUtil, linkedDataUtil);
-      updatedTemplate = templateService.updateTemplate(id, newTemplate);
-    } catch (InstanceNotFoundException e) {
+      page = searchIndex.search(query, nodeType, limit, offset);
+    } catch (IllegalArgumentException e) {
+      throw new CedarAssertionException(e.getMessage());
+    } catch (IOException e) {
+      return CedarResponse.internalServerError()
+          .errorKey(CedarErrorKey.TEMPLATES_NOT_LISTED)
+          .errorMessage("The templates can not be searched")
+          .exception(e)
+          .build();
+    }
+    checkPagingParametersAgainstTotal(offset, page.getTotal());
+
+    UriBuilder searchUri = uriInfo.getAbsolutePathBuilder().queryParam(QP_SEARCH_QUERY, query);
+    if (resourceType != null) {
+      searchUri.queryParam(QP_SEARCH_RESOURCE_TYPE, resourceType);
+    }
+    String absoluteUrl = searchUri.build().toString();
+    String linkHeader = LinkHeaderUtil.getPagingLinkHeader(absoluteUrl, page.getTotal(), limit, offset);
+    Response.ResponseBuilder responseBuilder = Response.ok().entity(page.getHits());
+    responseBuilder.header(CustomHttpConstants.HEADER_TOTAL_COUNT, String.valueOf(page.getTotal()));
+    if (!linkHeader.isEmpty()) {
+      responseBuilder.header(HttpConstants.HTTP_HEADER_LINK, linkHeader);
+    }
+    return responseBuilder.build();
+  }
+
+  @GET
+  @Timed
+  @Path("/{id}/versions")
+  public Response findTemplateVersions(@PathParam(PP_ID) String id,
+                                       @QueryParam(QP_LIMIT) Optional<Integer> limitParam,
+                                       @QueryParam(QP_OFFSET) Optional<Integer> offsetParam) throws CedarException {
+    CedarRequestContext c = buildRequestContext();
+    c.must(c.user()).be(LoggedIn);
+    c.must(c.user()).have(CedarPermission.TEMPLATE_READ);
+
+    if (!templateHistory.isEnabled()) {
+      return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+    }
+    PagedQuery pagedQuery = new PagedQuery(cedarConfig.getTemplateRESTAPI().getPagination())
+        .limit(limitParam)
+        .offset(offsetParam);
+    pagedQuery.validate();
+
+    Integer limit = pagedQuery.getLimit();
+    Integer offset = pagedQuery.getOffset();
+    List<TemplateVersion> versions;
+    long total;
+    try {
+      versions = templateHistory.findVersions(id, limit, offset);
+      total = templateHistory.countVersions(id);
+    } catch (IOException e) {
+      return CedarResponse.internalServerError()
+          .id(id)
+          .errorKey(CedarErrorKey.TEMPLATE_NOT_FOUND)
+          .errorMessage("The versions of the template can not be listed by id:" + id)
+          .exception(e)
+          .build();
+    }
+    if (total == 0) {
       return CedarResponse.notFound()
           .id(id)
           .errorKey(CedarErrorKey.TEMPLATE_NOT_FOUND)
-          .errorMessage("The template can not be found by id:" + id)
+          .errorMessage("No versions of the template can be found by id:" + id)
+          .build();
+    }
+    checkPagingParametersAgainstTotal(offset, total);
+
+    String absoluteUrl = uriInfo.getAbsolutePathBuilder().build().toString();
+    String linkHeader = LinkHeaderUtil.getPagingLinkHeader(absoluteUrl, total, limit, offset);
+    Response.ResponseBuilder responseBuilder = Response.ok().entity(versions);
+    responseBuilder.header(CustomHttpConstants.HEADER_TOTAL_COUNT, String.valueOf(total));
+    if (!linkHeader.isEmpty()) {
+      responseBuilder.header(HttpConstants.HTTP_HEADER_LINK, linkHeader);
+    }
+    return responseBuilder.build();
+  }
+
+  @GET
+  @Timed
+  @Path("/{id}/versions/{version}")
+  public Response findTemplateVersion(@PathParam(PP_ID) String id,
+                                      @PathParam("version") long version) throws CedarException {
+    CedarRequestContext c = buildRequestContext();
+    c.must(c.user()).be(LoggedIn);
+    c.must(c.user()).have(CedarPermission.TEMPLATE_READ);
+
+    if (!templateHistory.isEnabled()) {
+      return Response.status(Response.Status.SERVICE_UNAVAILABLE).build();
+    }
+    JsonNode template;
+    try {
+      template = templateHistory.findVersion(id, version);
+    } catch (IOException e) {
+      return CedarResponse.internalServerError()
+          .id(id)
+          .errorKey(CedarErrorKey.TEMPLATE_NOT_FOUND)
+          .errorMessage("The version " + version + " of the template can not be rebuilt by id:" + id)
           .exception(e)
           .build();
+    }
+    if (template == null) {
+      return CedarResponse.notFound()
+          .id(id)
+          .errorKey(CedarErrorKey.TEMPLATE_NOT_FOUND)
+          .errorMessage("The version " + version + " of the template can not be found by id:" + id)
+          .build();
+    }
+    return Response.ok().tag(versionTag(version)).entity(template).build();
+  }
+
+  @POST
+  @Timed
+  @Path("/_mget")
+  public Response findTemplatesByIds(@QueryParam(QP_SUMMARY) Optional<Boolean> summaryParam,
+                                     @QueryParam(QP_FIELD_NAMES) Optional<String> fieldNamesParam) throws
+      CedarException {
+    CedarRequestContext c = buildRequestContext();
+    c.must(c.user()).be(LoggedIn);
+    c.must(c.user()).have(CedarPermission.TEMPLATE_READ);
+
+    Boolean summary = ensureSummary(summaryParam);
+    List<String> fieldNameList = getAndCheckFieldNames(fieldNamesParam, summary);
+    List<String> ids = getAndCheckMultiGetIds(readRequestBody(c, CedarNodeType.TEMPLATE));
+    FieldProjection projection = buildFieldProjection(summary, fieldNameList, FIELD_NAMES_SUMMARY_LIST);
+
+    Map<String, JsonNode> found = null;
+    try {
+      found = documentReader.findByIds(CedarNodeType.TEMPLATE, ids, projection);
+    } catch (IOException e) {
+      return CedarResponse.internalServerError()
+          .errorKey(CedarErrorKey.TEMPLATES_NOT_LISTED)
+          .errorMessage("The templates can not be listed")
+          .exception(e)
+          .build();
+    }
+    return Response.ok().entity(buildMultiGetResult(ids, found)).build();
+  }
+
+  @PUT
+  @Timed
+  @Path("/{id}")
+  public Response updateTemplate(@PathParam(PP_ID) String id,
+                                 @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch) throws CedarException {
+    CedarRequestContext c = buildRequestContext();
+    c.must(c.user()).be(LoggedIn);
+    c.must(c.user()).have(CedarPermission.TEMPLATE_UPDATE);
+
+    Long expectedVersion = getExpectedVersion(ifMatch);
+
+    JsonNode newTemplate = readRequestBody(c, CedarNodeType.TEMPLATE);
+    ProvenanceInfo pi = provenanceUtil.build(c.getCedarUser());
+    provenanceUtil.patchProvenanceInfo(newTemplate, pi);
+    VersionedUpdate versionedUpdate = null;
+    try {
+      // the nested fields are saved as documents of their own, so only save them if the update can apply
+      versionedUpdate = versionedDocumentWriter.precheck(CedarNodeType.TEMPLATE, id, expectedVersion);
+      if (versionedUpdate == null) {
+        templateFieldService.saveNewFieldsAndReplaceIds(newTemplate, pi, provenanceUtil, linkedDataUtil);
+        versionedUpdate = versionedDocumentWriter.update(CedarNodeType.TEMPLATE, id, newTemplate, expectedVersion);
+      }
     } catch (IOException e) {
       return CedarResponse.internalServerError()
           .id(id)
@@ -204,19 +464,37 @@ public class TemplatesResource extends AbstractTemplateServerResource {
           .exception(e)
           .build();
     }
+    if (versionedUpdate.getStatus() == VersionedUpdate.Status.NOT_FOUND) {
+      return CedarResponse.notFound()
+          .id(id)
+          .errorKey(CedarErrorKey.TEMPLATE_NOT_FOUND)
+          .errorMessage("The template can not be found by id:" + id)
+          .build();
+    } else if (versionedUpdate.getStatus() == VersionedUpdate.Status.VERSION_MISMATCH) {
+      return preconditionFailed(id, versionedUpdate.getVersion());
+    }
+    changeListener.updated(CedarNodeType.TEMPLATE, versionedUpdate.getBefore(), versionedUpdate.getAfter());
+    JsonNode updatedTemplate = versionedUpdate.getAfter();
     MongoUtils.removeIdField(updatedTemplate);
-    return Response.ok().entity(updatedTemplate).build();
+    long version = VersionedDocumentWriter.extractVersion(updatedTemplate);
+    return Response.ok().tag(versionTag(version)).entity(updatedTemplate).build();
   }
 
   @DELETE
   @Timed
   @Path("/{id}")
-  public Response deleteTemplate(@PathParam(PP_ID) String id) throws CedarException {
-    CedarRequestContext c = CedarRequestContextFactory.fromRequest(request);
+  public Response deleteTemplate(@PathParam(PP_ID) String id,
+                                 @QueryParam(QP_CASCADE) Optional<Boolean> cascadeParam) throws CedarException {
+    CedarRequestContext c = buildRequestContext();
     c.must(c.user()).be(LoggedIn);
     c.must(c.user()).have(CedarPermission.TEMPLATE_DELETE);
 
-    long referenceCount = templateInstanceService.countReferencingTemplate(id);
+    if (cascadeParam != null && cascadeParam.isPresent() && cascadeParam.get()) {
+      c.must(c.user()).have(CedarPermission.TEMPLATE_INSTANCE_DELETE);
+      return deleteTemplateWithInstances(id);
+    }
+
+    long referenceCount = templateInstanceStore.countReferencingTemplate(id);
 
     if (referenceCount != 0) {
       return CedarResponse.badRequest()
@@ -245,7 +523,36 @@ public class TemplatesResource extends AbstractTemplateServerResource {
           .exception(e)
           .build();
     }
+    changeListener.deleted(CedarNodeType.TEMPLATE, Collections.singletonList(id));
     return CedarResponse.noContent().build();
   }
 
-}
\ No newline at end of file
+  /**
+   * Starts a background job that deletes the instances of the template in batches and then the template itself.
+   * Responds with 202 and the location of the job status.
+   */
+  private Response deleteTemplateWithInstances(String id) {
+    JsonNode template = null;
+    try {
+      template = documentReader.findById(CedarNodeType.TEMPLATE, id, FieldProjection.idOnly());
+    } catch (IOException e) {
+      return CedarResponse.internalServerError()
+          .id(id)
+          .errorKey(CedarErrorKey.TEMPLATE_NOT_DELETED)
+          .errorMessage("The template can not be deleted by id:" + id)
+          .exception(e)
+          .build();
+    }
+    if (template == null) {
+      return CedarResponse.notFound()
+          .id(id)
+          .errorKey(CedarErrorKey.TEMPLATE_NOT_FOUND)
+          .errorMessage("The template can not be found by id:" + id)
+          .build();
+    }
+    TemplateDeleteJob job = templateDeleteJobManager.submit(id);
+    URI jobUri = uriInfo.getBaseUriBuilder().path(TemplateDeleteJobsResource.class).path(job.getId()).build();
+    return Response.accepted().location(jobUri).entity(job).build();
+  }
+
+}
@@ -0,0 +1,48 @@
+package org.metadatacenter.cedar.template.search;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One ranked result of a full-text search.
+ */
+public class SearchHit {
+
+  private final String id;
+  private final String resourceType;
+  private final float score;
+  private final String title;
+  private final String description;
+
+  public SearchHit(String id, String resourceType, float score, String title, String description) {
+    this.id = id;
+    this.resourceType = resourceType;
+    this.score = score;
+    this.title = title;
+    this.description = description;
+  }
+
+  @JsonProperty("@id")
+  public String getId() {
+    return id;
+  }
+
+  @JsonProperty
+  public String getResourceType() {
+    return resourceType;
+  }
+
+  @JsonProperty
+  public float getScore() {
+    return score;
+  }
+
+  @JsonProperty
+  public String getTitle() {
+    return title;
+  }
+
+  @JsonProperty
+  public String getDescription() {
+    return description;
+  }
+}
@@ -0,0 +1,290 @@
+package org.metadatacenter.cedar.template.search;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.dropwizard.lifecycle.Managed;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
+import org.apache.lucene.queryparser.classic.ParseException;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.FSDirectory;
+import org.metadatacenter.cedar.template.change.DocumentChangeListener;
+import org.metadatacenter.cedar.template.config.SearchConfig;
+import org.metadatacenter.cedar.template.mongo.LinkedDataFields;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.mongo.MongoDocuments;
+import org.metadatacenter.model.CedarNodeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedded Lucene index over the title, description and field labels of templates and elements. It is kept up to
+ * date from the create, update and delete paths; changes become searchable after the next periodic refresh and
+ * durable after the next periodic commit (or on shutdown). The 'reindex-search' command rebuilds it from Mongo.
+ */
+public class SearchIndex implements DocumentChangeListener, Managed {
+
+  private static final Logger log = LoggerFactory.getLogger(SearchIndex.class);
+
+  private static final String F_ID = "id";
+  private static final String F_TYPE = "type";
+  private static final String F_TITLE = "title";
+  private static final String F_DESCRIPTION = "description";
+  private static final String F_LABELS = "labels";
+
+  private static final String[] TITLE_PATHS = {"schema:name", "_ui.title", "title"};
+  private static final String[] DESCRIPTION_PATHS = {"schema:description", "_ui.description", "description"};
+  private static final List<String> LABEL_KEYS = Arrays.asList("schema:name", "skos:prefLabel", "title");
+  private static final Map<String, Float> FIELD_BOOSTS = new HashMap<>();
+
+  static {
+    FIELD_BOOSTS.put(F_TITLE, 4.0f);
+    FIELD_BOOSTS.put(F_DESCRIPTION, 2.0f);
+    FIELD_BOOSTS.put(F_LABELS, 1.0f);
+  }
+
+  private final SearchConfig config;
+  private final Analyzer analyzer = new StandardAnalyzer();
+  private IndexWriter writer;
+  private SearcherManager searcherManager;
+  private ScheduledExecutorService maintenance;
+
+  public SearchIndex(SearchConfig config) {
+    this.config = config;
+  }
+
+  @Override
+  public void start() throws IOException {
+    if (!config.isEnabled()) {
+      return;
+    }
+    IndexWriterConfig writerConfig = new IndexWriterConfig(analyzer)
+        .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND);
+    writer = new IndexWriter(FSDirectory.open(Paths.get(config.getIndexDirectory())), writerConfig);
+    searcherManager = new SearcherManager(writer, null);
+    maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "search-index-maintenance");
+      thread.setDaemon(true);
+      return thread;
+    });
+    maintenance.scheduleWithFixedDelay(this::refresh, config.getRefreshMillis(), config.getRefreshMillis(),
+        TimeUnit.MILLISECONDS);
+    maintenance.scheduleWithFixedDelay(this::commit, config.getCommitIntervalMillis(),
+        config.getCommitIntervalMillis(), TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void stop() throws IOException {
+    if (writer == null) {
+      return;
+    }
+    maintenance.shutdownNow();
+    searcherManager.close();
+    writer.close();
+  }
+
+  public boolean isEnabled() {
+    return config.isEnabled();
+  }
+
+  private static boolean handles(CedarNodeType nodeType) {
+    return nodeType == CedarNodeType.TEMPLATE || nodeType == CedarNodeType.ELEMENT;
+  }
+
+  /**
+   * Runs a query in Lucene syntax against title, description and field labels, optionally restricted to one type.
+   *
+   * @throws IllegalArgumentException if the query can not be parsed
+   */
+  public SearchPage search(String queryString, CedarNodeType nodeType, int limit, int offset) throws IOException {
+    MultiFieldQueryParser parser = new MultiFieldQueryParser(new String[]{F_TITLE, F_DESCRIPTION, F_LABELS},
+        analyzer, FIELD_BOOSTS);
+    Query textQuery;
+    try {
+      textQuery = parser.parse(queryString);
+    } catch (ParseException e) {
+      throw new IllegalArgumentException("The search query can not be parsed: " + e.getMessage(), e);
+    }
+    BooleanQuery.Builder query = new BooleanQuery.Builder().add(textQuery, BooleanClause.Occur.MUST);
+    if (nodeType != null) {
+      query.add(new TermQuery(new Term(F_TYPE, typeName(nodeType))), BooleanClause.Occur.FILTER);
+    }
+
+    IndexSearcher searcher = searcherManager.acquire();
+    try {
+      TopDocs topDocs = searcher.search(query.build(), offset + limit);
+      List<SearchHit> hits = new ArrayList<>();
+      for (int i = offset; i < topDocs.scoreDocs.length; i++) {
+        ScoreDoc scoreDoc = topDocs.scoreDocs[i];
+        Document document = searcher.doc(scoreDoc.doc);
+        hits.add(new SearchHit(document.get(F_ID), document.get(F_TYPE), scoreDoc.score, document.get(F_TITLE),
+            document.get(F_DESCRIPTION)));
+      }
+      return new SearchPage(topDocs.totalHits, hits);
+    } finally {
+      searcherManager.release(searcher);
+    }
+  }
+
+  @Override
+  public void created(CedarNodeType nodeType, JsonNode document) {
+    index(nodeType, document);
+  }
+
+  @Override
+  public void updated(CedarNodeType nodeType, JsonNode before, JsonNode after) {
+    index(nodeType, after);
+  }
+
+  @Override
+  public void deleted(CedarNodeType nodeType, List<String> ids) {
+    if (!handles(nodeType)) {
+      return;
+    }
+    Term[] terms = new Term[ids.size()];
+    for (int i = 0; i < ids.size(); i++) {
+      terms[i] = new Term(F_ID, ids.get(i));
+    }
+    try {
+      writer.deleteDocuments(terms);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void index(CedarNodeType nodeType, JsonNode document) {
+    if (!handles(nodeType)) {
+      return;
+    }
+    try {
+      writer.updateDocument(new Term(F_ID, document.get(LinkedDataFields.ID).asText()),
+          buildDocument(nodeType, document));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Replaces the whole index with the templates and elements currently stored in Mongo.
+   *
+   * @return the number of indexed documents
+   */
+  public long reindex(MongoCollections mongoCollections) throws IOException {
+    writer.deleteAll();
+    long indexed = 0;
+    for (CedarNodeType nodeType : new CedarNodeType[]{CedarNodeType.TEMPLATE, CedarNodeType.ELEMENT}) {
+      for (org.bson.Document document : mongoCollections.getCollection(nodeType).find()) {
+        writer.addDocument(buildDocument(nodeType, MongoDocuments.toJsonNode(document)));
+        indexed++;
+      }
+    }
+    writer.commit();
+    searcherManager.maybeRefresh();
+    return indexed;
+  }
+
+  private static Document buildDocument(CedarNodeType nodeType, JsonNode source) {
+    Document document = new Document();
+    document.add(new StringField(F_ID, source.get(LinkedDataFields.ID).asText(), Field.Store.YES));
+    document.add(new StringField(F_TYPE, typeName(nodeType), Field.Store.YES));
+    String title = firstText(source, TITLE_PATHS);
+    if (title != null) {
+      document.add(new TextField(F_TITLE, title, Field.Store.YES));
+    }
+    String description = firstText(source, DESCRIPTION_PATHS);
+    if (description != null) {
+      document.add(new TextField(F_DESCRIPTION, description, Field.Store.YES));
+    }
+    StringBuilder labels = new StringBuilder();
+    collectLabels(source.get("properties"), labels);
+    if (labels.length() > 0) {
+      document.add(new TextField(F_LABELS, labels.toString(), Field.Store.NO));
+    }
+    return document;
+  }
+
+  private static String firstText(JsonNode source, String[] paths) {
+    for (String path : paths) {
+      JsonNode node = source;
+      for (String name : path.split("\\.")) {
+        node = node == null ? null : node.get(name);
+      }
+      if (node != null && node.isTextual() && !node.asText().isEmpty()) {
+        return node.asText();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Collects the names and labels of the nested fields and elements.
+   */
+  private static void collectLabels(JsonNode node, StringBuilder labels) {
+    if (node == null) {
+      return;
+    }
+    if (node.isObject()) {
+      Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+      while (fields.hasNext()) {
+        Map.Entry<String, JsonNode> field = fields.next();
+        if (LABEL_KEYS.contains(field.getKey()) && field.getValue().isTextual()) {
+          labels.append(field.getValue().asText()).append('\n');
+        } else {
+          collectLabels(field.getValue(), labels);
+        }
+      }
+    } else if (node.isArray()) {
+      for (JsonNode item : node) {
+        collectLabels(item, labels);
+      }
+    }
+  }
+
+  private static String typeName(CedarNodeType nodeType) {
+    return nodeType.name().toLowerCase(Locale.ENGLISH);
+  }
+
+  private void refresh() {
+    try {
+      searcherManager.maybeRefresh();
+    } catch (IOException e) {
+      log.error("Error while refreshing the search index", e);
+    }
+  }
+
+  private void commit() {
+    try {
+      writer.commit();
+    } catch (IOException e) {
+      log.error("Error while committing the search index", e);
+    }
+  }
+}
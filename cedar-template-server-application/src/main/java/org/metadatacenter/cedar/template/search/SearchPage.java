@@ -0,0 +1,25 @@
+package org.metadatacenter.cedar.template.search;
+
+import java.util.List;
+
+/**
+ * A page of search hits, in decreasing order of relevance, and the total number of matching documents.
+ */
+public class SearchPage {
+
+  private final long total;
+  private final List<SearchHit> hits;
+
+  public SearchPage(long total, List<SearchHit> hits) {
+    this.total = total;
+    this.hits = hits;
+  }
+
+  public long getTotal() {
+    return total;
+  }
+
+  public List<SearchHit> getHits() {
+    return hits;
+  }
+}
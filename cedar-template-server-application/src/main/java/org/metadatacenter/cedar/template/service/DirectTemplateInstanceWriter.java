@@ -0,0 +1,37 @@
+package org.metadatacenter.cedar.template.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mongodb.MongoException;
+import org.bson.Document;
+import org.metadatacenter.cedar.template.mongo.CreatedOn;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.mongo.MongoDocuments;
+import org.metadatacenter.model.CedarNodeType;
+
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * Writes every instance with its own insert, together with its normalized creation date. With partitioned instances
+ * the instance is routed to the partition of its template first.
+ */
+public class DirectTemplateInstanceWriter implements TemplateInstanceWriter {
+
+  private final MongoCollections mongoCollections;
+
+  public DirectTemplateInstanceWriter(MongoCollections mongoCollections) {
+    this.mongoCollections = mongoCollections;
+  }
+
+  @Override
+  public JsonNode createTemplateInstance(JsonNode templateInstance) throws IOException {
+    Document document = CreatedOn.stamp(MongoDocuments.toDocument(templateInstance));
+    try {
+      mongoCollections.addRoutes(CedarNodeType.INSTANCE, Collections.singletonList(document));
+      mongoCollections.getCollectionFor(CedarNodeType.INSTANCE, document).insertOne(document);
+    } catch (MongoException e) {
+      throw new IOException("Error while creating the template instance", e);
+    }
+    return MongoDocuments.toJsonNode(document);
+  }
+}
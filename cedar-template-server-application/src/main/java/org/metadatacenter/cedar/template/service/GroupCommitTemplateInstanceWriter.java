@@ -0,0 +1,270 @@
+package org.metadatacenter.cedar.template.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+import io.dropwizard.lifecycle.Managed;
+import org.bson.Document;
+import org.metadatacenter.cedar.template.config.GroupCommitConfig;
+import org.metadatacenter.cedar.template.mongo.CreatedOn;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.mongo.MongoDocuments;
+import org.metadatacenter.model.CedarNodeType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Collects instance inserts issued by concurrent requests and writes them with a single unordered bulk insert. A
+ * batch is flushed when it reaches the configured size or when its oldest entry has waited for the configured delay.
+ * Every caller blocks until the batch containing its instance is acknowledged, so the REST contract is unchanged.
+ * With partitioned instances a batch is written as one bulk insert per partition.
+ * <p>
+ * A caller never waits longer than the configured maximum: a batch that fails for any reason fails all of its
+ * callers, and whatever is still queued when the flusher ends is failed as well. A caller that times out withdraws
+ * its instance if the flusher has not claimed it for a write yet, so a retry can not store it twice; once claimed the
+ * outcome is unknown, which the caller reports with the id of the instance. Instances are only accepted while the
+ * writer is running, so none can be queued after the flusher drained the queue on stop.
+ */
+public class GroupCommitTemplateInstanceWriter implements TemplateInstanceWriter, Managed {
+
+  private static final Logger log = LoggerFactory.getLogger(GroupCommitTemplateInstanceWriter.class);
+
+  private final MongoCollections mongoCollections;
+  private final int maxBatchSize;
+  private final long maxDelayNanos;
+  private final long maxWaitMillis;
+  private final BlockingQueue<PendingInsert> queue;
+  private final Thread flusher;
+  private final ReadWriteLock runningLock = new ReentrantReadWriteLock();
+  private volatile boolean running;
+
+  public GroupCommitTemplateInstanceWriter(MongoCollections mongoCollections, GroupCommitConfig config) {
+    this.mongoCollections = mongoCollections;
+    this.maxBatchSize = config.getMaxBatchSize();
+    this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(config.getMaxDelayMillis());
+    this.maxWaitMillis = config.getMaxWaitMillis();
+    this.queue = new ArrayBlockingQueue<>(config.getMaxQueueSize());
+    this.flusher = new Thread(this::flushLoop, "instance-group-commit");
+    this.flusher.setDaemon(true);
+  }
+
+  @Override
+  public void start() {
+    running = true;
+    flusher.start();
+  }
+
+  @Override
+  public void stop() throws InterruptedException {
+    runningLock.writeLock().lock();
+    try {
+      running = false;
+    } finally {
+      runningLock.writeLock().unlock();
+    }
+    // not interrupted: an interrupted insertMany fails a batch that may already be written. The flusher polls with a
+    // timeout, so it notices the stop, writes what is queued and ends.
+    flusher.join();
+  }
+
+  @Override
+  public JsonNode createTemplateInstance(JsonNode templateInstance) throws IOException {
+    PendingInsert pending = new PendingInsert(CreatedOn.stamp(MongoDocuments.toDocument(templateInstance)));
+    try {
+      enqueue(pending);
+      return pending.result.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return abandon(pending, "Interrupted while waiting for the instance to be written", e);
+    } catch (ExecutionException e) {
+      throw new IOException("The template instance can not be written", e.getCause());
+    } catch (TimeoutException e) {
+      return abandon(pending, "Timed out after " + maxWaitMillis + " ms waiting for the instance to be written", e);
+    }
+  }
+
+  /**
+   * Withdraws an insert the caller stops waiting for. If the flusher claimed it already, it may be written.
+   */
+  private static JsonNode abandon(PendingInsert pending, String message, Exception cause) throws IOException {
+    if (pending.claimed.compareAndSet(false, true)) {
+      throw new IOException(message + "; it was not written", cause);
+    }
+    if (pending.result.isDone()) {
+      try {
+        return pending.result.join();
+      } catch (CompletionException e) {
+        throw new IOException("The template instance can not be written", e.getCause());
+      }
+    }
+    throw new InstanceWriteUnknownException(pending.document.getString(MongoDocuments.LD_ID_FIELD),
+        message + "; it may still be written");
+  }
+
+  /**
+   * Queues the insert while holding off stop(), so the flusher either sees it or the caller sees the writer stopped.
+   */
+  private void enqueue(PendingInsert pending) throws IOException, InterruptedException {
+    runningLock.readLock().lock();
+    try {
+      if (!running) {
+        throw new IOException("The instance writer is not running");
+      }
+      if (!queue.offer(pending, maxWaitMillis, TimeUnit.MILLISECONDS)) {
+        throw new IOException("The instance writer queue stayed full for " + maxWaitMillis + " ms");
+      }
+    } finally {
+      runningLock.readLock().unlock();
+    }
+  }
+
+  private void flushLoop() {
+    List<PendingInsert> batch = new ArrayList<>(maxBatchSize);
+    try {
+      flushUntilStopped(batch);
+    } finally {
+      // only reached with a non-empty queue if the flusher failed; nobody would complete these
+      queue.drainTo(batch);
+      fail(batch, new IOException("The instance writer stopped"));
+    }
+  }
+
+  private void flushUntilStopped(List<PendingInsert> batch) {
+    while (running || !queue.isEmpty()) {
+      try {
+        PendingInsert first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + maxDelayNanos;
+        while (batch.size() < maxBatchSize) {
+          long remaining = deadline - System.nanoTime();
+          PendingInsert next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+      } catch (InterruptedException e) {
+        // keep draining what is already queued
+        queue.drainTo(batch, maxBatchSize - batch.size());
+      }
+      if (!batch.isEmpty()) {
+        try {
+          flush(batch);
+        } catch (RuntimeException e) {
+          log.error("Error while writing a batch of " + batch.size() + " template instances", e);
+          fail(batch, e);
+        }
+        batch.clear();
+      }
+    }
+  }
+
+  private void flush(List<PendingInsert> pendingInserts) {
+    // the callers that timed out before their instance was claimed have withdrawn it
+    List<PendingInsert> batch = new ArrayList<>(pendingInserts.size());
+    for (PendingInsert pending : pendingInserts) {
+      if (pending.claimed.compareAndSet(false, true)) {
+        batch.add(pending);
+      }
+    }
+    if (batch.isEmpty()) {
+      return;
+    }
+    if (!mongoCollections.isPartitioned(CedarNodeType.INSTANCE)) {
+      flush(mongoCollections.getCollection(CedarNodeType.INSTANCE), batch);
+      return;
+    }
+    Map<MongoCollection<Document>, List<PendingInsert>> partitions = new LinkedHashMap<>();
+    for (PendingInsert pending : batch) {
+      partitions.computeIfAbsent(mongoCollections.getCollectionFor(CedarNodeType.INSTANCE, pending.document),
+          partition -> new ArrayList<>()).add(pending);
+    }
+    for (Map.Entry<MongoCollection<Document>, List<PendingInsert>> partition : partitions.entrySet()) {
+      try {
+        flush(partition.getKey(), partition.getValue());
+      } catch (RuntimeException e) {
+        log.error("Error while writing a batch of " + partition.getValue().size() + " template instances", e);
+        fail(partition.getValue(), e);
+      }
+    }
+  }
+
+  private void flush(MongoCollection<Document> instanceCollection, List<PendingInsert> batch) {
+    List<Document> documents = new ArrayList<>(batch.size());
+    for (PendingInsert pending : batch) {
+      documents.add(pending.document);
+    }
+    mongoCollections.addRoutes(CedarNodeType.INSTANCE, documents);
+    try {
+      instanceCollection.insertMany(documents, new InsertManyOptions().ordered(false));
+      for (PendingInsert pending : batch) {
+        succeed(pending);
+      }
+    } catch (MongoBulkWriteException e) {
+      Set<Integer> failed = new HashSet<>();
+      for (BulkWriteError error : e.getWriteErrors()) {
+        failed.add(error.getIndex());
+        batch.get(error.getIndex()).result.completeExceptionally(new IOException(error.getMessage()));
+      }
+      for (int i = 0; i < batch.size(); i++) {
+        if (!failed.contains(i)) {
+          succeed(batch.get(i));
+        }
+      }
+    }
+  }
+
+  /**
+   * Completes the caller with the document as it was stored, not with the request body it was built from.
+   */
+  private static void succeed(PendingInsert pending) {
+    try {
+      pending.result.complete(MongoDocuments.toJsonNode(pending.document));
+    } catch (IOException e) {
+      pending.result.completeExceptionally(e);
+    }
+  }
+
+  /**
+   * Fails the callers of the batch that are not completed yet.
+   */
+  private static void fail(List<PendingInsert> batch, Throwable cause) {
+    for (PendingInsert pending : batch) {
+      pending.result.completeExceptionally(cause);
+    }
+  }
+
+  private static class PendingInsert {
+    private final Document document;
+    private final CompletableFuture<JsonNode> result = new CompletableFuture<>();
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    private PendingInsert(Document document) {
+      this.document = document;
+    }
+  }
+
+}
@@ -0,0 +1,21 @@
+package org.metadatacenter.cedar.template.service;
+
+import java.io.IOException;
+
+/**
+ * The instance was handed to the storage but no acknowledgement arrived in time, so it may or may not be written.
+ * Retrying the create could store it twice; the caller has to look the instance up by its id instead.
+ */
+public class InstanceWriteUnknownException extends IOException {
+
+  private final String id;
+
+  public InstanceWriteUnknownException(String id, String message) {
+    super(message);
+    this.id = id;
+  }
+
+  public String getId() {
+    return id;
+  }
+}
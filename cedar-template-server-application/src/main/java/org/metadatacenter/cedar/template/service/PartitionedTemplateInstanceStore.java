@@ -0,0 +1,105 @@
+package org.metadatacenter.cedar.template.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.result.DeleteResult;
+import org.bson.Document;
+import org.metadatacenter.cedar.template.mongo.FieldProjection;
+import org.metadatacenter.cedar.template.mongo.LinkedDataFields;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.mongo.MongoDocuments;
+import org.metadatacenter.model.CedarNodeType;
+import org.metadatacenter.server.service.FieldNameInEx;
+
+import javax.management.InstanceNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.mongodb.client.model.Filters.eq;
+
+/**
+ * The template instance operations of the server over partitioned instance collections. Instances are found and
+ * deleted through their route, and listed by merging the partitions in '_id' order. The instance writers route them
+ * to the partition of their template.
+ */
+public class PartitionedTemplateInstanceStore implements TemplateInstanceStore {
+
+  private static final Comparator<Document> ID_ORDER =
+      Comparator.comparing(document -> document.getObjectId(MongoDocuments.MONGO_ID_FIELD));
+
+  private final MongoCollections mongoCollections;
+  private final int maxOffset;
+
+  public PartitionedTemplateInstanceStore(MongoCollections mongoCollections, int maxOffset) {
+    this.mongoCollections = mongoCollections;
+    this.maxOffset = maxOffset;
+  }
+
+  /**
+   * Offsets are global, so every partition has to return its first offset + limit instances before the merge. To
+   * bound that cost, offsets beyond the configured maximum are rejected; deeper pages are reached through the filtered
+   * listing and its 'after' cursor, which reads only limit + 1 instances per partition.
+   *
+   * @throws IllegalArgumentException if the offset is beyond the configured maximum
+   */
+  @Override
+  public List<JsonNode> findAllTemplateInstances(int limit, int offset, List<String> fieldNames,
+                                                 FieldNameInEx fieldNameInEx) throws IOException {
+    if (offset > maxOffset) {
+      throw new IllegalArgumentException("Parameter 'offset' can not be larger than " + maxOffset + ". Filter by "
+          + "'created_after' and follow the 'after' cursor of the 'next' link instead!");
+    }
+    FieldProjection projection = new FieldProjection(fieldNames, fieldNameInEx);
+    List<Document> documents = new ArrayList<>();
+    try {
+      for (MongoCollection<Document> partition : mongoCollections.getCollections(CedarNodeType.INSTANCE)) {
+        partition.find()
+            .projection(projection.toBson())
+            .sort(Sorts.ascending(MongoDocuments.MONGO_ID_FIELD))
+            .limit(offset + limit)
+            .into(documents);
+      }
+    } catch (MongoException e) {
+      throw new IOException("Error while listing template instances", e);
+    }
+    documents.sort(ID_ORDER);
+    List<JsonNode> instances = new ArrayList<>(limit);
+    for (int i = offset; i < documents.size() && i < offset + limit; i++) {
+      instances.add(MongoDocuments.toJsonNode(documents.get(i)));
+    }
+    return instances;
+  }
+
+  @Override
+  public long count() {
+    long count = 0;
+    for (MongoCollection<Document> partition : mongoCollections.getCollections(CedarNodeType.INSTANCE)) {
+      count += partition.count();
+    }
+    return count;
+  }
+
+  @Override
+  public long countReferencingTemplate(String templateId) {
+    return mongoCollections.getInstanceCollection(templateId).count(eq(LinkedDataFields.IS_BASED_ON, templateId));
+  }
+
+  @Override
+  public void deleteTemplateInstance(String id) throws InstanceNotFoundException, IOException {
+    try {
+      MongoCollection<Document> partition = mongoCollections.findCollectionOf(CedarNodeType.INSTANCE, id);
+      DeleteResult result = partition == null ? null : partition.deleteOne(eq(LinkedDataFields.ID, id));
+      if (result == null || result.getDeletedCount() == 0) {
+        throw new InstanceNotFoundException("The template instance can not be found by id:" + id);
+      }
+      mongoCollections.removeRoutes(CedarNodeType.INSTANCE, Collections.singletonList(id));
+    } catch (MongoException e) {
+      throw new IOException("Error while deleting the template instance " + id, e);
+    }
+  }
+}
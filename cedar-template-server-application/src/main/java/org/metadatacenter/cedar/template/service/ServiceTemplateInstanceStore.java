@@ -0,0 +1,50 @@
+package org.metadatacenter.cedar.template.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.metadatacenter.cedar.template.mongo.CreatedOn;
+import org.metadatacenter.server.service.FieldNameInEx;
+import org.metadatacenter.server.service.TemplateInstanceService;
+
+import javax.management.InstanceNotFoundException;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Template instances in the single instance collection, through the Mongo template instance service.
+ */
+public class ServiceTemplateInstanceStore implements TemplateInstanceStore {
+
+  private final TemplateInstanceService<String, JsonNode> templateInstanceService;
+
+  public ServiceTemplateInstanceStore(TemplateInstanceService<String, JsonNode> templateInstanceService) {
+    this.templateInstanceService = templateInstanceService;
+  }
+
+  @Override
+  public List<JsonNode> findAllTemplateInstances(int limit, int offset, List<String> fieldNames,
+                                                 FieldNameInEx fieldNameInEx) throws IOException {
+    List<JsonNode> instances = templateInstanceService.findAllTemplateInstances(limit, offset, fieldNames,
+        fieldNameInEx);
+    // the service returns the stored fields as they are, including the internal creation date
+    for (JsonNode instance : instances) {
+      ((ObjectNode) instance).remove(CreatedOn.FIELD);
+    }
+    return instances;
+  }
+
+  @Override
+  public long count() {
+    return templateInstanceService.count();
+  }
+
+  @Override
+  public long countReferencingTemplate(String templateId) {
+    return templateInstanceService.countReferencingTemplate(templateId);
+  }
+
+  @Override
+  public void deleteTemplateInstance(String id) throws InstanceNotFoundException, IOException {
+    templateInstanceService.deleteTemplateInstance(id);
+  }
+}
@@ -0,0 +1,29 @@
+package org.metadatacenter.cedar.template.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.metadatacenter.server.service.FieldNameInEx;
+
+import javax.management.InstanceNotFoundException;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The template instance operations the server uses besides creating them, which the instance writers do. Implemented
+ * over the Mongo template instance service, and over partitioned instance collections, so the resources do not know
+ * whether instances are partitioned.
+ */
+public interface TemplateInstanceStore {
+
+  /**
+   * @throws IllegalArgumentException if the store does not serve pages that deep; the message says how to page instead
+   */
+  List<JsonNode> findAllTemplateInstances(int limit, int offset, List<String> fieldNames,
+                                          FieldNameInEx fieldNameInEx) throws IOException;
+
+  long count();
+
+  long countReferencingTemplate(String templateId);
+
+  void deleteTemplateInstance(String id) throws InstanceNotFoundException, IOException;
+
+}
@@ -0,0 +1,17 @@
+package org.metadatacenter.cedar.template.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+
+/**
+ * Persists new template instances. The call returns once the instance is acknowledged by the storage.
+ */
+public interface TemplateInstanceWriter {
+
+  /**
+   * @throws InstanceWriteUnknownException if the instance may or may not have been written
+   */
+  JsonNode createTemplateInstance(JsonNode templateInstance) throws IOException;
+
+}
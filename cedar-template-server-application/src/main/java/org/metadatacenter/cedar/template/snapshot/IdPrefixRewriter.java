@@ -0,0 +1,64 @@
+package org.metadatacenter.cedar.template.snapshot;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rewrites the '@id' prefixes of the source environment to the ones of the target environment. Every string value
+ * is checked, not only '@id', since templates embed their elements and fields and instances reference their
+ * template.
+ */
+public class IdPrefixRewriter {
+
+  private final Map<String, String> replacements = new LinkedHashMap<>();
+
+  public IdPrefixRewriter(Map<String, String> sourcePrefixes, Map<String, String> targetPrefixes) {
+    for (Map.Entry<String, String> source : sourcePrefixes.entrySet()) {
+      String target = targetPrefixes.get(source.getKey());
+      if (target != null && !target.equals(source.getValue())) {
+        replacements.put(source.getValue(), target);
+      }
+    }
+  }
+
+  public boolean isIdentity() {
+    return replacements.isEmpty();
+  }
+
+  public Document rewrite(Document document) {
+    if (isIdentity()) {
+      return document;
+    }
+    return (Document) rewriteValue(document);
+  }
+
+  private Object rewriteValue(Object value) {
+    if (value instanceof String) {
+      String s = (String) value;
+      for (Map.Entry<String, String> replacement : replacements.entrySet()) {
+        if (s.startsWith(replacement.getKey())) {
+          return replacement.getValue() + s.substring(replacement.getKey().length());
+        }
+      }
+      return s;
+    } else if (value instanceof Document) {
+      Document document = (Document) value;
+      for (Map.Entry<String, Object> entry : document.entrySet()) {
+        entry.setValue(rewriteValue(entry.getValue()));
+      }
+      return document;
+    } else if (value instanceof List) {
+      List<?> list = (List<?>) value;
+      List<Object> rewritten = new ArrayList<>(list.size());
+      for (Object item : list) {
+        rewritten.add(rewriteValue(item));
+      }
+      return rewritten;
+    }
+    return value;
+  }
+}
@@ -0,0 +1,146 @@
+package org.metadatacenter.cedar.template.snapshot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Projections;
+import org.bson.Document;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.model.CedarNodeType;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports the field, element, template and instance collections into a snapshot directory. Every collection is read
+ * by its own thread and cut into chunks; the chunks are serialized and gzip-compressed by a shared pool of writer
+ * threads, one '&lt;type&gt;/&lt;type&gt;-NNNNN.ndjson.gz' file per chunk with one Mongo extended JSON document per
+ * line. The number of chunks waiting for a writer is bounded, so memory use does not depend on the collection size.
+ */
+public class SnapshotExporter {
+
+  private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+  private final MongoCollections mongoCollections;
+  private final Map<String, String> idPrefixes;
+  private final int threads;
+  private final int chunkSize;
+
+  public SnapshotExporter(MongoCollections mongoCollections, Map<String, String> idPrefixes, int threads,
+                          int chunkSize) {
+    this.mongoCollections = mongoCollections;
+    this.idPrefixes = idPrefixes;
+    this.threads = threads;
+    this.chunkSize = chunkSize;
+  }
+
+  public List<SnapshotTransfer> export(Path directory) throws IOException, InterruptedException {
+    Files.createDirectories(directory);
+    ExecutorService readers = Executors.newFixedThreadPool(SnapshotManifest.NODE_TYPES.length);
+    ExecutorService writers = Executors.newFixedThreadPool(threads);
+    Semaphore pendingChunks = new Semaphore(threads * 2);
+    try {
+      Map<CedarNodeType, Future<SnapshotManifest.Collection>> exports = new EnumMap<>(CedarNodeType.class);
+      Map<CedarNodeType, Long> durations = new ConcurrentHashMap<>();
+      for (CedarNodeType nodeType : SnapshotManifest.NODE_TYPES) {
+        exports.put(nodeType, readers.submit(() -> {
+          long start = System.currentTimeMillis();
+          SnapshotManifest.Collection collection = exportCollection(nodeType, directory, writers, pendingChunks);
+          durations.put(nodeType, System.currentTimeMillis() - start);
+          return collection;
+        }));
+      }
+
+      SnapshotManifest manifest = new SnapshotManifest();
+      manifest.setCreatedOn(Instant.now().toString());
+      manifest.setIdPrefixes(idPrefixes);
+      List<SnapshotTransfer> transfers = new ArrayList<>();
+      for (CedarNodeType nodeType : SnapshotManifest.NODE_TYPES) {
+        SnapshotManifest.Collection collection = SnapshotTasks.await(exports.get(nodeType));
+        manifest.getCollections().put(nodeType.name(), collection);
+        transfers.add(new SnapshotTransfer(nodeType, collection.getDocuments(), collection.getFiles().size(),
+            durations.get(nodeType)));
+      }
+      new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+          .writeValue(directory.resolve(SnapshotManifest.FILE_NAME).toFile(), manifest);
+      return transfers;
+    } finally {
+      readers.shutdownNow();
+      writers.shutdownNow();
+    }
+  }
+
+  private SnapshotManifest.Collection exportCollection(CedarNodeType nodeType, Path directory,
+                                                       ExecutorService writers, Semaphore pendingChunks)
+      throws IOException, InterruptedException {
+    String typeName = nodeType.name().toLowerCase(Locale.ENGLISH);
+    Files.createDirectories(directory.resolve(typeName));
+    List<Future<String>> chunkFiles = new ArrayList<>();
+    List<Document> chunk = new ArrayList<>(chunkSize);
+    long documents = 0;
+    for (MongoCollection<Document> source : mongoCollections.getCollections(nodeType)) {
+      for (Document document : source.find()
+          .projection(Projections.excludeId())
+          .batchSize(chunkSize)) {
+        chunk.add(document);
+        documents++;
+        if (chunk.size() == chunkSize) {
+          chunkFiles.add(submitChunk(directory, typeName, chunkFiles.size(), chunk, writers, pendingChunks));
+          chunk = new ArrayList<>(chunkSize);
+        }
+      }
+    }
+    if (!chunk.isEmpty()) {
+      chunkFiles.add(submitChunk(directory, typeName, chunkFiles.size(), chunk, writers, pendingChunks));
+    }
+
+    SnapshotManifest.Collection collection = new SnapshotManifest.Collection();
+    collection.setDocuments(documents);
+    for (Future<String> chunkFile : chunkFiles) {
+      collection.getFiles().add(SnapshotTasks.await(chunkFile));
+    }
+    return collection;
+  }
+
+  private static Future<String> submitChunk(Path directory, String typeName, int index, List<Document> chunk,
+                                            ExecutorService writers, Semaphore pendingChunks)
+      throws InterruptedException {
+    String fileName = typeName + "/" + String.format(Locale.ENGLISH, "%s-%05d.ndjson.gz", typeName, index);
+    pendingChunks.acquire();
+    return writers.submit(() -> {
+      try {
+        writeChunk(directory.resolve(fileName), chunk);
+        return fileName;
+      } finally {
+        pendingChunks.release();
+      }
+    });
+  }
+
+  private static void writeChunk(Path file, List<Document> chunk) throws IOException {
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+        new GZIPOutputStream(Files.newOutputStream(file), GZIP_BUFFER_SIZE), StandardCharsets.UTF_8))) {
+      for (Document document : chunk) {
+        writer.write(document.toJson());
+        writer.write('\n');
+      }
+    }
+  }
+}
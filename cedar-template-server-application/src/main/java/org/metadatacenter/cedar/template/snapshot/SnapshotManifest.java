@@ -0,0 +1,97 @@
+package org.metadatacenter.cedar.template.snapshot;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.metadatacenter.cedar.template.id.LinkedDataIdGenerator;
+import org.metadatacenter.model.CedarNodeType;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Describes a snapshot directory: the chunk files of every collection and the '@id' prefixes of the environment it
+ * was exported from, so that a restore into another environment can rewrite the ids.
+ */
+public class SnapshotManifest {
+
+  public static final String FILE_NAME = "manifest.json";
+
+  /**
+   * The exported types, in the order they have to be restored: fields and elements before the templates that embed
+   * them, templates before the instances based on them.
+   */
+  public static final CedarNodeType[] NODE_TYPES = {CedarNodeType.FIELD, CedarNodeType.ELEMENT,
+      CedarNodeType.TEMPLATE, CedarNodeType.INSTANCE};
+
+  private String createdOn;
+  private Map<String, String> idPrefixes = new LinkedHashMap<>();
+  private Map<String, Collection> collections = new LinkedHashMap<>();
+
+  /**
+   * The '@id' prefix of every exported type in the environment the generator belongs to.
+   */
+  public static Map<String, String> idPrefixesOf(LinkedDataIdGenerator linkedDataIdGenerator) {
+    Map<String, String> idPrefixes = new LinkedHashMap<>();
+    for (CedarNodeType nodeType : NODE_TYPES) {
+      idPrefixes.put(nodeType.name(), linkedDataIdGenerator.getPrefix(nodeType));
+    }
+    return idPrefixes;
+  }
+
+  @JsonProperty
+  public String getCreatedOn() {
+    return createdOn;
+  }
+
+  @JsonProperty
+  public void setCreatedOn(String createdOn) {
+    this.createdOn = createdOn;
+  }
+
+  @JsonProperty
+  public Map<String, String> getIdPrefixes() {
+    return idPrefixes;
+  }
+
+  @JsonProperty
+  public void setIdPrefixes(Map<String, String> idPrefixes) {
+    this.idPrefixes = idPrefixes;
+  }
+
+  @JsonProperty
+  public Map<String, Collection> getCollections() {
+    return collections;
+  }
+
+  @JsonProperty
+  public void setCollections(Map<String, Collection> collections) {
+    this.collections = collections;
+  }
+
+  public static class Collection {
+
+    private long documents;
+    private List<String> files = new ArrayList<>();
+
+    @JsonProperty
+    public long getDocuments() {
+      return documents;
+    }
+
+    @JsonProperty
+    public void setDocuments(long documents) {
+      this.documents = documents;
+    }
+
+    @JsonProperty
+    public List<String> getFiles() {
+      return files;
+    }
+
+    @JsonProperty
+    public void setFiles(List<String> files) {
+      this.files = files;
+    }
+  }
+}
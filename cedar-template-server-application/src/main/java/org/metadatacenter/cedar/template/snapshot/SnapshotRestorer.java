@@ -0,0 +1,125 @@
+package org.metadatacenter.cedar.template.snapshot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.metadatacenter.cedar.template.mongo.CreatedOn;
+import org.metadatacenter.cedar.template.mongo.LinkedDataFields;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.model.CedarNodeType;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+import static com.mongodb.client.model.Filters.eq;
+
+/**
+ * Loads a snapshot written by {@link SnapshotExporter}. Collections are restored one after the other in
+ * {@link SnapshotManifest#NODE_TYPES} order; within a collection the chunk files are loaded in parallel with
+ * unordered bulk writes. Documents are upserted by '@id', so restoring the same snapshot twice is harmless. The
+ * '@id' prefixes of the source environment are rewritten to the ones of the target environment.
+ */
+public class SnapshotRestorer {
+
+  private static final UpdateOptions UPSERT = new UpdateOptions().upsert(true);
+  private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+
+  private final MongoCollections mongoCollections;
+  private final Map<String, String> idPrefixes;
+  private final int threads;
+  private final int batchSize;
+
+  public SnapshotRestorer(MongoCollections mongoCollections, Map<String, String> idPrefixes, int threads,
+                          int batchSize) {
+    this.mongoCollections = mongoCollections;
+    this.idPrefixes = idPrefixes;
+    this.threads = threads;
+    this.batchSize = batchSize;
+  }
+
+  public List<SnapshotTransfer> restore(Path directory) throws IOException, InterruptedException {
+    SnapshotManifest manifest = new ObjectMapper().readValue(directory.resolve(SnapshotManifest.FILE_NAME).toFile(),
+        SnapshotManifest.class);
+    IdPrefixRewriter rewriter = new IdPrefixRewriter(manifest.getIdPrefixes(), idPrefixes);
+    ExecutorService loaders = Executors.newFixedThreadPool(threads);
+    try {
+      List<SnapshotTransfer> transfers = new ArrayList<>();
+      for (CedarNodeType nodeType : SnapshotManifest.NODE_TYPES) {
+        SnapshotManifest.Collection collection = manifest.getCollections().get(nodeType.name());
+        if (collection == null) {
+          continue;
+        }
+        long start = System.currentTimeMillis();
+        List<Future<Long>> chunks = new ArrayList<>();
+        for (String file : collection.getFiles()) {
+          chunks.add(loaders.submit(() -> restoreChunk(nodeType, directory.resolve(file), rewriter)));
+        }
+        long documents = 0;
+        for (Future<Long> chunk : chunks) {
+          documents += SnapshotTasks.await(chunk);
+        }
+        transfers.add(new SnapshotTransfer(nodeType, documents, chunks.size(), System.currentTimeMillis() - start));
+      }
+      return transfers;
+    } finally {
+      loaders.shutdownNow();
+    }
+  }
+
+  private long restoreChunk(CedarNodeType nodeType, Path file, IdPrefixRewriter rewriter) throws IOException {
+    long documents = 0;
+    List<Document> batch = new ArrayList<>(batchSize);
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty()) {
+          continue;
+        }
+        Document document = rewriter.rewrite(Document.parse(line));
+        batch.add(nodeType == CedarNodeType.INSTANCE ? CreatedOn.stamp(document) : document);
+        documents++;
+        if (batch.size() == batchSize) {
+          write(nodeType, batch);
+          batch = new ArrayList<>(batchSize);
+        }
+      }
+    }
+    if (!batch.isEmpty()) {
+      write(nodeType, batch);
+    }
+    return documents;
+  }
+
+  /**
+   * Upserts the documents with one bulk write per target collection; partitioned instances are routed first.
+   */
+  private void write(CedarNodeType nodeType, List<Document> documents) {
+    mongoCollections.addRoutes(nodeType, documents);
+    Map<MongoCollection<Document>, List<WriteModel<Document>>> writes = new LinkedHashMap<>();
+    for (Document document : documents) {
+      writes.computeIfAbsent(mongoCollections.getCollectionFor(nodeType, document), target -> new ArrayList<>())
+          .add(new ReplaceOneModel<>(eq(LinkedDataFields.ID, document.getString(LinkedDataFields.ID)), document,
+              UPSERT));
+    }
+    for (Map.Entry<MongoCollection<Document>, List<WriteModel<Document>>> write : writes.entrySet()) {
+      write.getKey().bulkWrite(write.getValue(), UNORDERED);
+    }
+  }
+}
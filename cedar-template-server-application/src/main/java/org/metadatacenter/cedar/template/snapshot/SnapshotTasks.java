@@ -0,0 +1,30 @@
+package org.metadatacenter.cedar.template.snapshot;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+final class SnapshotTasks {
+
+  private SnapshotTasks() {
+  }
+
+  /**
+   * Waits for a task and rethrows its failure as the exception the task threw.
+   */
+  static <T> T await(Future<T> future) throws IOException, InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package org.metadatacenter.cedar.template.snapshot;
+
+import org.metadatacenter.model.CedarNodeType;
+
+/**
+ * Outcome of exporting or restoring one collection.
+ */
+public class SnapshotTransfer {
+
+  private final CedarNodeType nodeType;
+  private final long documents;
+  private final int files;
+  private final long millis;
+
+  public SnapshotTransfer(CedarNodeType nodeType, long documents, int files, long millis) {
+    this.nodeType = nodeType;
+    this.documents = documents;
+    this.files = files;
+    this.millis = millis;
+  }
+
+  public CedarNodeType getNodeType() {
+    return nodeType;
+  }
+
+  public long getDocuments() {
+    return documents;
+  }
+
+  public int getFiles() {
+    return files;
+  }
+
+  public long getMillis() {
+    return millis;
+  }
+
+  public long getDocumentsPerSecond() {
+    return millis == 0 ? documents * 1000 : documents * 1000 / millis;
+  }
+
+  @Override
+  public String toString() {
+    return nodeType + ": " + documents + " documents, " + files + " files, " + millis + " ms ("
+        + getDocumentsPerSecond() + " documents/s)";
+  }
+}
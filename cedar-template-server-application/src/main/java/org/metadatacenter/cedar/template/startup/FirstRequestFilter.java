@@ -0,0 +1,37 @@
+package org.metadatacenter.cedar.template.startup;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import java.io.IOException;
+
+/**
+ * Records the latency of the first request that is not sent by the warm-up. Once it is recorded the filter only costs
+ * a flag check.
+ */
+public class FirstRequestFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+  private static final String START_PROPERTY = FirstRequestFilter.class.getName() + ".start";
+
+  private final StartupMonitor startupMonitor;
+
+  public FirstRequestFilter(StartupMonitor startupMonitor) {
+    this.startupMonitor = startupMonitor;
+  }
+
+  @Override
+  public void filter(ContainerRequestContext request) throws IOException {
+    if (!startupMonitor.isFirstRequestRecorded() && request.getHeaderString(WarmUp.WARM_UP_HEADER) == null) {
+      request.setProperty(START_PROPERTY, System.nanoTime());
+    }
+  }
+
+  @Override
+  public void filter(ContainerRequestContext request, ContainerResponseContext response) throws IOException {
+    Object start = request.getProperty(START_PROPERTY);
+    if (start != null) {
+      startupMonitor.firstRequest((System.nanoTime() - (Long) start) / 1000000);
+    }
+  }
+}
@@ -0,0 +1,33 @@
+package org.metadatacenter.cedar.template.startup;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Stands in for a service that is still being constructed in the background. Calls wait until the construction is
+ * done and are then forwarded to the service.
+ */
+public final class LazyService {
+
+  private LazyService() {
+  }
+
+  @SuppressWarnings("unchecked")
+  public static <T> T of(Class<? super T> type, CompletableFuture<? extends T> construction, String name) {
+    return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+      T target;
+      try {
+        target = construction.join();
+      } catch (CompletionException e) {
+        throw new IllegalStateException("The " + name + " could not be initialized", e.getCause());
+      }
+      try {
+        return method.invoke(target, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+    });
+  }
+}
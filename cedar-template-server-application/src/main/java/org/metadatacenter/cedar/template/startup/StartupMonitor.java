@@ -0,0 +1,104 @@
+package org.metadatacenter.cedar.template.startup;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the startup phases and publishes their durations as gauges (-1 until the phase is over):
+ * <ul>
+ * <li>startup.services.millis: construction of the Mongo services</li>
+ * <li>startup.serverStarted.millis: JVM start until the server accepts connections</li>
+ * <li>startup.warmUp.millis: the warm-up phase</li>
+ * <li>startup.ready.millis: JVM start until the server reports ready</li>
+ * <li>startup.firstRequest.millis: latency of the first request that is not part of the warm-up</li>
+ * </ul>
+ * The server is ready once the services are constructed and the warm-up, if enabled, is finished.
+ */
+public class StartupMonitor {
+
+  private final long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+  private final CompletableFuture<Long> services;
+  private final boolean warmUp;
+  private final AtomicLong servicesMillis = new AtomicLong(-1);
+  private final AtomicLong serverStartedMillis = new AtomicLong(-1);
+  private final AtomicLong warmUpMillis = new AtomicLong(-1);
+  private final AtomicLong readyMillis = new AtomicLong(-1);
+  private final AtomicLong firstRequestMillis = new AtomicLong(-1);
+
+  /**
+   * @param services completes with the construction time of the services in milliseconds
+   */
+  public StartupMonitor(MetricRegistry metrics, CompletableFuture<Long> services, boolean warmUp) {
+    this.services = services;
+    this.warmUp = warmUp;
+    services.thenAccept(millis -> {
+      servicesMillis.set(millis);
+      checkReady();
+    });
+    register(metrics, "startup.services.millis", servicesMillis);
+    register(metrics, "startup.serverStarted.millis", serverStartedMillis);
+    register(metrics, "startup.warmUp.millis", warmUpMillis);
+    register(metrics, "startup.ready.millis", readyMillis);
+    register(metrics, "startup.firstRequest.millis", firstRequestMillis);
+  }
+
+  public void serverStarted() {
+    serverStartedMillis.set(System.currentTimeMillis() - jvmStartMillis);
+    checkReady();
+  }
+
+  public void warmUpFinished(long millis) {
+    warmUpMillis.set(millis);
+    checkReady();
+  }
+
+  public boolean isFirstRequestRecorded() {
+    return firstRequestMillis.get() >= 0;
+  }
+
+  public void firstRequest(long millis) {
+    firstRequestMillis.compareAndSet(-1, millis);
+  }
+
+  public boolean isReady() {
+    return readyMillis.get() >= 0;
+  }
+
+  /**
+   * Why the server is not ready yet, or null if it is.
+   */
+  public String getPendingPhase() {
+    if (services.isCompletedExceptionally()) {
+      try {
+        services.join();
+      } catch (CompletionException e) {
+        return "The services could not be initialized: " + e.getCause().getMessage();
+      }
+    }
+    if (servicesMillis.get() < 0) {
+      return "The services are being initialized";
+    }
+    if (serverStartedMillis.get() < 0) {
+      return "The server is starting";
+    }
+    if (warmUp && warmUpMillis.get() < 0) {
+      return "The server is warming up";
+    }
+    return null;
+  }
+
+  private synchronized void checkReady() {
+    if (readyMillis.get() < 0 && getPendingPhase() == null) {
+      readyMillis.set(System.currentTimeMillis() - jvmStartMillis);
+    }
+  }
+
+  private static void register(MetricRegistry metrics, String name, AtomicLong value) {
+    metrics.register(name, (Gauge<Long>) value::get);
+  }
+}
@@ -0,0 +1,189 @@
+package org.metadatacenter.cedar.template.startup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.dropwizard.lifecycle.ServerLifecycleListener;
+import org.bson.Document;
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.metadatacenter.cedar.template.config.StartupConfig;
+import org.metadatacenter.cedar.template.format.BinaryFormats;
+import org.metadatacenter.cedar.template.mongo.LinkedDataFields;
+import org.metadatacenter.cedar.template.mongo.MongoDocuments;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records when the server started and, if enabled, runs the warm-up phase before the server reports ready. The
+ * warm-up round-trips synthetic templates, elements and instances through the JSON, Smile, CBOR and Mongo document
+ * conversions, then sends the configured GET requests to the application connector, so that Jackson, Jersey and the
+ * JIT are warm when real traffic arrives. Without the configured authorization the requests are rejected, which still
+ * warms routing, filters and error serialization. Failures are logged and never keep the server from becoming ready.
+ */
+public class WarmUp implements ServerLifecycleListener {
+
+  private static final Logger log = LoggerFactory.getLogger(WarmUp.class);
+
+  public static final String WARM_UP_HEADER = "X-Cedar-Warm-Up";
+  private static final String WARM_UP_ID = "https://repo.metadatacenter.org/warm-up/";
+  private static final int FIELDS_PER_DOCUMENT = 20;
+  private static final int TIMEOUT_MILLIS = 10000;
+
+  private final StartupConfig config;
+  private final ObjectMapper jsonMapper;
+  private final StartupMonitor startupMonitor;
+
+  public WarmUp(StartupConfig config, ObjectMapper jsonMapper, StartupMonitor startupMonitor) {
+    this.config = config;
+    this.jsonMapper = jsonMapper;
+    this.startupMonitor = startupMonitor;
+  }
+
+  @Override
+  public void serverStarted(Server server) {
+    startupMonitor.serverStarted();
+    if (!config.isWarmUp()) {
+      return;
+    }
+    int port = getApplicationPort(server);
+    Thread thread = new Thread(() -> run(port), "warm-up");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void run(int port) {
+    long start = System.currentTimeMillis();
+    try {
+      List<ObjectNode> documents = buildDocuments();
+      for (int i = 0; i < config.getWarmUpIterations(); i++) {
+        for (ObjectNode document : documents) {
+          roundTrip(document);
+        }
+      }
+      if (port > 0) {
+        for (int i = 0; i < config.getWarmUpIterations(); i++) {
+          for (String path : config.getWarmUpPaths()) {
+            request(port, path);
+          }
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      log.warn("The warm-up stopped early", e);
+    }
+    long millis = System.currentTimeMillis() - start;
+    log.info("Warm-up finished in " + millis + " ms");
+    startupMonitor.warmUpFinished(millis);
+  }
+
+  private void roundTrip(ObjectNode document) throws IOException {
+    jsonMapper.readTree(jsonMapper.writeValueAsBytes(document));
+    ObjectMapper smileMapper = BinaryFormats.smileMapper();
+    smileMapper.readTree(smileMapper.writeValueAsBytes(document));
+    ObjectMapper cborMapper = BinaryFormats.cborMapper();
+    cborMapper.readTree(cborMapper.writeValueAsBytes(document));
+    Document stored = MongoDocuments.toDocument(document);
+    MongoDocuments.toJsonNode(stored);
+  }
+
+  private void request(int port, String path) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL("http", "localhost", port, path).openConnection();
+    connection.setConnectTimeout(TIMEOUT_MILLIS);
+    connection.setReadTimeout(TIMEOUT_MILLIS);
+    connection.setRequestProperty(WARM_UP_HEADER, "true");
+    connection.setRequestProperty("Accept", "application/json");
+    if (config.getWarmUpAuthorization() != null) {
+      connection.setRequestProperty("Authorization", config.getWarmUpAuthorization());
+    }
+    try {
+      InputStream body = connection.getResponseCode() < 400 ? connection.getInputStream()
+          : connection.getErrorStream();
+      if (body != null) {
+        try (InputStream in = body) {
+          byte[] buffer = new byte[8192];
+          while (in.read(buffer) >= 0) {
+            // drain, so the connection is reused
+          }
+        }
+      }
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  /**
+   * A template with its fields, an element, and an instance of the template, shaped like real documents.
+   */
+  private static List<ObjectNode> buildDocuments() {
+    JsonNodeFactory factory = JsonNodeFactory.instance;
+    ObjectNode template = buildSchema(factory, "template", "https://schema.metadatacenter.org/core/Template");
+    ObjectNode element = buildSchema(factory, "element", "https://schema.metadatacenter.org/core/TemplateElement");
+    ObjectNode instance = factory.objectNode();
+    instance.put(LinkedDataFields.ID, WARM_UP_ID + "instance");
+    instance.put(LinkedDataFields.IS_BASED_ON, WARM_UP_ID + "template");
+    instance.put("schema:name", "Warm-up instance");
+    instance.set("@context", factory.objectNode().put("schema", "http://schema.org/")
+        .put("pav", "http://purl.org/pav/"));
+    for (int i = 0; i < FIELDS_PER_DOCUMENT; i++) {
+      instance.set("field" + i, factory.objectNode().put("@value", "value " + i));
+    }
+    addProvenance(instance);
+    return Arrays.asList(template, element, instance);
+  }
+
+  private static ObjectNode buildSchema(JsonNodeFactory factory, String name, String type) {
+    ObjectNode schema = factory.objectNode();
+    schema.put(LinkedDataFields.ID, WARM_UP_ID + name);
+    schema.put("@type", type);
+    schema.put("$schema", "http://json-schema.org/draft-04/schema#");
+    schema.put("schema:name", "Warm-up " + name);
+    schema.put("schema:description", "Synthetic " + name + " used to warm up the server");
+    ObjectNode properties = schema.putObject("properties");
+    ArrayNode order = schema.putObject("_ui").putArray("order");
+    for (int i = 0; i < FIELDS_PER_DOCUMENT; i++) {
+      ObjectNode field = properties.putObject("field" + i);
+      field.put(LinkedDataFields.ID, WARM_UP_ID + name + "/field" + i);
+      field.put("@type", "https://schema.metadatacenter.org/core/TemplateField");
+      field.put("$schema", "http://json-schema.org/draft-04/schema#");
+      field.putObject("_ui").put("inputType", "textfield");
+      field.putObject("_valueConstraints").put("requiredValue", i % 2 == 0);
+      order.add("field" + i);
+    }
+    addProvenance(schema);
+    return schema;
+  }
+
+  private static void addProvenance(ObjectNode document) {
+    document.put(LinkedDataFields.CREATED_ON, "2017-01-01T00:00:00-08:00");
+    document.put(LinkedDataFields.CREATED_BY, WARM_UP_ID + "user");
+    document.put(LinkedDataFields.LAST_UPDATED_ON, "2017-01-01T00:00:00-08:00");
+    document.put(LinkedDataFields.MODIFIED_BY, WARM_UP_ID + "user");
+  }
+
+  /**
+   * The port of the application connector, or -1 if there is none to send requests to.
+   */
+  private static int getApplicationPort(Server server) {
+    int port = -1;
+    for (Connector connector : server.getConnectors()) {
+      if (connector instanceof ServerConnector) {
+        ServerConnector serverConnector = (ServerConnector) connector;
+        if ("application".equals(serverConnector.getName())) {
+          return serverConnector.getLocalPort();
+        } else if (port < 0 && !"admin".equals(serverConnector.getName())) {
+          port = serverConnector.getLocalPort();
+        }
+      }
+    }
+    return port;
+  }
+}
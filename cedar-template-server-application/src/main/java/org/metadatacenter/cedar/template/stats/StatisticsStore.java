@@ -0,0 +1,442 @@
+package org.metadatacenter.cedar.template.stats;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.FindOneAndReplaceOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import io.dropwizard.lifecycle.Managed;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.metadatacenter.cedar.template.change.DocumentChangeListener;
+import org.metadatacenter.cedar.template.mongo.LinkedDataFields;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.mongo.MongoDocuments;
+import org.metadatacenter.model.CedarNodeType;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Filters.lte;
+
+/**
+ * Aggregate counts of the stored templates, elements and instances, kept up to date by the create, update and delete
+ * paths so that reading them never scans the collections. '&lt;collection&gt;-statistics' holds one counter document
+ * per total, template, creator and day, updated with $inc:
+ * <ul>
+ * <li>total: the number of documents of a type</li>
+ * <li>template: the number of instances based on the template</li>
+ * <li>creator: the number of templates, elements and instances created by the user</li>
+ * <li>day: the number of documents of each type created, updated and deleted on the day. Creations count on the
+ * date of their creation timestamp, updates and deletes on the UTC date they happen.</li>
+ * </ul>
+ * Deletes only carry ids, so '&lt;collection&gt;-statistics-attributions' keeps the template and creator of every
+ * counted document to take it off the right counters. An update that changes them swaps the attribution and moves the
+ * counts from the old template and creator to the new ones. Attributions are swapped and removed one document at a
+ * time with atomic find-and-modify operations, so concurrent changes of the same document never take it off a counter
+ * twice; documents without an attribution were never counted and are left alone. Changes made directly in the
+ * database are not counted; the 'rebuild-statistics' command recomputes everything from the collections.
+ */
+public class StatisticsStore implements DocumentChangeListener, Managed {
+
+  public static final String STATISTICS_COLLECTION_SUFFIX = "-statistics";
+  public static final String ATTRIBUTIONS_COLLECTION_SUFFIX = "-statistics-attributions";
+
+  public static final String KIND_TOTAL = "total";
+  public static final String KIND_TEMPLATE = "template";
+  public static final String KIND_CREATOR = "creator";
+  public static final String KIND_DAY = "day";
+
+  private static final String F_ID = MongoDocuments.MONGO_ID_FIELD;
+  private static final String F_KIND = "kind";
+  private static final String F_KEY = "key";
+  private static final String F_COUNT = "count";
+  private static final String F_INSTANCES = "instances";
+  private static final String F_TOTAL = "total";
+  private static final String F_CREATED = "created";
+  private static final String F_UPDATED = "updated";
+  private static final String F_DELETED = "deleted";
+  private static final String F_TYPE = "type";
+  private static final String F_TEMPLATE = "template";
+  private static final String F_CREATOR = "creator";
+  private static final CedarNodeType[] COUNTED_TYPES = {CedarNodeType.TEMPLATE, CedarNodeType.ELEMENT,
+      CedarNodeType.INSTANCE};
+  private static final Pattern DATE_PREFIX = Pattern.compile("^\\d{4}-\\d{2}-\\d{2}");
+  private static final int REBUILD_BATCH_SIZE = 500;
+  private static final UpdateOptions UPSERT = new UpdateOptions().upsert(true);
+  private static final BulkWriteOptions UNORDERED = new BulkWriteOptions().ordered(false);
+
+  private final MongoCollections mongoCollections;
+  private final boolean enabled;
+
+  public StatisticsStore(MongoCollections mongoCollections, boolean enabled) {
+    this.mongoCollections = mongoCollections;
+    this.enabled = enabled;
+  }
+
+  @Override
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    MongoCollection<Document> statistics = getStatisticsCollection();
+    statistics.createIndex(Indexes.compoundIndex(Indexes.ascending(F_KIND), Indexes.descending(F_INSTANCES)),
+        new IndexOptions().background(true));
+    statistics.createIndex(Indexes.compoundIndex(Indexes.ascending(F_KIND), Indexes.descending(F_TOTAL)),
+        new IndexOptions().background(true));
+  }
+
+  @Override
+  public void stop() {
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @Override
+  public void created(CedarNodeType nodeType, JsonNode document) {
+    if (!isCounted(nodeType)) {
+      return;
+    }
+    Document attribution = buildAttribution(nodeType, document);
+    getAttributionCollection().replaceOne(eq(F_ID, attribution.getString(F_ID)), attribution, UPSERT);
+    Counters counters = new Counters();
+    counters.add(nodeType, attribution, 1);
+    counters.inc(KIND_DAY, creationDay(document), F_CREATED + "." + typeName(nodeType), 1);
+    counters.write();
+  }
+
+  @Override
+  public void updated(CedarNodeType nodeType, JsonNode before, JsonNode after) {
+    if (!isCounted(nodeType)) {
+      return;
+    }
+    Counters counters = new Counters();
+    if (after != null && after.hasNonNull(LinkedDataFields.ID)) {
+      Document attribution = buildAttribution(nodeType, after);
+      Document previous = getAttributionCollection().findOneAndReplace(eq(F_ID, attribution.getString(F_ID)),
+          attribution, new FindOneAndReplaceOptions().returnDocument(ReturnDocument.BEFORE));
+      if (previous != null && !isSameAttribution(previous, attribution)) {
+        counters.add(nodeType, previous, -1);
+        counters.add(nodeType, attribution, 1);
+      }
+    }
+    counters.inc(KIND_DAY, today(), F_UPDATED + "." + typeName(nodeType), 1);
+    counters.write();
+  }
+
+  @Override
+  public void deleted(CedarNodeType nodeType, List<String> ids) {
+    if (!isCounted(nodeType) || ids.isEmpty()) {
+      return;
+    }
+    MongoCollection<Document> attributions = getAttributionCollection();
+    Counters counters = new Counters();
+    long removed = 0;
+    for (String id : ids) {
+      // only the delete that actually removes the attribution takes the document off the counters
+      Document attribution = attributions.findOneAndDelete(eq(F_ID, id));
+      if (attribution != null) {
+        counters.add(nodeType, attribution, -1);
+        removed++;
+      }
+    }
+    if (removed == 0) {
+      return;
+    }
+    counters.inc(KIND_DAY, today(), F_DELETED + "." + typeName(nodeType), removed);
+    counters.write();
+    if (nodeType == CedarNodeType.TEMPLATE) {
+      getStatisticsCollection().deleteMany(in(F_ID, counterIds(KIND_TEMPLATE, ids)));
+    }
+  }
+
+  /**
+   * Counts a document that was never counted, as of its creation day, or moves it to the template and creator it has
+   * now. Updates are not counted again. A failure between the attribution and the counter writes can still leave a
+   * counter off by one, which only 'rebuild-statistics' repairs.
+   */
+  @Override
+  public void reconcile(CedarNodeType nodeType, String id, JsonNode current) {
+    if (current == null) {
+      deleted(nodeType, Collections.singletonList(id));
+      return;
+    }
+    if (!isCounted(nodeType)) {
+      return;
+    }
+    Document attribution = buildAttribution(nodeType, current);
+    Document previous = getAttributionCollection().findOneAndReplace(eq(F_ID, attribution.getString(F_ID)),
+        attribution, new FindOneAndReplaceOptions().upsert(true).returnDocument(ReturnDocument.BEFORE));
+    Counters counters = new Counters();
+    if (previous == null) {
+      counters.add(nodeType, attribution, 1);
+      counters.inc(KIND_DAY, creationDay(current), F_CREATED + "." + typeName(nodeType), 1);
+    } else if (!isSameAttribution(previous, attribution)) {
+      counters.add(nodeType, previous, -1);
+      counters.add(nodeType, attribution, 1);
+    }
+    counters.write();
+  }
+
+  /**
+   * The number of documents of each type, keyed by the lower case type name.
+   */
+  public Map<String, Long> getTotals() throws IOException {
+    Map<String, Long> totals = new LinkedHashMap<>();
+    for (CedarNodeType nodeType : COUNTED_TYPES) {
+      totals.put(typeName(nodeType), 0L);
+    }
+    try {
+      for (Document total : getStatisticsCollection().find(eq(F_KIND, KIND_TOTAL))) {
+        totals.put(total.getString(F_KEY), getLong(total, F_COUNT));
+      }
+    } catch (MongoException e) {
+      throw new IOException("Error while reading the totals", e);
+    }
+    return totals;
+  }
+
+  /**
+   * The counters of a template, creator or day, or null if nothing was counted for it.
+   */
+  public Document find(String kind, String key) throws IOException {
+    try {
+      Document counter = getStatisticsCollection().find(eq(F_ID, counterId(kind, key))).first();
+      return counter == null ? null : toEntry(counter);
+    } catch (MongoException e) {
+      throw new IOException("Error while reading the statistics of " + kind + " " + key, e);
+    }
+  }
+
+  /**
+   * The templates with the most instances, most first.
+   */
+  public List<Document> findTopTemplates(int limit) throws IOException {
+    return findTop(KIND_TEMPLATE, F_INSTANCES, limit);
+  }
+
+  /**
+   * The users who created the most templates, elements and instances together, most first.
+   */
+  public List<Document> findTopCreators(int limit) throws IOException {
+    return findTop(KIND_CREATOR, F_TOTAL, limit);
+  }
+
+  /**
+   * The counters of the days in the range, both ends included, in date order. Days without changes are left out.
+   */
+  public List<Document> findDays(LocalDate from, LocalDate to) throws IOException {
+    List<Document> days = new ArrayList<>();
+    try {
+      for (Document day : getStatisticsCollection()
+          .find(and(gte(F_ID, counterId(KIND_DAY, from.toString())), lte(F_ID, counterId(KIND_DAY, to.toString()))))
+          .sort(Sorts.ascending(F_ID))) {
+        days.add(toEntry(day));
+      }
+    } catch (MongoException e) {
+      throw new IOException("Error while reading the daily statistics", e);
+    }
+    return days;
+  }
+
+  /**
+   * Replaces the statistics with the counts of the documents in the collections. Meant to be run while the server is
+   * not writing.
+   *
+   * @return the number of counted documents
+   */
+  public long rebuild() throws IOException {
+    MongoCollection<Document> attributions = getAttributionCollection();
+    getStatisticsCollection().deleteMany(new Document());
+    attributions.deleteMany(new Document());
+    Counters counters = new Counters();
+    long counted = 0;
+    List<Document> batch = new ArrayList<>(REBUILD_BATCH_SIZE);
+    for (CedarNodeType nodeType : COUNTED_TYPES) {
+      for (MongoCollection<Document> collection : mongoCollections.getCollections(nodeType)) {
+        for (Document stored : collection.find()
+            .projection(Projections.include(LinkedDataFields.ID, LinkedDataFields.IS_BASED_ON,
+                LinkedDataFields.CREATED_BY, LinkedDataFields.CREATED_ON))
+            .batchSize(REBUILD_BATCH_SIZE)) {
+          JsonNode document = MongoDocuments.toJsonNode(stored);
+          Document attribution = buildAttribution(nodeType, document);
+          counters.add(nodeType, attribution, 1);
+          counters.inc(KIND_DAY, creationDay(document), F_CREATED + "." + typeName(nodeType), 1);
+          batch.add(attribution);
+          if (batch.size() == REBUILD_BATCH_SIZE) {
+            attributions.insertMany(batch, new InsertManyOptions().ordered(false));
+            counted += batch.size();
+            batch.clear();
+          }
+        }
+      }
+    }
+    if (!batch.isEmpty()) {
+      attributions.insertMany(batch, new InsertManyOptions().ordered(false));
+      counted += batch.size();
+    }
+    counters.write();
+    return counted;
+  }
+
+  private List<Document> findTop(String kind, String field, int limit) throws IOException {
+    List<Document> top = new ArrayList<>();
+    try {
+      for (Document counter : getStatisticsCollection().find(eq(F_KIND, kind))
+          .sort(Sorts.descending(field))
+          .limit(limit)) {
+        top.add(toEntry(counter));
+      }
+    } catch (MongoException e) {
+      throw new IOException("Error while reading the statistics of the top " + kind + "s", e);
+    }
+    return top;
+  }
+
+  private static Document buildAttribution(CedarNodeType nodeType, JsonNode document) {
+    Document attribution = new Document(F_ID, document.get(LinkedDataFields.ID).asText())
+        .append(F_TYPE, typeName(nodeType));
+    JsonNode creator = document.get(LinkedDataFields.CREATED_BY);
+    if (creator != null && creator.isTextual()) {
+      attribution.append(F_CREATOR, creator.asText());
+    }
+    JsonNode template = document.get(LinkedDataFields.IS_BASED_ON);
+    if (nodeType == CedarNodeType.INSTANCE && template != null && template.isTextual()) {
+      attribution.append(F_TEMPLATE, template.asText());
+    }
+    return attribution;
+  }
+
+  private static boolean isSameAttribution(Document previous, Document current) {
+    return Objects.equals(previous.getString(F_CREATOR), current.getString(F_CREATOR))
+        && Objects.equals(previous.getString(F_TEMPLATE), current.getString(F_TEMPLATE));
+  }
+
+  /**
+   * The date part of the creation timestamp, in the offset it was recorded in, or today if it has none.
+   */
+  private static String creationDay(JsonNode document) {
+    JsonNode createdOn = document.get(LinkedDataFields.CREATED_ON);
+    if (createdOn != null && createdOn.isTextual() && DATE_PREFIX.matcher(createdOn.asText()).find()) {
+      return createdOn.asText().substring(0, 10);
+    }
+    return today();
+  }
+
+  private static String today() {
+    return LocalDate.now(ZoneOffset.UTC).toString();
+  }
+
+  private static boolean isCounted(CedarNodeType nodeType) {
+    return nodeType == CedarNodeType.TEMPLATE || nodeType == CedarNodeType.ELEMENT
+        || nodeType == CedarNodeType.INSTANCE;
+  }
+
+  private static String typeName(CedarNodeType nodeType) {
+    return nodeType.name().toLowerCase(Locale.ENGLISH);
+  }
+
+  private static String counterId(String kind, String key) {
+    return kind + "|" + key;
+  }
+
+  private static List<String> counterIds(String kind, List<String> keys) {
+    List<String> ids = new ArrayList<>(keys.size());
+    for (String key : keys) {
+      ids.add(counterId(kind, key));
+    }
+    return ids;
+  }
+
+  private static long getLong(Document document, String field) {
+    Object value = document.get(field);
+    return value instanceof Number ? ((Number) value).longValue() : 0;
+  }
+
+  /**
+   * The counter document without the storage fields.
+   */
+  private static Document toEntry(Document counter) {
+    Document entry = new Document(counter);
+    entry.remove(F_ID);
+    entry.remove(F_KIND);
+    return entry;
+  }
+
+  private MongoCollection<Document> getStatisticsCollection() {
+    return mongoCollections.getCollection(mongoCollections.getCollectionName(CedarNodeType.TEMPLATE)
+        + STATISTICS_COLLECTION_SUFFIX);
+  }
+
+  private MongoCollection<Document> getAttributionCollection() {
+    return mongoCollections.getCollection(mongoCollections.getCollectionName(CedarNodeType.TEMPLATE)
+        + ATTRIBUTIONS_COLLECTION_SUFFIX);
+  }
+
+  /**
+   * Increments collected in memory and written as one unordered bulk of upserts.
+   */
+  private class Counters {
+
+    private final Map<String, Document> increments = new LinkedHashMap<>();
+
+    private void add(CedarNodeType nodeType, Document attribution, long delta) {
+      inc(KIND_TOTAL, typeName(nodeType), F_COUNT, delta);
+      String creator = attribution.getString(F_CREATOR);
+      if (creator != null) {
+        inc(KIND_CREATOR, creator, typeName(nodeType) + "s", delta);
+        inc(KIND_CREATOR, creator, F_TOTAL, delta);
+      }
+      String template = attribution.getString(F_TEMPLATE);
+      if (template != null) {
+        inc(KIND_TEMPLATE, template, F_INSTANCES, delta);
+      }
+    }
+
+    private void inc(String kind, String key, String field, long delta) {
+      Document increment = increments.computeIfAbsent(counterId(kind, key), id -> new Document());
+      increment.put(field, getLong(increment, field) + delta);
+    }
+
+    private void write() {
+      if (increments.isEmpty()) {
+        return;
+      }
+      List<WriteModel<Document>> updates = new ArrayList<>(increments.size());
+      for (Map.Entry<String, Document> increment : increments.entrySet()) {
+        String id = increment.getKey();
+        int separator = id.indexOf('|');
+        Bson update = new Document("$inc", increment.getValue())
+            .append("$setOnInsert", new Document(F_KIND, id.substring(0, separator))
+                .append(F_KEY, id.substring(separator + 1)));
+        updates.add(new UpdateOneModel<>(eq(F_ID, id), update, UPSERT));
+      }
+      getStatisticsCollection().bulkWrite(updates, UNORDERED);
+      increments.clear();
+    }
+  }
+}
@@ -0,0 +1,305 @@
+package org.metadatacenter.cedar.template.summary;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.DeleteManyModel;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import io.dropwizard.lifecycle.Managed;
+import org.bson.Document;
+import org.metadatacenter.cedar.template.change.DocumentChangeListener;
+import org.metadatacenter.cedar.template.mongo.FieldProjection;
+import org.metadatacenter.cedar.template.mongo.LinkedDataFields;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.mongo.MongoDocuments;
+import org.metadatacenter.config.CedarConfig;
+import org.metadatacenter.model.CedarNodeType;
+import org.metadatacenter.server.service.FieldNameInEx;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
+
+/**
+ * Keeps a compact copy of the summary fields of every template, element and instance in a separate collection per
+ * type ('&lt;collection&gt;-summaries'). Summary listings read only these small documents instead of projecting the
+ * summary fields out of the full documents. The store is kept in sync from the create, update and delete paths and
+ * can be rebuilt from the main collections with the 'rebuild-summaries' command.
+ * <p>
+ * Listings are only served from the summaries of a type once a rebuild of that type has completed, which is recorded
+ * in '&lt;collection&gt;-summary-rebuilds'; before that the store holds only the documents changed since it was
+ * enabled. A server that starts with the store disabled stops following the changes, so it removes these records and
+ * the store has to be rebuilt again before it serves.
+ */
+public class SummaryStore implements DocumentChangeListener, Managed {
+
+  private static final Logger log = LoggerFactory.getLogger(SummaryStore.class);
+
+  public static final String SUMMARY_COLLECTION_SUFFIX = "-summaries";
+  public static final String REBUILDS_COLLECTION_SUFFIX = "-summary-rebuilds";
+  private static final String F_REBUILT_ON = "rebuiltOn";
+  private static final long REBUILD_CHECK_INTERVAL_MILLIS = 10000;
+  private static final int REBUILD_BATCH_SIZE = 1000;
+  private static final UpdateOptions UPSERT = new UpdateOptions().upsert(true);
+
+  private final MongoCollections mongoCollections;
+  private final boolean enabled;
+  private final Map<CedarNodeType, List<String>> summaryFields = new EnumMap<>(CedarNodeType.class);
+  private final Set<CedarNodeType> rebuilt = EnumSet.noneOf(CedarNodeType.class);
+  private long lastRebuildCheck;
+
+  public SummaryStore(MongoCollections mongoCollections, CedarConfig cedarConfig, boolean enabled) {
+    this.mongoCollections = mongoCollections;
+    this.enabled = enabled;
+    summaryFields.put(CedarNodeType.TEMPLATE,
+        new ArrayList<>(cedarConfig.getTemplateRESTAPI().getSummaries().getTemplate().getFields()));
+    summaryFields.put(CedarNodeType.ELEMENT,
+        new ArrayList<>(cedarConfig.getTemplateRESTAPI().getSummaries().getElement().getFields()));
+    summaryFields.put(CedarNodeType.INSTANCE,
+        new ArrayList<>(cedarConfig.getTemplateRESTAPI().getSummaries().getInstance().getFields()));
+  }
+
+  @Override
+  public void start() {
+    if (!enabled) {
+      forgetRebuilds(summaryFields.keySet());
+      return;
+    }
+    for (CedarNodeType nodeType : summaryFields.keySet()) {
+      getSummaryCollection(nodeType).createIndex(Indexes.ascending(LinkedDataFields.ID),
+          new IndexOptions().unique(true).background(true));
+    }
+  }
+
+  @Override
+  public void stop() {
+  }
+
+  /**
+   * Whether the store follows the changes. Enable it and run 'rebuild-summaries' once to fill it from the existing
+   * data.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Whether summary listings of the type are served from the store: it is enabled and a rebuild of the type has
+   * completed. Until then the rebuild records are looked up again at most every few seconds.
+   */
+  public synchronized boolean isServing(CedarNodeType nodeType) {
+    if (!handles(nodeType)) {
+      return false;
+    }
+    long now = System.currentTimeMillis();
+    if (!rebuilt.contains(nodeType) && now - lastRebuildCheck >= REBUILD_CHECK_INTERVAL_MILLIS) {
+      lastRebuildCheck = now;
+      try {
+        for (Document rebuild : getRebuildsCollection().find()) {
+          rebuilt.add(CedarNodeType.valueOf(rebuild.getString(MongoDocuments.MONGO_ID_FIELD)));
+        }
+      } catch (MongoException e) {
+        log.warn("Error while looking up the summary rebuilds", e);
+      }
+    }
+    return rebuilt.contains(nodeType);
+  }
+
+  public boolean handles(CedarNodeType nodeType) {
+    return enabled && summaryFields.containsKey(nodeType);
+  }
+
+  /**
+   * A page of summaries in '_id' order, so that consecutive offsets neither repeat nor skip summaries.
+   */
+  public List<JsonNode> findAll(CedarNodeType nodeType, int limit, int offset) throws IOException {
+    List<JsonNode> summaries = new ArrayList<>();
+    try {
+      for (Document document : getSummaryCollection(nodeType).find()
+          .sort(Sorts.ascending(MongoDocuments.MONGO_ID_FIELD))
+          .projection(Projections.excludeId())
+          .skip(offset)
+          .limit(limit)) {
+        summaries.add(MongoDocuments.toJsonNode(document));
+      }
+    } catch (MongoException e) {
+      throw new IOException("Error while listing " + nodeType + " summaries", e);
+    }
+    return summaries;
+  }
+
+  /**
+   * The number of summaries, which is the total of the listing served by {@link #findAll}.
+   */
+  public long count(CedarNodeType nodeType) {
+    return getSummaryCollection(nodeType).count();
+  }
+
+  @Override
+  public void created(CedarNodeType nodeType, JsonNode document) {
+    upsert(nodeType, document);
+  }
+
+  @Override
+  public void updated(CedarNodeType nodeType, JsonNode before, JsonNode after) {
+    upsert(nodeType, after);
+  }
+
+  @Override
+  public void deleted(CedarNodeType nodeType, List<String> ids) {
+    if (handles(nodeType)) {
+      getSummaryCollection(nodeType).deleteMany(in(LinkedDataFields.ID, ids));
+    }
+  }
+
+  private void upsert(CedarNodeType nodeType, JsonNode document) {
+    if (!handles(nodeType)) {
+      return;
+    }
+    try {
+      String id = document.get(LinkedDataFields.ID).asText();
+      getSummaryCollection(nodeType).replaceOne(eq(LinkedDataFields.ID, id), buildSummary(nodeType, document), UPSERT);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Upserts the summaries of all documents of the type and removes summaries whose document no longer exists. Once
+   * done, the store serves the listings of the type.
+   *
+   * @return the number of summaries written
+   */
+  public long rebuild(CedarNodeType nodeType) throws IOException {
+    List<MongoCollection<Document>> sources = mongoCollections.getCollections(nodeType);
+    MongoCollection<Document> summaries = getSummaryCollection(nodeType);
+    FieldProjection projection = new FieldProjection(summaryFields.get(nodeType), FieldNameInEx.INCLUDE);
+    long written = 0;
+    List<WriteModel<Document>> batch = new ArrayList<>(REBUILD_BATCH_SIZE);
+    for (MongoCollection<Document> source : sources) {
+      for (Document document : source.find().projection(projection.toBson()).batchSize(REBUILD_BATCH_SIZE)) {
+        Document summary = buildSummary(nodeType, MongoDocuments.toJsonNode(document));
+        batch.add(new ReplaceOneModel<>(eq(LinkedDataFields.ID, summary.getString(LinkedDataFields.ID)), summary,
+            UPSERT));
+        if (batch.size() == REBUILD_BATCH_SIZE) {
+          summaries.bulkWrite(batch);
+          written += batch.size();
+          batch.clear();
+        }
+      }
+    }
+    if (!batch.isEmpty()) {
+      summaries.bulkWrite(batch);
+      written += batch.size();
+    }
+    removeOrphans(sources, summaries);
+    getRebuildsCollection().replaceOne(eq(MongoDocuments.MONGO_ID_FIELD, nodeType.name()),
+        new Document(MongoDocuments.MONGO_ID_FIELD, nodeType.name()).append(F_REBUILT_ON, new Date()), UPSERT);
+    return written;
+  }
+
+  /**
+   * Removes the rebuild records of the types, for commands that change their documents without notifying the store.
+   * Servers started afterwards serve their listings again once 'rebuild-summaries' has completed.
+   */
+  public void forgetRebuilds(Set<CedarNodeType> nodeTypes) {
+    List<String> names = new ArrayList<>(nodeTypes.size());
+    for (CedarNodeType nodeType : nodeTypes) {
+      names.add(nodeType.name());
+    }
+    getRebuildsCollection().deleteMany(in(MongoDocuments.MONGO_ID_FIELD, names));
+  }
+
+  private void removeOrphans(List<MongoCollection<Document>> sources, MongoCollection<Document> summaries) {
+    List<String> ids = new ArrayList<>(REBUILD_BATCH_SIZE);
+    List<WriteModel<Document>> deletes = new ArrayList<>();
+    for (Document summary : summaries.find().projection(Projections.include(LinkedDataFields.ID))
+        .batchSize(REBUILD_BATCH_SIZE)) {
+      ids.add(summary.getString(LinkedDataFields.ID));
+      if (ids.size() == REBUILD_BATCH_SIZE) {
+        deletes.addAll(findOrphans(sources, ids));
+        ids.clear();
+      }
+    }
+    if (!ids.isEmpty()) {
+      deletes.addAll(findOrphans(sources, ids));
+    }
+    if (!deletes.isEmpty()) {
+      summaries.bulkWrite(deletes);
+    }
+  }
+
+  private static List<WriteModel<Document>> findOrphans(List<MongoCollection<Document>> sources, List<String> ids) {
+    Set<String> existing = new HashSet<>();
+    for (MongoCollection<Document> source : sources) {
+      for (Document document : source.find(in(LinkedDataFields.ID, ids))
+          .projection(Projections.include(LinkedDataFields.ID))) {
+        existing.add(document.getString(LinkedDataFields.ID));
+      }
+    }
+    List<String> orphans = new ArrayList<>();
+    for (String id : ids) {
+      if (!existing.contains(id)) {
+        orphans.add(id);
+      }
+    }
+    List<WriteModel<Document>> deletes = new ArrayList<>();
+    if (!orphans.isEmpty()) {
+      deletes.add(new DeleteManyModel<>(in(LinkedDataFields.ID, orphans)));
+    }
+    return deletes;
+  }
+
+  private Document buildSummary(CedarNodeType nodeType, JsonNode document) throws IOException {
+    ObjectNode summary = JsonNodeFactory.instance.objectNode();
+    summary.set(LinkedDataFields.ID, document.get(LinkedDataFields.ID));
+    for (String fieldName : summaryFields.get(nodeType)) {
+      copyPath(document, summary, fieldName.split("\\."), 0);
+    }
+    return MongoDocuments.toDocument(summary);
+  }
+
+  private static void copyPath(JsonNode source, ObjectNode target, String[] path, int index) {
+    JsonNode value = source.get(path[index]);
+    if (value == null) {
+      return;
+    }
+    if (index == path.length - 1 || !value.isObject()) {
+      target.set(path[index], value);
+    } else {
+      JsonNode existing = target.get(path[index]);
+      ObjectNode child = existing != null && existing.isObject() ? (ObjectNode) existing
+          : target.putObject(path[index]);
+      copyPath(value, child, path, index + 1);
+    }
+  }
+
+  private MongoCollection<Document> getRebuildsCollection() {
+    return mongoCollections.getCollection(mongoCollections.getCollectionName(CedarNodeType.TEMPLATE)
+        + REBUILDS_COLLECTION_SUFFIX);
+  }
+
+  private MongoCollection<Document> getSummaryCollection(CedarNodeType nodeType) {
+    return mongoCollections.getCollection(mongoCollections.getCollectionName(nodeType) + SUMMARY_COLLECTION_SUFFIX);
+  }
+}
@@ -0,0 +1,27 @@
+package org.metadatacenter.cedar.template.trace;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs every finished span as JSON to the 'org.metadatacenter.cedar.template.trace.spans' logger.
+ */
+public class LogSpanExporter implements SpanExporter {
+
+  private static final Logger log = LoggerFactory.getLogger("org.metadatacenter.cedar.template.trace.spans");
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  @Override
+  public void export(Span span) {
+    if (!log.isInfoEnabled()) {
+      return;
+    }
+    try {
+      log.info(MAPPER.writeValueAsString(span));
+    } catch (JsonProcessingException e) {
+      log.warn("Error while serializing span " + span.getName(), e);
+    }
+  }
+}
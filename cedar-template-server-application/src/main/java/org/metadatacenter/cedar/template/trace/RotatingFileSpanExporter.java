@@ -0,0 +1,162 @@
+package org.metadatacenter.cedar.template.trace;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.lifecycle.Managed;
+import org.metadatacenter.cedar.template.config.TracingConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes finished spans as one JSON object per line to a local file, so traces can be inspected without an external
+ * collector. Spans are queued and written by a background thread; when the queue is full spans are dropped rather
+ * than slowing down requests. When the file exceeds maxFileBytes it is renamed to 'file.1' (shifting older files up
+ * to 'file.maxFiles', the oldest is removed) and a new file is started.
+ * <p>
+ * The file is only ever written by the background thread. On stop it writes what is still queued and ends, and the
+ * file is closed once it has.
+ */
+public class RotatingFileSpanExporter implements SpanExporter, Managed {
+
+  private static final Logger log = LoggerFactory.getLogger(RotatingFileSpanExporter.class);
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final int WRITE_BATCH_SIZE = 256;
+  private static final long STOP_TIMEOUT_SECONDS = 5;
+
+  private final Path file;
+  private final long maxFileBytes;
+  private final int maxFiles;
+  private final BlockingQueue<Span> queue;
+  private final AtomicLong dropped = new AtomicLong();
+  private final Thread writerThread;
+  private volatile boolean running;
+  private OutputStream out;
+  private long fileBytes;
+
+  public RotatingFileSpanExporter(TracingConfig config) {
+    this.file = Paths.get(config.getFile());
+    this.maxFileBytes = config.getMaxFileBytes();
+    this.maxFiles = config.getMaxFiles();
+    this.queue = new ArrayBlockingQueue<>(config.getQueueSize());
+    this.writerThread = new Thread(this::writeLoop, "span-file-exporter");
+    this.writerThread.setDaemon(true);
+  }
+
+  @Override
+  public void export(Span span) {
+    if (!queue.offer(span)) {
+      dropped.incrementAndGet();
+    }
+  }
+
+  public long getDroppedSpans() {
+    return dropped.get();
+  }
+
+  @Override
+  public void start() throws IOException {
+    if (file.getParent() != null) {
+      Files.createDirectories(file.getParent());
+    }
+    openFile();
+    running = true;
+    writerThread.start();
+  }
+
+  @Override
+  public void stop() throws Exception {
+    running = false;
+    // not interrupted: an interrupt closes the file channel under a write. The writer polls with a timeout, so it
+    // notices the stop, writes what is queued and ends.
+    writerThread.join(TimeUnit.SECONDS.toMillis(STOP_TIMEOUT_SECONDS));
+    if (writerThread.isAlive()) {
+      log.warn("The span writer did not finish within " + STOP_TIMEOUT_SECONDS + " s, the file is left to it");
+      return;
+    }
+    out.close();
+  }
+
+  private void writeLoop() {
+    List<Span> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+    long reportedDrops = 0;
+    while (running) {
+      try {
+        Span first = queue.poll(1, TimeUnit.SECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        queue.drainTo(batch, WRITE_BATCH_SIZE - 1);
+        write(batch);
+        batch.clear();
+        long drops = dropped.get();
+        if (drops > reportedDrops) {
+          log.warn("Dropped " + (drops - reportedDrops) + " spans because the export queue was full");
+          reportedDrops = drops;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch (IOException e) {
+        log.error("Error while writing spans to " + file, e);
+        batch.clear();
+      }
+    }
+    List<Span> remaining = new ArrayList<>();
+    queue.drainTo(remaining);
+    try {
+      write(remaining);
+    } catch (IOException e) {
+      log.error("Error while writing the last spans to " + file, e);
+    }
+  }
+
+  private void write(List<Span> spans) throws IOException {
+    for (Span span : spans) {
+      byte[] line = MAPPER.writeValueAsBytes(span);
+      if (fileBytes > 0 && fileBytes + line.length + 1 > maxFileBytes) {
+        rotate();
+      }
+      out.write(line);
+      out.write('\n');
+      fileBytes += line.length + 1;
+    }
+    out.flush();
+  }
+
+  private void rotate() throws IOException {
+    out.close();
+    Files.deleteIfExists(rotated(maxFiles));
+    for (int i = maxFiles - 1; i >= 1; i--) {
+      if (Files.exists(rotated(i))) {
+        Files.move(rotated(i), rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+    Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+    openFile();
+  }
+
+  private Path rotated(int index) {
+    return file.resolveSibling(file.getFileName() + "." + index);
+  }
+
+  private void openFile() throws IOException {
+    out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+    fileBytes = Files.size(file);
+  }
+}
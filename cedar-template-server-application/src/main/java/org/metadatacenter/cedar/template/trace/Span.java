@@ -0,0 +1,114 @@
+package org.metadatacenter.cedar.template.trace;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A timed stage of a request. Spans are opened with {@link Tracing#startSpan} and closed with try-with-resources;
+ * closing a span makes its parent the current span again and hands it to the exporter.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class Span implements AutoCloseable {
+
+  static final Span NOOP = new Span(null, null, null, null);
+
+  private final String traceId;
+  private final String spanId;
+  private final String parentSpanId;
+  private final String name;
+  private final Instant start;
+  private final long startNanos;
+  private final Map<String, String> attributes = new LinkedHashMap<>();
+  private Span parent;
+  private long durationMicros = -1;
+  private String error;
+
+  Span(String traceId, String spanId, String parentSpanId, String name) {
+    this.traceId = traceId;
+    this.spanId = spanId;
+    this.parentSpanId = parentSpanId;
+    this.name = name;
+    this.start = Instant.now();
+    this.startNanos = System.nanoTime();
+  }
+
+  void setParent(Span parent) {
+    this.parent = parent;
+  }
+
+  Span getParent() {
+    return parent;
+  }
+
+  boolean isNoop() {
+    return this == NOOP;
+  }
+
+  public Span attribute(String key, Object value) {
+    if (!isNoop() && value != null) {
+      attributes.put(key, String.valueOf(value));
+    }
+    return this;
+  }
+
+  public Span error(Throwable t) {
+    if (!isNoop()) {
+      this.error = t.getClass().getName() + (t.getMessage() == null ? "" : ": " + t.getMessage());
+    }
+    return this;
+  }
+
+  @Override
+  public void close() {
+    if (isNoop() || durationMicros >= 0) {
+      return;
+    }
+    durationMicros = (System.nanoTime() - startNanos) / 1000;
+    Tracing.finish(this);
+  }
+
+  @JsonProperty
+  public String getTraceId() {
+    return traceId;
+  }
+
+  @JsonProperty
+  public String getSpanId() {
+    return spanId;
+  }
+
+  @JsonProperty
+  public String getParentSpanId() {
+    return parentSpanId;
+  }
+
+  @JsonProperty
+  public String getName() {
+    return name;
+  }
+
+  @JsonProperty
+  public String getStart() {
+    return start.toString();
+  }
+
+  @JsonProperty
+  public long getDurationMicros() {
+    return durationMicros;
+  }
+
+  @JsonProperty
+  @JsonInclude(JsonInclude.Include.NON_EMPTY)
+  public Map<String, String> getAttributes() {
+    return attributes;
+  }
+
+  @JsonProperty
+  public String getError() {
+    return error;
+  }
+}
@@ -0,0 +1,9 @@
+package org.metadatacenter.cedar.template.trace;
+
+/**
+ * Receives every finished span. Called on the request thread, so implementations must not block.
+ */
+public interface SpanExporter {
+
+  void export(Span span);
+}
@@ -0,0 +1,152 @@
+package org.metadatacenter.cedar.template.trace;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Entry point of request tracing. The current span is kept per thread, so stages only have to open a span with
+ * {@link #startSpan} to become a child of the stage they run in. Trace context follows the W3C 'traceparent' format
+ * and the ids of the current span are put into the log MDC as 'traceId' and 'spanId'. Until an exporter is installed
+ * every span is a no-op.
+ */
+public final class Tracing {
+
+  private static final Logger log = LoggerFactory.getLogger(Tracing.class);
+
+  public static final String TRACEPARENT_HEADER = "traceparent";
+  public static final String MDC_TRACE_ID = "traceId";
+  public static final String MDC_SPAN_ID = "spanId";
+
+  private static final Pattern TRACEPARENT = Pattern.compile("^00-([0-9a-f]{32})-([0-9a-f]{16})-[0-9a-f]{2}$");
+  private static final String INVALID_TRACE_ID = "00000000000000000000000000000000";
+  private static final String INVALID_SPAN_ID = "0000000000000000";
+
+  private static final ThreadLocal<Span> CURRENT = new ThreadLocal<>();
+  private static volatile SpanExporter exporter;
+
+  private Tracing() {
+  }
+
+  public static void install(SpanExporter spanExporter) {
+    exporter = spanExporter;
+  }
+
+  public static boolean isEnabled() {
+    return exporter != null;
+  }
+
+  /**
+   * Opens a span as a child of the current span, or as the root of a new trace if there is none.
+   */
+  public static Span startSpan(String name) {
+    if (exporter == null) {
+      return Span.NOOP;
+    }
+    Span parent = CURRENT.get();
+    Span span = parent == null
+        ? new Span(newTraceId(), newSpanId(), null, name)
+        : new Span(parent.getTraceId(), newSpanId(), parent.getSpanId(), name);
+    activate(span, parent);
+    return span;
+  }
+
+  /**
+   * Opens the root span of a request. If the caller sent a valid 'traceparent' header the span joins that trace.
+   */
+  public static Span startServerSpan(String name, String traceparent) {
+    if (exporter == null) {
+      return Span.NOOP;
+    }
+    CURRENT.remove();
+    String traceId = null;
+    String parentSpanId = null;
+    if (traceparent != null) {
+      Matcher matcher = TRACEPARENT.matcher(traceparent.trim().toLowerCase(Locale.ENGLISH));
+      if (matcher.matches() && !INVALID_TRACE_ID.equals(matcher.group(1))
+          && !INVALID_SPAN_ID.equals(matcher.group(2))) {
+        traceId = matcher.group(1);
+        parentSpanId = matcher.group(2);
+      }
+    }
+    Span span = new Span(traceId == null ? newTraceId() : traceId, newSpanId(), parentSpanId, name);
+    activate(span, null);
+    return span;
+  }
+
+  /**
+   * The 'traceparent' header value that makes the span the parent of downstream work.
+   */
+  public static String traceparent(Span span) {
+    return "00-" + span.getTraceId() + "-" + span.getSpanId() + "-01";
+  }
+
+  /**
+   * Wraps a service so that every call of an interface method runs in a span named 'name.method'.
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> T traced(Class<? super T> type, T target, String name) {
+    return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+      if (method.getDeclaringClass() == Object.class) {
+        return method.invoke(target, args);
+      }
+      try (Span span = startSpan(name + "." + method.getName())) {
+        try {
+          return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+          span.error(e.getCause());
+          throw e.getCause();
+        }
+      }
+    });
+  }
+
+  static void finish(Span span) {
+    if (CURRENT.get() == span) {
+      Span parent = span.getParent();
+      if (parent == null) {
+        CURRENT.remove();
+        MDC.remove(MDC_TRACE_ID);
+        MDC.remove(MDC_SPAN_ID);
+      } else {
+        CURRENT.set(parent);
+        putMdc(parent);
+      }
+    }
+    SpanExporter spanExporter = exporter;
+    if (spanExporter != null) {
+      try {
+        spanExporter.export(span);
+      } catch (RuntimeException e) {
+        log.warn("Error while exporting span " + span.getName(), e);
+      }
+    }
+  }
+
+  private static void activate(Span span, Span parent) {
+    span.setParent(parent);
+    CURRENT.set(span);
+    putMdc(span);
+  }
+
+  private static void putMdc(Span span) {
+    MDC.put(MDC_TRACE_ID, span.getTraceId());
+    MDC.put(MDC_SPAN_ID, span.getSpanId());
+  }
+
+  private static String newTraceId() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    return String.format(Locale.ENGLISH, "%016x%016x", random.nextLong(), random.nextLong() | 1);
+  }
+
+  private static String newSpanId() {
+    return String.format(Locale.ENGLISH, "%016x", ThreadLocalRandom.current().nextLong() | 1);
+  }
+}
@@ -0,0 +1,66 @@
+package org.metadatacenter.cedar.template.trace;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+
+/**
+ * Opens the root span of every request, continuing the caller's trace when a 'traceparent' header is present, and
+ * returns the trace context in the 'traceparent' response header. Entity serialization happens after the response
+ * filters, so for responses with an entity the root span is closed only after the 'serialize' span.
+ */
+public class TracingFilter implements ContainerRequestFilter, ContainerResponseFilter, WriterInterceptor {
+
+  private static final String SPAN_PROPERTY = TracingFilter.class.getName() + ".span";
+
+  @Context
+  private ResourceInfo resourceInfo;
+
+  @Override
+  public void filter(ContainerRequestContext request) throws IOException {
+    String name = request.getMethod();
+    if (resourceInfo != null && resourceInfo.getResourceMethod() != null) {
+      name = resourceInfo.getResourceClass().getSimpleName() + "." + resourceInfo.getResourceMethod().getName();
+    }
+    Span span = Tracing.startServerSpan(name, request.getHeaderString(Tracing.TRACEPARENT_HEADER));
+    span.attribute("http.method", request.getMethod())
+        .attribute("http.path", request.getUriInfo().getPath());
+    request.setProperty(SPAN_PROPERTY, span);
+  }
+
+  @Override
+  public void filter(ContainerRequestContext request, ContainerResponseContext response) throws IOException {
+    Span span = (Span) request.getProperty(SPAN_PROPERTY);
+    if (span == null || span.isNoop()) {
+      return;
+    }
+    span.attribute("http.status", response.getStatus());
+    response.getHeaders().putSingle(Tracing.TRACEPARENT_HEADER, Tracing.traceparent(span));
+    if (!response.hasEntity()) {
+      request.removeProperty(SPAN_PROPERTY);
+      span.close();
+    }
+  }
+
+  @Override
+  public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+    Span serverSpan = (Span) context.getProperty(SPAN_PROPERTY);
+    if (serverSpan == null || serverSpan.isNoop()) {
+      context.proceed();
+      return;
+    }
+    context.removeProperty(SPAN_PROPERTY);
+    try (Span span = Tracing.startSpan("serialize")) {
+      span.attribute("media.type", context.getMediaType());
+      context.proceed();
+    } finally {
+      serverSpan.close();
+    }
+  }
+}
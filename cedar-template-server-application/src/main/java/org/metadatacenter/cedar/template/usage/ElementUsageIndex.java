@@ -0,0 +1,189 @@
+package org.metadatacenter.cedar.template.usage;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import io.dropwizard.lifecycle.Managed;
+import org.bson.Document;
+import org.metadatacenter.cedar.template.change.DocumentChangeListener;
+import org.metadatacenter.cedar.template.mongo.LinkedDataFields;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.mongo.MongoDocuments;
+import org.metadatacenter.model.CedarNodeType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
+
+/**
+ * Reverse index from the '@id' of every element and field embedded in a template to the template. There is one
+ * document per template in '&lt;collection&gt;-element-usages' holding the ids of its components in a multikey-indexed
+ * array, so finding the templates that use a component is a single index lookup. The index is updated from the
+ * template create, update and delete paths, after the embedded fields and elements got their ids, and can be rebuilt
+ * with the 'rebuild-element-usages' command.
+ */
+public class ElementUsageIndex implements DocumentChangeListener, Managed {
+
+  public static final String USAGE_COLLECTION_SUFFIX = "-element-usages";
+
+  private static final String F_TEMPLATE_ID = "templateId";
+  private static final String F_COMPONENT_IDS = "componentIds";
+  private static final String TYPE_FIELD = "@type";
+  private static final String ELEMENT_TYPE_SUFFIX = "/TemplateElement";
+  private static final String FIELD_TYPE_SUFFIX = "/TemplateField";
+  private static final int REBUILD_BATCH_SIZE = 500;
+  private static final UpdateOptions UPSERT = new UpdateOptions().upsert(true);
+
+  private final MongoCollections mongoCollections;
+  private final boolean enabled;
+
+  public ElementUsageIndex(MongoCollections mongoCollections, boolean enabled) {
+    this.mongoCollections = mongoCollections;
+    this.enabled = enabled;
+  }
+
+  @Override
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    MongoCollection<Document> usages = getUsageCollection();
+    usages.createIndex(Indexes.ascending(F_TEMPLATE_ID), new IndexOptions().unique(true).background(true));
+    usages.createIndex(Indexes.compoundIndex(Indexes.ascending(F_COMPONENT_IDS), Indexes.ascending(F_TEMPLATE_ID)),
+        new IndexOptions().background(true));
+  }
+
+  @Override
+  public void stop() {
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @Override
+  public void created(CedarNodeType nodeType, JsonNode document) {
+    if (nodeType == CedarNodeType.TEMPLATE) {
+      MongoCollection<Document> usages = getUsageCollection();
+      usages.replaceOne(eq(F_TEMPLATE_ID, templateId(document)), buildUsage(document), UPSERT);
+    }
+  }
+
+  @Override
+  public void updated(CedarNodeType nodeType, JsonNode before, JsonNode after) {
+    created(nodeType, after);
+  }
+
+  @Override
+  public void deleted(CedarNodeType nodeType, List<String> ids) {
+    if (nodeType == CedarNodeType.TEMPLATE) {
+      getUsageCollection().deleteMany(in(F_TEMPLATE_ID, ids));
+    }
+  }
+
+  /**
+   * The ids of the templates embedding the element or field, ordered by id.
+   */
+  public List<String> findTemplateIds(String componentId, int limit, int offset) throws IOException {
+    List<String> templateIds = new ArrayList<>();
+    try {
+      for (Document usage : getUsageCollection().find(eq(F_COMPONENT_IDS, componentId))
+          .projection(Projections.include(F_TEMPLATE_ID))
+          .sort(Sorts.ascending(F_TEMPLATE_ID))
+          .skip(offset)
+          .limit(limit)) {
+        templateIds.add(usage.getString(F_TEMPLATE_ID));
+      }
+    } catch (MongoException e) {
+      throw new IOException("Error while looking up the usages of " + componentId, e);
+    }
+    return templateIds;
+  }
+
+  public long countTemplates(String componentId) {
+    return getUsageCollection().count(eq(F_COMPONENT_IDS, componentId));
+  }
+
+  /**
+   * Replaces the index with the usages found in the template collection.
+   *
+   * @return the number of indexed templates
+   */
+  public long rebuild() throws IOException {
+    MongoCollection<Document> usages = getUsageCollection();
+    usages.deleteMany(new Document());
+    long indexed = 0;
+    List<WriteModel<Document>> batch = new ArrayList<>(REBUILD_BATCH_SIZE);
+    for (Document template : mongoCollections.getCollection(CedarNodeType.TEMPLATE).find()
+        .batchSize(REBUILD_BATCH_SIZE)) {
+      JsonNode document = MongoDocuments.toJsonNode(template);
+      batch.add(new ReplaceOneModel<>(eq(F_TEMPLATE_ID, templateId(document)), buildUsage(document), UPSERT));
+      if (batch.size() == REBUILD_BATCH_SIZE) {
+        usages.bulkWrite(batch);
+        indexed += batch.size();
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      usages.bulkWrite(batch);
+      indexed += batch.size();
+    }
+    return indexed;
+  }
+
+  private static String templateId(JsonNode template) {
+    return template.get(LinkedDataFields.ID).asText();
+  }
+
+  private static Document buildUsage(JsonNode template) {
+    Set<String> componentIds = new LinkedHashSet<>();
+    Iterator<Map.Entry<String, JsonNode>> fields = template.fields();
+    while (fields.hasNext()) {
+      collectComponentIds(fields.next().getValue(), componentIds);
+    }
+    componentIds.remove(templateId(template));
+    return new Document(F_TEMPLATE_ID, templateId(template))
+        .append(F_COMPONENT_IDS, new ArrayList<>(componentIds));
+  }
+
+  /**
+   * Collects the ids of all nested objects typed as template element or template field.
+   */
+  private static void collectComponentIds(JsonNode node, Set<String> componentIds) {
+    if (node.isObject()) {
+      JsonNode id = node.get(LinkedDataFields.ID);
+      JsonNode type = node.get(TYPE_FIELD);
+      if (id != null && id.isTextual() && type != null && type.isTextual()
+          && (type.asText().endsWith(ELEMENT_TYPE_SUFFIX) || type.asText().endsWith(FIELD_TYPE_SUFFIX))) {
+        componentIds.add(id.asText());
+      }
+      Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+      while (fields.hasNext()) {
+        collectComponentIds(fields.next().getValue(), componentIds);
+      }
+    } else if (node.isArray()) {
+      for (JsonNode item : node) {
+        collectComponentIds(item, componentIds);
+      }
+    }
+  }
+
+  private MongoCollection<Document> getUsageCollection() {
+    return mongoCollections.getCollection(mongoCollections.getCollectionName(CedarNodeType.TEMPLATE)
+        + USAGE_COLLECTION_SUFFIX);
+  }
+}
@@ -0,0 +1,115 @@
+package org.metadatacenter.cedar.template.change;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.bson.Document;
+import org.junit.Test;
+import org.metadatacenter.cedar.template.config.ReconciliationConfig;
+import org.metadatacenter.cedar.template.mongo.LinkedDataFields;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.mongo.ProjectingDocumentReader;
+import org.metadatacenter.cedar.template.mongo.TestDatabase;
+import org.metadatacenter.cedar.template.mongo.VersionedDocumentWriter;
+import org.metadatacenter.model.CedarNodeType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class DocumentChangeListenersTest {
+
+  private static final String ID = "https://repo.metadatacenter.org/templates/dirty";
+
+  /**
+   * A listener that fails once is given the stored document by the next sweep, and only once.
+   */
+  @Test
+  public void reconcilesAFailedListenerWithTheStoredDocument() throws Exception {
+    try (TestDatabase database = TestDatabase.open()) {
+      MongoCollections collections = database.getCollections();
+      collections.getCollection(CedarNodeType.TEMPLATE).insertOne(new Document(LinkedDataFields.ID, ID)
+          .append("schema:name", "stored").append(VersionedDocumentWriter.VERSION_FIELD, 1L));
+      DocumentChangeListeners listeners = new DocumentChangeListeners(new DirtyMarkers(collections),
+          new ProjectingDocumentReader(collections), new ReconciliationConfig());
+      FailingOnceListener listener = new FailingOnceListener();
+      listeners.add(listener);
+
+      listeners.updated(CedarNodeType.TEMPLATE, template(0, "before"), template(1, "notified"));
+      assertEquals(0, listener.reconciled.size());
+
+      listeners.sweep();
+      assertEquals(1, listener.reconciled.size());
+      assertEquals("stored", listener.reconciled.get(0).get("schema:name").asText());
+      assertEquals(1, VersionedDocumentWriter.getVersion(listener.reconciled.get(0)));
+
+      listeners.sweep();
+      assertEquals(1, listener.reconciled.size());
+    }
+  }
+
+  /**
+   * An update that reaches the listeners after a newer one is not applied; the sweep derives the data from the stored
+   * document instead.
+   */
+  @Test
+  public void reconcilesUpdatesThatArriveOutOfOrder() throws Exception {
+    try (TestDatabase database = TestDatabase.open()) {
+      MongoCollections collections = database.getCollections();
+      collections.getCollection(CedarNodeType.TEMPLATE).insertOne(new Document(LinkedDataFields.ID, ID)
+          .append("schema:name", "version 2").append(VersionedDocumentWriter.VERSION_FIELD, 2L));
+      DocumentChangeListeners listeners = new DocumentChangeListeners(new DirtyMarkers(collections),
+          new ProjectingDocumentReader(collections), new ReconciliationConfig());
+      RecordingListener listener = new RecordingListener();
+      listeners.add(listener);
+
+      listeners.updated(CedarNodeType.TEMPLATE, template(1, "version 1"), template(2, "version 2"));
+      listeners.updated(CedarNodeType.TEMPLATE, template(0, "version 0"), template(1, "version 1"));
+      assertEquals(1, listener.updated.size());
+      assertEquals("version 2", listener.updated.get(0).get("schema:name").asText());
+
+      listeners.sweep();
+      assertEquals(1, listener.reconciled.size());
+      assertEquals("version 2", listener.reconciled.get(0).get("schema:name").asText());
+    }
+  }
+
+  private static ObjectNode template(long version, String name) {
+    ObjectNode template = JsonNodeFactory.instance.objectNode();
+    template.put(LinkedDataFields.ID, ID);
+    template.put("schema:name", name);
+    template.put(VersionedDocumentWriter.VERSION_FIELD, version);
+    return template;
+  }
+
+  private static class RecordingListener implements DocumentChangeListener {
+
+    final List<JsonNode> updated = new ArrayList<>();
+    final List<JsonNode> reconciled = new ArrayList<>();
+
+    @Override
+    public void updated(CedarNodeType nodeType, JsonNode before, JsonNode after) {
+      updated.add(after);
+    }
+
+    @Override
+    public void reconcile(CedarNodeType nodeType, String id, JsonNode current) {
+      reconciled.add(current);
+    }
+  }
+
+  private static class FailingOnceListener extends RecordingListener {
+
+    private boolean failed;
+
+    @Override
+    public void updated(CedarNodeType nodeType, JsonNode before, JsonNode after) {
+      if (!failed) {
+        failed = true;
+        throw new IllegalStateException("derived store unavailable");
+      }
+      super.updated(nodeType, before, after);
+    }
+  }
+}
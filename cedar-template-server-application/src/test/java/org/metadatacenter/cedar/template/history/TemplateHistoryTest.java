@@ -0,0 +1,70 @@
+package org.metadatacenter.cedar.template.history;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+import org.metadatacenter.cedar.template.config.HistoryConfig;
+import org.metadatacenter.cedar.template.mongo.LinkedDataFields;
+import org.metadatacenter.cedar.template.mongo.TestDatabase;
+import org.metadatacenter.cedar.template.mongo.VersionedDocumentWriter;
+import org.metadatacenter.model.CedarNodeType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TemplateHistoryTest {
+
+  private static final String ID = "https://repo.metadatacenter.org/templates/history";
+
+  /**
+   * A version whose previous version was never recorded is stored as a snapshot, so it can be rebuilt right away.
+   */
+  @Test
+  public void snapshotsAVersionAfterAGap() throws Exception {
+    try (TestDatabase database = TestDatabase.open()) {
+      TemplateHistory history = newHistory(database);
+      history.created(CedarNodeType.TEMPLATE, template(1, "one"));
+      history.updated(CedarNodeType.TEMPLATE, template(2, "two"), template(3, "three"));
+      history.updated(CedarNodeType.TEMPLATE, template(3, "three"), template(4, "four"));
+
+      assertNull(history.findVersion(ID, 2));
+      assertEquals("three", history.findVersion(ID, 3).get("schema:name").asText());
+      assertEquals("four", history.findVersion(ID, 4).get("schema:name").asText());
+    }
+  }
+
+  /**
+   * Recording a version twice, as a retried notification does, keeps the first entry.
+   */
+  @Test
+  public void recordsAVersionOnce() throws Exception {
+    try (TestDatabase database = TestDatabase.open()) {
+      TemplateHistory history = newHistory(database);
+      history.created(CedarNodeType.TEMPLATE, template(1, "one"));
+      history.updated(CedarNodeType.TEMPLATE, template(1, "one"), template(2, "two"));
+      history.updated(CedarNodeType.TEMPLATE, template(1, "one"), template(2, "two"));
+      history.reconcile(CedarNodeType.TEMPLATE, ID, template(2, "two"));
+
+      assertEquals(2, history.countVersions(ID));
+      assertEquals("two", history.findVersion(ID, 2).get("schema:name").asText());
+    }
+  }
+
+  private static TemplateHistory newHistory(TestDatabase database) {
+    HistoryConfig config = new HistoryConfig();
+    config.setEnabled(true);
+    config.setSnapshotInterval(20);
+    TemplateHistory history = new TemplateHistory(database.getCollections(), config);
+    history.start();
+    return history;
+  }
+
+  private static ObjectNode template(long version, String name) {
+    ObjectNode template = JsonNodeFactory.instance.objectNode();
+    template.put(LinkedDataFields.ID, ID);
+    template.put("schema:name", name);
+    template.put("schema:description", "A template whose description is long enough to be patched");
+    template.put(VersionedDocumentWriter.VERSION_FIELD, version);
+    return template;
+  }
+}
@@ -0,0 +1,62 @@
+package org.metadatacenter.cedar.template.mongo;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoClientURI;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoDatabase;
+import org.bson.Document;
+import org.junit.AssumptionViolatedException;
+import org.metadatacenter.cedar.template.config.InstancePartitionConfig;
+
+import java.io.Closeable;
+import java.util.Locale;
+
+/**
+ * A scratch database for the tests that need Mongo, dropped when closed. The tests are skipped when no server answers
+ * at the 'mongo.test.uri' system property, mongodb://localhost:27017 by default.
+ */
+public final class TestDatabase implements Closeable {
+
+  private static final String DATABASE_NAME = "cedar-template-server-test";
+  private static final int SERVER_SELECTION_TIMEOUT_MILLIS = 1000;
+
+  private final MongoClient mongoClient;
+  private final MongoDatabase database;
+
+  private TestDatabase(MongoClient mongoClient) {
+    this.mongoClient = mongoClient;
+    this.database = mongoClient.getDatabase(DATABASE_NAME);
+    database.drop();
+  }
+
+  public static TestDatabase open() {
+    MongoClient mongoClient = new MongoClient(new MongoClientURI(
+        System.getProperty("mongo.test.uri", "mongodb://localhost:27017"),
+        MongoClientOptions.builder().serverSelectionTimeout(SERVER_SELECTION_TIMEOUT_MILLIS)));
+    try {
+      mongoClient.getDatabase("admin").runCommand(new Document("ping", 1));
+    } catch (MongoException e) {
+      mongoClient.close();
+      throw new AssumptionViolatedException("No Mongo server to test against", e);
+    }
+    return new TestDatabase(mongoClient);
+  }
+
+  /**
+   * The collections of the database, named after the node types, without instance partitions.
+   */
+  public MongoCollections getCollections() {
+    return new MongoCollections(database, nodeType -> nodeType.name().toLowerCase(Locale.ENGLISH),
+        new InstancePartitionConfig());
+  }
+
+  @Override
+  public void close() {
+    try {
+      database.drop();
+    } finally {
+      mongoClient.close();
+    }
+  }
+}
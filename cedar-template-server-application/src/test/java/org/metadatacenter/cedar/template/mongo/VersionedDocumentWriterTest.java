@@ -0,0 +1,57 @@
+package org.metadatacenter.cedar.template.mongo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.bson.Document;
+import org.junit.Test;
+import org.metadatacenter.model.CedarNodeType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class VersionedDocumentWriterTest {
+
+  private static final String ID = "https://repo.metadatacenter.org/templates/round-trip";
+
+  @Test
+  public void readsPlainAndExtendedJsonVersions() {
+    ObjectNode document = JsonNodeFactory.instance.objectNode();
+    assertEquals(0, VersionedDocumentWriter.getVersion(document));
+    document.put(VersionedDocumentWriter.VERSION_FIELD, 3L);
+    assertEquals(3, VersionedDocumentWriter.getVersion(document));
+    document.putObject(VersionedDocumentWriter.VERSION_FIELD).put("$numberLong", "4");
+    assertEquals(4, VersionedDocumentWriter.getVersion(document));
+  }
+
+  /**
+   * GET, PUT with the ETag of the GET as If-Match, and again, the way a client edits a template twice.
+   */
+  @Test
+  public void updatesWithTheVersionOfTheLastRead() throws Exception {
+    try (TestDatabase database = TestDatabase.open()) {
+      MongoCollections collections = database.getCollections();
+      ProjectingDocumentReader reader = new ProjectingDocumentReader(collections);
+      VersionedDocumentWriter writer = new VersionedDocumentWriter(collections);
+      collections.getCollection(CedarNodeType.TEMPLATE)
+          .insertOne(new Document(LinkedDataFields.ID, ID).append("schema:name", "version 0"));
+
+      for (long round = 1; round <= 2; round++) {
+        JsonNode read = reader.findById(CedarNodeType.TEMPLATE, ID, FieldProjection.all());
+        long etag = VersionedDocumentWriter.extractVersion(read);
+        assertEquals(round - 1, etag);
+        assertFalse(read.has(VersionedDocumentWriter.VERSION_FIELD));
+
+        ObjectNode changes = JsonNodeFactory.instance.objectNode().put("schema:name", "version " + round);
+        VersionedUpdate update = writer.update(CedarNodeType.TEMPLATE, ID, changes, etag);
+        assertEquals(VersionedUpdate.Status.UPDATED, update.getStatus());
+        assertEquals(round, update.getVersion());
+      }
+
+      ObjectNode stale = JsonNodeFactory.instance.objectNode().put("schema:name", "stale");
+      VersionedUpdate mismatch = writer.update(CedarNodeType.TEMPLATE, ID, stale, 1L);
+      assertEquals(VersionedUpdate.Status.VERSION_MISMATCH, mismatch.getStatus());
+      assertEquals(2, mismatch.getVersion());
+    }
+  }
+}
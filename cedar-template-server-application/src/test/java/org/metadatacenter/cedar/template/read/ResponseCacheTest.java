@@ -0,0 +1,133 @@
+package org.metadatacenter.cedar.template.read;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.bson.Document;
+import org.junit.Test;
+import org.metadatacenter.cedar.template.config.ResponseCacheConfig;
+import org.metadatacenter.cedar.template.mongo.FieldProjection;
+import org.metadatacenter.cedar.template.mongo.LinkedDataFields;
+import org.metadatacenter.cedar.template.mongo.MongoCollections;
+import org.metadatacenter.cedar.template.mongo.ProjectingDocumentReader;
+import org.metadatacenter.cedar.template.mongo.TestDatabase;
+import org.metadatacenter.cedar.template.mongo.VersionedDocumentWriter;
+import org.metadatacenter.model.CedarNodeType;
+
+import javax.ws.rs.core.Cookie;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class ResponseCacheTest {
+
+  private static final String ID = "https://repo.metadatacenter.org/templates/cached";
+
+  /**
+   * A template that was updated before it was cached is served from the cache, and dropped once another server node
+   * updates it again.
+   */
+  @Test
+  public void servesUpdatedDocumentsUntilTheirVersionChanges() throws Exception {
+    try (TestDatabase database = TestDatabase.open()) {
+      MongoCollections collections = database.getCollections();
+      ProjectingDocumentReader reader = new ProjectingDocumentReader(collections);
+      VersionedDocumentWriter writer = new VersionedDocumentWriter(collections);
+      collections.getCollection(CedarNodeType.TEMPLATE)
+          .insertOne(new Document(LinkedDataFields.ID, ID).append("schema:name", "version 0"));
+      writer.update(CedarNodeType.TEMPLATE, ID, JsonNodeFactory.instance.objectNode().put("schema:name",
+          "version 1"), 0L);
+
+      ResponseCacheConfig config = new ResponseCacheConfig();
+      config.setEnabled(true);
+      MetricRegistry metrics = new MetricRegistry();
+      ResponseCache cache = new ResponseCache(config, reader, new ObjectMapper(), metrics);
+      HttpHeaders headers = new JsonRequestHeaders();
+
+      long stamp = cache.stamp();
+      JsonNode template = reader.findById(CedarNodeType.TEMPLATE, ID, FieldProjection.all());
+      long version = VersionedDocumentWriter.extractVersion(template);
+      assertEquals(1, version);
+      assertNotNull(cache.store(CedarNodeType.TEMPLATE, ID, template, version, stamp, headers));
+
+      Response hit = cache.find(CedarNodeType.TEMPLATE, ID, headers);
+      assertNotNull(hit);
+      assertEquals("1", hit.getEntityTag().getValue());
+      assertEquals(0, metrics.meter(MetricRegistry.name(ResponseCache.class, "stale", "template")).getCount());
+
+      // an update made through another node is not reported to this cache
+      writer.update(CedarNodeType.TEMPLATE, ID, JsonNodeFactory.instance.objectNode().put("schema:name",
+          "version 2"), 1L);
+      assertNull(cache.find(CedarNodeType.TEMPLATE, ID, headers));
+      assertEquals(1, metrics.meter(MetricRegistry.name(ResponseCache.class, "stale", "template")).getCount());
+    }
+  }
+
+  /**
+   * The headers of a request accepting JSON only, without compression.
+   */
+  private static class JsonRequestHeaders implements HttpHeaders {
+
+    @Override
+    public List<String> getRequestHeader(String name) {
+      return null;
+    }
+
+    @Override
+    public String getHeaderString(String name) {
+      return null;
+    }
+
+    @Override
+    public MultivaluedMap<String, String> getRequestHeaders() {
+      return new MultivaluedHashMap<>();
+    }
+
+    @Override
+    public List<MediaType> getAcceptableMediaTypes() {
+      return Collections.singletonList(MediaType.APPLICATION_JSON_TYPE);
+    }
+
+    @Override
+    public List<Locale> getAcceptableLanguages() {
+      return Collections.emptyList();
+    }
+
+    @Override
+    public MediaType getMediaType() {
+      return null;
+    }
+
+    @Override
+    public Locale getLanguage() {
+      return null;
+    }
+
+    @Override
+    public Map<String, Cookie> getCookies() {
+      return Collections.emptyMap();
+    }
+
+    @Override
+    public Date getDate() {
+      return null;
+    }
+
+    @Override
+    public int getLength() {
+      return -1;
+    }
+  }
+}